@@ -3,7 +3,6 @@ package com.cairone.odataexample.datasources;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import javax.persistence.EntityManagerFactory;
 
@@ -25,12 +24,13 @@ import com.cairone.odataexample.entities.LocalidadEntity;
 import com.cairone.odataexample.services.LocalidadService;
 import com.cairone.odataexample.utils.SQLExceptionParser;
 import com.cairone.odataexample.utils.ValidatorUtil;
-import com.cairone.olingo.ext.jpa.interfaces.DataSource;
+import com.cairone.olingo.ext.jpa.interfaces.PageableDataSource;
 import com.cairone.olingo.ext.jpa.query.JPQLQuery;
 import com.cairone.olingo.ext.jpa.query.JPQLQueryBuilder;
+import com.cairone.olingo.ext.jpa.query.ResultStream;
 
 @Component
-public class LocalidadDataSource implements DataSource {
+public class LocalidadDataSource implements PageableDataSource {
 
 	private static final String ENTITY_SET_NAME = "Localidades";
 
@@ -146,6 +146,11 @@ public class LocalidadDataSource implements DataSource {
 
 	@Override
 	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption) throws ODataApplicationException {
+		return readAll(expandOption, filterOption, orderByOption, null, null, null);
+	}
+
+	@Override
+	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, Integer skip, Integer top) throws ODataApplicationException {
 
 		JPQLQuery query = new JPQLQueryBuilder()
 			.setDistinct(false)
@@ -153,12 +158,26 @@ public class LocalidadDataSource implements DataSource {
 			.setExpandOption(expandOption)
 			.setFilterOption(filterOption)
 			.setOrderByOption(orderByOption)
+			.setSelectOption(selectOption)
 			.build();
+
+		if(query.isProjection()) return JPQLQuery.streamProjection(entityManagerFactory.createEntityManager(), query, skip, top);
 	
-		List<LocalidadEntity> localidadEntities = JPQLQuery.execute(entityManagerFactory.createEntityManager(), query);
-		List<LocalidadEdm> localidadEdms = localidadEntities.stream().map(entity -> { return new LocalidadEdm(entity); }).collect(Collectors.toList());
+		ResultStream<LocalidadEntity> localidadEntities = JPQLQuery.stream(entityManagerFactory.createEntityManager(), query, skip, top);
+		ResultStream<LocalidadEdm> localidadEdms = localidadEntities.map(entity -> { return new LocalidadEdm(entity); });
 		
 		return localidadEdms;
 	}
 
+	@Override
+	public long count(FilterOption filterOption) throws ODataApplicationException {
+
+		JPQLQuery query = new JPQLQueryBuilder()
+			.setDistinct(false)
+			.setClazz(LocalidadEdm.class)
+			.setFilterOption(filterOption)
+			.buildCount();
+		
+		return JPQLQuery.count(entityManagerFactory.createEntityManager(), query);
+	}
 }
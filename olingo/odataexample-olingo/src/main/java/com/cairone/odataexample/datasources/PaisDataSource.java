@@ -3,7 +3,6 @@ package com.cairone.odataexample.datasources;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
@@ -26,12 +25,13 @@ import com.cairone.odataexample.entities.PaisEntity;
 import com.cairone.odataexample.services.PaisService;
 import com.cairone.odataexample.utils.SQLExceptionParser;
 import com.cairone.odataexample.utils.ValidatorUtil;
-import com.cairone.olingo.ext.jpa.interfaces.DataSource;
+import com.cairone.olingo.ext.jpa.interfaces.PageableDataSource;
 import com.cairone.olingo.ext.jpa.query.JPQLQuery;
 import com.cairone.olingo.ext.jpa.query.JPQLQueryBuilder;
+import com.cairone.olingo.ext.jpa.query.ResultStream;
 
 @Component
-public class PaisDataSource implements DataSource {
+public class PaisDataSource implements PageableDataSource {
 	
 	private static final String ENTITY_SET_NAME = "Paises";
 	
@@ -145,6 +145,11 @@ public class PaisDataSource implements DataSource {
 
 	@Override
 	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption) throws ODataApplicationException {
+		return readAll(expandOption, filterOption, orderByOption, null, null, null);
+	}
+
+	@Override
+	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, Integer skip, Integer top) throws ODataApplicationException {
 
 		JPQLQuery query = new JPQLQueryBuilder()
 			.setDistinct(true)
@@ -152,11 +157,26 @@ public class PaisDataSource implements DataSource {
 			.setExpandOption(expandOption)
 			.setFilterOption(filterOption)
 			.setOrderByOption(orderByOption)
+			.setSelectOption(selectOption)
 			.build();
+
+		if(query.isProjection()) return JPQLQuery.streamProjection(entityManager, query, skip, top);
 		
-		List<PaisEntity> paisEntities = JPQLQuery.execute(entityManager, query);
-		List<PaisEdm> paisEdms = paisEntities.stream().map(entity -> { return new PaisEdm(entity); }).collect(Collectors.toList());
+		ResultStream<PaisEntity> paisEntities = JPQLQuery.stream(entityManager, query, skip, top);
+		ResultStream<PaisEdm> paisEdms = paisEntities.map(entity -> { return new PaisEdm(entity); });
 		
 		return paisEdms;
 	}
+
+	@Override
+	public long count(FilterOption filterOption) throws ODataApplicationException {
+
+		JPQLQuery query = new JPQLQueryBuilder()
+			.setDistinct(true)
+			.setClazz(PaisEdm.class)
+			.setFilterOption(filterOption)
+			.buildCount();
+		
+		return JPQLQuery.count(entityManager, query);
+	}
 }
@@ -3,7 +3,6 @@ package com.cairone.odataexample.datasources;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import javax.persistence.EntityManagerFactory;
 
@@ -21,13 +20,14 @@ import org.springframework.stereotype.Component;
 import com.cairone.odataexample.edm.resources.PermisoEdm;
 import com.cairone.odataexample.entities.PermisoEntity;
 import com.cairone.odataexample.services.PermisoService;
-import com.cairone.olingo.ext.jpa.interfaces.DataSource;
+import com.cairone.olingo.ext.jpa.interfaces.PageableDataSource;
 import com.cairone.olingo.ext.jpa.query.JPQLQuery;
 import com.cairone.olingo.ext.jpa.query.JPQLQueryBuilder;
+import com.cairone.olingo.ext.jpa.query.ResultStream;
 import com.google.common.base.CharMatcher;
 
 @Component
-public class PermisoDataSource implements DataSource {
+public class PermisoDataSource implements PageableDataSource {
 
 	private static final String ENTITY_SET_NAME = "Permisos";
 
@@ -72,6 +72,11 @@ public class PermisoDataSource implements DataSource {
 
 	@Override
 	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption) throws ODataApplicationException {
+		return readAll(expandOption, filterOption, orderByOption, null, null, null);
+	}
+
+	@Override
+	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, Integer skip, Integer top) throws ODataApplicationException {
 
 		JPQLQuery query = new JPQLQueryBuilder()
 			.setDistinct(true)
@@ -79,11 +84,26 @@ public class PermisoDataSource implements DataSource {
 			.setExpandOption(expandOption)
 			.setFilterOption(filterOption)
 			.setOrderByOption(orderByOption)
+			.setSelectOption(selectOption)
 			.build();
 
-		List<PermisoEntity> permisoEntities = JPQLQuery.execute(entityManagerFactory.createEntityManager(), query);
-		List<PermisoEdm> permisoEdms = permisoEntities.stream().map(entity -> { return new PermisoEdm(entity); }).collect(Collectors.toList());
+		if(query.isProjection()) return JPQLQuery.streamProjection(entityManagerFactory.createEntityManager(), query, skip, top);
+
+		ResultStream<PermisoEntity> permisoEntities = JPQLQuery.stream(entityManagerFactory.createEntityManager(), query, skip, top);
+		ResultStream<PermisoEdm> permisoEdms = permisoEntities.map(entity -> { return new PermisoEdm(entity); });
 		
 		return permisoEdms;
 	}
+
+	@Override
+	public long count(FilterOption filterOption) throws ODataApplicationException {
+
+		JPQLQuery query = new JPQLQueryBuilder()
+			.setDistinct(true)
+			.setClazz(PermisoEdm.class)
+			.setFilterOption(filterOption)
+			.buildCount();
+		
+		return JPQLQuery.count(entityManagerFactory.createEntityManager(), query);
+	}
 }
@@ -3,7 +3,6 @@ package com.cairone.odataexample.datasources;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import javax.persistence.EntityManagerFactory;
 
@@ -27,13 +26,14 @@ import com.cairone.odataexample.services.LocalidadService;
 import com.cairone.odataexample.services.PersonaService;
 import com.cairone.odataexample.utils.SQLExceptionParser;
 import com.cairone.odataexample.utils.ValidatorUtil;
-import com.cairone.olingo.ext.jpa.interfaces.DataSource;
+import com.cairone.olingo.ext.jpa.interfaces.PageableDataSource;
 import com.cairone.olingo.ext.jpa.query.JPQLQuery;
 import com.cairone.olingo.ext.jpa.query.JPQLQueryBuilder;
+import com.cairone.olingo.ext.jpa.query.ResultStream;
 import com.google.common.base.CharMatcher;
 
 @Component
-public class PersonaDataSource implements DataSource {
+public class PersonaDataSource implements PageableDataSource {
 
 	private static final String ENTITY_SET_NAME = "Personas";
 	
@@ -191,6 +191,11 @@ public class PersonaDataSource implements DataSource {
 
 	@Override
 	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption) throws ODataApplicationException {
+		return readAll(expandOption, filterOption, orderByOption, null, null, null);
+	}
+
+	@Override
+	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, Integer skip, Integer top) throws ODataApplicationException {
 
 		JPQLQuery query = new JPQLQueryBuilder()
 			.setDistinct(false)
@@ -198,11 +203,27 @@ public class PersonaDataSource implements DataSource {
 			.setExpandOption(expandOption)
 			.setFilterOption(filterOption)
 			.setOrderByOption(orderByOption)
+			.setSelectOption(selectOption)
+			.setReadOnly(true)
 			.build();
+
+		if(query.isProjection()) return JPQLQuery.streamProjection(entityManagerFactory.createEntityManager(), query, skip, top);
 	
-		List<PersonaEntity> personaEntities = JPQLQuery.execute(entityManagerFactory.createEntityManager(), query);
-		List<PersonaEdm> personaEdms = personaEntities.stream().map(entity -> { return new PersonaEdm(entity); }).collect(Collectors.toList());
+		// rows are written straight from the JPA entities, through the JPA paths of PersonaEdm
+		ResultStream<PersonaEntity> personaEntities = JPQLQuery.stream(entityManagerFactory.createEntityManager(), query, skip, top);
+		
+		return personaEntities;
+	}
+
+	@Override
+	public long count(FilterOption filterOption) throws ODataApplicationException {
+
+		JPQLQuery query = new JPQLQueryBuilder()
+			.setDistinct(false)
+			.setClazz(PersonaEdm.class)
+			.setFilterOption(filterOption)
+			.buildCount();
 		
-		return personaEdms;
+		return JPQLQuery.count(entityManagerFactory.createEntityManager(), query);
 	}
 }
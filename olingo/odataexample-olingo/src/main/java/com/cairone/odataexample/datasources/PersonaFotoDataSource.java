@@ -3,7 +3,6 @@ package com.cairone.odataexample.datasources;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import javax.persistence.EntityManagerFactory;
 
@@ -22,14 +21,15 @@ import com.cairone.odataexample.edm.resources.PersonaFotoEdm;
 import com.cairone.odataexample.entities.PersonaEntity;
 import com.cairone.odataexample.entities.PersonaFotoEntity;
 import com.cairone.odataexample.services.PersonaService;
-import com.cairone.olingo.ext.jpa.interfaces.DataSource;
+import com.cairone.olingo.ext.jpa.interfaces.PageableDataSource;
 import com.cairone.olingo.ext.jpa.interfaces.MediaDataSource;
 import com.cairone.olingo.ext.jpa.query.JPQLQuery;
 import com.cairone.olingo.ext.jpa.query.JPQLQueryBuilder;
+import com.cairone.olingo.ext.jpa.query.ResultStream;
 import com.google.common.base.CharMatcher;
 
 @Component
-public class PersonaFotoDataSource implements DataSource, MediaDataSource {
+public class PersonaFotoDataSource implements PageableDataSource, MediaDataSource {
 	
 	private static final String ENTITY_SET_NAME = "PersonasFotos";
 	
@@ -158,6 +158,11 @@ public class PersonaFotoDataSource implements DataSource, MediaDataSource {
 
 	@Override
 	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption) throws ODataApplicationException {
+		return readAll(expandOption, filterOption, orderByOption, null, null, null);
+	}
+
+	@Override
+	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, Integer skip, Integer top) throws ODataApplicationException {
 
 		JPQLQuery query = new JPQLQueryBuilder()
 			.setDistinct(false)
@@ -165,10 +170,13 @@ public class PersonaFotoDataSource implements DataSource, MediaDataSource {
 			.setExpandOption(expandOption)
 			.setFilterOption(filterOption)
 			.setOrderByOption(orderByOption)
+			.setSelectOption(selectOption)
 			.build();
+
+		if(query.isProjection()) return JPQLQuery.streamProjection(entityManagerFactory.createEntityManager(), query, skip, top);
 	
-		List<PersonaFotoEntity> personaFotoEntities = JPQLQuery.execute(entityManagerFactory.createEntityManager(), query);
-		List<PersonaFotoEdm> personaFotoEdms = personaFotoEntities.stream().map(entity -> {
+		ResultStream<PersonaFotoEntity> personaFotoEntities = JPQLQuery.stream(entityManagerFactory.createEntityManager(), query, skip, top);
+		ResultStream<PersonaFotoEdm> personaFotoEdms = personaFotoEntities.map(entity -> {
 			
 			PersonaEntity personaEntity = personaService.buscarPorFotoUUID(entity.getUuid());
 			PersonaFotoEdm personaFotoEdm = new PersonaFotoEdm(entity.getUuid()); 
@@ -179,8 +187,20 @@ public class PersonaFotoDataSource implements DataSource, MediaDataSource {
 			}
 			
 			return personaFotoEdm; 
-		}).collect(Collectors.toList());
+		});
 		
 		return personaFotoEdms;
 	}
+
+	@Override
+	public long count(FilterOption filterOption) throws ODataApplicationException {
+
+		JPQLQuery query = new JPQLQueryBuilder()
+			.setDistinct(false)
+			.setClazz(PersonaFotoEdm.class)
+			.setFilterOption(filterOption)
+			.buildCount();
+		
+		return JPQLQuery.count(entityManagerFactory.createEntityManager(), query);
+	}
 }
@@ -3,7 +3,6 @@ package com.cairone.odataexample.datasources;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import javax.persistence.EntityManagerFactory;
 
@@ -25,12 +24,13 @@ import com.cairone.odataexample.entities.ProvinciaEntity;
 import com.cairone.odataexample.services.ProvinciaService;
 import com.cairone.odataexample.utils.SQLExceptionParser;
 import com.cairone.odataexample.utils.ValidatorUtil;
-import com.cairone.olingo.ext.jpa.interfaces.DataSource;
+import com.cairone.olingo.ext.jpa.interfaces.PageableDataSource;
 import com.cairone.olingo.ext.jpa.query.JPQLQuery;
 import com.cairone.olingo.ext.jpa.query.JPQLQueryBuilder;
+import com.cairone.olingo.ext.jpa.query.ResultStream;
 
 @Component
-public class ProvinciaDataSource implements DataSource {
+public class ProvinciaDataSource implements PageableDataSource {
 	
 	private static final String ENTITY_SET_NAME = "Provincias";
 	
@@ -143,6 +143,11 @@ public class ProvinciaDataSource implements DataSource {
 
 	@Override
 	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption) throws ODataApplicationException {
+		return readAll(expandOption, filterOption, orderByOption, null, null, null);
+	}
+
+	@Override
+	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, Integer skip, Integer top) throws ODataApplicationException {
 
 		JPQLQuery query = new JPQLQueryBuilder()
 			.setDistinct(true)
@@ -150,11 +155,26 @@ public class ProvinciaDataSource implements DataSource {
 			.setExpandOption(expandOption)
 			.setFilterOption(filterOption)
 			.setOrderByOption(orderByOption)
+			.setSelectOption(selectOption)
 			.build();
+
+		if(query.isProjection()) return JPQLQuery.streamProjection(entityManagerFactory.createEntityManager(), query, skip, top);
 	
-		List<ProvinciaEntity> provinciaEntities = JPQLQuery.execute(entityManagerFactory.createEntityManager(), query);
-		List<ProvinciaEdm> provinciaEdms = provinciaEntities.stream().map(entity -> { return new ProvinciaEdm(entity); }).collect(Collectors.toList());
+		ResultStream<ProvinciaEntity> provinciaEntities = JPQLQuery.stream(entityManagerFactory.createEntityManager(), query, skip, top);
+		ResultStream<ProvinciaEdm> provinciaEdms = provinciaEntities.map(entity -> { return new ProvinciaEdm(entity); });
 		
 		return provinciaEdms;
 	}
+
+	@Override
+	public long count(FilterOption filterOption) throws ODataApplicationException {
+
+		JPQLQuery query = new JPQLQueryBuilder()
+			.setDistinct(true)
+			.setClazz(ProvinciaEdm.class)
+			.setFilterOption(filterOption)
+			.buildCount();
+		
+		return JPQLQuery.count(entityManagerFactory.createEntityManager(), query);
+	}
 }
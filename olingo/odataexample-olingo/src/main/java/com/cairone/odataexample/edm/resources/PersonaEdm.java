@@ -43,7 +43,7 @@ public class PersonaEdm {
 	@EdmProperty(name="genero") @ODataJPAProperty(value="genero", treatedAs=EnumerationTreatedAs.ENUMERATION)
 	private GeneroOdataEnum genero = null;
 	
-	@EdmProperty(name="uuid", nullable = false, maxLength=36)
+	@EdmProperty(name="uuid", nullable = false, maxLength=36) @ODataJPAProperty("fotoUUID")
 	private String uuid = null;
 	
 	@EdmNavigationProperty(name="sectores") @ODataJPAProperty("personaSectorEntities")
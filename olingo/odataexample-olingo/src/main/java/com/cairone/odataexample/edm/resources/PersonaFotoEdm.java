@@ -5,6 +5,7 @@ import com.cairone.olingo.ext.jpa.annotations.EdmEntity;
 import com.cairone.olingo.ext.jpa.annotations.EdmEntitySet;
 import com.cairone.olingo.ext.jpa.annotations.EdmProperty;
 import com.cairone.olingo.ext.jpa.annotations.ODataJPAEntity;
+import com.cairone.olingo.ext.jpa.annotations.ODataJPAProperty;
 
 @EdmEntity(name = "PersonaFoto", hasStream=true, key = { "uuid" }, namespace = OdataExample.NAME_SPACE, containerName = OdataExample.CONTAINER_NAME)
 @EdmEntitySet("PersonasFotos")
@@ -14,10 +15,10 @@ public class PersonaFotoEdm {
 	@EdmProperty(name="uuid", nullable = false)
 	private String uuid = null;
 	
-	@EdmProperty(name="numeroDocumento", nullable = false)
+	@EdmProperty(name="numeroDocumento", nullable = false) @ODataJPAProperty(ignore = true)
 	private String numeroDocumento = null;
 	
-	@EdmProperty(name="tipoDocumentoId", nullable = false)
+	@EdmProperty(name="tipoDocumentoId", nullable = false) @ODataJPAProperty(ignore = true)
 	private Integer tipoDocumentoId = null;
 	
 	public PersonaFotoEdm() {}
@@ -9,15 +9,16 @@ import com.cairone.odataexample.entities.PersonaSectorEntity;
 import com.cairone.olingo.ext.jpa.annotations.EdmEntity;
 import com.cairone.olingo.ext.jpa.annotations.EdmEntitySet;
 import com.cairone.olingo.ext.jpa.annotations.EdmProperty;
+import com.cairone.olingo.ext.jpa.annotations.ODataJPAProperty;
 
 @EdmEntity(name = "PersonaSector", key = { "id" }, namespace = OdataExample.NAME_SPACE, containerName = OdataExample.CONTAINER_NAME)
 @EdmEntitySet("PersonasSectores")
 public class PersonaSectorEdm {
 
-	@EdmProperty(name="id", nullable = false)
+	@EdmProperty(name="id", nullable = false) @ODataJPAProperty("sector.id")
 	private Integer id = null;
 	
-	@EdmProperty(name="nombre", nullable = false, maxLength=100)
+	@EdmProperty(name="nombre", nullable = false, maxLength=100) @ODataJPAProperty("sector.nombre")
 	private String nombre = null;
 
 	@EdmProperty(name="fechaIngreso", nullable = false)
@@ -3,10 +3,12 @@ package com.cairone.olingo.ext.demo.cfg;
 import org.apache.olingo.server.api.ODataApplicationException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.embedded.FilterRegistrationBean;
 import org.springframework.boot.context.embedded.ServletRegistrationBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewFilter;
 
 import com.cairone.olingo.ext.demo.AppDemoConstants;
 import com.cairone.olingo.ext.demo.ctrls.ODataController;
@@ -14,11 +16,15 @@ import com.cairone.olingo.ext.jpa.processors.ActionProcessor;
 import com.cairone.olingo.ext.jpa.processors.BatchRequestProcessor;
 import com.cairone.olingo.ext.jpa.processors.MediaProcessor;
 import com.cairone.olingo.ext.jpa.providers.EdmProvider;
+import com.cairone.olingo.ext.jpa.query.QueryCostModel;
 
 @Configuration
 public class OlingoConfig {
 	
 	@Value("${demo.odata.maxtopoption}") private Integer maxTopOption = null;
+	@Value("${demo.odata.pagesize}") private Integer pageSize = null;
+	@Value("${demo.odata.streaming}") private boolean streaming = false;
+	@Value("${demo.odata.querybudget}") private Integer queryBudget = null;
 	@Value("${demo.odata.serviceroot}") public String SERVICE_ROOT = null;
 	
     @Autowired private ApplicationContext context = null;
@@ -31,6 +37,9 @@ public class OlingoConfig {
 	    	.setDefaultEdmPackage(AppDemoConstants.DEFAULT_EDM_PACKAGE)
 			.setServiceRoot(SERVICE_ROOT)
 			.setMaxTopOption(maxTopOption)
+			.setPageSize(pageSize)
+			.setStreaming(streaming)
+			.setQueryCostModel(new QueryCostModel().setDefaultBudget(queryBudget).setDegradedPageSize(pageSize))
 			.initialize(context);
     	
     	return mediaProcessor;
@@ -71,4 +80,10 @@ public class OlingoConfig {
     	ServletRegistrationBean registration = new ServletRegistrationBean(dispatcherServlet, "/odata/olingodemo.svc/*");
     	return registration;
     }
+
+    @Bean
+    public FilterRegistrationBean openEntityManagerInViewRegistration() {
+    	FilterRegistrationBean registration = new FilterRegistrationBean(new OpenEntityManagerInViewFilter(), dispatcherServletRegistration());
+    	return registration;
+    }
 }
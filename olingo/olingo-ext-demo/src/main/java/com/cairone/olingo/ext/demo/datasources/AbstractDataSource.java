@@ -15,9 +15,9 @@ import org.apache.olingo.server.api.uri.queryoption.SelectOption;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.MessageSource;
 
-import com.cairone.olingo.ext.jpa.interfaces.DataSource;
+import com.cairone.olingo.ext.jpa.interfaces.PageableDataSource;
 
-public abstract class AbstractDataSource implements DataSource {
+public abstract class AbstractDataSource implements PageableDataSource {
 	
 	@Autowired protected MessageSource messageSource = null;
 	@PersistenceContext protected EntityManager entityManager;
@@ -38,6 +38,14 @@ public abstract class AbstractDataSource implements DataSource {
 	public abstract Object readFromKey(Map<String, UriParameter> keyPredicateMap, ExpandOption expandOption, SelectOption selectOption) throws ODataApplicationException;
 
 	@Override
-	public abstract Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption) throws ODataApplicationException;
+	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption) throws ODataApplicationException {
+		return readAll(expandOption, filterOption, orderByOption, null, null, null);
+	}
+
+	@Override
+	public abstract Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, Integer skip, Integer top) throws ODataApplicationException;
+
+	@Override
+	public abstract long count(FilterOption filterOption) throws ODataApplicationException;
 
 }
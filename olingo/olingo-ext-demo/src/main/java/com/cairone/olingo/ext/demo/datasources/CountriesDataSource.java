@@ -23,6 +23,8 @@ import com.cairone.olingo.ext.demo.utils.OdataExceptionParser;
 import com.cairone.olingo.ext.demo.utils.ValidatorUtil;
 import com.cairone.olingo.ext.jpa.query.JPQLQuery;
 import com.cairone.olingo.ext.jpa.query.JPQLQueryBuilder;
+import com.cairone.olingo.ext.jpa.query.ResultStream;
+import com.cairone.olingo.ext.jpa.query.SkipToken;
 
 @Component
 public class CountriesDataSource extends AbstractDataSource {
@@ -124,7 +126,7 @@ public class CountriesDataSource extends AbstractDataSource {
 	}
 
 	@Override
-	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption) throws ODataApplicationException {
+	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, Integer skip, Integer top) throws ODataApplicationException {
 
 		JPQLQuery query = new JPQLQueryBuilder()
 			.setDistinct(false)
@@ -132,9 +134,37 @@ public class CountriesDataSource extends AbstractDataSource {
 			.setExpandOption(expandOption)
 			.setFilterOption(filterOption)
 			.setOrderByOption(orderByOption)
+			.setSelectOption(selectOption)
 			.build();
+
+		if(query.isProjection()) return JPQLQuery.streamProjection(entityManager, query, skip, top);
+	
+		ResultStream<CountryEntity> countryEntities = JPQLQuery.stream(entityManager, query, skip, top);
+		ResultStream<CountryEdm> countryEdms = countryEntities
+			.map(entity -> { 
+				CountryEdm countryEdm = new CountryEdm(entity);
+				return countryEdm;
+			});
+		
+		return countryEdms;
+	}
+
+	@Override
+	public Iterable<?> readPage(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, SkipToken skipToken, Integer top) throws ODataApplicationException {
+
+		JPQLQuery query = new JPQLQueryBuilder()
+			.setDistinct(false)
+			.setClazz(CountryEdm.class)
+			.setExpandOption(expandOption)
+			.setFilterOption(filterOption)
+			.setOrderByOption(orderByOption)
+			.setSelectOption(selectOption)
+			.setSkipToken(skipToken)
+			.build();
+
+		if(query.isProjection()) return JPQLQuery.executeProjection(entityManager, query, skipToken.getSkip(), top);
 	
-		List<CountryEntity> countryEntities = JPQLQuery.execute(entityManager, query);
+		List<CountryEntity> countryEntities = JPQLQuery.execute(entityManager, query, skipToken.getSkip(), top);
 		List<CountryEdm> countryEdms = countryEntities.stream()
 			.map(entity -> { 
 				CountryEdm countryEdm = new CountryEdm(entity);
@@ -144,4 +174,16 @@ public class CountriesDataSource extends AbstractDataSource {
 		
 		return countryEdms;
 	}
+
+	@Override
+	public long count(FilterOption filterOption) throws ODataApplicationException {
+
+		JPQLQuery query = new JPQLQueryBuilder()
+			.setDistinct(false)
+			.setClazz(CountryEdm.class)
+			.setFilterOption(filterOption)
+			.buildCount();
+		
+		return JPQLQuery.count(entityManager, query);
+	}
 }
@@ -23,6 +23,8 @@ import com.cairone.olingo.ext.demo.utils.OdataExceptionParser;
 import com.cairone.olingo.ext.demo.utils.ValidatorUtil;
 import com.cairone.olingo.ext.jpa.query.JPQLQuery;
 import com.cairone.olingo.ext.jpa.query.JPQLQueryBuilder;
+import com.cairone.olingo.ext.jpa.query.ResultStream;
+import com.cairone.olingo.ext.jpa.query.SkipToken;
 
 @Component
 public class FormTypesDataSource extends AbstractDataSource {
@@ -124,7 +126,7 @@ public class FormTypesDataSource extends AbstractDataSource {
 	}
 
 	@Override
-	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption) throws ODataApplicationException {
+	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, Integer skip, Integer top) throws ODataApplicationException {
 
 		JPQLQuery query = new JPQLQueryBuilder()
 			.setDistinct(false)
@@ -132,9 +134,37 @@ public class FormTypesDataSource extends AbstractDataSource {
 			.setExpandOption(expandOption)
 			.setFilterOption(filterOption)
 			.setOrderByOption(orderByOption)
+			.setSelectOption(selectOption)
 			.build();
+
+		if(query.isProjection()) return JPQLQuery.streamProjection(entityManager, query, skip, top);
+	
+		ResultStream<FormTypeEntity> formTypeEntities = JPQLQuery.stream(entityManager, query, skip, top);
+		ResultStream<FormTypeEdm> formTypeEdms = formTypeEntities
+			.map(entity -> { 
+				FormTypeEdm formTypeEdm = new FormTypeEdm(entity);
+				return formTypeEdm;
+			});
+		
+		return formTypeEdms;
+	}
+
+	@Override
+	public Iterable<?> readPage(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, SkipToken skipToken, Integer top) throws ODataApplicationException {
+
+		JPQLQuery query = new JPQLQueryBuilder()
+			.setDistinct(false)
+			.setClazz(FormTypeEdm.class)
+			.setExpandOption(expandOption)
+			.setFilterOption(filterOption)
+			.setOrderByOption(orderByOption)
+			.setSelectOption(selectOption)
+			.setSkipToken(skipToken)
+			.build();
+
+		if(query.isProjection()) return JPQLQuery.executeProjection(entityManager, query, skipToken.getSkip(), top);
 	
-		List<FormTypeEntity> formTypeEntities = JPQLQuery.execute(entityManager, query);
+		List<FormTypeEntity> formTypeEntities = JPQLQuery.execute(entityManager, query, skipToken.getSkip(), top);
 		List<FormTypeEdm> formTypeEdms = formTypeEntities.stream()
 			.map(entity -> { 
 				FormTypeEdm formTypeEdm = new FormTypeEdm(entity);
@@ -144,4 +174,16 @@ public class FormTypesDataSource extends AbstractDataSource {
 		
 		return formTypeEdms;
 	}
+
+	@Override
+	public long count(FilterOption filterOption) throws ODataApplicationException {
+
+		JPQLQuery query = new JPQLQueryBuilder()
+			.setDistinct(false)
+			.setClazz(FormTypeEdm.class)
+			.setFilterOption(filterOption)
+			.buildCount();
+		
+		return JPQLQuery.count(entityManager, query);
+	}
 }
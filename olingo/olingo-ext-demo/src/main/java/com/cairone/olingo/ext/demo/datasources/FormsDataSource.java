@@ -23,6 +23,8 @@ import com.cairone.olingo.ext.demo.utils.OdataExceptionParser;
 import com.cairone.olingo.ext.demo.utils.ValidatorUtil;
 import com.cairone.olingo.ext.jpa.query.JPQLQuery;
 import com.cairone.olingo.ext.jpa.query.JPQLQueryBuilder;
+import com.cairone.olingo.ext.jpa.query.ResultStream;
+import com.cairone.olingo.ext.jpa.query.SkipToken;
 import com.google.common.base.CharMatcher;
 
 @Component
@@ -125,7 +127,7 @@ public class FormsDataSource extends AbstractDataSource {
 	}
 
 	@Override
-	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption) throws ODataApplicationException {
+	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, Integer skip, Integer top) throws ODataApplicationException {
 
 		JPQLQuery query = new JPQLQueryBuilder()
 			.setDistinct(false)
@@ -133,9 +135,37 @@ public class FormsDataSource extends AbstractDataSource {
 			.setExpandOption(expandOption)
 			.setFilterOption(filterOption)
 			.setOrderByOption(orderByOption)
+			.setSelectOption(selectOption)
 			.build();
+
+		if(query.isProjection()) return JPQLQuery.streamProjection(entityManager, query, skip, top);
+	
+		ResultStream<FormEntity> formEntities = JPQLQuery.stream(entityManager, query, skip, top);
+		ResultStream<FormEdm> formEdms = formEntities
+			.map(entity -> { 
+				FormEdm formEdm = new FormEdm(entity);
+				return formEdm;
+			});
+		
+		return formEdms;
+	}
+
+	@Override
+	public Iterable<?> readPage(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, SkipToken skipToken, Integer top) throws ODataApplicationException {
+
+		JPQLQuery query = new JPQLQueryBuilder()
+			.setDistinct(false)
+			.setClazz(FormEdm.class)
+			.setExpandOption(expandOption)
+			.setFilterOption(filterOption)
+			.setOrderByOption(orderByOption)
+			.setSelectOption(selectOption)
+			.setSkipToken(skipToken)
+			.build();
+
+		if(query.isProjection()) return JPQLQuery.executeProjection(entityManager, query, skipToken.getSkip(), top);
 	
-		List<FormEntity> formEntities = JPQLQuery.execute(entityManager, query);
+		List<FormEntity> formEntities = JPQLQuery.execute(entityManager, query, skipToken.getSkip(), top);
 		List<FormEdm> formEdms = formEntities.stream()
 			.map(entity -> { 
 				FormEdm formEdm = new FormEdm(entity);
@@ -145,4 +175,16 @@ public class FormsDataSource extends AbstractDataSource {
 		
 		return formEdms;
 	}
+
+	@Override
+	public long count(FilterOption filterOption) throws ODataApplicationException {
+
+		JPQLQuery query = new JPQLQueryBuilder()
+			.setDistinct(false)
+			.setClazz(FormEdm.class)
+			.setFilterOption(filterOption)
+			.buildCount();
+		
+		return JPQLQuery.count(entityManager, query);
+	}
 }
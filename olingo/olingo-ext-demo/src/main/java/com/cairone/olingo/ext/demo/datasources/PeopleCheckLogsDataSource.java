@@ -23,6 +23,8 @@ import com.cairone.olingo.ext.demo.utils.OdataExceptionParser;
 import com.cairone.olingo.ext.demo.utils.ValidatorUtil;
 import com.cairone.olingo.ext.jpa.query.JPQLQuery;
 import com.cairone.olingo.ext.jpa.query.JPQLQueryBuilder;
+import com.cairone.olingo.ext.jpa.query.ResultStream;
+import com.cairone.olingo.ext.jpa.query.SkipToken;
 
 @Component
 public class PeopleCheckLogsDataSource extends AbstractDataSource {
@@ -126,7 +128,7 @@ public class PeopleCheckLogsDataSource extends AbstractDataSource {
 	}
 
 	@Override
-	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption) throws ODataApplicationException {
+	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, Integer skip, Integer top) throws ODataApplicationException {
 
 		JPQLQuery query = new JPQLQueryBuilder()
 			.setDistinct(false)
@@ -134,9 +136,37 @@ public class PeopleCheckLogsDataSource extends AbstractDataSource {
 			.setExpandOption(expandOption)
 			.setFilterOption(filterOption)
 			.setOrderByOption(orderByOption)
+			.setSelectOption(selectOption)
 			.build();
+
+		if(query.isProjection()) return JPQLQuery.streamProjection(entityManager, query, skip, top);
+	
+		ResultStream<PersonCheckLogEntity> personCheckLogEntities = JPQLQuery.stream(entityManager, query, skip, top);
+		ResultStream<PersonCheckLogEdm> personCheckLogEdms = personCheckLogEntities
+			.map(entity -> { 
+				PersonCheckLogEdm personCheckLogEdm = new PersonCheckLogEdm(entity);
+				return personCheckLogEdm;
+			});
+		
+		return personCheckLogEdms;
+	}
+
+	@Override
+	public Iterable<?> readPage(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, SkipToken skipToken, Integer top) throws ODataApplicationException {
+
+		JPQLQuery query = new JPQLQueryBuilder()
+			.setDistinct(false)
+			.setClazz(PersonCheckLogEdm.class)
+			.setExpandOption(expandOption)
+			.setFilterOption(filterOption)
+			.setOrderByOption(orderByOption)
+			.setSelectOption(selectOption)
+			.setSkipToken(skipToken)
+			.build();
+
+		if(query.isProjection()) return JPQLQuery.executeProjection(entityManager, query, skipToken.getSkip(), top);
 	
-		List<PersonCheckLogEntity> personCheckLogEntities = JPQLQuery.execute(entityManager, query);
+		List<PersonCheckLogEntity> personCheckLogEntities = JPQLQuery.execute(entityManager, query, skipToken.getSkip(), top);
 		List<PersonCheckLogEdm> personCheckLogEdms = personCheckLogEntities.stream()
 			.map(entity -> { 
 				PersonCheckLogEdm personCheckLogEdm = new PersonCheckLogEdm(entity);
@@ -146,4 +176,16 @@ public class PeopleCheckLogsDataSource extends AbstractDataSource {
 		
 		return personCheckLogEdms;
 	}
+
+	@Override
+	public long count(FilterOption filterOption) throws ODataApplicationException {
+
+		JPQLQuery query = new JPQLQueryBuilder()
+			.setDistinct(false)
+			.setClazz(PersonCheckLogEdm.class)
+			.setFilterOption(filterOption)
+			.buildCount();
+		
+		return JPQLQuery.count(entityManager, query);
+	}
 }
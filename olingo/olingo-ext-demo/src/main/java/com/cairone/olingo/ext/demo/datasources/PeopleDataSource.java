@@ -22,11 +22,15 @@ import com.cairone.olingo.ext.demo.exceptions.ODataBadRequestException;
 import com.cairone.olingo.ext.demo.services.PersonService;
 import com.cairone.olingo.ext.demo.utils.OdataExceptionParser;
 import com.cairone.olingo.ext.demo.utils.ValidatorUtil;
+import com.cairone.olingo.ext.jpa.interfaces.SearchableDataSource;
 import com.cairone.olingo.ext.jpa.query.JPQLQuery;
 import com.cairone.olingo.ext.jpa.query.JPQLQueryBuilder;
+import com.cairone.olingo.ext.jpa.query.ResultStream;
+import com.cairone.olingo.ext.jpa.query.SearchRestriction;
+import com.cairone.olingo.ext.jpa.query.SkipToken;
 
 @Component
-public class PeopleDataSource extends AbstractDataSource {
+public class PeopleDataSource extends AbstractDataSource implements SearchableDataSource {
 
 	private static final String ENTITY_SET_NAME = "People";
 
@@ -131,7 +135,12 @@ public class PeopleDataSource extends AbstractDataSource {
 	}
 
 	@Override
-	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption) throws ODataApplicationException {
+	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, Integer skip, Integer top) throws ODataApplicationException {
+		return readAll(expandOption, filterOption, orderByOption, selectOption, null, skip, top);
+	}
+
+	@Override
+	public Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, SearchRestriction searchRestriction, Integer skip, Integer top) throws ODataApplicationException {
 
 		JPQLQuery query = new JPQLQueryBuilder()
 			.setDistinct(false)
@@ -139,9 +148,44 @@ public class PeopleDataSource extends AbstractDataSource {
 			.setExpandOption(expandOption)
 			.setFilterOption(filterOption)
 			.setOrderByOption(orderByOption)
+			.setSelectOption(selectOption)
+			.setSearchRestriction(searchRestriction)
 			.build();
+
+		if(query.isProjection()) return JPQLQuery.streamProjection(entityManager, query, skip, top);
 	
-		List<PersonEntity> personEntities = JPQLQuery.execute(entityManager, query);
+		ResultStream<PersonEntity> personEntities = JPQLQuery.stream(entityManager, query, skip, top);
+		ResultStream<PersonEdm> personEdms = personEntities
+			.map(entity -> { 
+				PersonEdm personEdm = new PersonEdm(entity);
+				return personEdm;
+			});
+		
+		return personEdms;
+	}
+
+	@Override
+	public Iterable<?> readPage(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, SkipToken skipToken, Integer top) throws ODataApplicationException {
+		return readPage(expandOption, filterOption, orderByOption, selectOption, null, skipToken, top);
+	}
+
+	@Override
+	public Iterable<?> readPage(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, SearchRestriction searchRestriction, SkipToken skipToken, Integer top) throws ODataApplicationException {
+
+		JPQLQuery query = new JPQLQueryBuilder()
+			.setDistinct(false)
+			.setClazz(PersonEdm.class)
+			.setExpandOption(expandOption)
+			.setFilterOption(filterOption)
+			.setOrderByOption(orderByOption)
+			.setSelectOption(selectOption)
+			.setSearchRestriction(searchRestriction)
+			.setSkipToken(skipToken)
+			.build();
+
+		if(query.isProjection()) return JPQLQuery.executeProjection(entityManager, query, skipToken.getSkip(), top);
+	
+		List<PersonEntity> personEntities = JPQLQuery.execute(entityManager, query, skipToken.getSkip(), top);
 		List<PersonEdm> personEdms = personEntities.stream()
 			.map(entity -> { 
 				PersonEdm personEdm = new PersonEdm(entity);
@@ -151,4 +195,22 @@ public class PeopleDataSource extends AbstractDataSource {
 		
 		return personEdms;
 	}
+
+	@Override
+	public long count(FilterOption filterOption) throws ODataApplicationException {
+		return count(filterOption, null);
+	}
+
+	@Override
+	public long count(FilterOption filterOption, SearchRestriction searchRestriction) throws ODataApplicationException {
+
+		JPQLQuery query = new JPQLQueryBuilder()
+			.setDistinct(false)
+			.setClazz(PersonEdm.class)
+			.setFilterOption(filterOption)
+			.setSearchRestriction(searchRestriction)
+			.buildCount();
+		
+		return JPQLQuery.count(entityManager, query);
+	}
 }
@@ -11,6 +11,7 @@ import com.cairone.olingo.ext.jpa.annotations.EdmEntitySet;
 import com.cairone.olingo.ext.jpa.annotations.EdmNavigationProperty;
 import com.cairone.olingo.ext.jpa.annotations.EdmProperty;
 import com.cairone.olingo.ext.jpa.annotations.ODataJPAEntity;
+import com.cairone.olingo.ext.jpa.annotations.ODataJPAProperty;
 
 @EdmEntity(name = "PersonCheckLog", key = "Id", namespace = AppDemoConstants.NAME_SPACE, containerName = AppDemoConstants.CONTAINER_NAME)
 @EdmEntitySet("PeopleCheckLogs")
@@ -26,7 +27,7 @@ public class PersonCheckLogEdm {
 	@EdmProperty(name = "CheckType")
 	private CheckTypeEnum checkType = null;
 	
-	@EdmProperty(name = "Moment")
+	@EdmProperty(name = "Moment") @ODataJPAProperty("datetime")
 	private LocalDateTime moment = null;
 	
 	public PersonCheckLogEdm() {}
@@ -0,0 +1,25 @@
+package com.cairone.olingo.ext.jpa.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Makes the entity set of an entity type searchable with <code>$search</code>: the processor keeps an in-memory inverted
+ * index of its entities, unless a {@code SearchProvider} bean is suitable for the entity set. This annotation must only be
+ * used on classes that also have an {@code EdmEntitySet} annotation.
+ * 
+ * @author diego.cairone
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface EdmSearchable {
+
+	/**
+	 * The Edm names of the properties whose text is indexed. When none is given, every property of type String is indexed.
+	 * 
+	 * @return The names of the indexed properties
+	 */
+	String[] value() default {};
+}
@@ -28,11 +28,11 @@ public class BinaryOperatorConverter implements OperatorConverter<BinaryOperator
 	public String convertToJpqlOperator(BinaryOperatorKind x) {
 		switch(x) {
 		case ADD:
-			break;
+			return " + ";
 		case AND:
 			return " AND ";
 		case DIV:
-			break;
+			return " / ";
 		case EQ:
 			return " = ";
 		case GE:
@@ -46,19 +46,18 @@ public class BinaryOperatorConverter implements OperatorConverter<BinaryOperator
 		case LT:
 			return " < ";
 		case MOD:
-			break;
+			return "MOD";
 		case MUL:
-			break;
+			return " * ";
 		case NE:
 			return " <> ";
 		case OR:
 			return " OR ";
 		case SUB:
-			break;
+			return " - ";
 		default:
 			return null;
 		}
-		return null;
 	}
 
 	@Override
@@ -0,0 +1,163 @@
+package com.cairone.olingo.ext.jpa.converters;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.olingo.commons.api.edm.EdmType;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Primitives;
+
+/**
+ * Parsers of the text of OData literals, one per Java type, built once. A literal compared with a property is parsed into the
+ * type the property is mapped to, so the persistence provider always receives parameters of a stable type: the database
+ * caches a single plan for the statement and can use the indexes of the column.
+ * <p>
+ * The text <code>null</code> parses to null for every type.
+ *
+ * @author diego.cairone
+ */
+public final class LiteralParsers {
+
+	/**
+	 * Parses the text of a literal, as written in the URI
+	 */
+	@FunctionalInterface
+	public interface LiteralParser {
+		Object parse(String text) throws ODataApplicationException;
+	}
+
+	private static final LiteralParser STRING = guard(String.class, LiteralParsers::unquote);
+	private static final LiteralParser AS_IS = text -> text;
+
+	private static final Map<Class<?>, LiteralParser> PARSERS = ImmutableMap.<Class<?>, LiteralParser>builder()
+		.put(String.class, STRING)
+		.put(Byte.class, guard(Byte.class, Byte::valueOf))
+		.put(Short.class, guard(Short.class, Short::valueOf))
+		.put(Integer.class, guard(Integer.class, Integer::valueOf))
+		.put(Long.class, guard(Long.class, Long::valueOf))
+		.put(BigInteger.class, guard(BigInteger.class, BigInteger::new))
+		.put(BigDecimal.class, guard(BigDecimal.class, BigDecimal::new))
+		.put(Float.class, guard(Float.class, text -> Float.valueOf(infinity(text))))
+		.put(Double.class, guard(Double.class, text -> Double.valueOf(infinity(text))))
+		.put(Boolean.class, guard(Boolean.class, LiteralParsers::parseBoolean))
+		.put(UUID.class, guard(UUID.class, UUID::fromString))
+		.put(LocalDate.class, guard(LocalDate.class, LocalDate::parse))
+		.put(LocalTime.class, guard(LocalTime.class, LocalTime::parse))
+		.put(LocalDateTime.class, guard(LocalDateTime.class, LiteralParsers::parseLocalDateTime))
+		.put(OffsetDateTime.class, guard(OffsetDateTime.class, OffsetDateTime::parse))
+		.put(Date.class, guard(Date.class, text -> Date.from(OffsetDateTime.parse(text).toInstant())))
+		.build();
+
+	/**
+	 * Java type of a literal without a property to compare with, by the Edm type Olingo gives it
+	 */
+	private static final Map<String, Class<?>> EDM_TYPES = ImmutableMap.<String, Class<?>>builder()
+		.put("Edm.String", String.class)
+		.put("Edm.Byte", Integer.class)
+		.put("Edm.SByte", Integer.class)
+		.put("Edm.Int16", Integer.class)
+		.put("Edm.Int32", Integer.class)
+		.put("Edm.Int64", Long.class)
+		.put("Edm.Single", Float.class)
+		.put("Edm.Double", Double.class)
+		.put("Edm.Decimal", BigDecimal.class)
+		.put("Edm.Boolean", Boolean.class)
+		.put("Edm.Guid", UUID.class)
+		.put("Edm.Date", LocalDate.class)
+		.put("Edm.TimeOfDay", LocalTime.class)
+		.put("Edm.DateTimeOffset", LocalDateTime.class)
+		.build();
+
+	private static final Map<Class<?>, LiteralParser> ENUM_PARSERS = new ConcurrentHashMap<Class<?>, LiteralParser>();
+
+	private LiteralParsers() {
+	}
+
+	/**
+	 * @return The parser of literals of a Java type; literals of types without a parser are kept as they are written
+	 */
+	public static LiteralParser forType(Class<?> type) {
+
+		if(type == null) return AS_IS;
+
+		Class<?> wrapped = Primitives.wrap(type);
+		LiteralParser parser = PARSERS.get(wrapped);
+
+		if(parser == null && wrapped.isEnum()) {
+			parser = ENUM_PARSERS.computeIfAbsent(wrapped, LiteralParsers::enumParser);
+		}
+		return parser == null ? AS_IS : parser;
+	}
+
+	/**
+	 * @return The Java type a literal of an Edm type is parsed into, or null when it has none
+	 */
+	public static Class<?> javaType(EdmType edmType) {
+		return edmType == null ? null : EDM_TYPES.get(edmType.getFullQualifiedName().getFullQualifiedNameAsString());
+	}
+
+	/**
+	 * @return The value of an Edm.String literal, without the enclosing quotes and with escaped quotes restored
+	 */
+	public static String unquote(String text) {
+		if(text.length() >= 2 && text.startsWith("'") && text.endsWith("'")) {
+			return text.substring(1, text.length() - 1).replace("''", "'");
+		}
+		return text;
+	}
+
+	/**
+	 * Turns the text <code>null</code> into null, and a malformed literal into a 400 response
+	 */
+	private static LiteralParser guard(Class<?> type, LiteralParser parser) {
+		return text -> {
+			if(text == null || text.equals("null")) return null;
+			try {
+				return parser.parse(text);
+			} catch(IllegalArgumentException | DateTimeParseException e) {
+				throw new ODataApplicationException(String.format("Literal %s is not a valid %s", text, type.getSimpleName()),
+						HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+			}
+		};
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static LiteralParser enumParser(Class<?> type) {
+		return guard(type, text -> Enum.valueOf((Class<? extends Enum>) type, unquote(text)));
+	}
+
+	private static Boolean parseBoolean(String text) {
+		if(text.equalsIgnoreCase("true")) return Boolean.TRUE;
+		if(text.equalsIgnoreCase("false")) return Boolean.FALSE;
+		throw new IllegalArgumentException(text);
+	}
+
+	/**
+	 * A DateTimeOffset literal is moved to the time zone of the server, where local date-times are stored
+	 */
+	private static LocalDateTime parseLocalDateTime(String text) {
+		try {
+			return OffsetDateTime.parse(text).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+		} catch(DateTimeParseException e) {
+			return LocalDateTime.parse(text);
+		}
+	}
+
+	private static String infinity(String text) {
+		return text.equals("INF") ? "Infinity" : text.equals("-INF") ? "-Infinity" : text;
+	}
+}
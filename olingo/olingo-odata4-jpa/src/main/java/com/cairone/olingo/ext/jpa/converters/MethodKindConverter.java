@@ -0,0 +1,82 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cairone.olingo.ext.jpa.converters;
+
+import org.apache.olingo.server.api.uri.queryoption.expression.MethodKind;
+
+import com.cairone.olingo.ext.jpa.interfaces.OperatorConverter;
+
+/**
+ * JPQL function or operator that implements an OData canonical function of <code>org.apache.olingo.server.api.uri.queryoption.expression.MethodKind</code>.
+ * Functions without a JPQL equivalent convert to null.
+ *
+ * @author diego.cairone
+ */
+public class MethodKindConverter implements OperatorConverter<MethodKind, String> {
+
+	@Override
+	public String convertToJpqlOperator(MethodKind x) {
+		switch(x) {
+		case CONTAINS:
+		case STARTSWITH:
+		case ENDSWITH:
+			return "LIKE";
+		case TOLOWER:
+			return "LOWER";
+		case TOUPPER:
+			return "UPPER";
+		case TRIM:
+			return "TRIM";
+		case LENGTH:
+			return "LENGTH";
+		case INDEXOF:
+			return "LOCATE";
+		case SUBSTRING:
+			return "SUBSTRING";
+		case CONCAT:
+			return "CONCAT";
+		case YEAR:
+			return "YEAR";
+		case MONTH:
+			return "MONTH";
+		case DAY:
+			return "DAY";
+		case HOUR:
+			return "HOUR";
+		case MINUTE:
+			return "MINUTE";
+		case SECOND:
+			return "SECOND";
+		case DATE:
+		case TIME:
+		case CAST:
+			return "CAST";
+		case NOW:
+			return "CURRENT_TIMESTAMP";
+		case ROUND:
+			return "ROUND";
+		case FLOOR:
+			return "FLOOR";
+		case CEILING:
+			return "CEILING";
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public MethodKind convertToOlingoOperator(String y) {
+		return null;
+	}
+}
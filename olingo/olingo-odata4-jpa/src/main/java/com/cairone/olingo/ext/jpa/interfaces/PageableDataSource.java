@@ -0,0 +1,59 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cairone.olingo.ext.jpa.interfaces;
+
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
+import org.apache.olingo.server.api.uri.queryoption.FilterOption;
+import org.apache.olingo.server.api.uri.queryoption.OrderByOption;
+import org.apache.olingo.server.api.uri.queryoption.SelectOption;
+
+import com.cairone.olingo.ext.jpa.query.SkipToken;
+
+/**
+ * A <code>DataSource</code> able to apply $skip and $top when querying, and to count without reading, so only the requested page is read from the store
+ * 
+ * @author diego.cairone
+ */
+public interface PageableDataSource extends DataSource {
+
+	/**
+	 * Reads one page of the entity set
+	 * 
+	 * @param skip number of rows to skip, or null for none
+	 * @param top maximum number of rows to return, or null for no limit
+	 * @return The rows of the requested page, already filtered and ordered
+	 */
+	Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, Integer skip, Integer top) throws ODataApplicationException;
+	
+	/**
+	 * Reads one server-driven page of the entity set. Implementations backed by <code>JPQLQueryBuilder</code> should pass the token to
+	 * <code>setSkipToken</code> so the page is positioned with a keyset predicate; by default the page is read by offset.
+	 * 
+	 * @param skipToken position of the page, never null
+	 * @param top maximum number of rows to return
+	 * @return The rows of the requested page, already filtered and ordered
+	 */
+	default Iterable<?> readPage(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, SkipToken skipToken, Integer top) throws ODataApplicationException {
+		return readAll(expandOption, filterOption, orderByOption, selectOption, skipToken.getOffset(), top);
+	}
+	
+	/**
+	 * Counts the rows matching the filter without reading them
+	 * 
+	 * @return The number of rows in the filtered entity set
+	 */
+	long count(FilterOption filterOption) throws ODataApplicationException;
+	
+}
@@ -0,0 +1,59 @@
+package com.cairone.olingo.ext.jpa.interfaces;
+
+import java.util.Map;
+
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriParameter;
+import org.apache.olingo.server.api.uri.queryoption.search.SearchExpression;
+
+import com.cairone.olingo.ext.jpa.query.SearchRestriction;
+
+/**
+ * Resolves the <code>$search</code> of an entity set into a {@link SearchRestriction}, the keys of the candidate entities or a
+ * JPQL condition that delegates to the full-text search of the database. Beans of this type replace the in-memory index the
+ * processor keeps for entity sets annotated with {@link com.cairone.olingo.ext.jpa.annotations.EdmSearchable}.
+ * <p>
+ * Providers that keep their own index are told about every entity created, updated or deleted through the processor.
+ * 
+ * @author diego.cairone
+ */
+public interface SearchProvider {
+
+	/**
+	 * @return The name of the entity set the provider searches
+	 */
+	String isSuitableFor();
+	
+	/**
+	 * @param searchExpression The parsed $search: terms and phrases combined with AND, OR and NOT
+	 * @return The entities that match
+	 */
+	SearchRestriction search(SearchExpression searchExpression) throws ODataApplicationException;
+	
+	/**
+	 * @return Whether the provider has to be loaded with {@link #load(Iterable)} before its first search
+	 */
+	default boolean isLoaded() {
+		return true;
+	}
+	
+	/**
+	 * Builds the index of the provider from every entity of the entity set
+	 *
+	 * @param entities The rows of the data source: instances of the Edm class or of its JPA entity
+	 */
+	default void load(Iterable<?> entities) throws ODataApplicationException {
+	}
+	
+	default void created(Object entity) throws ODataApplicationException {
+	}
+	
+	default void updated(Object entity) throws ODataApplicationException {
+	}
+	
+	/**
+	 * @param keyPredicateMap The keys of the deleted entity, as they were written in the URI
+	 */
+	default void deleted(Map<String, UriParameter> keyPredicateMap) throws ODataApplicationException {
+	}
+}
@@ -0,0 +1,41 @@
+package com.cairone.olingo.ext.jpa.interfaces;
+
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
+import org.apache.olingo.server.api.uri.queryoption.FilterOption;
+import org.apache.olingo.server.api.uri.queryoption.OrderByOption;
+import org.apache.olingo.server.api.uri.queryoption.SelectOption;
+
+import com.cairone.olingo.ext.jpa.query.SearchRestriction;
+import com.cairone.olingo.ext.jpa.query.SkipToken;
+
+/**
+ * A <code>PageableDataSource</code> able to restrict its queries to the entities that match a $search. Implementations backed
+ * by <code>JPQLQueryBuilder</code> should pass the restriction to <code>setSearchRestriction</code>. The $search of any other
+ * data source is applied in memory, after reading the whole filtered entity set.
+ * 
+ * @author diego.cairone
+ */
+public interface SearchableDataSource extends PageableDataSource {
+
+	/**
+	 * Reads one page of the entities that match a $search
+	 * 
+	 * @param searchRestriction the entities that match the $search, never null and always with a condition
+	 * @return The rows of the requested page, already searched, filtered and ordered
+	 */
+	Iterable<?> readAll(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, SearchRestriction searchRestriction, Integer skip, Integer top) throws ODataApplicationException;
+	
+	/**
+	 * Reads one server-driven page of the entities that match a $search, by offset unless overridden
+	 */
+	default Iterable<?> readPage(ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, SearchRestriction searchRestriction, SkipToken skipToken, Integer top) throws ODataApplicationException {
+		return readAll(expandOption, filterOption, orderByOption, selectOption, searchRestriction, skipToken.getOffset(), top);
+	}
+	
+	/**
+	 * Counts the entities that match a $search and the filter without reading them
+	 */
+	long count(FilterOption filterOption, SearchRestriction searchRestriction) throws ODataApplicationException;
+	
+}
@@ -0,0 +1,74 @@
+package com.cairone.olingo.ext.jpa.mappers;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.olingo.commons.api.data.Entity;
+
+/**
+ * Plain Java access to an Edm class, generated at build time by {@link EdmMapperGenerator}: the values of its properties and
+ * navigation properties, the conversion of its properties of simple types to and from an Olingo entity, the values of its
+ * keys and the JPA paths of its properties. A {@link MappingPlan} uses it, when it
+ * is on the classpath, instead of accessing the fields through method handles; fields a mapper does not cover, because they
+ * could not be reached from generated code or were added after it was generated, are still accessed that way.
+ * <p>
+ * Fields are numbered by their position in {@link #getFields()}.
+ *
+ * @author diego.cairone
+ */
+public interface EdmMapper<T> {
+
+	/**
+	 * The suffix of the simple name of a generated mapper, which is placed in the package of its Edm class
+	 */
+	public static final String SUFFIX = "_EdmMapper";
+
+	Class<T> getEdmClass();
+
+	/**
+	 * @return The names of the fields the mapper reads and writes, properties and navigation properties, in declaration order
+	 */
+	List<String> getFields();
+
+	/**
+	 * @return A new instance, or null when the class has no public constructor without arguments
+	 */
+	T newInstance();
+
+	Object get(T object, int field);
+
+	void set(T object, int field, Object value);
+
+	/**
+	 * @return The values of the keys of {@link com.cairone.olingo.ext.jpa.annotations.EdmEntity}, by Edm name; null when some
+	 * key can not be read by the mapper
+	 */
+	Map<String, Object> getKeyValues(T object);
+
+	/**
+	 * @return The JPA path of every property and navigation property, by Edm name, as $filter and $orderby translate them
+	 */
+	Map<String, String> getFilterPaths();
+
+	/**
+	 * @return The Edm names of the properties {@link #writeProperties} and {@link #readProperties} convert: those of simple
+	 * types, enumerations included, the mapper reads and writes. Complex properties are converted by the processors.
+	 */
+	default Set<String> getConvertedProperties() {
+		return Collections.emptySet();
+	}
+
+	/**
+	 * Adds to the entity the converted properties of the object that are not null, as {@link MappingPlan#writeProperty} converts them
+	 *
+	 * @param selected The Edm names of the properties to write, or null to write all of them
+	 */
+	default void writeProperties(T object, Entity entity, Set<String> selected) {}
+
+	/**
+	 * Sets on the object the converted properties present in the entity
+	 */
+	default void readProperties(Entity entity, T object) {}
+}
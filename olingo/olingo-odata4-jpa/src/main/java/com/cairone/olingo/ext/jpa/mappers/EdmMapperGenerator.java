@@ -0,0 +1,392 @@
+package com.cairone.olingo.ext.jpa.mappers;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.data.Property;
+
+import com.cairone.olingo.ext.jpa.annotations.EdmComplex;
+import com.cairone.olingo.ext.jpa.annotations.EdmEntity;
+import com.cairone.olingo.ext.jpa.annotations.EdmEnum;
+import com.cairone.olingo.ext.jpa.annotations.EdmNavigationProperty;
+import com.cairone.olingo.ext.jpa.annotations.EdmProperty;
+import com.cairone.olingo.ext.jpa.annotations.ODataJPAProperty;
+import com.cairone.olingo.ext.jpa.interfaces.OdataEnum;
+
+/**
+ * Annotation processor that generates an {@link EdmMapper} for every class annotated with {@link EdmEntity} or
+ * {@link com.cairone.olingo.ext.jpa.annotations.EdmComplex}, in the package of the class, named after it with the suffix
+ * {@link EdmMapper#SUFFIX}.
+ * <p>
+ * Fields are read and written directly when they are not private, or else through their public getter and setter; a field
+ * that can be reached neither way is left out of the mapper and accessed at runtime as if there was no mapper. Properties of
+ * simple types are also converted to and from Olingo properties by the mapper, with the conversion chosen from the type of
+ * the field. Nested and private classes get no mapper.
+ * <p>
+ * The mapper is annotated with <code>javax.annotation.processing.Generated</code> or <code>javax.annotation.Generated</code>,
+ * whichever the compiler finds, or with neither when none is found.
+ * <p>
+ * It is optional and not registered as a service; to use it, name it as a processor of the build of the Edm classes, for
+ * example in the <code>processors</code> of the <code>apt-maven-plugin</code> or with <code>javac -processor</code>.
+ *
+ * @author diego.cairone
+ */
+@SupportedAnnotationTypes({
+	"com.cairone.olingo.ext.jpa.annotations.EdmEntity",
+	"com.cairone.olingo.ext.jpa.annotations.EdmComplex"
+})
+public class EdmMapperGenerator extends AbstractProcessor {
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+
+		Set<TypeElement> types = new LinkedHashSet<TypeElement>();
+
+		for(TypeElement annotation : annotations) {
+			ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(annotation)).forEach(types::add);
+		}
+
+		for(TypeElement type : types) {
+
+			if(type.getKind() != ElementKind.CLASS || type.getNestingKind() != NestingKind.TOP_LEVEL || type.getModifiers().contains(Modifier.PRIVATE)) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "No EdmMapper is generated for " + type + ", it is not a top level class", type);
+				continue;
+			}
+
+			try {
+				generate(type);
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not generate the EdmMapper of " + type + ": " + e.getMessage(), type);
+			}
+		}
+
+		return false;
+	}
+
+	private void generate(TypeElement type) throws IOException {
+
+		String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+		String className = type.getSimpleName().toString();
+		String mapperName = className + EdmMapper.SUFFIX;
+
+		List<ExecutableElement> methods = ElementFilter.methodsIn(type.getEnclosedElements());
+
+		List<String> fields = new ArrayList<String>();
+		List<String> readers = new ArrayList<String>();
+		List<String> writers = new ArrayList<String>();
+		Map<String, String> readersByEdmName = new LinkedHashMap<String, String>();
+		Map<String, String> filterPaths = new LinkedHashMap<String, String>();
+		Map<String, String> convertedReaders = new LinkedHashMap<String, String>();
+		Map<String, String> convertedWriters = new LinkedHashMap<String, String>();
+		Map<String, String> conversions = new LinkedHashMap<String, String>();
+
+		for(VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+
+			EdmProperty edmProperty = field.getAnnotation(EdmProperty.class);
+			EdmNavigationProperty edmNavigationProperty = field.getAnnotation(EdmNavigationProperty.class);
+
+			if(edmProperty == null && edmNavigationProperty == null) continue;
+
+			String fieldName = field.getSimpleName().toString();
+			String edmName = edmProperty != null ? edmProperty.name() : edmNavigationProperty.name();
+			if(edmName.isEmpty()) edmName = fieldName;
+
+			ODataJPAProperty oDataJPAProperty = field.getAnnotation(ODataJPAProperty.class);
+			filterPaths.putIfAbsent(edmName, oDataJPAProperty != null && !oDataJPAProperty.value().isEmpty() ? oDataJPAProperty.value() : fieldName);
+
+			String reader = reader(field, methods);
+			String writer = writer(field, methods);
+
+			if(reader != null && edmProperty != null) readersByEdmName.putIfAbsent(edmName, reader);
+
+			if(reader != null && writer != null) {
+				fields.add(fieldName);
+				readers.add(reader);
+				writers.add(writer);
+				if(edmProperty != null && !isComplex(field.asType()) && !conversions.containsKey(edmName)) {
+					convertedReaders.put(edmName, reader);
+					convertedWriters.put(edmName, writer);
+					conversions.put(edmName, conversion(field.asType()));
+				}
+			}
+		}
+
+		EdmEntity edmEntity = type.getAnnotation(EdmEntity.class);
+		List<String> keys = new ArrayList<String>();
+		boolean keysReadable = true;
+
+		if(edmEntity != null) {
+			for(String key : edmEntity.key()) {
+				keys.add(key);
+				keysReadable &= readersByEdmName.containsKey(key);
+			}
+		}
+
+		JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(packageName.isEmpty() ? mapperName : packageName + "." + mapperName, type);
+
+		try(Writer writer = sourceFile.openWriter()) {
+
+			StringBuilder sb = new StringBuilder();
+
+			if(!packageName.isEmpty()) sb.append("package ").append(packageName).append(";\n\n");
+
+			String generated = generatedAnnotation();
+			if(generated != null) sb.append("@").append(generated).append("(\"").append(EdmMapperGenerator.class.getName()).append("\")\n");
+			sb.append("public final class ").append(mapperName).append(" implements ").append(EdmMapper.class.getName()).append("<").append(className).append("> {\n\n");
+
+			sb.append("\tprivate static final java.util.List<String> FIELDS = java.util.Collections.unmodifiableList(java.util.Arrays.<String> asList(");
+			for(int i = 0; i < fields.size(); i++) sb.append(i == 0 ? "" : ", ").append(literal(fields.get(i)));
+			sb.append("));\n");
+			sb.append("\tprivate static final java.util.Set<String> CONVERTED = java.util.Collections.unmodifiableSet(new java.util.LinkedHashSet<String>(java.util.Arrays.<String> asList(");
+			sb.append(conversions.keySet().stream().map(EdmMapperGenerator::literal).collect(Collectors.joining(", ")));
+			sb.append(")));\n");
+			sb.append("\tprivate static final java.util.Map<String, String> FILTER_PATHS;\n\n");
+
+			sb.append("\tstatic {\n");
+			sb.append("\t\tjava.util.Map<String, String> filterPaths = new java.util.LinkedHashMap<String, String>();\n");
+			filterPaths.forEach((edmName, jpaPath) -> sb.append("\t\tfilterPaths.put(").append(literal(edmName)).append(", ").append(literal(jpaPath)).append(");\n"));
+			sb.append("\t\tFILTER_PATHS = java.util.Collections.unmodifiableMap(filterPaths);\n");
+			sb.append("\t}\n\n");
+
+			sb.append("\t@Override\n");
+			sb.append("\tpublic Class<").append(className).append("> getEdmClass() {\n");
+			sb.append("\t\treturn ").append(className).append(".class;\n");
+			sb.append("\t}\n\n");
+
+			sb.append("\t@Override\n");
+			sb.append("\tpublic java.util.List<String> getFields() {\n");
+			sb.append("\t\treturn FIELDS;\n");
+			sb.append("\t}\n\n");
+
+			sb.append("\t@Override\n");
+			sb.append("\tpublic ").append(className).append(" newInstance() {\n");
+			sb.append("\t\treturn ").append(isInstantiable(type) ? "new " + className + "()" : "null").append(";\n");
+			sb.append("\t}\n\n");
+
+			sb.append("\t@Override\n");
+			sb.append("\tpublic Object get(").append(className).append(" object, int field) {\n");
+			sb.append("\t\tswitch(field) {\n");
+			for(int i = 0; i < readers.size(); i++) sb.append("\t\tcase ").append(i).append(": return ").append(readers.get(i)).append(";\n");
+			sb.append("\t\tdefault: throw new IndexOutOfBoundsException(String.valueOf(field));\n");
+			sb.append("\t\t}\n");
+			sb.append("\t}\n\n");
+
+			sb.append("\t@Override\n");
+			sb.append("\t@SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n");
+			sb.append("\tpublic void set(").append(className).append(" object, int field, Object value) {\n");
+			sb.append("\t\tswitch(field) {\n");
+			for(int i = 0; i < writers.size(); i++) sb.append("\t\tcase ").append(i).append(": ").append(writers.get(i)).append("; return;\n");
+			sb.append("\t\tdefault: throw new IndexOutOfBoundsException(String.valueOf(field));\n");
+			sb.append("\t\t}\n");
+			sb.append("\t}\n\n");
+
+			sb.append("\t@Override\n");
+			sb.append("\tpublic java.util.Map<String, Object> getKeyValues(").append(className).append(" object) {\n");
+			if(keysReadable) {
+				sb.append("\t\tjava.util.Map<String, Object> keyValues = new java.util.LinkedHashMap<String, Object>();\n");
+				keys.forEach(key -> sb.append("\t\tkeyValues.put(").append(literal(key)).append(", ").append(readersByEdmName.get(key)).append(");\n"));
+				sb.append("\t\treturn keyValues;\n");
+			} else {
+				sb.append("\t\treturn null;\n");
+			}
+			sb.append("\t}\n\n");
+
+			sb.append("\t@Override\n");
+			sb.append("\tpublic java.util.Map<String, String> getFilterPaths() {\n");
+			sb.append("\t\treturn FILTER_PATHS;\n");
+			sb.append("\t}\n\n");
+
+			sb.append("\t@Override\n");
+			sb.append("\tpublic java.util.Set<String> getConvertedProperties() {\n");
+			sb.append("\t\treturn CONVERTED;\n");
+			sb.append("\t}\n\n");
+
+			sb.append("\t@Override\n");
+			sb.append("\tpublic void writeProperties(").append(className).append(" object, ").append(Entity.class.getName()).append(" entity, java.util.Set<String> selected) {\n");
+			sb.append("\t\tObject value;\n");
+			convertedReaders.forEach((edmName, reader) -> {
+				sb.append("\t\tif(selected == null || selected.contains(").append(literal(edmName)).append(")) {\n");
+				sb.append("\t\t\tvalue = ").append(reader).append(";\n");
+				sb.append("\t\t\tif(value != null) entity.addProperty(").append(MappingPlan.class.getName()).append(".writeProperty(").append(literal(edmName)).append(", value));\n");
+				sb.append("\t\t}\n");
+			});
+			sb.append("\t}\n\n");
+
+			sb.append("\t@Override\n");
+			sb.append("\t@SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n");
+			sb.append("\tpublic void readProperties(").append(Entity.class.getName()).append(" entity, ").append(className).append(" object) {\n");
+			sb.append("\t\t").append(Property.class.getName()).append(" property;\n");
+			sb.append("\t\tObject value;\n");
+			convertedWriters.forEach((edmName, fieldWriter) -> {
+				sb.append("\t\tproperty = entity.getProperty(").append(literal(edmName)).append(");\n");
+				sb.append("\t\tif(property != null) {\n");
+				sb.append("\t\t\tvalue = ").append(conversions.get(edmName)).append(";\n");
+				sb.append("\t\t\t").append(fieldWriter).append(";\n");
+				sb.append("\t\t}\n");
+			});
+			sb.append("\t}\n");
+			sb.append("}\n");
+
+			writer.write(sb.toString());
+		}
+	}
+
+	/**
+	 * @return The expression reading the field from <code>object</code>, or null when generated code can not read it
+	 */
+	private String reader(VariableElement field, List<ExecutableElement> methods) {
+
+		String fieldName = field.getSimpleName().toString();
+
+		if(!field.getModifiers().contains(Modifier.PRIVATE)) return "object." + fieldName;
+
+		String suffix = Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+
+		for(ExecutableElement method : methods) {
+			String methodName = method.getSimpleName().toString();
+			if((methodName.equals("get" + suffix) || methodName.equals("is" + suffix))
+					&& method.getParameters().isEmpty()
+					&& isCallable(method)
+					&& processingEnv.getTypeUtils().isSameType(method.getReturnType(), field.asType())) {
+				return "object." + methodName + "()";
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return The statement writing <code>value</code> to the field of <code>object</code>, or null when generated code can not write it
+	 */
+	private String writer(VariableElement field, List<ExecutableElement> methods) {
+
+		String fieldName = field.getSimpleName().toString();
+		String cast = "(" + castType(field.asType()) + ") value";
+
+		if(!field.getModifiers().contains(Modifier.PRIVATE) && !field.getModifiers().contains(Modifier.FINAL)) return "object." + fieldName + " = " + cast;
+
+		String methodName = "set" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+
+		for(ExecutableElement method : methods) {
+			if(method.getSimpleName().contentEquals(methodName)
+					&& method.getParameters().size() == 1
+					&& isCallable(method)
+					&& processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(), field.asType())) {
+				return "object." + methodName + "(" + cast + ")";
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return The expression converting the Olingo <code>property</code> to a value of the type, the same way {@link MappingPlan.PropertyMapping#read} does
+	 */
+	private String conversion(TypeMirror type) {
+
+		Element element = processingEnv.getTypeUtils().asElement(type);
+		TypeElement odataEnum = processingEnv.getElementUtils().getTypeElement(OdataEnum.class.getName());
+
+		if(element != null && element.getKind() == ElementKind.ENUM && element.getAnnotation(EdmEnum.class) != null
+				&& processingEnv.getTypeUtils().isAssignable(type, processingEnv.getTypeUtils().erasure(odataEnum.asType()))
+				&& element.getEnclosedElements().stream().anyMatch(enclosed -> enclosed.getKind() == ElementKind.ENUM_CONSTANT)) {
+			String enumType = ((TypeElement) element).getQualifiedName().toString();
+			return "property.asEnum() == null ? property.getValue() : " + enumType + ".values()[0].setOrdinal(((Number) property.asEnum()).intValue())";
+		}
+
+		if(isAssignableFrom(type, LocalDate.class)) {
+			return "property.getValue() instanceof java.util.GregorianCalendar ? ((java.util.GregorianCalendar) property.getValue()).toZonedDateTime().toLocalDate() : property.getValue()";
+		}
+
+		if(isAssignableFrom(type, LocalDateTime.class)) {
+			return "property.getValue() instanceof java.sql.Timestamp ? ((java.sql.Timestamp) property.getValue()).toLocalDateTime() : property.getValue()";
+		}
+
+		return "property.getValue()";
+	}
+
+	private boolean isAssignableFrom(TypeMirror type, Class<?> clazz) {
+		TypeElement element = processingEnv.getElementUtils().getTypeElement(clazz.getName());
+		return element != null && processingEnv.getTypeUtils().isAssignable(element.asType(), type);
+	}
+
+	private boolean isComplex(TypeMirror type) {
+		Element element = processingEnv.getTypeUtils().asElement(type);
+		return element != null && element.getAnnotation(EdmComplex.class) != null;
+	}
+
+	/**
+	 * @return The qualified name of the <code>Generated</code> annotation the compiler finds, or null
+	 */
+	private String generatedAnnotation() {
+		for(String name : new String[] { "javax.annotation.processing.Generated", "javax.annotation.Generated" }) {
+			if(processingEnv.getElementUtils().getTypeElement(name) != null) return name;
+		}
+		return null;
+	}
+
+	private String castType(TypeMirror type) {
+		if(type.getKind().isPrimitive()) {
+			return processingEnv.getTypeUtils().boxedClass(processingEnv.getTypeUtils().getPrimitiveType(type.getKind())).getQualifiedName().toString();
+		}
+		return processingEnv.getTypeUtils().erasure(type).toString();
+	}
+
+	private static boolean isCallable(ExecutableElement method) {
+		return !method.getModifiers().contains(Modifier.PRIVATE) && !method.getModifiers().contains(Modifier.STATIC);
+	}
+
+	private static boolean isInstantiable(TypeElement type) {
+
+		if(type.getModifiers().contains(Modifier.ABSTRACT)) return false;
+
+		List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements());
+		if(constructors.isEmpty()) return true;
+
+		for(ExecutableElement constructor : constructors) {
+			if(constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) return true;
+		}
+
+		return false;
+	}
+
+	private static String literal(String value) {
+		StringBuilder sb = new StringBuilder("\"");
+		for(char c : value.toCharArray()) {
+			if(c == '"' || c == '\\') sb.append('\\');
+			sb.append(c);
+		}
+		return sb.append('"').toString();
+	}
+}
@@ -0,0 +1,141 @@
+package com.cairone.olingo.ext.jpa.mappers;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+
+import com.cairone.olingo.ext.jpa.enums.EnumerationTreatedAs;
+import com.cairone.olingo.ext.jpa.interfaces.OdataEnum;
+
+/**
+ * Reads the JPA paths of {@link com.cairone.olingo.ext.jpa.annotations.ODataJPAProperty} from JPA entities, so rows can be
+ * written without being copied into Edm objects first. Every step of a path is read through the getter of the attribute when
+ * there is one, as a lazy proxy only holds its state after a getter initializes it, or else from the field. Only the steps of
+ * the paths read are touched; an association no path goes through is never loaded.
+ * <p>
+ * Accessors are resolved against the runtime class of every step, once, and kept as method handles.
+ *
+ * @author diego.cairone
+ */
+public final class JpaPaths {
+
+	private static final Map<Class<?>, Map<String, MethodHandle>> ACCESSORS = new ConcurrentHashMap<Class<?>, Map<String, MethodHandle>>();
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	private JpaPaths() {}
+
+	/**
+	 * @param path The path of an attribute, using dot notation
+	 * @return The value, or null when any step of the path is null
+	 */
+	public static Object read(Object entity, String path) throws ODataApplicationException {
+
+		Object value = entity;
+		int start = 0;
+
+		while(value != null && start <= path.length()) {
+
+			int end = path.indexOf('.', start);
+			if(end < 0) end = path.length();
+
+			MethodHandle accessor = accessor(value.getClass(), path.substring(start, end));
+
+			try {
+				value = (Object) accessor.invokeExact(value);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new ODataApplicationException(String.valueOf(e.getMessage()), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
+			}
+
+			start = end + 1;
+		}
+
+		return value;
+	}
+
+	/**
+	 * Converts the value of a JPA attribute mapped to an Edm enumeration to the ordinal of the Edm constant: an ordinal as is,
+	 * a name or a Java enumeration by the name of the constant, and the Edm enumeration by its own ordinal
+	 *
+	 * @return The ordinal, or null when no constant of the Edm enumeration matches the value
+	 */
+	public static Integer toEdmOrdinal(Class<?> edmEnumType, EnumerationTreatedAs treatedAs, Object value) {
+
+		if(value instanceof OdataEnum) {
+			return ((OdataEnum<?>) value).getOrdinal();
+		}
+
+		if(EnumerationTreatedAs.NUMERIC.equals(treatedAs) && value instanceof Number) {
+			return ((Number) value).intValue();
+		}
+
+		String name = value instanceof Enum ? ((Enum<?>) value).name() : value.toString();
+
+		for(Object constant : edmEnumType.getEnumConstants()) {
+			if(((Enum<?>) constant).name().equals(name) && constant instanceof OdataEnum) return ((OdataEnum<?>) constant).getOrdinal();
+		}
+
+		return null;
+	}
+
+	private static MethodHandle accessor(Class<?> clazz, String attribute) throws ODataApplicationException {
+
+		Map<String, MethodHandle> accessors = ACCESSORS.computeIfAbsent(clazz, key -> new ConcurrentHashMap<String, MethodHandle>());
+		MethodHandle accessor = accessors.get(attribute);
+
+		if(accessor == null) {
+			accessor = resolve(clazz, attribute);
+			if(accessor == null) {
+				throw new ODataApplicationException(String.format("JPA attribute %s not found in %s", attribute, clazz.getName()), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
+			}
+			accessors.putIfAbsent(attribute, accessor);
+		}
+
+		return accessor;
+	}
+
+	private static MethodHandle resolve(Class<?> clazz, String attribute) {
+
+		String suffix = Character.toUpperCase(attribute.charAt(0)) + attribute.substring(1);
+
+		try {
+			for(String name : new String[] { "get" + suffix, "is" + suffix }) {
+				try {
+					Method method = clazz.getMethod(name);
+					if(Modifier.isStatic(method.getModifiers()) || method.getReturnType() == void.class) continue;
+					method.setAccessible(true);
+					return LOOKUP.unreflect(method).asType(GETTER_TYPE);
+				} catch (NoSuchMethodException e) {
+					continue;
+				}
+			}
+
+			for(Class<?> type = clazz; type != null && type != Object.class; type = type.getSuperclass()) {
+				try {
+					Field field = type.getDeclaredField(attribute);
+					if(Modifier.isStatic(field.getModifiers())) continue;
+					field.setAccessible(true);
+					return LOOKUP.unreflectGetter(field).asType(GETTER_TYPE);
+				} catch (NoSuchFieldException e) {
+					continue;
+				}
+			}
+		} catch (IllegalAccessException | SecurityException e) {
+			return null;
+		}
+
+		return null;
+	}
+}
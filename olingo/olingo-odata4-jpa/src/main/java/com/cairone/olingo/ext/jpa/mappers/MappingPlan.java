@@ -0,0 +1,556 @@
+package com.cairone.olingo.ext.jpa.mappers;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.data.Property;
+import org.apache.olingo.commons.api.data.ValueType;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+
+import com.cairone.olingo.ext.jpa.annotations.EdmComplex;
+import com.cairone.olingo.ext.jpa.annotations.EdmEntity;
+import com.cairone.olingo.ext.jpa.annotations.EdmEntitySet;
+import com.cairone.olingo.ext.jpa.annotations.EdmEnum;
+import com.cairone.olingo.ext.jpa.annotations.EdmNavigationProperty;
+import com.cairone.olingo.ext.jpa.annotations.EdmProperty;
+import com.cairone.olingo.ext.jpa.interfaces.OdataEnum;
+
+/**
+ * How the processors map an Edm class to and from an Olingo entity, worked out once per class: its properties and navigation
+ * properties in declaration order, each one with a getter and a setter compiled to a method handle, and with the conversion
+ * of its values chosen from the type of the field. Converting a row is then a walk over these lists, with no annotation
+ * lookups and no reflective field access.
+ * <p>
+ * When the {@link EdmMapper} generated for the class at build time is on the classpath, its plain Java accessors are used
+ * instead of the method handles, and the properties it converts are written and read by its generated code.
+ * <p>
+ * Plans are built on first use and kept for the life of the class loader.
+ *
+ * @author diego.cairone
+ */
+public final class MappingPlan {
+
+	private static final Map<Class<?>, MappingPlan> PLANS = new ConcurrentHashMap<Class<?>, MappingPlan>();
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+	private final Class<?> clazz;
+	private final boolean entitySet;
+	private final boolean entity;
+	private final boolean complex;
+	private final String entitySetName;
+	private final List<String> keys;
+	private final MethodHandle constructor;
+	private final EdmMapper<Object> mapper;
+	private final List<PropertyMapping> properties;
+	private final List<NavigationMapping> navigations;
+	private final Map<String, NavigationMapping> navigationsByName;
+	private final Map<String, PropertyMapping> propertiesByName;
+
+	private MappingPlan(Class<?> clazz) {
+
+		EdmEntitySet edmEntitySet = clazz.getAnnotation(EdmEntitySet.class);
+		EdmEntity edmEntity = clazz.getAnnotation(EdmEntity.class);
+
+		this.clazz = clazz;
+		this.entitySet = edmEntitySet != null;
+		this.entity = edmEntity != null;
+		this.complex = clazz.isAnnotationPresent(EdmComplex.class);
+		this.entitySetName = edmEntitySet != null && !edmEntitySet.value().isEmpty() ? edmEntitySet.value() : clazz.getSimpleName();
+		this.keys = edmEntity == null ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(edmEntity.key()));
+		this.constructor = constructor(clazz);
+		this.mapper = findMapper(clazz);
+
+		List<PropertyMapping> properties = new ArrayList<PropertyMapping>();
+		List<NavigationMapping> navigations = new ArrayList<NavigationMapping>();
+		Map<String, NavigationMapping> navigationsByName = new LinkedHashMap<String, NavigationMapping>();
+		Map<String, PropertyMapping> propertiesByName = new LinkedHashMap<String, PropertyMapping>();
+		List<String> mapped = mapper == null ? Collections.emptyList() : mapper.getFields();
+		Set<String> converted = mapper == null ? Collections.emptySet() : mapper.getConvertedProperties();
+
+		for(Field field : clazz.getDeclaredFields()) {
+
+			EdmProperty edmProperty = field.getAnnotation(EdmProperty.class);
+			EdmNavigationProperty edmNavigationProperty = field.getAnnotation(EdmNavigationProperty.class);
+
+			if(edmProperty == null && edmNavigationProperty == null) continue;
+
+			int index = mapped.indexOf(field.getName());
+			Getter getter = index < 0 ? getter(field) : mapperGetter(mapper, index);
+			Setter setter = index < 0 ? setter(field) : mapperSetter(mapper, index);
+
+			if(edmProperty != null) {
+				String name = edmProperty.name().isEmpty() ? field.getName() : edmProperty.name();
+				PropertyMapping property = new PropertyMapping(field, name, getter, setter, index >= 0 && converted.contains(name) && !propertiesByName.containsKey(name));
+				properties.add(property);
+				propertiesByName.putIfAbsent(property.name, property);
+			}
+
+			if(edmNavigationProperty != null) {
+				NavigationMapping navigation = new NavigationMapping(field, edmNavigationProperty.name().isEmpty() ? field.getName() : edmNavigationProperty.name(), getter, setter);
+				navigations.add(navigation);
+				navigationsByName.putIfAbsent(navigation.name, navigation);
+			}
+		}
+
+		this.properties = Collections.unmodifiableList(properties);
+		this.navigations = Collections.unmodifiableList(navigations);
+		this.navigationsByName = Collections.unmodifiableMap(navigationsByName);
+		this.propertiesByName = Collections.unmodifiableMap(propertiesByName);
+	}
+
+	/**
+	 * @return The plan of a class, built on first use
+	 */
+	public static MappingPlan of(Class<?> clazz) {
+		return PLANS.computeIfAbsent(clazz, MappingPlan::new);
+	}
+
+	public Class<?> getClazz() {
+		return clazz;
+	}
+
+	public boolean isEntitySet() {
+		return entitySet;
+	}
+
+	public boolean isEntity() {
+		return entity;
+	}
+
+	public boolean isComplex() {
+		return complex;
+	}
+
+	/**
+	 * @return The name of {@link EdmEntitySet}, or the simple name of the class, which entity ids start with
+	 */
+	public String getEntitySetName() {
+		return entitySetName;
+	}
+
+	/**
+	 * @return The Edm names of the keys of {@link EdmEntity}
+	 */
+	public List<String> getKeys() {
+		return keys;
+	}
+
+	/**
+	 * @return The properties, in declaration order
+	 */
+	public List<PropertyMapping> getProperties() {
+		return properties;
+	}
+
+	/**
+	 * @return The navigation properties, in declaration order
+	 */
+	public List<NavigationMapping> getNavigations() {
+		return navigations;
+	}
+
+	/**
+	 * @return The property, or null when the class has none with that Edm name
+	 */
+	public PropertyMapping getProperty(String name) {
+		return propertiesByName.get(name);
+	}
+
+	/**
+	 * @return The navigation property, or null when the class has none with that Edm name
+	 */
+	public NavigationMapping getNavigation(String name) {
+		return navigationsByName.get(name);
+	}
+
+	/**
+	 * @return A new instance, created through the public constructor without arguments
+	 * @throws NoSuchMethodException When the class has no such constructor
+	 */
+	public Object newInstance() throws NoSuchMethodException, ODataApplicationException {
+
+		Object object = mapper == null ? null : mapper.newInstance();
+		if(object != null) return object;
+
+		if(constructor == null) {
+			throw new NoSuchMethodException(clazz.getName() + ".<init>()");
+		}
+
+		try {
+			return (Object) constructor.invokeExact();
+		} catch (Throwable e) {
+			throw failure(e);
+		}
+	}
+
+	/**
+	 * @return The values of the keys of {@link EdmEntity} by Edm name, null for those not found or not set
+	 */
+	public Map<String, Object> getKeyValues(Object object) throws ODataApplicationException {
+
+		Map<String, Object> keyValues = mapper == null ? null : mapper.getKeyValues(object);
+		if(keyValues != null) return keyValues;
+
+		keyValues = new LinkedHashMap<String, Object>();
+
+		for(String key : keys) {
+			PropertyMapping property = propertiesByName.get(key);
+			keyValues.put(key, property == null ? null : property.get(object));
+		}
+
+		return keyValues;
+	}
+
+	/**
+	 * Adds to the entity the non null properties the generated mapper converts; the others are left to the caller
+	 *
+	 * @param selected The Edm names of the properties to write, or null to write all of them
+	 * @see PropertyMapping#isConverted()
+	 */
+	public void writeConvertedProperties(Object object, Entity entity, Set<String> selected) throws ODataApplicationException {
+		if(mapper == null) return;
+		try {
+			mapper.writeProperties(object, entity, selected);
+		} catch (RuntimeException e) {
+			throw failure(e);
+		}
+	}
+
+	/**
+	 * Sets on the object the properties of the entity the generated mapper converts; the others are left to the caller
+	 *
+	 * @see PropertyMapping#isConverted()
+	 */
+	public void readConvertedProperties(Entity entity, Object object) throws ODataApplicationException {
+		if(mapper == null) return;
+		try {
+			mapper.readProperties(entity, object);
+		} catch (RuntimeException e) {
+			throw failure(e);
+		}
+	}
+
+	/**
+	 * @return The mapper generated for the class, or null when there is none on the classpath
+	 */
+	public EdmMapper<?> getMapper() {
+		return mapper;
+	}
+
+	@Override
+	public String toString() {
+		return "MappingPlan [clazz=" + clazz.getName() + ", mapper=" + (mapper != null) + ", properties=" + properties + ", navigations=" + navigations + "]";
+	}
+
+	/**
+	 * Converts a value read from an Edm object to the value of an Olingo property, by its type
+	 */
+	public static Property writeProperty(String name, Object value) {
+
+		if(value instanceof LocalDate) {
+			return new Property(null, name, ValueType.PRIMITIVE, GregorianCalendar.from(((LocalDate) value).atStartOfDay(ZoneId.systemDefault())));
+		} else if(value instanceof LocalDateTime) {
+			return new Property(null, name, ValueType.PRIMITIVE, GregorianCalendar.from(((LocalDateTime) value).atZone(ZoneId.systemDefault())));
+		} else if(value instanceof BigDecimal) {
+			return new Property(null, name, ValueType.PRIMITIVE, value);
+		} else if(value.getClass().isEnum()) {
+			return new Property(null, name, ValueType.ENUM, ((OdataEnum<?>) value).getOrdinal());
+		} else {
+			return new Property(null, name, ValueType.PRIMITIVE, value);
+		}
+	}
+
+	private static MethodHandle constructor(Class<?> clazz) {
+		try {
+			return LOOKUP.unreflectConstructor(clazz.getConstructor()).asType(CONSTRUCTOR_TYPE);
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static EdmMapper<Object> findMapper(Class<?> clazz) {
+		try {
+			Class<?> mapperClass = Class.forName(clazz.getName() + EdmMapper.SUFFIX, true, clazz.getClassLoader());
+			if(!EdmMapper.class.isAssignableFrom(mapperClass)) return null;
+			EdmMapper<Object> mapper = (EdmMapper<Object>) mapperClass.getConstructor().newInstance();
+			return clazz.equals(mapper.getEdmClass()) ? mapper : null;
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	private static Getter getter(Field field) {
+		field.setAccessible(true);
+		try {
+			MethodHandle getter = LOOKUP.unreflectGetter(field).asType(GETTER_TYPE);
+			return object -> (Object) getter.invokeExact(object);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Setter setter(Field field) {
+		if(Modifier.isFinal(field.getModifiers())) return (object, value) -> {};
+		field.setAccessible(true);
+		try {
+			MethodHandle setter = LOOKUP.unreflectSetter(field).asType(SETTER_TYPE);
+			return (object, value) -> {
+				setter.invokeExact(object, value);
+			};
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Getter mapperGetter(EdmMapper<Object> mapper, int index) {
+		return object -> mapper.get(object, index);
+	}
+
+	private static Setter mapperSetter(EdmMapper<Object> mapper, int index) {
+		return (object, value) -> mapper.set(object, index, value);
+	}
+
+	private static ODataApplicationException failure(Throwable e) {
+		if(e instanceof ODataApplicationException) return (ODataApplicationException) e;
+		if(e instanceof Error) throw (Error) e;
+		return new ODataApplicationException(String.valueOf(e.getMessage()), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
+	}
+
+	@FunctionalInterface
+	private interface Getter {
+		Object get(Object object) throws Throwable;
+	}
+
+	@FunctionalInterface
+	private interface Setter {
+		void set(Object object, Object value) throws Throwable;
+	}
+
+	/**
+	 * Turns the value of an Olingo property into the value of a field
+	 */
+	@FunctionalInterface
+	private interface Reader {
+		Object read(Property property) throws ODataApplicationException;
+	}
+
+	/**
+	 * An Edm property: its accessors and the conversions of its values, chosen from the type of the field
+	 */
+	public static final class PropertyMapping {
+
+		private final Field field;
+		private final String name;
+		private final Class<?> type;
+		private final boolean complex;
+		private final boolean enumeration;
+		private final Getter getter;
+		private final Setter setter;
+		private final Reader reader;
+		private final boolean converted;
+
+		private PropertyMapping(Field field, String name, Getter getter, Setter setter, boolean converted) {
+
+			Class<?> type = field.getType();
+
+			this.field = field;
+			this.name = name;
+			this.type = type;
+			this.complex = type.isAnnotationPresent(EdmComplex.class);
+			this.enumeration = type.isAnnotationPresent(EdmEnum.class);
+			this.getter = getter;
+			this.setter = setter;
+			this.reader = reader(type, enumeration);
+			this.converted = converted;
+		}
+
+		public Field getField() {
+			return field;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Class<?> getType() {
+			return type;
+		}
+
+		/**
+		 * @return Whether the type of the field is an Edm complex type, whose values are written as nested entities
+		 */
+		public boolean isComplex() {
+			return complex;
+		}
+
+		/**
+		 * @return Whether the type of the field is an Edm enumeration
+		 */
+		public boolean isEnumeration() {
+			return enumeration;
+		}
+
+		/**
+		 * @return Whether the generated mapper converts the property, in {@link MappingPlan#writeConvertedProperties} and {@link MappingPlan#readConvertedProperties}
+		 */
+		public boolean isConverted() {
+			return converted;
+		}
+
+		public Object get(Object object) throws ODataApplicationException {
+			try {
+				return getter.get(object);
+			} catch (Throwable e) {
+				throw failure(e);
+			}
+		}
+
+		public void set(Object object, Object value) throws ODataApplicationException {
+			try {
+				setter.set(object, value);
+			} catch (Throwable e) {
+				throw failure(e);
+			}
+		}
+
+		/**
+		 * @return The property holding a value of the field, which must not be null
+		 */
+		public Property write(Object value) {
+			return writeProperty(name, value);
+		}
+
+		/**
+		 * Converts the value of an Olingo property of a simple type: enumerations from their ordinal, dates from calendars and
+		 * timestamps; any other value is kept as it is
+		 */
+		public Object read(Property property) throws ODataApplicationException {
+			return reader.read(property);
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+
+		private static Reader reader(Class<?> type, boolean enumeration) {
+
+			if(enumeration && type.isEnum() && OdataEnum.class.isAssignableFrom(type) && type.getEnumConstants().length > 0) {
+				OdataEnum<?> first = (OdataEnum<?>) type.getEnumConstants()[0];
+				return property -> property.asEnum() == null ? property.getValue() : first.setOrdinal(((Number) property.asEnum()).intValue());
+			}
+
+			if(type.isAssignableFrom(LocalDate.class)) {
+				return property -> property.getValue() instanceof GregorianCalendar ? ((GregorianCalendar) property.getValue()).toZonedDateTime().toLocalDate() : property.getValue();
+			}
+
+			if(type.isAssignableFrom(LocalDateTime.class)) {
+				return property -> property.getValue() instanceof Timestamp ? ((Timestamp) property.getValue()).toLocalDateTime() : property.getValue();
+			}
+
+			return Property::getValue;
+		}
+	}
+
+	/**
+	 * An Edm navigation property: its accessors and the Edm class of the entities it leads to
+	 */
+	public static final class NavigationMapping {
+
+		private final Field field;
+		private final String name;
+		private final boolean collection;
+		private final Class<?> targetClass;
+		private final Getter getter;
+		private final Setter setter;
+
+		private NavigationMapping(Field field, String name, Getter getter, Setter setter) {
+
+			Class<?> type = field.getType();
+
+			this.field = field;
+			this.name = name;
+			this.collection = Collection.class.isAssignableFrom(type);
+			this.targetClass = collection ? elementType(field) : type;
+			this.getter = getter;
+			this.setter = setter;
+		}
+
+		public Field getField() {
+			return field;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean isCollection() {
+			return collection;
+		}
+
+		/**
+		 * @return The type of the field or, for collections, the type of their elements; null when it can not be determined
+		 */
+		public Class<?> getTargetClass() {
+			return targetClass;
+		}
+
+		public Object get(Object object) throws ODataApplicationException {
+			try {
+				return getter.get(object);
+			} catch (Throwable e) {
+				throw failure(e);
+			}
+		}
+
+		public void set(Object object, Object value) throws ODataApplicationException {
+			try {
+				setter.set(object, value);
+			} catch (Throwable e) {
+				throw failure(e);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+
+		private static Class<?> elementType(Field field) {
+			Type type = field.getGenericType();
+			if(type instanceof ParameterizedType) {
+				Type[] typeArguments = ((ParameterizedType) type).getActualTypeArguments();
+				if(typeArguments.length == 1 && typeArguments[0] instanceof Class) return (Class<?>) typeArguments[0];
+			}
+			return null;
+		}
+	}
+}
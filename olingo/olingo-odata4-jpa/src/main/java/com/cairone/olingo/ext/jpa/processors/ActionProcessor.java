@@ -171,8 +171,8 @@ public class ActionProcessor extends BaseProcessor implements ActionEntityProces
 						Collection<Object> collection = (Collection<Object>) object;
 						int nroItems = 0;
 						
-						for(Object item : collection) {
-							Entity entity = writeEntity(item, expandOption);
+						for(Object item : query(collection, uriInfo.getFilterOption(), uriInfo.getOrderByOption())) {
+							Entity entity = writeEntity(item, expandOption, selectOption);
 							result.add(entity);
 							nroItems++;
 						}
@@ -181,7 +181,7 @@ public class ActionProcessor extends BaseProcessor implements ActionEntityProces
 					}
 				}
 			} else {
-				Entity entity = writeEntity(object, expandOption);
+				Entity entity = writeEntity(object, expandOption, selectOption);
 				result.add(entity);
 			}
 			
@@ -311,7 +311,7 @@ public class ActionProcessor extends BaseProcessor implements ActionEntityProces
 	    
 		try {
 			Object object = operation.doOperation(action.isBound(), keyPredicateMap);
-			entity = writeEntity(object, expandOption); 
+			entity = writeEntity(object, expandOption, selectOption); 
 			
 		} catch (ODataException | IllegalArgumentException | IllegalAccessException | NoSuchMethodException | SecurityException | InvocationTargetException e) {
 			throw new ODataApplicationException(e.getMessage(), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
@@ -2,26 +2,18 @@ package com.cairone.olingo.ext.jpa.processors;
 
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.sql.Timestamp;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -50,16 +42,28 @@ import org.apache.olingo.server.api.uri.UriParameter;
 import org.apache.olingo.server.api.uri.UriResource;
 import org.apache.olingo.server.api.uri.UriResourceEntitySet;
 import org.apache.olingo.server.api.uri.UriResourceNavigation;
+import org.apache.olingo.server.api.uri.UriResourceProperty;
+import org.apache.olingo.server.api.uri.queryoption.ExpandItem;
 import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
+import org.apache.olingo.server.api.uri.queryoption.FilterOption;
+import org.apache.olingo.server.api.uri.queryoption.OrderByOption;
+import org.apache.olingo.server.api.uri.queryoption.SelectItem;
+import org.apache.olingo.server.api.uri.queryoption.SelectOption;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
 import org.springframework.core.type.filter.AnnotationTypeFilter;
 
-import com.cairone.olingo.ext.jpa.annotations.EdmComplex;
 import com.cairone.olingo.ext.jpa.annotations.EdmEntity;
 import com.cairone.olingo.ext.jpa.interfaces.DataSource;
-import com.cairone.olingo.ext.jpa.interfaces.OdataEnum;
+import com.cairone.olingo.ext.jpa.mappers.JpaPaths;
+import com.cairone.olingo.ext.jpa.mappers.MappingPlan;
+import com.cairone.olingo.ext.jpa.mappers.MappingPlan.NavigationMapping;
+import com.cairone.olingo.ext.jpa.mappers.MappingPlan.PropertyMapping;
+import com.cairone.olingo.ext.jpa.query.EdmTuple;
+import com.cairone.olingo.ext.jpa.query.InMemoryQuery;
+import com.cairone.olingo.ext.jpa.query.PropertyIndex;
+import com.cairone.olingo.ext.jpa.query.PropertyIndex.PropertyPath;
 import com.cairone.olingo.ext.jpa.utilities.Util;
 
 public class BaseProcessor implements Processor {
@@ -127,292 +131,331 @@ public class BaseProcessor implements Processor {
 	}
 
 	protected Entity writeEntity(Object object, ExpandOption expandOption) throws IllegalArgumentException, IllegalAccessException, NoSuchMethodException, SecurityException, InvocationTargetException, ODataApplicationException {
+		return writeEntity(object, expandOption, null);
+	}
+	
+	/**
+	 * Writes only the properties $select asks for and the keys, so the properties the serializer would leave out are neither
+	 * read nor converted. The $select of every $expand item applies to the entities it expands.
+	 */
+	protected Entity writeEntity(Object object, ExpandOption expandOption, SelectOption selectOption) throws IllegalArgumentException, IllegalAccessException, NoSuchMethodException, SecurityException, InvocationTargetException, ODataApplicationException {
 		
 		if(object == null) return null;
+		if(object instanceof EdmTuple) return writeEntity((EdmTuple) object);
 		
 		Entity entity = new Entity();
 		Class<?> clazz = object.getClass();
+		MappingPlan mappingPlan = MappingPlan.of(clazz);
 		
-		com.cairone.olingo.ext.jpa.annotations.EdmEntitySet edmEntitySet = clazz.getAnnotation(com.cairone.olingo.ext.jpa.annotations.EdmEntitySet.class);
-		com.cairone.olingo.ext.jpa.annotations.EdmEntity edmEntity = clazz.getAnnotation(com.cairone.olingo.ext.jpa.annotations.EdmEntity.class);
-		com.cairone.olingo.ext.jpa.annotations.EdmComplex edmComplex = clazz.getAnnotation(com.cairone.olingo.ext.jpa.annotations.EdmComplex.class);
-		
-		if(edmEntitySet == null && edmComplex == null) {
+		if(!mappingPlan.isEntitySet() && !mappingPlan.isComplex()) {
 			throw new ODataApplicationException(String.format("Class %s is missing @EdmEntitySet annotation", clazz.getName()), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
 		}
 		
-		if(edmEntity == null && edmComplex == null) {
+		if(!mappingPlan.isEntity() && !mappingPlan.isComplex()) {
 			throw new ODataApplicationException(String.format("Class %s is missing @EdmEntity annotation", clazz.getName()), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
 		}
 		
-		String edmEntitySetName = edmEntitySet != null && !edmEntitySet.value().isEmpty() ? edmEntitySet.value() : clazz.getSimpleName();
-		
-		String[] keys = edmEntity == null ? new String[] {} : edmEntity.key();
-    	Map<String, Object> keyValues = Arrays.asList(keys)
+    	Map<String, Object> keyValues = mappingPlan.getKeys()
     		.stream()
     		.collect(Collectors.toMap(x -> x, x -> x));
     	
-    	Map<String, EdmNavigationProperty> edmNavigationPropertyMap = new HashMap<String, EdmNavigationProperty>();
-    	Map<String, ExpandOption> nestedExpandOptionMap = new HashMap<String, ExpandOption>();
-    	
-    	if(expandOption != null && !expandOption.getExpandItems().isEmpty()) {
-    		expandOption.getExpandItems().forEach(expandItem -> {
-    			UriResource uriResource = expandItem.getResourcePath().getUriResourceParts().get(0);
-    			if(uriResource instanceof UriResourceNavigation) {
-    				EdmNavigationProperty edmNavigationProperty = ((UriResourceNavigation) uriResource).getProperty();
-    				String navPropName = edmNavigationProperty.getName();
-    				edmNavigationPropertyMap.put(navPropName, edmNavigationProperty);
-    				
-    				if(expandItem.getExpandOption() != null && !expandItem.getExpandOption().getExpandItems().isEmpty()) {
-    					nestedExpandOptionMap.put(edmNavigationProperty.getName(), expandItem.getExpandOption());
-    				}
-    			}
-    		});
-    	}
+    	Map<String, ExpandItem> expandItems = getExpandItems(expandOption);
 		
-		for(Field fld : object.getClass().getDeclaredFields()) {
-
-    		com.cairone.olingo.ext.jpa.annotations.EdmProperty edmProperty = fld.getAnnotation(com.cairone.olingo.ext.jpa.annotations.EdmProperty.class);
+		writeProperties(object, mappingPlan, entity, getSelectedProperties(selectOption, mappingPlan));
+		
+		mappingPlan.getKeyValues(object).forEach((key, value) -> {
+			if(value != null) keyValues.put(key, value);
+		});
+		
+		for(NavigationMapping navigation : mappingPlan.getNavigations()) {
 			
-            if (edmProperty != null) {
-            	
-            	fld.setAccessible(true);
-            	
-            	String name = edmProperty.name().isEmpty() ? fld.getName() : edmProperty.name();
-            	Object value = fld.get(object);
-            	
-            	if(value != null) {
-            		
-	            	if(value instanceof LocalDate) {
-	            		
-	            		LocalDate localDateValue = (LocalDate) value;
-	            		entity.addProperty(new Property(null, name, ValueType.PRIMITIVE, GregorianCalendar.from(localDateValue.atStartOfDay(ZoneId.systemDefault()))));
-	            	
-	            	} else if(value instanceof LocalDateTime) {
-	            		
-	            		LocalDateTime localDateTime = (LocalDateTime) value;
-	            		entity.addProperty(new Property(null, name, ValueType.PRIMITIVE, GregorianCalendar.from(localDateTime.atZone(ZoneId.systemDefault()))));
-	            		
-	            	} else if(value instanceof BigDecimal) {
-	            		
-	            		BigDecimal bigDecimalValue = (BigDecimal) value;
-	            		entity.addProperty(new Property(null, name, ValueType.PRIMITIVE, bigDecimalValue));
-	            		
-	            	} else if(value.getClass().isEnum()) {
-	            		
-	            		OdataEnum<?> odataEnum = (OdataEnum<?>) value;
-	            		entity.addProperty(new Property(null, name, ValueType.ENUM, odataEnum.getOrdinal()));
-	            		
-	            	} else {
-	            		
-	            		Class<?> cl = fld.getType();
-	    				EdmComplex[] edmComplexArray = cl.getAnnotationsByType(EdmComplex.class);
-	    				boolean isEdmComplex = edmComplexArray.length != 0;
-	    				
-	    				if(isEdmComplex) {
-	    					Entity complexEntity = writeEntity(value, null);
-	    					ComplexValue complexValue = new ComplexValue();
-	    					List<Property> properties = complexValue.getValue();
-	    					
-	    					complexEntity.getProperties().forEach(prop -> {
-	    						properties.add(prop);
-	    					});
-	    					
-	    					entity.addProperty(new Property(null, name, ValueType.COMPLEX, complexValue));
-	    				} else {
-	    					entity.addProperty(new Property(null, name, ValueType.PRIMITIVE, value));
-	    				}
-	            	}
-	            	
-	            	if(keyValues.containsKey(name)) {
-	            		keyValues.put(name, value);
-	            	}
-            	}
-            }
-            
-            com.cairone.olingo.ext.jpa.annotations.EdmNavigationProperty edmNavigationProperty = fld.getAnnotation(com.cairone.olingo.ext.jpa.annotations.EdmNavigationProperty.class);
+			ExpandItem expandItem = expandItems.get(navigation.getName());
+			if(expandItem == null) continue;
 			
-            if(edmNavigationProperty != null) {
-            	
-            	String navigationPropertyName = edmNavigationProperty.name().isEmpty() ? fld.getName() : edmNavigationProperty.name();
-            	EdmNavigationProperty navigationProperty = edmNavigationPropertyMap.get(navigationPropertyName);
-            	
-            	if(navigationProperty != null) {
-
-            		fld.setAccessible(true);
-            		
-            		Class<?> fieldClass = fld.getType();
-            		Object inlineEntity = fld.get(object);
-
-            		Link link = new Link();
-					link.setTitle(navigationPropertyName);
-					
-    				if(Collection.class.isAssignableFrom(fieldClass)) {
-    					
-    					EntityCollection data = new EntityCollection();
-    					
-    					@SuppressWarnings("unchecked")
-						Collection<Object> objects = (Collection<Object>) inlineEntity;
-
-    					if(objects != null) {
-	    					for(Object item : objects) {
-	    						Entity expandEntity = writeEntity(item, null);
-	    						data.getEntities().add(expandEntity);
-	    					}
-    					}
-    					
-    					link.setInlineEntitySet(data);
-    					
-    				} else {
-    					Entity expandEntity = null;
-    					ExpandOption expandNestedOption = nestedExpandOptionMap.get(edmNavigationProperty.name());
-    					
-    					if(expandNestedOption == null || expandNestedOption.getExpandItems().isEmpty()) {
-    						expandEntity = writeEntity(inlineEntity, null);
-    					} else {
-    						expandEntity = writeEntity(inlineEntity, expandNestedOption);
-    					}
-    					
-    					link.setInlineEntity(expandEntity);
-    				}
-
-					entity.getNavigationLinks().add(link);
-            	}
-            }
+			Object inlineEntity = navigation.get(object);
+			
+			Link link = new Link();
+			link.setTitle(navigation.getName());
+			
+			if(navigation.isCollection()) {
+				
+				EntityCollection data = new EntityCollection();
+				
+				if(inlineEntity != null) {
+					for(Object item : (Collection<?>) inlineEntity) {
+						data.getEntities().add(writeEntity(item, expandItem.getExpandOption(), expandItem.getSelectOption()));
+					}
+				}
+				
+				link.setInlineEntitySet(data);
+				
+			} else {
+				link.setInlineEntity(writeEntity(inlineEntity, expandItem.getExpandOption(), expandItem.getSelectOption()));
+			}
+			
+			entity.getNavigationLinks().add(link);
+		}
+		
+		setEntityId(entity, mappingPlan.getEntitySetName(), keyValues);
+				
+		return entity;
+	}
+	
+	/**
+	 * Writes a row that may be either an instance of the Edm class or of its JPA entity. JPA entities are written directly,
+	 * reading the JPA path of every selected property of the Edm class: no Edm object is created, and only the associations
+	 * those paths go through, and those of the expanded navigation properties, are loaded.
+	 * 
+	 * @param edmClass The Edm class of the entity set or complex type
+	 */
+	protected Entity writeEntity(Class<?> edmClass, Object object, ExpandOption expandOption, SelectOption selectOption) throws IllegalArgumentException, IllegalAccessException, NoSuchMethodException, SecurityException, InvocationTargetException, ODataApplicationException {
+		
+		if(object == null) return null;
+		if(edmClass == null || edmClass.isInstance(object) || object instanceof EdmTuple) return writeEntity(object, expandOption, selectOption);
+		
+		Entity entity = new Entity();
+		MappingPlan mappingPlan = MappingPlan.of(edmClass);
+		PropertyIndex propertyIndex = PropertyIndex.of(edmClass);
+		
+		if(!mappingPlan.isEntity() && !mappingPlan.isComplex()) {
+			throw new ODataApplicationException(String.format("Class %s is missing @EdmEntity annotation", edmClass.getName()), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
 		}
 		
+		Map<String, Object> keyValues = mappingPlan.getKeys()
+    		.stream()
+    		.collect(Collectors.toMap(x -> x, x -> x));
+		
+		Set<String> selected = getSelectedProperties(selectOption, mappingPlan);
+		
+		for(PropertyMapping property : mappingPlan.getProperties()) {
+			
+			if(selected != null && !selected.contains(property.getName())) continue;
+			
+			PropertyPath propertyPath = propertyIndex.getProperty(property.getName());
+			if(propertyPath == null || propertyPath.isIgnored()) continue;
+			
+			Object value = JpaPaths.read(object, propertyPath.getJpaPath());
+			if(value == null) continue;
+			
+			if(property.isComplex()) {
+				ComplexValue complexValue = new ComplexValue();
+				complexValue.getValue().addAll(writeEntity(property.getType(), value, null, null).getProperties());
+				entity.addProperty(new Property(null, property.getName(), ValueType.COMPLEX, complexValue));
+			} else if(property.getType().isEnum()) {
+				Integer ordinal = JpaPaths.toEdmOrdinal(property.getType(), propertyPath.getTreatedAs(), value);
+				if(ordinal != null) entity.addProperty(new Property(null, property.getName(), ValueType.ENUM, ordinal));
+			} else {
+				entity.addProperty(property.write(value));
+			}
+			
+			if(keyValues.containsKey(property.getName())) {
+				keyValues.put(property.getName(), value);
+			}
+		}
+		
+		Map<String, ExpandItem> expandItems = getExpandItems(expandOption);
+		
+		for(NavigationMapping navigation : mappingPlan.getNavigations()) {
+			
+			ExpandItem expandItem = expandItems.get(navigation.getName());
+			if(expandItem == null) continue;
+			
+			PropertyPath navigationPath = propertyIndex.getNavigation(navigation.getName());
+			Object inlineEntity = navigationPath == null || navigationPath.isIgnored() ? null : JpaPaths.read(object, navigationPath.getJpaPath());
+			
+			Link link = new Link();
+			link.setTitle(navigation.getName());
+			
+			if(navigation.isCollection()) {
+				
+				EntityCollection data = new EntityCollection();
+				
+				if(inlineEntity != null) {
+					for(Object item : (Collection<?>) inlineEntity) {
+						data.getEntities().add(writeEntity(navigation.getTargetClass(), item, expandItem.getExpandOption(), expandItem.getSelectOption()));
+					}
+				}
+				
+				link.setInlineEntitySet(data);
+				
+			} else {
+				link.setInlineEntity(writeEntity(navigation.getTargetClass(), inlineEntity, expandItem.getExpandOption(), expandItem.getSelectOption()));
+			}
+			
+			entity.getNavigationLinks().add(link);
+		}
+		
+		setEntityId(entity, mappingPlan.getEntitySetName(), keyValues);
+		
+		return entity;
+	}
+	
+	/**
+	 * @return The items of an $expand by the name of the navigation property they expand
+	 */
+	private Map<String, ExpandItem> getExpandItems(ExpandOption expandOption) {
+		
+		Map<String, ExpandItem> expandItems = new HashMap<String, ExpandItem>();
+		
+		if(expandOption != null) {
+			expandOption.getExpandItems().forEach(expandItem -> {
+				UriResource uriResource = expandItem.getResourcePath().getUriResourceParts().get(0);
+				if(uriResource instanceof UriResourceNavigation) {
+					EdmNavigationProperty edmNavigationProperty = ((UriResourceNavigation) uriResource).getProperty();
+					expandItems.put(edmNavigationProperty.getName(), expandItem);
+				}
+			});
+		}
+		
+		return expandItems;
+	}
+	
+	private void setEntityId(Entity entity, String entitySetName, Map<String, Object> keyValues) throws ODataApplicationException {
+		
 		String entityID = keyValues.size() == 0 ? null : Util.formatEntityID(keyValues);
 		try {
-			if(entityID != null) entity.setId(new URI(edmEntitySetName + entityID));
+			if(entityID != null) entity.setId(new URI(entitySetName + entityID));
 		} catch (URISyntaxException e) {
 			throw new ODataApplicationException(e.getMessage(), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
 		}
-				
+	}
+	
+	/**
+	 * Resolves the properties of a $select: those it names, whole complex properties included, and the keys
+	 * 
+	 * @return The Edm names of the properties, or null when all of them have to be written
+	 */
+	private Set<String> getSelectedProperties(SelectOption selectOption, MappingPlan mappingPlan) {
+		
+		if(selectOption == null || selectOption.getSelectItems().isEmpty()) return null;
+		
+		Set<String> selected = new HashSet<String>(mappingPlan.getKeys());
+		
+		for(SelectItem selectItem : selectOption.getSelectItems()) {
+			if(selectItem.isStar() || selectItem.isAllOperationsInSchema() || selectItem.getResourcePath() == null) return null;
+			
+			UriResource uriResource = selectItem.getResourcePath().getUriResourceParts().get(0);
+			
+			if(uriResource instanceof UriResourceProperty) {
+				selected.add(((UriResourceProperty) uriResource).getProperty().getName());
+			} else if(!(uriResource instanceof UriResourceNavigation)) {
+				return null;
+			}
+		}
+		
+		return selected;
+	}
+	
+	/**
+	 * Writes the non null properties of an object, complex ones as nested values
+	 * 
+	 * @param selected The Edm names of the properties to write, or null to write all of them
+	 */
+	private void writeProperties(Object object, MappingPlan mappingPlan, Entity entity, Set<String> selected) throws IllegalArgumentException, IllegalAccessException, NoSuchMethodException, SecurityException, InvocationTargetException, ODataApplicationException {
+		
+		mappingPlan.writeConvertedProperties(object, entity, selected);
+		
+		for(PropertyMapping property : mappingPlan.getProperties()) {
+			
+			if(property.isConverted() || (selected != null && !selected.contains(property.getName()))) continue;
+			
+			Object value = property.get(object);
+			if(value == null) continue;
+			
+			if(property.isComplex()) {
+				ComplexValue complexValue = new ComplexValue();
+				complexValue.getValue().addAll(writeEntity(value, null).getProperties());
+				entity.addProperty(new Property(null, property.getName(), ValueType.COMPLEX, complexValue));
+			} else {
+				entity.addProperty(property.write(value));
+			}
+		}
+	}
+	
+	/**
+	 * Writes a row read by a projection query. Only the selected and key properties are present, so the serializer receives exactly what $select asked for.
+	 */
+	protected Entity writeEntity(EdmTuple tuple) throws ODataApplicationException {
+		
+		Entity entity = new Entity();
+		Class<?> clazz = tuple.getClazz();
+		
+		com.cairone.olingo.ext.jpa.annotations.EdmEntitySet edmEntitySet = clazz.getAnnotation(com.cairone.olingo.ext.jpa.annotations.EdmEntitySet.class);
+		EdmEntity edmEntity = clazz.getAnnotation(EdmEntity.class);
+		
+		String edmEntitySetName = edmEntitySet != null && !edmEntitySet.value().isEmpty() ? edmEntitySet.value() : clazz.getSimpleName();
+		Map<String, Object> keyValues = new HashMap<String, Object>();
+		
+		tuple.getValues().forEach((name, value) -> {
+			if(value != null) entity.addProperty(MappingPlan.writeProperty(name, value));
+		});
+		
+		if(edmEntity != null) {
+			for(String key : edmEntity.key()) {
+				keyValues.put(key, tuple.get(key));
+			}
+		}
+		
+		setEntityId(entity, edmEntitySetName, keyValues);
+		
 		return entity;
 	}
 	
-	protected Object writeObject(Class<?> clazz, Entity entity) throws NoSuchMethodException, SecurityException, InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+	protected Object writeObject(Class<?> clazz, Entity entity) throws NoSuchMethodException, SecurityException, InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, ODataApplicationException {
 		
 		if(clazz == null || entity == null) {
 			return null;
 		}
 		
-		Constructor<?> constructor = clazz.getConstructor();
-		Object object = constructor.newInstance();
+		MappingPlan mappingPlan = MappingPlan.of(clazz);
+		Object object = mappingPlan.newInstance();
+		
+		mappingPlan.readConvertedProperties(entity, object);
 		
-		for (Field fld : clazz.getDeclaredFields()) {
+		for(PropertyMapping mapping : mappingPlan.getProperties()) {
 			
-			com.cairone.olingo.ext.jpa.annotations.EdmProperty edmProperty = fld.getAnnotation(com.cairone.olingo.ext.jpa.annotations.EdmProperty.class);
+			if(mapping.isConverted()) continue;
 			
-			if (edmProperty != null) {
-            	
-            	String propertyName = edmProperty.name().isEmpty() ? fld.getName() : edmProperty.name();
-            	Property property = entity.getProperty(propertyName);
-            	
-            	if(property != null) {
-            		
-    				Class<?> fldClazz = fld.getType();
-    				com.cairone.olingo.ext.jpa.annotations.EdmEnum edmEnum = fldClazz.getAnnotation(com.cairone.olingo.ext.jpa.annotations.EdmEnum.class);
-    				com.cairone.olingo.ext.jpa.annotations.EdmComplex edmComplex = fldClazz.getAnnotation(com.cairone.olingo.ext.jpa.annotations.EdmComplex.class);
-    				
-    				if(edmEnum != null && property.asEnum() != null) {
-    					
-    					Method setValor = fldClazz.getMethod("setOrdinal", Integer.TYPE);
-    					Enum<?>[] enums = (Enum<?>[]) fldClazz.getEnumConstants();
-    					
-    					for(Enum<?> enumeration : enums) {
-    						Object rv = setValor.invoke(enumeration, property.asEnum());
-    						fld.setAccessible(true);
-                    		fld.set(object, rv);
-                    		break;
-    					}
-    					
-    				} else if(edmComplex != null) {
-    					
-    					Entity complexEntity = new Entity();
-    					
-    					ComplexValue complexValue = (ComplexValue) property.getValue();
-    					complexEntity.getProperties().addAll(complexValue.getValue());
-    					
-    					Object complexObject = writeObject(fldClazz, complexEntity);
-    					
-    					fld.setAccessible(true);
-                		fld.set(object, complexObject);
-    					
-    				} else {
-	    				
-	            		if(fld.getType().isAssignableFrom(LocalDate.class) && property.getValue() instanceof GregorianCalendar) {
-	
-	                		GregorianCalendar cal = (GregorianCalendar) property.getValue();
-	                		
-	                		fld.setAccessible(true);
-	                		fld.set(object, cal.toZonedDateTime().toLocalDate());
-	                	
-	            		} else if(fld.getType().isAssignableFrom(LocalDateTime.class) && property.getValue() instanceof Timestamp) {
-	            			Timestamp timestamp = (Timestamp) property.getValue();
-	            			
-	            			fld.setAccessible(true);
-	                		fld.set(object, timestamp.toLocalDateTime());
-	            			
-	            		} else {
-	
-	                		fld.setAccessible(true);
-	                		fld.set(object, property.getValue());
-	            		}
-    				}
-            	}
-            }
+			Property property = entity.getProperty(mapping.getName());
+			if(property == null) continue;
+			
+			if(mapping.isComplex()) {
+				
+				Entity complexEntity = new Entity();
+				complexEntity.getProperties().addAll(((ComplexValue) property.getValue()).getValue());
+				
+				mapping.set(object, writeObject(mapping.getType(), complexEntity));
+				
+			} else {
+				mapping.set(object, mapping.read(property));
+			}
+		}
+		
+		for(NavigationMapping navigation : mappingPlan.getNavigations()) {
 			
-			com.cairone.olingo.ext.jpa.annotations.EdmNavigationProperty edmNavigationProperty = fld.getAnnotation(com.cairone.olingo.ext.jpa.annotations.EdmNavigationProperty.class);
+			Link link = entity.getNavigationLink(navigation.getName());
+			if(link == null) continue;
 			
-        	if(edmNavigationProperty != null) {
-        		
-        		String propertyName = edmNavigationProperty.name().isEmpty() ? fld.getName() : edmNavigationProperty.name();
-
-        		Class<?> fieldClass = fld.getType();
-
-				if(Collection.class.isAssignableFrom(fieldClass)) {
+			if(navigation.isCollection()) {
+				
+				EntityCollection entityCollection = link.getInlineEntitySet();
+				
+				if(entityCollection != null) {
 					
-					Link link = entity.getNavigationLink(propertyName);
+					ArrayList<Object> inlineObjectCollection = new ArrayList<Object>();
 					
-					if(link != null) {
-						
-						EntityCollection entityCollection = link.getInlineEntitySet();
-						
-						if(entityCollection != null) {
-							List<Entity> entities = entityCollection.getEntities();
-							
-							ParameterizedType listType = (ParameterizedType) fld.getGenericType();
-							Type type = listType.getActualTypeArguments()[0];
-					        Class<?> inlineClazz = (Class<?>) type;
-					        
-					        ArrayList<Object> inlineObjectCollection = new ArrayList<Object>();
-							
-							for(Entity inlineEntity : entities) {
-								Object inlineObject = writeObject(inlineClazz, inlineEntity);
-								if(inlineObject != null) inlineObjectCollection.add(inlineObject);
-							}
-							
-							fld.setAccessible(true);
-							fld.set(object, inlineObjectCollection);
-						}
+					for(Entity inlineEntity : entityCollection.getEntities()) {
+						Object inlineObject = writeObject(navigation.getTargetClass(), inlineEntity);
+						if(inlineObject != null) inlineObjectCollection.add(inlineObject);
 					}
 					
-				} else {
-					
-					fld.setAccessible(true);
-					
-					com.cairone.olingo.ext.jpa.annotations.EdmEntitySet targetEdmEntitySet = fieldClass.getAnnotation(com.cairone.olingo.ext.jpa.annotations.EdmEntitySet.class);
-					String targetEntitySetName = targetEdmEntitySet.value();
-					Class<?> cl = entitySetMap.get(targetEntitySetName);
-					
-					Link link = entity.getNavigationLink(propertyName);
-					if(link != null) {
-						Object navpropField = writeObject(cl, link.getInlineEntity());
-						if(navpropField != null) fld.set(object, navpropField);
-					}
+					navigation.set(object, inlineObjectCollection);
 				}
-        	}
+				
+			} else {
+				Object navpropField = writeObject(navigation.getTargetClass(), link.getInlineEntity());
+				if(navpropField != null) navigation.set(object, navpropField);
+			}
 		}
 		
 		return object;
@@ -451,58 +494,11 @@ public class BaseProcessor implements Processor {
 	protected Entity createEntity(Object createdObject) throws ODataApplicationException {
 		
 		Entity createdEntity = new Entity();
-		
-		EdmEntity edmEntity = createdObject.getClass().getAnnotation(EdmEntity.class);
-    	String[] keys = edmEntity.key();
-    	Map<String, Object> keyValues = Arrays.asList(keys)
-    		.stream()
-    		.collect(Collectors.toMap(x -> x, x -> x));
+		MappingPlan mappingPlan = MappingPlan.of(createdObject.getClass());
     	
     	try
     	{
-			for(Field fld : createdObject.getClass().getDeclaredFields()) {
-	
-	    		com.cairone.olingo.ext.jpa.annotations.EdmProperty edmProperty = fld.getAnnotation(com.cairone.olingo.ext.jpa.annotations.EdmProperty.class);
-				
-	            if (edmProperty != null) {
-	            	
-	            	fld.setAccessible(true);
-	            	
-	            	String name = edmProperty.name().isEmpty() ? fld.getName() : edmProperty.name();
-	            	Object value = fld.get(createdObject);
-	            	
-	            	if(value != null) {
-		            		
-		            	if(value instanceof LocalDate) {
-		            		
-		            		LocalDate localDateValue = (LocalDate) value;
-		            		createdEntity.addProperty(new Property(null, name, ValueType.PRIMITIVE, GregorianCalendar.from(localDateValue.atStartOfDay(ZoneId.systemDefault()))));
-		            	
-		            	} else if(value.getClass().isEnum()) {
-		            		
-		            		Class<?> fldClazz = fld.getType();
-		            		Method getValor = fldClazz.getMethod("getOrdinal");
-	    					Enum<?>[] enums = (Enum<?>[]) fldClazz.getEnumConstants();
-	    					
-	    					Object rvValue = getValor.invoke(value);
-	    					
-	    					for(Enum<?> enumeration : enums) {
-	    						Object rv = getValor.invoke(enumeration);
-	    						if(rvValue.equals(rv)) {
-		    						createdEntity.addProperty(new Property(null, name, ValueType.ENUM, rv));
-		                    		break;
-	    						}
-	    					}
-		            	} else {
-		            		createdEntity.addProperty(new Property(null, name, ValueType.PRIMITIVE, value));
-		            	}
-	            	}
-	            	
-	            	if(keyValues.containsKey(name)) {
-	            		keyValues.put(name, value);
-	            	}
-	            }
-			}
+    		writeProperties(createdObject, mappingPlan, createdEntity, null);
     	} catch(SecurityException | IllegalArgumentException | IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
     		throw new ODataApplicationException(e.getMessage(), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
     	}
@@ -706,4 +702,18 @@ public class BaseProcessor implements Processor {
     		}
     	}
 	}
+	
+	/**
+	 * Applies $filter and $orderby to the result of a function or an action, which is built in Java instead of being read from a data source
+	 */
+	@SuppressWarnings("unchecked")
+	protected static Collection<Object> query(Collection<Object> collection, FilterOption filterOption, OrderByOption orderByOption) throws ODataApplicationException {
+		
+		if((filterOption == null && orderByOption == null) || collection.isEmpty()) return collection;
+		
+		Object first = collection.iterator().next();
+		if(first == null) return collection;
+		
+		return InMemoryQuery.compile((Class<Object>) first.getClass(), filterOption, orderByOption).apply(collection);
+	}
 }
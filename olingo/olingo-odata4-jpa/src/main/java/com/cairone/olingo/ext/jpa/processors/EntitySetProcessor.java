@@ -6,8 +6,11 @@ import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -18,11 +21,13 @@ import org.apache.olingo.commons.api.data.ContextURL;
 import org.apache.olingo.commons.api.data.ContextURL.Suffix;
 import org.apache.olingo.commons.api.data.Entity;
 import org.apache.olingo.commons.api.data.EntityCollection;
+import org.apache.olingo.commons.api.data.EntityIterator;
 import org.apache.olingo.commons.api.data.Link;
 import org.apache.olingo.commons.api.data.ValueType;
 import org.apache.olingo.commons.api.edm.EdmEntitySet;
 import org.apache.olingo.commons.api.edm.EdmEntityType;
 import org.apache.olingo.commons.api.ex.ODataException;
+import org.apache.olingo.commons.api.ex.ODataRuntimeException;
 import org.apache.olingo.commons.api.format.ContentType;
 import org.apache.olingo.commons.api.http.HttpHeader;
 import org.apache.olingo.commons.api.http.HttpMethod;
@@ -33,13 +38,15 @@ import org.apache.olingo.server.api.ODataRequest;
 import org.apache.olingo.server.api.ODataResponse;
 import org.apache.olingo.server.api.deserializer.DeserializerResult;
 import org.apache.olingo.server.api.deserializer.ODataDeserializer;
-import org.apache.olingo.server.api.processor.EntityCollectionProcessor;
+import org.apache.olingo.server.api.prefer.PreferencesApplied;
+import org.apache.olingo.server.api.processor.CountEntityCollectionProcessor;
 import org.apache.olingo.server.api.processor.EntityProcessor;
 import org.apache.olingo.server.api.serializer.EntityCollectionSerializerOptions;
 import org.apache.olingo.server.api.serializer.EntitySerializerOptions;
 import org.apache.olingo.server.api.serializer.ODataSerializer;
 import org.apache.olingo.server.api.serializer.SerializerException;
 import org.apache.olingo.server.api.serializer.SerializerResult;
+import org.apache.olingo.server.api.serializer.SerializerStreamResult;
 import org.apache.olingo.server.api.uri.UriInfo;
 import org.apache.olingo.server.api.uri.UriParameter;
 import org.apache.olingo.server.api.uri.UriResource;
@@ -49,24 +56,45 @@ import org.apache.olingo.server.api.uri.queryoption.CountOption;
 import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
 import org.apache.olingo.server.api.uri.queryoption.FilterOption;
 import org.apache.olingo.server.api.uri.queryoption.OrderByOption;
+import org.apache.olingo.server.api.uri.queryoption.SearchOption;
 import org.apache.olingo.server.api.uri.queryoption.SelectOption;
 import org.apache.olingo.server.api.uri.queryoption.SkipOption;
+import org.apache.olingo.server.api.uri.queryoption.SkipTokenOption;
 import org.apache.olingo.server.api.uri.queryoption.TopOption;
-import org.apache.olingo.server.core.uri.queryoption.TopOptionImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 
 import com.cairone.olingo.ext.jpa.annotations.EdmFunction;
 import com.cairone.olingo.ext.jpa.annotations.EdmParameter;
+import com.cairone.olingo.ext.jpa.annotations.EdmSearchable;
 import com.cairone.olingo.ext.jpa.interfaces.DataSource;
 import com.cairone.olingo.ext.jpa.interfaces.Operation;
+import com.cairone.olingo.ext.jpa.interfaces.PageableDataSource;
+import com.cairone.olingo.ext.jpa.interfaces.SearchProvider;
+import com.cairone.olingo.ext.jpa.interfaces.SearchableDataSource;
+import com.cairone.olingo.ext.jpa.providers.InvertedIndexSearchProvider;
+import com.cairone.olingo.ext.jpa.query.QueryCost;
+import com.cairone.olingo.ext.jpa.query.QueryCostModel;
+import com.cairone.olingo.ext.jpa.query.SearchRestriction;
+import com.cairone.olingo.ext.jpa.query.SkipToken;
+import com.cairone.olingo.ext.jpa.query.SortKey;
 import com.cairone.olingo.ext.jpa.utilities.Util;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
 
-public class EntitySetProcessor extends BaseProcessor implements EntityProcessor, EntityCollectionProcessor {
+public class EntitySetProcessor extends BaseProcessor implements EntityProcessor, CountEntityCollectionProcessor {
+
+	private static final Logger LOG = LoggerFactory.getLogger(EntitySetProcessor.class);
 	
 	protected Map<String, DataSource> dataSourceMap = new HashMap<>();
 	protected Map<String, Operation<?>> operationsMap = new HashMap<>();
+	protected Map<String, SearchProvider> searchProviderMap = new HashMap<>();
 	protected Integer maxTopOption = null;
+	protected Integer pageSize = null;
+	protected boolean streaming = false;
+	protected QueryCostModel queryCostModel = null;
 	
 	public EntitySetProcessor initialize(ApplicationContext context) throws ODataApplicationException {
 		super.initialize(context);
@@ -89,6 +117,18 @@ public class EntitySetProcessor extends BaseProcessor implements EntityProcessor
 				}
 			});
 		
+		context.getBeansOfType(SearchProvider.class).entrySet()
+			.stream()
+			.forEach(entry -> {
+				SearchProvider searchProvider = entry.getValue();
+				searchProviderMap.put(searchProvider.isSuitableFor(), searchProvider);
+			});
+		
+		entitySetMap.entrySet()
+			.stream()
+			.filter(entry -> entry.getValue().isAnnotationPresent(EdmSearchable.class))
+			.forEach(entry -> searchProviderMap.putIfAbsent(entry.getKey(), new InvertedIndexSearchProvider(entry.getKey(), entry.getValue())));
+		
 		return this;
 	}
 	
@@ -97,6 +137,30 @@ public class EntitySetProcessor extends BaseProcessor implements EntityProcessor
 		return this;
 	}
 
+	public EntitySetProcessor setPageSize(Integer pageSize) {
+		this.pageSize = pageSize;
+		return this;
+	}
+
+	/**
+	 * When enabled, entity collections are serialized while they are read: every entity is written to the response as soon as it
+	 * is converted, instead of building the whole collection first. The data source is then read after the processor returns, so
+	 * its persistence context must stay open until the response is written.
+	 */
+	public EntitySetProcessor setStreaming(boolean streaming) {
+		this.streaming = streaming;
+		return this;
+	}
+
+	/**
+	 * Scores every entity collection read before the data source is called, and rejects or pages the requests over the
+	 * budget of their entity set
+	 */
+	public EntitySetProcessor setQueryCostModel(QueryCostModel queryCostModel) {
+		this.queryCostModel = queryCostModel;
+		return this;
+	}
+
 	@Override
 	public EntitySetProcessor setServiceRoot(String ServiceRoot) {
 		super.setServiceRoot(ServiceRoot);
@@ -156,7 +220,10 @@ public class EntitySetProcessor extends BaseProcessor implements EntityProcessor
     		object = writeObject(clazz, requestEntity);
     		
     		Object createdObject = dataSource.create(object);
-    		createdEntity = writeEntity(createdObject, null);
+    		createdEntity = writeEntity(clazz, createdObject, null, null);
+    		
+    		SearchProvider searchProvider = searchProviderMap.get(edmEntitySet.getName());
+    		if(searchProvider != null) searchProvider.created(createdObject);
     		
     	} catch (IllegalArgumentException | IllegalAccessException | NoSuchMethodException | SecurityException | InstantiationException | InvocationTargetException e) {
 			throw new ODataApplicationException(e.getMessage(), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
@@ -244,7 +311,13 @@ public class EntitySetProcessor extends BaseProcessor implements EntityProcessor
 			throw new ODataApplicationException(e.getMessage(), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
 		}
     	
-    	dataSource.update(keyPredicateMap, object, propertiesInJSON, request.getMethod().equals(HttpMethod.PUT));
+    	Object updatedObject = dataSource.update(keyPredicateMap, object, propertiesInJSON, request.getMethod().equals(HttpMethod.PUT));
+    	
+    	SearchProvider searchProvider = searchProviderMap.get(edmEntitySet.getName());
+    	if(searchProvider != null) {
+    		searchProvider.updated(updatedObject != null ? updatedObject : dataSource.readFromKey(keyPredicateMap, null, null));
+    	}
+    	
     	response.setStatusCode(HttpStatusCode.NO_CONTENT.getStatusCode());
 	}
 
@@ -271,6 +344,10 @@ public class EntitySetProcessor extends BaseProcessor implements EntityProcessor
 				.collect(Collectors.toMap(UriParameter::getName, x -> x));
 		
     	dataSource.delete(keyPredicateMap);
+    	
+    	SearchProvider searchProvider = searchProviderMap.get(edmEntitySet.getName());
+    	if(searchProvider != null) searchProvider.deleted(keyPredicateMap);
+    	
     	response.setStatusCode(HttpStatusCode.NO_CONTENT.getStatusCode());
 	}
 	
@@ -320,6 +397,7 @@ public class EntitySetProcessor extends BaseProcessor implements EntityProcessor
 				.stream()
 				.collect(Collectors.toMap(UriParameter::getName, x -> x));
 		
+	    Class<?> clazz = entitySetMap.get(edmEntitySet.getName());
 	    Entity entity;
 	    Object object = dataSource.readFromKey(keyPredicateMap, expandOption, selectOption);
 		
@@ -328,7 +406,7 @@ public class EntitySetProcessor extends BaseProcessor implements EntityProcessor
 		}
 		
 		try {	
-			entity = writeEntity(object, expandOption);
+			entity = writeEntity(clazz, object, expandOption, selectOption);
 			
 		} catch (IllegalArgumentException | IllegalAccessException | NoSuchMethodException | SecurityException | InvocationTargetException e) {
 			throw new ODataApplicationException(e.getMessage(), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
@@ -378,6 +456,56 @@ public class EntitySetProcessor extends BaseProcessor implements EntityProcessor
 		}
 	}
 	
+	@Override
+	public void countEntityCollection(ODataRequest request, ODataResponse response, UriInfo uriInfo) throws ODataApplicationException, ODataLibraryException {
+		
+		List<UriResource> resourcePaths = uriInfo.getUriResourceParts();
+		
+		if(!(resourcePaths.get(0) instanceof UriResourceEntitySet)) {
+			throw new ODataApplicationException("Not implemented", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+		}
+		
+		UriResourceEntitySet uriResourceEntitySet = (UriResourceEntitySet) resourcePaths.get(0);
+		EdmEntitySet edmEntitySet = uriResourceEntitySet.getEntitySet();
+		
+		FilterOption filterOption = uriInfo.getFilterOption();
+		
+		DataSource dataSource = dataSourceMap.get(edmEntitySet.getName());
+		
+		if(dataSource == null) {
+			throw new ODataApplicationException(
+					String.format("DATASOURCE PROVIDER FOR %s NOT FOUND", edmEntitySet.getName()), 
+					HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), 
+					Locale.ENGLISH);
+		}
+		
+		SearchRestriction searchRestriction = search(edmEntitySet, dataSource, uriInfo.getSearchOption());
+		int count;
+		
+		if(searchRestriction != null && searchRestriction.isEmpty()) {
+			count = 0;
+		} else if(searchRestriction != null && searchRestriction.hasCondition() && dataSource instanceof SearchableDataSource) {
+			count = Ints.saturatedCast(((SearchableDataSource) dataSource).count(filterOption, searchRestriction));
+		} else if(searchRestriction != null) {
+			count = restrict(dataSource.readAll(null, filterOption, null), searchRestriction).size();
+		} else if(dataSource instanceof PageableDataSource) {
+			count = Ints.saturatedCast(((PageableDataSource) dataSource).count(filterOption));
+		} else {
+			Iterable<?> data = dataSource.readAll(null, filterOption, null);
+			try {
+				count = Iterables.size(data);
+			} finally {
+				close(data);
+			}
+		}
+		
+		InputStream serializedContent = odata.createFixedFormatSerializer().count(count);
+		
+		response.setContent(serializedContent);
+		response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+		response.setHeader(HttpHeader.CONTENT_TYPE, ContentType.TEXT_PLAIN.toContentTypeString());
+	}
+	
 	private void readFunctionImport(ODataRequest request, ODataResponse response, UriInfo uriInfo, ContentType responseFormat) throws ODataApplicationException, ODataLibraryException {
 		
 		List<UriResource> resourcePaths = uriInfo.getUriResourceParts();
@@ -413,6 +541,7 @@ public class EntitySetProcessor extends BaseProcessor implements EntityProcessor
 		}
 		
 		ExpandOption expandOption = uriInfo.getExpandOption();
+		SelectOption selectOption = uriInfo.getSelectOption();
 		
 		Map<String, UriParameter> keyPredicateMap = null;
 		EdmEntitySet edmEntitySet = null;
@@ -442,14 +571,14 @@ public class EntitySetProcessor extends BaseProcessor implements EntityProcessor
 						@SuppressWarnings("unchecked")
 						Collection<Object> collection = (Collection<Object>) object;
 						
-						for(Object item : collection) {
-							Entity entity = writeEntity(item, expandOption);
+						for(Object item : query(collection, uriInfo.getFilterOption(), uriInfo.getOrderByOption())) {
+							Entity entity = writeEntity(item, expandOption, selectOption);
 							result.add(entity);
 						}						
 					}
 				}
 			} else {
-				Entity entity = writeEntity(object, expandOption);
+				Entity entity = writeEntity(object, expandOption, selectOption);
 				result.add(entity);
 			}
 			
@@ -457,6 +586,8 @@ public class EntitySetProcessor extends BaseProcessor implements EntityProcessor
 			throw new ODataApplicationException(e.getMessage(), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
 		}
 
+		final EdmEntityType edmEntityType = (EdmEntityType) uriResourceFunction.getFunction().getReturnType().getType();
+		String selectList = odata.createUriHelper().buildContextURLSelectList(edmEntityType, null, selectOption);
 		
 		ODataSerializer serializer = odata.createSerializer(responseFormat);
 
@@ -465,17 +596,18 @@ public class EntitySetProcessor extends BaseProcessor implements EntityProcessor
 			contextUrl = ContextURL.with()
 					.serviceRoot(new URI(SERVICE_ROOT))
 					.entitySet(edmEntitySet)
+					.selectList(selectList)
 					.build();
 		} catch (URISyntaxException e) {
 			throw new ODataApplicationException(e.getMessage(), HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
 		}
 		
 		final String id = request.getRawBaseUri() + "/" + edmEntitySet.getName();
-		final EdmEntityType edmEntityType = (EdmEntityType) uriResourceFunction.getFunction().getReturnType().getType();
 		
 		EntityCollectionSerializerOptions opts = EntityCollectionSerializerOptions.with()
 			.id(id)
 			.contextURL(contextUrl)
+			.select(selectOption)
 			.expand(expandOption).build();
 		
 		SerializerResult serializerResult = serializer.entityCollection(serviceMetadata, edmEntityType, entityCollection, opts);
@@ -502,11 +634,16 @@ public class EntitySetProcessor extends BaseProcessor implements EntityProcessor
 	    OrderByOption orderByOption = uriInfo.getOrderByOption();
 	    FilterOption filterOption = uriInfo.getFilterOption();
 	    
-	    if(topOption == null && maxTopOption != null) {
-	    	topOption = new TopOptionImpl().setValue(maxTopOption);
-	    } else if(topOption != null && maxTopOption != null && topOption.getValue() > maxTopOption) {
-	    	TopOptionImpl topOptionImpl = (TopOptionImpl) topOption;
-	    	topOption = topOptionImpl.setValue(maxTopOption);
+	    SkipTokenOption skipTokenOption = uriInfo.getSkipTokenOption();
+	    
+	    Integer skip = skipOption == null ? null : skipOption.getValue();
+	    Integer top = topOption == null ? null : topOption.getValue();
+	    Integer requestedTop = top;
+	    
+	    if(top == null && maxTopOption != null) {
+	    	top = maxTopOption;
+	    } else if(top != null && maxTopOption != null && top > maxTopOption) {
+	    	top = maxTopOption;
 	    }
 	    
 	    String selectList = odata.createUriHelper().buildContextURLSelectList(edmEntityType, null, selectOption);
@@ -521,31 +658,82 @@ public class EntitySetProcessor extends BaseProcessor implements EntityProcessor
 					Locale.ENGLISH);
 		}
 		
+		List<String> preferHeaders = request.getHeaders(HttpHeader.PREFER);
+		Integer preferredPageSize = preferHeaders == null ? null : odata.createPreferences(preferHeaders).getMaxPageSize();
+		
+		Integer pageLimit = guard(edmEntitySet, dataSource, expandOption, filterOption, orderByOption, top, preferredPageSize, skipTokenOption != null);
+		
+		Class<?> clazz = entitySetMap.get(edmEntitySet.getName());
 		EntityCollection entityCollection = new EntityCollection();
 		List<Entity> result = entityCollection.getEntities();
 		
-		Iterable<?> data = dataSource.readAll(expandOption, filterOption, orderByOption);
+		Iterable<?> data;
+		Iterable<?> source;
+		List<Entity> page = null;
 		
-		if(count) entityCollection.setCount(Iterables.size(data));
+		SearchRestriction searchRestriction = search(edmEntitySet, dataSource, uriInfo.getSearchOption());
 		
-		if(skipOption != null) {
-			data = Iterables.skip(data, skipOption.getValue());
-		}
-		
-		if(topOption != null) {
-			data = Iterables.limit(data, topOption.getValue()); 
+		if(searchRestriction != null && searchRestriction.isEmpty()) {
+			data = Collections.emptyList();
+			source = data;
+			
+			if(count) entityCollection.setCount(0);
+		} else if(dataSource instanceof PageableDataSource && (searchRestriction == null || (searchRestriction.hasCondition() && dataSource instanceof SearchableDataSource))) {
+			PageableDataSource pageableDataSource = (PageableDataSource) dataSource;
+			
+			if(preferredPageSize != null || pageSize != null || skipTokenOption != null || pageLimit != null) {
+				page = readPage(request, response, pageableDataSource, clazz, entityCollection, expandOption, filterOption, orderByOption, selectOption, searchRestriction, skipTokenOption, preferredPageSize, pageLimit, skip, requestedTop);
+				data = page;
+			} else if(searchRestriction != null) {
+				data = ((SearchableDataSource) dataSource).readAll(expandOption, filterOption, orderByOption, selectOption, searchRestriction, skip, top);
+			} else {
+				data = pageableDataSource.readAll(expandOption, filterOption, orderByOption, selectOption, skip, top);
+			}
+			
+			source = data;
+			
+			if(count) {
+				long total = searchRestriction == null ? pageableDataSource.count(filterOption) : ((SearchableDataSource) dataSource).count(filterOption, searchRestriction);
+				entityCollection.setCount(Ints.saturatedCast(total));
+			}
+		} else {
+			data = dataSource.readAll(expandOption, filterOption, orderByOption);
+			if(searchRestriction != null) data = restrict(data, searchRestriction);
+			source = data;
+			
+			if(count) {
+				try {
+					data = Lists.newArrayList(source);
+				} finally {
+					close(source);
+				}
+				entityCollection.setCount(Iterables.size(data));
+			}
+			
+			if(skip != null) {
+				data = Iterables.skip(data, skip);
+			}
+			
+			if(top != null) {
+				data = Iterables.limit(data, top); 
+			}
 		}
 		
-		try {			
-			for(Object object : data) {
-				Entity entity = writeEntity(object, expandOption);
-				result.add(entity);
+		if(page != null) {
+			result.addAll(page);
+		} else if(!streaming) {
+			try {			
+				for(Object object : data) {
+					Entity entity = writeEntity(clazz, object, expandOption, selectOption);
+					result.add(entity);
+				}
+			} catch (Exception e) {
+				throw new ODataApplicationException(e.getMessage(), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
+			} finally {
+				close(source);
 			}
-		} catch (Exception e) {
-			throw new ODataApplicationException(e.getMessage(), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
 		}
 		
-		
 		ODataSerializer serializer = odata.createSerializer(responseFormat);
 
 	    ContextURL contextUrl = null;
@@ -561,18 +749,281 @@ public class EntitySetProcessor extends BaseProcessor implements EntityProcessor
 		
 		final String id = request.getRawBaseUri() + "/" + edmEntitySet.getName();
 		
-		EntityCollectionSerializerOptions opts = EntityCollectionSerializerOptions.with()
-			.id(id)
-			.contextURL(contextUrl)
-			.count(countOption)
-			.select(selectOption)
-			.expand(expandOption).build();
+		if(streaming && page == null) {
+			EntityCollectionSerializerOptions opts = EntityCollectionSerializerOptions.with()
+				.id(id)
+				.contextURL(contextUrl)
+				.count(countOption)
+				.select(selectOption)
+				.expand(expandOption)
+				.writeContentErrorCallback((context, channel) -> LOG.error(String.format("STREAMING OF %s FAILED", edmEntitySet.getName()), context.getException()))
+				.build();
+			
+			EntityIterator entityIterator = new StreamedEntityIterator(data, source, entityCollection, clazz, expandOption, selectOption);
+			SerializerStreamResult serializerResult;
+			
+			try {
+				serializerResult = serializer.entityCollectionStreamed(serviceMetadata, edmEntityType, entityIterator, opts);
+			} catch (SerializerException e) {
+				close(source);
+				throw e;
+			}
+			
+			response.setODataContent(serializerResult.getODataContent());
+		} else {
+			EntityCollectionSerializerOptions opts = EntityCollectionSerializerOptions.with()
+				.id(id)
+				.contextURL(contextUrl)
+				.count(countOption)
+				.select(selectOption)
+				.expand(expandOption).build();
+			
+			SerializerResult serializerResult = serializer.entityCollection(serviceMetadata, edmEntityType, entityCollection, opts);
+			InputStream serializedContent = serializerResult.getContent();
+	
+			response.setContent(serializedContent);
+		}
 		
-		SerializerResult serializerResult = serializer.entityCollection(serviceMetadata, edmEntityType, entityCollection, opts);
-		InputStream serializedContent = serializerResult.getContent();
-
-		response.setContent(serializedContent);
 		response.setStatusCode(HttpStatusCode.OK.getStatusCode());
 		response.setHeader(HttpHeader.CONTENT_TYPE, responseFormat.toContentTypeString());
 	}
+	
+	/**
+	 * Converts the rows of a collection read one at a time, while the serializer writes them. The count and the next link
+	 * are known before the first row and are taken from the collection they were set on. The source is closed once the last row
+	 * has been written, or as soon as a row can not be converted.
+	 */
+	private class StreamedEntityIterator extends EntityIterator {
+		
+		private final Iterator<?> iterator;
+		private final Iterable<?> source;
+		private final EntityCollection entityCollection;
+		private final Class<?> clazz;
+		private final ExpandOption expandOption;
+		private final SelectOption selectOption;
+		private boolean closed = false;
+		
+		private StreamedEntityIterator(Iterable<?> data, Iterable<?> source, EntityCollection entityCollection, Class<?> clazz, ExpandOption expandOption, SelectOption selectOption) {
+			this.iterator = data.iterator();
+			this.source = source;
+			this.entityCollection = entityCollection;
+			this.clazz = clazz;
+			this.expandOption = expandOption;
+			this.selectOption = selectOption;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			try {
+				if(iterator.hasNext()) return true;
+			} catch (RuntimeException e) {
+				release();
+				throw e;
+			}
+			release();
+			return false;
+		}
+		
+		@Override
+		public Entity next() {
+			try {
+				return writeEntity(clazz, iterator.next(), expandOption, selectOption);
+			} catch (Exception e) {
+				release();
+				throw new ODataRuntimeException(e);
+			}
+		}
+		
+		@Override
+		public Integer getCount() {
+			return entityCollection.getCount();
+		}
+		
+		@Override
+		public URI getNext() {
+			return entityCollection.getNext();
+		}
+		
+		private void release() {
+			if(closed) return;
+			closed = true;
+			try {
+				close(source);
+			} catch (ODataApplicationException e) {
+				throw new ODataRuntimeException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Reads one server-driven page, positioned by the $skiptoken of the request, and sets the next link when more rows follow.
+	 * The page size comes from <code>Prefer: odata.maxpagesize</code>, then from the token, then from the configured page size, and never exceeds the max top option
+	 * nor the page limit set by the query cost guard.
+	 * <p>
+	 * Rows are written while the page is read, as a data source that streams detaches every window of rows before reading the
+	 * next one, and the JPA paths of a row have to be read while its lazy associations can still be loaded.
+	 * 
+	 * @return The entities of the page
+	 */
+	private List<Entity> readPage(ODataRequest request, ODataResponse response, PageableDataSource dataSource, Class<?> clazz, EntityCollection entityCollection, ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, SelectOption selectOption, SearchRestriction searchRestriction, SkipTokenOption skipTokenOption, Integer preferredPageSize, Integer pageLimit, Integer skip, Integer top) throws ODataApplicationException {
+		
+		List<SortKey> sortKeys = SortKey.from(clazz, orderByOption);
+		SkipToken skipToken = skipTokenOption == null ? null : SkipToken.decode(skipTokenOption.getValue(), sortKeys);
+		
+		int appliedPageSize = preferredPageSize != null ? preferredPageSize : skipToken != null ? skipToken.getPageSize() : pageSize != null ? pageSize : pageLimit;
+		if(maxTopOption != null && appliedPageSize > maxTopOption) appliedPageSize = maxTopOption;
+		if(pageLimit != null && appliedPageSize > pageLimit) appliedPageSize = pageLimit;
+		
+		if(skipToken == null) skipToken = SkipToken.first(skip, appliedPageSize, sortKeys);
+		
+		if(preferredPageSize != null) {
+			response.setHeader(HttpHeader.PREFERENCE_APPLIED, PreferencesApplied.with().maxPageSize(appliedPageSize).build().toValueString());
+		}
+		
+		int served = skipToken.getOffset() - (skip == null ? 0 : skip);
+		int fetch = top == null ? appliedPageSize : Math.max(0, Math.min(appliedPageSize, top - served));
+		
+		if(fetch == 0) return Collections.emptyList();
+		
+		Iterable<?> data = searchRestriction == null ? 
+				dataSource.readPage(expandOption, filterOption, orderByOption, selectOption, skipToken, fetch + 1) :
+				((SearchableDataSource) dataSource).readPage(expandOption, filterOption, orderByOption, selectOption, searchRestriction, skipToken, fetch + 1);
+		List<Entity> entities = new ArrayList<Entity>();
+		SkipToken nextSkipToken = null;
+		boolean more = false;
+		
+		try {
+			for(Object row : data) {
+				if(entities.size() == fetch) {
+					more = true;
+					break;
+				}
+				entities.add(writeEntity(clazz, row, expandOption, selectOption));
+				if(entities.size() == fetch) nextSkipToken = skipToken.next(fetch, appliedPageSize, row, sortKeys);
+			}
+		} catch (ODataApplicationException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ODataApplicationException(e.getMessage(), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
+		} finally {
+			close(data);
+		}
+		
+		if(more && (top == null || served + fetch < top)) {
+			try {
+				String rawQueryPath = request.getRawQueryPath();
+				List<String> queryOptions = rawQueryPath == null ? new ArrayList<String>() : Arrays.stream(rawQueryPath.split("&"))
+					.filter(queryOption -> !queryOption.isEmpty() && !queryOption.startsWith("$skiptoken=") && !queryOption.startsWith("%24skiptoken="))
+					.collect(Collectors.toList());
+				queryOptions.add("$skiptoken=" + nextSkipToken.encode());
+				
+				entityCollection.setNext(new URI(request.getRawBaseUri() + request.getRawODataPath() + "?" + String.join("&", queryOptions)));
+				
+			} catch (URISyntaxException e) {
+				throw new ODataApplicationException(e.getMessage(), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
+			}
+		}
+		
+		return entities;
+	}
+	
+	/**
+	 * Scores the query of a collection read with the query cost model. A request over the budget of its entity set is served
+	 * in pages when the model allows it and the data source can page, as long as that brings it within the budget; otherwise
+	 * it is rejected with the cost of every factor, before anything is read.
+	 * 
+	 * @return The page size the read is limited to, or null when it is within the budget
+	 */
+	private Integer guard(EdmEntitySet edmEntitySet, DataSource dataSource, ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, Integer top, Integer preferredPageSize, boolean skipToken) throws ODataApplicationException {
+		
+		Integer budget = queryCostModel == null ? null : queryCostModel.getBudget(edmEntitySet.getName());
+		if(budget == null) return null;
+		
+		Class<?> clazz = entitySetMap.get(edmEntitySet.getName());
+		boolean pageable = dataSource instanceof PageableDataSource;
+		
+		Integer rows = top;
+		if(pageable && (preferredPageSize != null || pageSize != null || skipToken)) {
+			Integer size = preferredPageSize != null ? preferredPageSize : pageSize;
+			if(size != null && (rows == null || size < rows)) rows = size;
+		}
+		
+		QueryCost queryCost = queryCostModel.estimate(clazz, expandOption, filterOption, orderByOption, rows);
+		if(queryCost.getTotal() <= budget) return null;
+		
+		Integer degradedPageSize = queryCostModel.getDegradedPageSize();
+		
+		if(degradedPageSize != null && pageable && (rows == null || rows > degradedPageSize)) {
+			QueryCost degradedCost = queryCostModel.estimate(clazz, expandOption, filterOption, orderByOption, degradedPageSize);
+			if(degradedCost.getTotal() <= budget) {
+				LOG.info("Query on {} costs {}, over its budget of {}: served in pages of {}", edmEntitySet.getName(), queryCost, budget, degradedPageSize);
+				return degradedPageSize;
+			}
+			queryCost = degradedCost;
+		}
+		
+		throw new ODataApplicationException(
+				String.format("THE QUERY ON %s COSTS %s, OVER ITS BUDGET OF %d: REDUCE $expand, $filter OR THE ROWS REQUESTED WITH $top", edmEntitySet.getName(), queryCost, budget), 
+				HttpStatusCode.BAD_REQUEST.getStatusCode(), 
+				Locale.ENGLISH);
+	}
+	
+	/**
+	 * Resolves the $search of the request with the search provider of the entity set, loading its index from the data source
+	 * the first time. Without a provider the $search is ignored.
+	 * 
+	 * @return The entities that match, or null when the request has no $search or the entity set is not searchable
+	 */
+	private SearchRestriction search(EdmEntitySet edmEntitySet, DataSource dataSource, SearchOption searchOption) throws ODataApplicationException {
+		
+		SearchProvider searchProvider = searchProviderMap.get(edmEntitySet.getName());
+		
+		if(searchOption == null || searchOption.getSearchExpression() == null || searchProvider == null) return null;
+		
+		if(!searchProvider.isLoaded()) {
+			synchronized(searchProvider) {
+				if(!searchProvider.isLoaded()) {
+					Iterable<?> data = dataSource.readAll(null, null, null);
+					try {
+						searchProvider.load(data);
+					} finally {
+						close(data);
+					}
+				}
+			}
+		}
+		
+		return searchProvider.search(searchOption.getSearchExpression());
+	}
+	
+	/**
+	 * Applies in memory the $search of a data source that can not restrict its queries
+	 */
+	private static List<?> restrict(Iterable<?> data, SearchRestriction searchRestriction) throws ODataApplicationException {
+		
+		List<Object> rows = new ArrayList<Object>();
+		
+		try {
+			for(Object row : data) {
+				if(searchRestriction.test(row)) rows.add(row);
+			}
+		} finally {
+			close(data);
+		}
+		
+		return rows;
+	}
+	
+	/**
+	 * Releases the cursor behind a lazy result, such as a {@link com.cairone.olingo.ext.jpa.query.ResultStream}
+	 */
+	private static void close(Iterable<?> data) throws ODataApplicationException {
+		if(data instanceof AutoCloseable) {
+			try {
+				((AutoCloseable) data).close();
+			} catch (Exception e) {
+				throw new ODataApplicationException(e.getMessage(), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
+			}
+		}
+	}
 }
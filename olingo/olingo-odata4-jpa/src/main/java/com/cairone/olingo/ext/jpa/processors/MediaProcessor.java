@@ -33,6 +33,7 @@ import org.springframework.context.ApplicationContext;
 
 import com.cairone.olingo.ext.jpa.interfaces.DataSource;
 import com.cairone.olingo.ext.jpa.interfaces.MediaDataSource;
+import com.cairone.olingo.ext.jpa.query.QueryCostModel;
 
 public class MediaProcessor extends EntitySetProcessor implements MediaEntityProcessor {
 
@@ -60,6 +61,24 @@ public class MediaProcessor extends EntitySetProcessor implements MediaEntityPro
 		return this;
 	}
 
+	@Override
+	public MediaProcessor setPageSize(Integer pageSize) {
+		super.setPageSize(pageSize);
+		return this;
+	}
+
+	@Override
+	public MediaProcessor setStreaming(boolean streaming) {
+		super.setStreaming(streaming);
+		return this;
+	}
+
+	@Override
+	public MediaProcessor setQueryCostModel(QueryCostModel queryCostModel) {
+		super.setQueryCostModel(queryCostModel);
+		return this;
+	}
+
 	@Override
 	public void readMediaEntity(ODataRequest request, ODataResponse response, UriInfo uriInfo, ContentType responseFormat) throws ODataApplicationException, ODataLibraryException {
 		
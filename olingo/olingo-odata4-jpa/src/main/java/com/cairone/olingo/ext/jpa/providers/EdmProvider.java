@@ -60,6 +60,7 @@ import com.cairone.olingo.ext.jpa.annotations.EdmNavigationProperty;
 import com.cairone.olingo.ext.jpa.annotations.EdmParameter;
 import com.cairone.olingo.ext.jpa.annotations.EdmProperty;
 import com.cairone.olingo.ext.jpa.annotations.EdmReturnType;
+import com.cairone.olingo.ext.jpa.query.PropertyIndex;
 
 public class EdmProvider extends CsdlAbstractEdmProvider {
 
@@ -111,6 +112,8 @@ public class EdmProvider extends CsdlAbstractEdmProvider {
 						entitySetsMap.put(edmEntitySet.value(), cl);
 						entityTypesMap.put(edmEntity.name(), edmEntitySet.value());
 					}
+					
+					PropertyIndex.of(cl);
 				}
 				
 				if(edmEnum != null) {
@@ -141,6 +144,7 @@ public class EdmProvider extends CsdlAbstractEdmProvider {
 				if(edmComplex != null) {
 					String name = edmComplex.name().isEmpty() ? cl.getSimpleName() : edmComplex.name();
 					complexTypesMap.put(name, cl);
+					PropertyIndex.of(cl);
 				}
 			}
 		} catch (ClassNotFoundException e) {
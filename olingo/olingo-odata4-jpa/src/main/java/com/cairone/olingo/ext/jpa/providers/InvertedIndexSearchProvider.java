@@ -0,0 +1,300 @@
+package com.cairone.olingo.ext.jpa.providers;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriParameter;
+import org.apache.olingo.server.api.uri.queryoption.search.SearchBinary;
+import org.apache.olingo.server.api.uri.queryoption.search.SearchBinaryOperatorKind;
+import org.apache.olingo.server.api.uri.queryoption.search.SearchExpression;
+
+import com.cairone.olingo.ext.jpa.annotations.EdmEntity;
+import com.cairone.olingo.ext.jpa.annotations.EdmSearchable;
+import com.cairone.olingo.ext.jpa.converters.LiteralParsers;
+import com.cairone.olingo.ext.jpa.interfaces.SearchProvider;
+import com.cairone.olingo.ext.jpa.mappers.JpaPaths;
+import com.cairone.olingo.ext.jpa.query.PropertyIndex;
+import com.cairone.olingo.ext.jpa.query.PropertyIndex.PropertyPath;
+import com.cairone.olingo.ext.jpa.query.SearchRestriction;
+
+/**
+ * In-memory inverted index of the text properties of an entity set annotated with {@link EdmSearchable}. Text is split into
+ * words, lower cased and stripped of accents; every word points to the keys of the entities that contain it.
+ * <p>
+ * A term matches the entities with a word that starts with it, a phrase the entities with a property that contains its words
+ * one after the other. The index is loaded with the whole entity set before the first search and is then kept up to date with
+ * the entities created, updated and deleted through the processor; changes made by other means are not seen until it is loaded again.
+ * Rows may be instances of the Edm class or of its JPA entity, whose properties are read from their JPA paths.
+ *
+ * @author diego.cairone
+ */
+public class InvertedIndexSearchProvider implements SearchProvider {
+
+	private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+	private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+	private final String entitySetName;
+	private final Class<?> clazz;
+	private final List<PropertyPath> properties;
+
+	private final NavigableMap<String, Set<List<Object>>> postings = new TreeMap<String, Set<List<Object>>>();
+	private final Map<List<Object>, List<String>> documents = new HashMap<List<Object>, List<String>>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private volatile boolean loaded = false;
+
+	public InvertedIndexSearchProvider(String entitySetName, Class<?> clazz) {
+
+		this.entitySetName = entitySetName;
+		this.clazz = clazz;
+
+		EdmSearchable edmSearchable = clazz.getAnnotation(EdmSearchable.class);
+		List<String> names = edmSearchable == null ? Collections.emptyList() : Arrays.asList(edmSearchable.value());
+		PropertyIndex propertyIndex = PropertyIndex.of(clazz);
+
+		if(names.isEmpty()) {
+			this.properties = Arrays.stream(clazz.getDeclaredFields())
+				.map(propertyIndex::get)
+				.filter(property -> property != null && !property.isNavigation() && property.getField().getType().equals(String.class))
+				.collect(Collectors.toList());
+		} else {
+			this.properties = new ArrayList<PropertyPath>();
+			for(String name : names) {
+				PropertyPath property = propertyIndex.getProperty(name);
+				if(property == null) {
+					throw new IllegalArgumentException(String.format("SEARCHABLE PROPERTY %s NOT FOUND IN %s", name, clazz.getName()));
+				}
+				properties.add(property);
+			}
+		}
+	}
+
+	@Override
+	public String isSuitableFor() {
+		return entitySetName;
+	}
+
+	@Override
+	public SearchRestriction search(SearchExpression searchExpression) throws ODataApplicationException {
+
+		lock.readLock().lock();
+		try {
+			return SearchRestriction.keys(clazz, evaluate(searchExpression));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	@Override
+	public void load(Iterable<?> entities) throws ODataApplicationException {
+
+		lock.writeLock().lock();
+		try {
+			postings.clear();
+			documents.clear();
+			for(Object entity : entities) {
+				if(accepts(entity)) add(SearchRestriction.keyOf(clazz, entity), entity);
+			}
+			loaded = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void created(Object entity) throws ODataApplicationException {
+		updated(entity);
+	}
+
+	@Override
+	public void updated(Object entity) throws ODataApplicationException {
+
+		if(!loaded || !accepts(entity)) return;
+
+		List<Object> key = SearchRestriction.keyOf(clazz, entity);
+
+		lock.writeLock().lock();
+		try {
+			remove(key);
+			add(key, entity);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void deleted(Map<String, UriParameter> keyPredicateMap) throws ODataApplicationException {
+
+		if(!loaded) return;
+
+		PropertyIndex propertyIndex = PropertyIndex.of(clazz);
+		List<Object> key = new ArrayList<Object>();
+
+		for(String name : propertyIndex.getKeys()) {
+			UriParameter keyPredicate = keyPredicateMap.get(name);
+			if(keyPredicate == null) return;
+			key.add(LiteralParsers.forType(propertyIndex.getProperty(name).getField().getType()).parse(keyPredicate.getText()));
+		}
+
+		lock.writeLock().lock();
+		try {
+			remove(key);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The number of entities in the index
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return documents.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "InvertedIndexSearchProvider [entitySetName=" + entitySetName + ", properties=" + properties + ", loaded=" + loaded + "]";
+	}
+
+	private Set<List<Object>> evaluate(SearchExpression searchExpression) throws ODataApplicationException {
+
+		if(searchExpression.isSearchTerm()) {
+			return match(searchExpression.asSearchTerm().getSearchTerm());
+		}
+
+		if(searchExpression.isSearchUnary()) {
+			Set<List<Object>> result = new HashSet<List<Object>>(documents.keySet());
+			result.removeAll(match(searchExpression.asSearchUnary().getOperand().getSearchTerm()));
+			return result;
+		}
+
+		if(searchExpression.isSearchBinary()) {
+
+			SearchBinary searchBinary = searchExpression.asSearchBinary();
+			Set<List<Object>> result = new HashSet<List<Object>>(evaluate(searchBinary.getLeftOperand()));
+
+			if(searchBinary.getOperator() == SearchBinaryOperatorKind.AND) {
+				if(!result.isEmpty()) result.retainAll(evaluate(searchBinary.getRightOperand()));
+			} else {
+				result.addAll(evaluate(searchBinary.getRightOperand()));
+			}
+			return result;
+		}
+
+		throw new ODataApplicationException("Unsupported $search expression", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+	}
+
+	/**
+	 * A single word is matched as a prefix; the words of a phrase have to be found exactly and in order. The parser drops the
+	 * quotes of a phrase, so a quoted single word is matched as a prefix too.
+	 */
+	private Set<List<Object>> match(String searchTerm) {
+
+		List<String> words = tokenize(searchTerm);
+
+		if(words.isEmpty()) return new HashSet<List<Object>>(documents.keySet());
+
+		if(words.size() == 1) {
+			Set<List<Object>> result = new HashSet<List<Object>>();
+			postings.subMap(words.get(0), true, words.get(0) + Character.MAX_VALUE, true).values().forEach(result::addAll);
+			return result;
+		}
+
+		Set<List<Object>> result = null;
+
+		for(String word : words) {
+			Set<List<Object>> keys = postings.getOrDefault(word, Collections.emptySet());
+			if(result == null) {
+				result = new HashSet<List<Object>>(keys);
+			} else {
+				result.retainAll(keys);
+			}
+			if(result.isEmpty()) return result;
+		}
+
+		String phrase = " " + String.join(" ", words) + " ";
+		result.removeIf(key -> documents.get(key).stream().noneMatch(text -> (" " + text + " ").contains(phrase)));
+
+		return result;
+	}
+
+	/**
+	 * @return Whether the row is an instance of the Edm class or a row of its JPA entity, as a data source may return either
+	 */
+	private boolean accepts(Object entity) {
+		return entity != null && (clazz.isInstance(entity) || !entity.getClass().isAnnotationPresent(EdmEntity.class));
+	}
+
+	private void add(List<Object> key, Object entity) throws ODataApplicationException {
+
+		List<String> texts = new ArrayList<String>();
+		boolean edmObject = clazz.isInstance(entity);
+
+		for(PropertyPath property : properties) {
+			if(!edmObject && property.isIgnored()) continue;
+
+			Object value;
+			try {
+				value = edmObject ? property.getField().get(entity) : JpaPaths.read(entity, property.getJpaPath());
+			} catch (IllegalAccessException e) {
+				throw new ODataApplicationException(e.getMessage(), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
+			}
+			if(value == null) continue;
+
+			List<String> words = tokenize(value.toString());
+			if(words.isEmpty()) continue;
+
+			texts.add(String.join(" ", words));
+			words.forEach(word -> postings.computeIfAbsent(word, w -> new HashSet<List<Object>>()).add(key));
+		}
+
+		documents.put(key, texts);
+	}
+
+	private void remove(List<Object> key) {
+
+		List<String> texts = documents.remove(key);
+		if(texts == null) return;
+
+		for(String text : texts) {
+			for(String word : text.split(" ")) {
+				Set<List<Object>> keys = postings.get(word);
+				if(keys != null && keys.remove(key) && keys.isEmpty()) postings.remove(word);
+			}
+		}
+	}
+
+	private static List<String> tokenize(String text) {
+
+		String normalized = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+
+		return Arrays.stream(SEPARATORS.split(normalized))
+			.filter(word -> !word.isEmpty())
+			.collect(Collectors.toList());
+	}
+}
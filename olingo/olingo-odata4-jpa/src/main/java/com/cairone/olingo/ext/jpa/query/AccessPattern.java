@@ -0,0 +1,205 @@
+package com.cairone.olingo.ext.jpa.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.olingo.server.api.uri.queryoption.OrderByItem;
+import org.apache.olingo.server.api.uri.queryoption.OrderByOption;
+import org.apache.olingo.server.api.uri.queryoption.expression.Binary;
+import org.apache.olingo.server.api.uri.queryoption.expression.BinaryOperatorKind;
+import org.apache.olingo.server.api.uri.queryoption.expression.Enumeration;
+import org.apache.olingo.server.api.uri.queryoption.expression.Expression;
+import org.apache.olingo.server.api.uri.queryoption.expression.Literal;
+import org.apache.olingo.server.api.uri.queryoption.expression.Member;
+import org.apache.olingo.server.api.uri.queryoption.expression.Method;
+import org.apache.olingo.server.api.uri.queryoption.expression.MethodKind;
+
+/**
+ * The columns of its own table a query looks up, as an index would see them: the columns compared for equality, those
+ * bounded by a range and those it sorts by. Only the conditions every row has to meet count, that is the operands of the
+ * top level <code>and</code>; an <code>or</code> of equalities over one column is an equality, as it becomes an <code>IN</code>.
+ * Columns are JPA paths from the root entity; conditions on related entities, on functions of a column and negations are
+ * not indexable this way and are left out.
+ *
+ * @author diego.cairone
+ */
+public final class AccessPattern {
+
+	private final Class<?> clazz;
+	private final SortedSet<String> equalities;
+	private final SortedSet<String> ranges;
+	private final List<String> sorts;
+
+	private AccessPattern(Class<?> clazz, SortedSet<String> equalities, SortedSet<String> ranges, List<String> sorts) {
+		this.clazz = clazz;
+		this.equalities = Collections.unmodifiableSortedSet(equalities);
+		this.ranges = Collections.unmodifiableSortedSet(ranges);
+		this.sorts = Collections.unmodifiableList(sorts);
+	}
+
+	/**
+	 * @param clazz The Edm class of the entity set
+	 * @param filterExpression The $filter in the canonical form of {@link com.cairone.olingo.ext.jpa.visitors.ExpressionNormalizer}, may be null
+	 * @param orderByOption The $orderby, may be null; it is left out for count queries
+	 */
+	public static AccessPattern of(Class<?> clazz, Expression filterExpression, OrderByOption orderByOption) {
+
+		SortedSet<String> equalities = new TreeSet<String>();
+		SortedSet<String> ranges = new TreeSet<String>();
+		List<String> sorts = new ArrayList<String>();
+
+		List<Expression> conjuncts = new ArrayList<Expression>();
+		if(filterExpression != null) flatten(filterExpression, conjuncts);
+
+		for(Expression conjunct : conjuncts) {
+
+			String column = equality(clazz, conjunct);
+			if(column != null) {
+				equalities.add(column);
+				continue;
+			}
+
+			column = range(clazz, conjunct);
+			if(column != null) ranges.add(column);
+		}
+
+		ranges.removeAll(equalities);
+
+		if(orderByOption != null) {
+			for(OrderByItem orderByItem : orderByOption.getOrders()) {
+				SortKey sortKey = SortKey.of(clazz, orderByItem);
+				if(sortKey == null || !sortKey.isRootColumn()) break;
+				sorts.add(sortKey.getJpaPath());
+			}
+		}
+
+		return new AccessPattern(clazz, equalities, ranges, sorts);
+	}
+
+	public Class<?> getClazz() {
+		return clazz;
+	}
+
+	public String getEntityName() {
+		return PropertyIndex.of(clazz).getEntityName();
+	}
+
+	/**
+	 * @return The columns compared for equality with a value, or with a list of values
+	 */
+	public SortedSet<String> getEqualities() {
+		return equalities;
+	}
+
+	/**
+	 * @return The columns bounded by a range, including <code>startswith</code>, that are not compared for equality as well
+	 */
+	public SortedSet<String> getRanges() {
+		return ranges;
+	}
+
+	/**
+	 * @return The leading $orderby columns of the own table, in order
+	 */
+	public List<String> getSorts() {
+		return sorts;
+	}
+
+	/**
+	 * @return Whether no index can help, because the query reads the whole table in no particular order
+	 */
+	public boolean isEmpty() {
+		return equalities.isEmpty() && ranges.isEmpty() && sorts.isEmpty();
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(clazz, equalities, ranges, sorts);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj) return true;
+		if(!(obj instanceof AccessPattern)) return false;
+		AccessPattern other = (AccessPattern) obj;
+		return clazz.equals(other.clazz) && equalities.equals(other.equalities) && ranges.equals(other.ranges) && sorts.equals(other.sorts);
+	}
+
+	@Override
+	public String toString() {
+		return "AccessPattern [entity=" + getEntityName() + ", equalities=" + equalities + ", ranges=" + ranges + ", sorts=" + sorts + "]";
+	}
+
+	private static void flatten(Expression expression, List<Expression> conjuncts) {
+		if(expression instanceof Binary && ((Binary) expression).getOperator() == BinaryOperatorKind.AND) {
+			flatten(((Binary) expression).getLeftOperand(), conjuncts);
+			flatten(((Binary) expression).getRightOperand(), conjuncts);
+		} else {
+			conjuncts.add(expression);
+		}
+	}
+
+	/**
+	 * @return The column of <code>x eq value</code>, or of an <code>or</code> of such equalities over one column, or null
+	 */
+	private static String equality(Class<?> clazz, Expression expression) {
+
+		if(!(expression instanceof Binary)) return null;
+
+		Binary binary = (Binary) expression;
+
+		if(binary.getOperator() == BinaryOperatorKind.OR) {
+			String left = equality(clazz, binary.getLeftOperand());
+			String right = equality(clazz, binary.getRightOperand());
+			return left != null && left.equals(right) ? left : null;
+		}
+
+		return binary.getOperator() == BinaryOperatorKind.EQ ? compared(clazz, binary) : null;
+	}
+
+	/**
+	 * @return The column of <code>x gt value</code> and the like, or of <code>startswith(x, value)</code>, or null
+	 */
+	private static String range(Class<?> clazz, Expression expression) {
+
+		if(expression instanceof Method) {
+			Method method = (Method) expression;
+			if(method.getMethod() != MethodKind.STARTSWITH || method.getParameters().size() != 2) return null;
+			if(!(method.getParameters().get(1) instanceof Literal)) return null;
+			return column(clazz, method.getParameters().get(0));
+		}
+
+		if(!(expression instanceof Binary)) return null;
+
+		switch(((Binary) expression).getOperator()) {
+		case GT:
+		case GE:
+		case LT:
+		case LE:
+			return compared(clazz, (Binary) expression);
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * The canonical form keeps literals on the right, but orders enumeration members with the members they are compared with
+	 */
+	private static String compared(Class<?> clazz, Binary binary) {
+		if(binary.getRightOperand() instanceof Literal || binary.getRightOperand() instanceof Enumeration) return column(clazz, binary.getLeftOperand());
+		if(binary.getLeftOperand() instanceof Enumeration) return column(clazz, binary.getRightOperand());
+		return null;
+	}
+
+	private static String column(Class<?> clazz, Expression expression) {
+
+		if(!(expression instanceof Member)) return null;
+
+		SortKey sortKey = SortKey.of(clazz, (Member) expression, false);
+		return sortKey == null || !sortKey.isRootColumn() ? null : sortKey.getJpaPath();
+	}
+}
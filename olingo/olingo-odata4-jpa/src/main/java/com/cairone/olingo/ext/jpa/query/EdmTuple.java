@@ -0,0 +1,48 @@
+package com.cairone.olingo.ext.jpa.query;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A row read by a projection query: the selected and key properties of an Edm entity, keyed by their Edm name.
+ * Processors serialize it directly, so no JPA entity nor Edm object is built for it.
+ *
+ * @author diego.cairone
+ */
+public final class EdmTuple {
+
+	private final Class<?> clazz;
+	private final Map<String, Object> values;
+
+	public EdmTuple(Class<?> clazz, Map<String, Object> values) {
+		this.clazz = clazz;
+		this.values = Collections.unmodifiableMap(values);
+	}
+
+	/**
+	 * @return The Edm class the row belongs to
+	 */
+	public Class<?> getClazz() {
+		return clazz;
+	}
+
+	/**
+	 * @return The values of the row by Edm property name, in select order
+	 */
+	public Map<String, Object> getValues() {
+		return values;
+	}
+
+	public boolean contains(String name) {
+		return values.containsKey(name);
+	}
+
+	public Object get(String name) {
+		return values.get(name);
+	}
+
+	@Override
+	public String toString() {
+		return clazz.getSimpleName() + " " + values;
+	}
+}
@@ -0,0 +1,232 @@
+package com.cairone.olingo.ext.jpa.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceNavigation;
+import org.apache.olingo.server.api.uri.queryoption.ExpandItem;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
+
+import com.cairone.olingo.ext.jpa.query.PropertyIndex.PropertyPath;
+
+/**
+ * Fetch strategy for a whole $expand tree. Every hop is resolved against the Edm class of the previous one.
+ * <p>
+ * Single-valued relationships are fetch joined in the main query, once each under their own alias. Collections are never
+ * joined there, so $skip and $top are applied by the database and root rows are not repeated: each expanded collection is
+ * read afterwards by a {@link Phase}, one <code>WHERE o IN (:owners)</code> query per collection level, that initializes it
+ * on the entities already read.
+ *
+ * @author diego.cairone
+ */
+public final class FetchPlan {
+
+	public static final String OWNER_ALIAS = "o";
+
+	private static final String ROOT_ALIAS = "e";
+	private static final String ALIAS_PREFIX = "f";
+
+	private final Node root = new Node(null, "", false);
+	private final Map<String, String> aliases = new LinkedHashMap<String, String>();
+	private final List<String> joins = new ArrayList<String>();
+	private final List<Phase> phases = new ArrayList<Phase>();
+
+	private FetchPlan() {}
+
+	/**
+	 * @param clazz The Edm class of the entity set
+	 * @param expandOption The $expand of the request, may be null
+	 */
+	public static FetchPlan from(Class<?> clazz, ExpandOption expandOption) {
+
+		FetchPlan fetchPlan = new FetchPlan();
+		fetchPlan.walk(clazz, fetchPlan.root, expandOption);
+
+		fetchPlan.plan(fetchPlan.root, ROOT_ALIAS, fetchPlan.aliases, fetchPlan.joins);
+
+		return fetchPlan;
+	}
+
+	/**
+	 * @return The JPA paths joined by the main query, from the root entity, each one mapped to its alias
+	 */
+	public Map<String, String> getAliases() {
+		return Collections.unmodifiableMap(aliases);
+	}
+
+	/**
+	 * @return The fetch joins of the main query, each one followed by a space, ready to be appended after the FROM clause
+	 */
+	public String getJoinClause() {
+		return toJoinClause(joins);
+	}
+
+	/**
+	 * @return The queries that read the expanded collections, parents before children
+	 */
+	public List<Phase> getPhases() {
+		return Collections.unmodifiableList(phases);
+	}
+
+	public boolean hasPhases() {
+		return !phases.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return getJoinClause().trim() + (phases.isEmpty() ? "" : " " + phases);
+	}
+
+	/**
+	 * Reads one expanded collection for a set of owners already read
+	 */
+	public static final class Phase {
+
+		private final List<String> ownerPath;
+		private final String joinClause;
+
+		private Phase(List<String> ownerPath, String joinClause) {
+			this.ownerPath = ownerPath;
+			this.joinClause = joinClause;
+		}
+
+		/**
+		 * @return The JPA segments that lead from a root entity to the owners of the collection, crossing collections read by earlier phases; empty when the root entities are the owners
+		 */
+		public List<String> getOwnerPath() {
+			return ownerPath;
+		}
+
+		/**
+		 * @return The fetch joins from the owner alias {@value FetchPlan#OWNER_ALIAS}: the collection and the single-valued relationships expanded below it
+		 */
+		public String getJoinClause() {
+			return joinClause;
+		}
+
+		/**
+		 * @param entityName The JPA entity name of the owners
+		 * @return A query whose <code>owners</code> parameter takes the owner entities
+		 */
+		public String getQueryString(String entityName) {
+			return String.format("SELECT DISTINCT %1$s FROM %2$s %1$s %3$sWHERE %1$s IN (:owners)", OWNER_ALIAS, entityName, joinClause);
+		}
+
+		@Override
+		public String toString() {
+			return "Phase [ownerPath=" + ownerPath + ", joins=" + joinClause.trim() + "]";
+		}
+	}
+
+	private static final class Node {
+
+		private final String segment;
+		private final String path;
+		private final boolean collection;
+		private final Map<String, Node> children = new LinkedHashMap<String, Node>();
+
+		private Node(String segment, String path, boolean collection) {
+			this.segment = segment;
+			this.path = path;
+			this.collection = collection;
+		}
+
+		private Node child(String segment, boolean collection) {
+			return children.computeIfAbsent(segment, key -> new Node(segment, path.isEmpty() ? segment : path + "." + segment, collection));
+		}
+	}
+
+	private void walk(Class<?> clazz, Node node, ExpandOption expandOption) {
+
+		if(expandOption == null) return;
+
+		for(ExpandItem expandItem : expandOption.getExpandItems()) {
+
+			if(expandItem.isStar() || expandItem.getResourcePath() == null) continue;
+
+			Class<?> cl = clazz;
+			Node current = node;
+
+			for(UriResource uriResource : expandItem.getResourcePath().getUriResourceParts()) {
+
+				if(!(uriResource instanceof UriResourceNavigation)) {
+					cl = null;
+					break;
+				}
+
+				String navPropName = ((UriResourceNavigation) uriResource).getProperty().getName();
+				PropertyPath navigation = PropertyIndex.of(cl).getNavigation(navPropName);
+
+				if(navigation == null || navigation.isIgnored()) {
+					cl = null;
+					break;
+				}
+
+				String jpaPath = navigation.getJpaPath();
+				boolean isCollection = navigation.isCollection();
+
+				String[] jpaSegments = jpaPath.split("\\.");
+				for(int i = 0; i < jpaSegments.length; i++) {
+					current = current.child(jpaSegments[i], isCollection && i == jpaSegments.length - 1);
+				}
+
+				cl = navigation.getTargetClass();
+				if(cl == null) break;
+			}
+
+			if(cl != null) walk(cl, current, expandItem.getExpandOption());
+		}
+	}
+
+	/**
+	 * Emits the joins of the single-valued relationships below a node, and a phase for every collection found on the way
+	 */
+	private void plan(Node node, String alias, Map<String, String> aliases, List<String> joins) {
+
+		for(Node child : node.children.values()) {
+
+			if(child.collection) {
+
+				List<String> ownerPath = node.path.isEmpty() ? Collections.emptyList() : Arrays.asList(node.path.split("\\."));
+
+				Map<String, String> phaseAliases = new LinkedHashMap<String, String>();
+				List<String> phaseJoins = new ArrayList<String>();
+				int phaseIndex = phases.size();
+				phases.add(null);
+
+				String childAlias = join(phaseAliases, phaseJoins, OWNER_ALIAS, child);
+				plan(child, childAlias, phaseAliases, phaseJoins);
+
+				phases.set(phaseIndex, new Phase(ownerPath, toJoinClause(phaseJoins)));
+
+			} else {
+				String childAlias = join(aliases, joins, alias, child);
+				plan(child, childAlias, aliases, joins);
+			}
+		}
+	}
+
+	private static String join(Map<String, String> aliases, List<String> joins, String parentAlias, Node node) {
+
+		String alias = aliases.get(node.path);
+
+		if(alias == null) {
+			alias = ALIAS_PREFIX + (aliases.size() + 1);
+			aliases.put(node.path, alias);
+			joins.add(String.format("LEFT JOIN FETCH %s.%s %s", parentAlias, node.segment, alias));
+		}
+
+		return alias;
+	}
+
+	private static String toJoinClause(List<String> joins) {
+		StringBuilder sb = new StringBuilder();
+		joins.forEach(join -> sb.append(join).append(" "));
+		return sb.toString();
+	}
+}
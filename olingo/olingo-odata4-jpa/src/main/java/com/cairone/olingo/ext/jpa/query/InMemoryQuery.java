@@ -0,0 +1,108 @@
+package com.cairone.olingo.ext.jpa.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.queryoption.FilterOption;
+import org.apache.olingo.server.api.uri.queryoption.OrderByItem;
+import org.apache.olingo.server.api.uri.queryoption.OrderByOption;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitException;
+
+import com.cairone.olingo.ext.jpa.visitors.InMemoryExpressionVisitor;
+import com.cairone.olingo.ext.jpa.visitors.InMemoryExpressionVisitor.Evaluator;
+
+/**
+ * $filter and $orderby compiled into a <code>Predicate</code> and a <code>Comparator</code> over Edm objects, for data sources
+ * that are not backed by JPA and for the results of functions. The options are compiled once per request with
+ * {@link InMemoryExpressionVisitor}; rows are then tested and sorted without visiting the expressions again.
+ * <p>
+ * Null values sort first in ascending order, as they do in most databases.
+ * <p>
+ * The $filter is compiled as it is written, not through {@link com.cairone.olingo.ext.jpa.visitors.ExpressionNormalizer}: a
+ * comparison with a null is false rather than unknown here, so <code>not (a lt b)</code> is not the same as <code>a ge b</code>.
+ *
+ * @author diego.cairone
+ */
+public final class InMemoryQuery<T> {
+
+	private final Predicate<T> predicate;
+	private final Comparator<T> comparator;
+
+	private InMemoryQuery(Predicate<T> predicate, Comparator<T> comparator) {
+		this.predicate = predicate;
+		this.comparator = comparator;
+	}
+
+	/**
+	 * @param clazz The Edm class of the rows
+	 * @param filterOption The $filter, or null to keep every row
+	 * @param orderByOption The $orderby, or null to keep the order of the rows
+	 */
+	public static <T> InMemoryQuery<T> compile(Class<T> clazz, FilterOption filterOption, OrderByOption orderByOption) throws ODataApplicationException {
+
+		Predicate<T> predicate = null;
+		Comparator<T> comparator = null;
+
+		try {
+			if(filterOption != null && filterOption.getExpression() != null) {
+				Evaluator evaluator = filterOption.getExpression().accept(new InMemoryExpressionVisitor(clazz));
+				predicate = evaluator::test;
+			}
+
+			if(orderByOption != null) {
+				for(OrderByItem orderByItem : orderByOption.getOrders()) {
+					Evaluator evaluator = orderByItem.getExpression().accept(new InMemoryExpressionVisitor(clazz));
+					Comparator<T> itemComparator = (a, b) -> compare(evaluator.evaluate(a, Collections.emptyMap()), evaluator.evaluate(b, Collections.emptyMap()));
+					if(orderByItem.isDescending()) itemComparator = itemComparator.reversed();
+					comparator = comparator == null ? itemComparator : comparator.thenComparing(itemComparator);
+				}
+			}
+		} catch (ExpressionVisitException e) {
+			throw new ODataApplicationException(e.getMessage(), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
+		}
+
+		return new InMemoryQuery<T>(predicate, comparator);
+	}
+
+	/**
+	 * @return The compiled $filter, or null without one
+	 */
+	public Predicate<T> getPredicate() {
+		return predicate;
+	}
+
+	/**
+	 * @return The compiled $orderby, or null without one
+	 */
+	public Comparator<T> getComparator() {
+		return comparator;
+	}
+
+	/**
+	 * @return The rows that pass the $filter, sorted by the $orderby
+	 */
+	public List<T> apply(Iterable<? extends T> rows) {
+
+		List<T> result = new ArrayList<T>();
+
+		for(T row : rows) {
+			if(predicate == null || predicate.test(row)) result.add(row);
+		}
+
+		if(comparator != null) result.sort(comparator);
+
+		return result;
+	}
+
+	private static int compare(Object a, Object b) {
+		if(a == null || b == null) return a == null ? (b == null ? 0 : -1) : 1;
+		Integer comparison = InMemoryExpressionVisitor.compare(a, b);
+		return comparison == null ? 0 : comparison;
+	}
+}
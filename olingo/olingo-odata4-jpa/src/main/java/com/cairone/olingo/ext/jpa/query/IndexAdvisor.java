@@ -0,0 +1,292 @@
+package com.cairone.olingo.ext.jpa.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Usage statistics of the queries built by {@link JPQLQueryBuilder}, grouped by {@link AccessPattern}: how many ran and how
+ * long they took. From them it recommends composite indexes: the equality columns of a pattern, the most used first, followed
+ * by its most used range column or, without one, by its sort columns. Patterns served by the primary key are left out, and
+ * an index whose columns start another one is merged into it, as the longer one serves both.
+ * <p>
+ * The time an index saves can not be known without the execution plans, so it is estimated as a fixed part of the time taken
+ * by the queries it serves. The number of patterns is bounded; new patterns are not recorded once the bound is reached.
+ *
+ * @author diego.cairone
+ */
+public final class IndexAdvisor {
+
+	public static final int DEFAULT_MAXIMUM_PATTERNS = 1000;
+	public static final double DEFAULT_EXPECTED_SAVING = 0.5;
+
+	private static final IndexAdvisor DEFAULT = new IndexAdvisor(DEFAULT_MAXIMUM_PATTERNS);
+
+	private final int maximumPatterns;
+	private final ConcurrentMap<AccessPattern, Usage> usages = new ConcurrentHashMap<AccessPattern, Usage>();
+	private volatile double expectedSaving = DEFAULT_EXPECTED_SAVING;
+
+	public IndexAdvisor(int maximumPatterns) {
+		this.maximumPatterns = maximumPatterns;
+	}
+
+	/**
+	 * @return The advisor shared by the query builders that are not given one
+	 */
+	public static IndexAdvisor getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @param expectedSaving The part of the time of the queries an index serves that it is expected to save, between 0 and 1
+	 */
+	public IndexAdvisor setExpectedSaving(double expectedSaving) {
+		this.expectedSaving = Math.max(0, Math.min(1, expectedSaving));
+		return this;
+	}
+
+	public double getExpectedSaving() {
+		return expectedSaving;
+	}
+
+	public int getMaximumPatterns() {
+		return maximumPatterns;
+	}
+
+	/**
+	 * @param nanos The time the query took, in nanoseconds
+	 */
+	public void record(AccessPattern accessPattern, long nanos) {
+
+		Usage usage = usages.get(accessPattern);
+
+		if(usage == null) {
+			if(usages.size() >= maximumPatterns) return;
+			usage = usages.computeIfAbsent(accessPattern, key -> new Usage());
+		}
+
+		usage.count.increment();
+		usage.nanos.add(nanos);
+	}
+
+	/**
+	 * @return The statistics of every pattern observed
+	 */
+	public Map<AccessPattern, Usage> getUsages() {
+		return Collections.unmodifiableMap(usages);
+	}
+
+	/**
+	 * @return How the queries on an entity set used every column of its own table, by JPA path
+	 */
+	public Map<String, ColumnUsage> getColumnUsages(Class<?> clazz) {
+
+		Map<String, ColumnUsage> columnUsages = new TreeMap<String, ColumnUsage>();
+
+		usages.forEach((accessPattern, usage) -> {
+			if(!accessPattern.getClazz().equals(clazz)) return;
+			long count = usage.getCount();
+			accessPattern.getEqualities().forEach(column -> columnUsages.computeIfAbsent(column, key -> new ColumnUsage()).equalities += count);
+			accessPattern.getRanges().forEach(column -> columnUsages.computeIfAbsent(column, key -> new ColumnUsage()).ranges += count);
+			accessPattern.getSorts().forEach(column -> columnUsages.computeIfAbsent(column, key -> new ColumnUsage()).sorts += count);
+		});
+
+		return columnUsages;
+	}
+
+	/**
+	 * @return The recommended indexes, those expected to save more time first
+	 */
+	public List<IndexRecommendation> recommend() {
+
+		Map<Class<?>, Map<List<String>, long[]>> candidates = new HashMap<Class<?>, Map<List<String>, long[]>>();
+		Map<Class<?>, Map<String, ColumnUsage>> columnUsages = new HashMap<Class<?>, Map<String, ColumnUsage>>();
+
+		usages.forEach((accessPattern, usage) -> {
+
+			Class<?> clazz = accessPattern.getClazz();
+			Map<String, ColumnUsage> columnUsage = columnUsages.computeIfAbsent(clazz, this::getColumnUsages);
+
+			List<String> columns = getColumns(accessPattern, columnUsage);
+			if(columns.isEmpty()) return;
+
+			long[] totals = candidates.computeIfAbsent(clazz, key -> new LinkedHashMap<List<String>, long[]>()).computeIfAbsent(columns, key -> new long[2]);
+			totals[0] += usage.getCount();
+			totals[1] += usage.getNanos();
+		});
+
+		List<IndexRecommendation> recommendations = new ArrayList<IndexRecommendation>();
+
+		candidates.forEach((clazz, indexes) -> {
+
+			List<List<String>> longestFirst = new ArrayList<List<String>>(indexes.keySet());
+			longestFirst.sort(Comparator.comparing(List::size, Comparator.reverseOrder()));
+
+			Map<List<String>, long[]> merged = new LinkedHashMap<List<String>, long[]>();
+
+			for(List<String> columns : longestFirst) {
+				long[] totals = indexes.get(columns);
+				List<String> covering = merged.keySet().stream()
+					.filter(longer -> longer.size() > columns.size() && longer.subList(0, columns.size()).equals(columns))
+					.findFirst()
+					.orElse(null);
+				if(covering == null) {
+					merged.put(columns, totals.clone());
+				} else {
+					merged.get(covering)[0] += totals[0];
+					merged.get(covering)[1] += totals[1];
+				}
+			}
+
+			String entityName = PropertyIndex.of(clazz).getEntityName();
+			merged.forEach((columns, totals) -> recommendations.add(new IndexRecommendation(entityName, columns, totals[0], totals[1], (long) (totals[1] * expectedSaving))));
+		});
+
+		recommendations.sort(Comparator.comparing(IndexRecommendation::getSavedNanos, Comparator.reverseOrder()));
+
+		return recommendations;
+	}
+
+	/**
+	 * @return A plain text report for DBAs: the queries and time of every entity, how its columns were used, and the recommended indexes
+	 */
+	public String getReport() {
+
+		StringBuilder sb = new StringBuilder();
+		Map<Class<?>, long[]> totals = new TreeMap<Class<?>, long[]>(Comparator.comparing(clazz -> PropertyIndex.of(clazz).getEntityName()));
+
+		usages.forEach((accessPattern, usage) -> {
+			long[] total = totals.computeIfAbsent(accessPattern.getClazz(), key -> new long[2]);
+			total[0] += usage.getCount();
+			total[1] += usage.getNanos();
+		});
+
+		totals.forEach((clazz, total) -> {
+			sb.append(String.format("%s: %d queries, %d ms%n", PropertyIndex.of(clazz).getEntityName(), total[0], TimeUnit.NANOSECONDS.toMillis(total[1])));
+			getColumnUsages(clazz).entrySet().stream()
+				.sorted(Comparator.comparing((Map.Entry<String, ColumnUsage> entry) -> entry.getValue().getTotal()).reversed())
+				.forEach(entry -> sb.append(String.format("  %s: %s%n", entry.getKey(), entry.getValue())));
+		});
+
+		List<IndexRecommendation> recommendations = recommend();
+
+		sb.append(String.format("Recommended indexes: %d%n", recommendations.size()));
+		recommendations.forEach(recommendation -> sb.append(String.format("  %s%n", recommendation)));
+
+		return sb.toString();
+	}
+
+	public void clear() {
+		usages.clear();
+	}
+
+	@Override
+	public String toString() {
+		return "IndexAdvisor [patterns=" + usages.size() + ", maximumPatterns=" + maximumPatterns + ", expectedSaving=" + expectedSaving + "]";
+	}
+
+	/**
+	 * Equality columns by decreasing use, so the index is shared by more patterns; then one range column, as the columns after
+	 * a range can not narrow the lookup, or else the sort columns, which let the database read the rows in order
+	 *
+	 * @return The columns of the index that serves the pattern, or an empty list when none is needed
+	 */
+	private static List<String> getColumns(AccessPattern accessPattern, Map<String, ColumnUsage> columnUsage) {
+
+		Set<String> equalities = accessPattern.getEqualities();
+		PropertyIndex propertyIndex = PropertyIndex.of(accessPattern.getClazz());
+		List<String> keys = propertyIndex.getKeys().stream()
+			.map(propertyIndex::getProperty)
+			.map(property -> property == null ? null : property.getJpaPath())
+			.collect(Collectors.toList());
+
+		if(!keys.isEmpty() && equalities.containsAll(keys)) return Collections.emptyList();
+
+		Comparator<String> byEqualities = Comparator.comparing((String column) -> columnUsage.get(column).equalities).reversed().thenComparing(Comparator.naturalOrder());
+		Comparator<String> byRanges = Comparator.comparing((String column) -> columnUsage.get(column).ranges).reversed().thenComparing(Comparator.naturalOrder());
+
+		List<String> columns = equalities.stream().sorted(byEqualities).collect(Collectors.toList());
+
+		if(!accessPattern.getRanges().isEmpty()) {
+			columns.add(accessPattern.getRanges().stream().sorted(byRanges).findFirst().get());
+		} else {
+			accessPattern.getSorts().stream().filter(column -> !columns.contains(column)).forEach(columns::add);
+		}
+
+		if(columns.equals(keys.subList(0, Math.min(keys.size(), columns.size())))) return Collections.emptyList();
+
+		return columns;
+	}
+
+	/**
+	 * The queries of one access pattern
+	 */
+	public static final class Usage {
+
+		private final LongAdder count = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getNanos() {
+			return nanos.sum();
+		}
+
+		/**
+		 * @return The mean time of a query, in milliseconds
+		 */
+		public double getMeanMillis() {
+			long count = getCount();
+			return count == 0 ? 0 : getNanos() / (count * 1e6);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Usage [count=%d, meanMillis=%.3f]", getCount(), getMeanMillis());
+		}
+	}
+
+	/**
+	 * How many queries used a column for equality, for a range and for sorting
+	 */
+	public static final class ColumnUsage {
+
+		private long equalities = 0;
+		private long ranges = 0;
+		private long sorts = 0;
+
+		public long getEqualities() {
+			return equalities;
+		}
+
+		public long getRanges() {
+			return ranges;
+		}
+
+		public long getSorts() {
+			return sorts;
+		}
+
+		public long getTotal() {
+			return equalities + ranges + sorts;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d eq, %d range, %d sort", equalities, ranges, sorts);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package com.cairone.olingo.ext.jpa.query;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A composite index an {@link IndexAdvisor} recommends, in JPA terms: the entity and the paths of its columns, in index order.
+ *
+ * @author diego.cairone
+ */
+public final class IndexRecommendation {
+
+	private final String entityName;
+	private final List<String> columns;
+	private final long queries;
+	private final long observedNanos;
+	private final long savedNanos;
+
+	IndexRecommendation(String entityName, List<String> columns, long queries, long observedNanos, long savedNanos) {
+		this.entityName = entityName;
+		this.columns = Collections.unmodifiableList(columns);
+		this.queries = queries;
+		this.observedNanos = observedNanos;
+		this.savedNanos = savedNanos;
+	}
+
+	public String getEntityName() {
+		return entityName;
+	}
+
+	/**
+	 * @return The JPA paths of the columns: equality columns first, then the range or sort columns
+	 */
+	public List<String> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return The number of queries observed that the index would serve
+	 */
+	public long getQueries() {
+		return queries;
+	}
+
+	/**
+	 * @return The time those queries took, in milliseconds
+	 */
+	public long getObservedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(observedNanos);
+	}
+
+	/**
+	 * @return The part of that time the index is expected to save, in milliseconds
+	 */
+	public long getEstimatedSavedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(savedNanos);
+	}
+
+	long getSavedNanos() {
+		return savedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s (%s): %d queries, %d ms observed, ~%d ms saved", entityName, String.join(", ", columns), queries, getObservedMillis(), getEstimatedSavedMillis());
+	}
+}
@@ -1,20 +1,94 @@
 package com.cairone.olingo.ext.jpa.query;
 
+import java.lang.reflect.Field;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
+import javax.persistence.PersistenceException;
 import javax.persistence.Query;
+import javax.persistence.metamodel.EntityType;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.util.ReflectionUtils;
+
+import com.cairone.olingo.ext.jpa.enums.EnumerationTreatedAs;
+import com.cairone.olingo.ext.jpa.interfaces.OdataEnum;
+import com.cairone.olingo.ext.jpa.query.PropertyIndex.PropertyPath;
+import com.google.common.collect.Lists;
 
 public final class JPQLQuery {
 
+	public static final int DEFAULT_FETCH_SIZE = 100;
+
+	private static final int OWNERS_PER_QUERY = 500;
+
 	private final String queryString;
     private final Map<String, Object> queryParams;
-    
+    private final Class<?> clazz;
+    private final List<Field> projection;
+    private final FetchPlan fetchPlan;
+    private final AccessPattern accessPattern;
+    private final IndexAdvisor indexAdvisor;
+    private final boolean readOnly;
+
 	public JPQLQuery(String queryString, Map<String, Object> queryParams) {
+		this(queryString, queryParams, null, Collections.emptyList(), null);
+	}
+
+	/**
+	 * @param projection The Edm fields read by a projection query, empty when the query reads whole entities
+	 * @param fetchPlan The fetch plan of the $expand, whose phases read the expanded collections after the main query; may be null
+	 */
+	public JPQLQuery(String queryString, Map<String, Object> queryParams, Class<?> clazz, List<Field> projection, FetchPlan fetchPlan) {
+		this(queryString, queryParams, clazz, projection, fetchPlan, null, null);
+	}
+
+	/**
+	 * @param accessPattern The columns the query looks up, recorded with the time of every execution; may be null
+	 * @param indexAdvisor Receives the time of every execution; may be null
+	 */
+	public JPQLQuery(String queryString, Map<String, Object> queryParams, Class<?> clazz, List<Field> projection, FetchPlan fetchPlan, AccessPattern accessPattern, IndexAdvisor indexAdvisor) {
+		this(queryString, queryParams, clazz, projection, fetchPlan, accessPattern, indexAdvisor, false);
+	}
+
+	/**
+	 * @param readOnly Whether the entities read are only serialized, so they are loaded without the snapshots used to detect changes
+	 */
+	public JPQLQuery(String queryString, Map<String, Object> queryParams, Class<?> clazz, List<Field> projection, FetchPlan fetchPlan, AccessPattern accessPattern, IndexAdvisor indexAdvisor, boolean readOnly) {
 		super();
 		this.queryString = queryString;
 		this.queryParams = queryParams;
+		this.clazz = clazz;
+		this.projection = projection;
+		this.fetchPlan = fetchPlan;
+		this.accessPattern = accessPattern;
+		this.indexAdvisor = indexAdvisor;
+		this.readOnly = readOnly;
 	}
 
 	public String getQueryString() {
@@ -25,23 +99,408 @@ public final class JPQLQuery {
 		return queryParams;
 	}
 
+	public Class<?> getClazz() {
+		return clazz;
+	}
+
+	/**
+	 * @return The Edm fields read by a projection query, in select order; empty when the query reads whole entities
+	 */
+	public List<Field> getProjection() {
+		return projection;
+	}
+
+	public boolean isProjection() {
+		return !projection.isEmpty();
+	}
+
+	public FetchPlan getFetchPlan() {
+		return fetchPlan;
+	}
+
+	public AccessPattern getAccessPattern() {
+		return accessPattern;
+	}
+
+	public IndexAdvisor getIndexAdvisor() {
+		return indexAdvisor;
+	}
+
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
 	@Override
 	public String toString() {
 		return queryString + ", params=" + queryParams;
 	}
 
-    @SuppressWarnings("unchecked")
 	public static <T> List<T> execute(EntityManager em, JPQLQuery jpaQuery) {
+		return execute(em, jpaQuery, null, null);
+	}
 
-        String queryString = jpaQuery.getQueryString();
-        
-        Query query = em.createQuery(queryString);
-        Map<String, Object> queryParams = jpaQuery.getQueryParams();
+    @SuppressWarnings("unchecked")
+	public static <T> List<T> execute(EntityManager em, JPQLQuery jpaQuery, Integer skip, Integer top) {
+
+        Query query = createQuery(em, jpaQuery);
 
-        for (Map.Entry<String, Object> entry : queryParams.entrySet()) {
-        	query.setParameter(entry.getKey(), entry.getValue());
+        if(skip != null && skip > 0) query.setFirstResult(skip);
+        if(top != null) query.setMaxResults(top);
+
+        long start = System.nanoTime();
+        List<T> results = query.getResultList();
+        record(jpaQuery, start);
+        
+        if(jpaQuery.fetchPlan != null && jpaQuery.fetchPlan.hasPhases() && !jpaQuery.isProjection()) {
+        	fetchCollections(em, results, jpaQuery.fetchPlan, jpaQuery.readOnly);
         }
 
-        return query.getResultList();
+        return results;
     }
+
+    /**
+     * Executes a projection query built from a $select, turning every row into an {@link EdmTuple} with values of the Edm field types
+     */
+	public static List<EdmTuple> executeProjection(EntityManager em, JPQLQuery jpaQuery, Integer skip, Integer top) {
+
+		List<Object> rows = execute(em, jpaQuery, skip, top);
+
+		return rows.stream()
+			.map(row -> toEdmTuple(jpaQuery, row))
+			.collect(Collectors.toList());
+	}
+
+	public static <T> ResultStream<T> stream(EntityManager em, JPQLQuery jpaQuery, Integer skip, Integer top) {
+		return stream(em, jpaQuery, skip, top, DEFAULT_FETCH_SIZE);
+	}
+
+	/**
+	 * Executes the query with a forward-only cursor. Rows are read in windows of <code>fetchSize</code>: before every window
+	 * but the first the entities the previous window brought into the persistence context are detached, so they can be garbage
+	 * collected, and the expanded collections of the window are read by the phases of the fetch plan. Entities that were already
+	 * managed when the stream started stay managed, with their unflushed changes.
+	 * <p>
+	 * The cursor is a Hibernate <code>ScrollableResults</code>; with other providers every window is read with its own
+	 * <code>setFirstResult</code>/<code>setMaxResults</code> query, and entities are never detached, so a large read needs an
+	 * EntityManager of its own. Entities of a window must be converted before the next one is read.
+	 *
+	 * @param fetchSize The JDBC fetch size, and the number of rows between clears of the persistence context
+	 * @return The rows, read while iterating; the stream closes the cursor when exhausted or closed
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> ResultStream<T> stream(EntityManager em, JPQLQuery jpaQuery, Integer skip, Integer top, int fetchSize) {
+
+		Query query = createQuery(em, jpaQuery);
+
+		if(skip != null && skip > 0) query.setFirstResult(skip);
+		if(top != null) query.setMaxResults(top);
+
+		ScrollableResults scrollableResults = null;
+
+		try {
+			scrollableResults = query.unwrap(org.hibernate.Query.class)
+				.setFetchSize(fetchSize)
+				.scroll(ScrollMode.FORWARD_ONLY);
+		} catch (PersistenceException e) {
+			scrollableResults = null;
+		}
+
+		Function<Integer, List<T>> windowReader;
+		AtomicBoolean open = new AtomicBoolean(scrollableResults != null);
+		ScrollableResults cursor = scrollableResults;
+		AutoCloseable closeable = () -> {
+			if(open.compareAndSet(true, false)) cursor.close();
+		};
+
+		if(cursor != null) {
+			windowReader = offset -> {
+				List<T> window = new ArrayList<T>();
+				while(window.size() < fetchSize) {
+					if(!open.get() || !cursor.next()) {
+						if(open.compareAndSet(true, false)) cursor.close();
+						break;
+					}
+					Object[] row = cursor.get();
+					window.add((T) (row.length == 1 ? row[0] : row));
+				}
+				return window;
+			};
+		} else {
+			int first = skip == null ? 0 : skip;
+			windowReader = offset -> {
+				int maxResults = top == null ? fetchSize : Math.min(fetchSize, top - offset);
+				if(maxResults <= 0) return Collections.emptyList();
+				return createQuery(em, jpaQuery)
+					.setFirstResult(first + offset)
+					.setMaxResults(maxResults)
+					.getResultList();
+			};
+		}
+
+		WindowIterator<T> iterator = new WindowIterator<T>(em, jpaQuery, offset -> {
+			long start = System.nanoTime();
+			List<T> window = windowReader.apply(offset);
+			record(jpaQuery, start);
+			return window;
+		}, fetchSize);
+
+		return new ResultStream<T>(iterator, closeable);
+	}
+
+	public static ResultStream<EdmTuple> streamProjection(EntityManager em, JPQLQuery jpaQuery, Integer skip, Integer top) {
+		return streamProjection(em, jpaQuery, skip, top, DEFAULT_FETCH_SIZE);
+	}
+
+	/**
+	 * Same as {@link #stream(EntityManager, JPQLQuery, Integer, Integer, int)} for a projection query, turning every row into an {@link EdmTuple}
+	 */
+	public static ResultStream<EdmTuple> streamProjection(EntityManager em, JPQLQuery jpaQuery, Integer skip, Integer top, int fetchSize) {
+		ResultStream<Object> rows = stream(em, jpaQuery, skip, top, fetchSize);
+		return rows.map(row -> toEdmTuple(jpaQuery, row));
+	}
+
+	public static long count(EntityManager em, JPQLQuery jpaQuery) {
+
+		Query query = createQuery(em, jpaQuery);
+
+		long start = System.nanoTime();
+		Number result = (Number) query.getSingleResult();
+		record(jpaQuery, start);
+
+		return result == null ? 0L : result.longValue();
+	}
+
+	/**
+	 * Hands the time of an execution to the index advisor of the query; the phases of the fetch plan are not included
+	 */
+	private static void record(JPQLQuery jpaQuery, long start) {
+		if(jpaQuery.indexAdvisor != null && jpaQuery.accessPattern != null) {
+			jpaQuery.indexAdvisor.record(jpaQuery.accessPattern, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Second phase of a read with expanded collections: every collection level is read with one query per
+	 * {@value #OWNERS_PER_QUERY} owners, and initialized on the entities of the persistence context
+	 */
+	private static void fetchCollections(EntityManager em, List<?> roots, FetchPlan fetchPlan, boolean readOnly) {
+
+		for(FetchPlan.Phase phase : fetchPlan.getPhases()) {
+
+			List<Object> owners = new ArrayList<Object>(roots);
+			for(String segment : phase.getOwnerPath()) {
+				owners = navigate(owners, segment);
+			}
+
+			Map<String, List<Object>> ownersByEntityName = new LinkedHashMap<String, List<Object>>();
+			Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+			for(Object owner : owners) {
+				if(visited.add(owner)) {
+					ownersByEntityName.computeIfAbsent(getEntityName(em, owner), key -> new ArrayList<Object>()).add(owner);
+				}
+			}
+
+			ownersByEntityName.forEach((entityName, entityOwners) -> {
+				String queryString = phase.getQueryString(entityName);
+				for(List<Object> chunk : Lists.partition(entityOwners, OWNERS_PER_QUERY)) {
+					Query query = em.createQuery(queryString).setParameter("owners", chunk);
+					if(readOnly) setReadOnly(query);
+					query.getResultList();
+				}
+			});
+		}
+	}
+
+	private static List<Object> navigate(List<Object> objects, String segment) {
+
+		List<Object> values = new ArrayList<Object>();
+
+		for(Object object : objects) {
+			BeanWrapper beanWrapper = new BeanWrapperImpl(object);
+			Object value = null;
+			if(beanWrapper.isReadableProperty(segment)) {
+				value = beanWrapper.getPropertyValue(segment);
+			} else {
+				Field field = ReflectionUtils.findField(object.getClass(), segment);
+				if(field != null) {
+					ReflectionUtils.makeAccessible(field);
+					value = ReflectionUtils.getField(field, object);
+				}
+			}
+			if(value instanceof Collection) {
+				values.addAll((Collection<?>) value);
+			} else if(value != null) {
+				values.add(value);
+			}
+		}
+
+		return values;
+	}
+
+	private static String getEntityName(EntityManager em, Object entity) {
+
+		Set<EntityType<?>> entityTypes = em.getMetamodel().getEntities();
+
+		return entityTypes.stream()
+			.filter(entityType -> entityType.getJavaType().equals(entity.getClass()))
+			.findFirst()
+			.orElseGet(() -> entityTypes.stream()
+				.filter(entityType -> entityType.getJavaType().isInstance(entity))
+				.reduce((a, b) -> a.getJavaType().isAssignableFrom(b.getJavaType()) ? b : a)
+				.orElseThrow(() -> new IllegalArgumentException(entity.getClass().getName() + " is not an entity")))
+			.getName();
+	}
+
+	private static Query createQuery(EntityManager em, JPQLQuery jpaQuery) {
+
+		Query query = em.createQuery(jpaQuery.getQueryString());
+		Map<String, Object> queryParams = jpaQuery.getQueryParams();
+
+		for (Map.Entry<String, Object> entry : queryParams.entrySet()) {
+			query.setParameter(entry.getKey(), entry.getValue());
+		}
+
+		if(jpaQuery.isReadOnly()) setReadOnly(query);
+
+		return query;
+	}
+
+	/**
+	 * Loads the entities of the query read-only, without the snapshots Hibernate keeps to detect changes, and skips the flush
+	 * that would otherwise precede the query. Other providers ignore the hint.
+	 */
+	private static void setReadOnly(Query query) {
+		query.setHint(QueryHints.HINT_READONLY, Boolean.TRUE);
+		query.setFlushMode(FlushModeType.COMMIT);
+	}
+
+	private static EdmTuple toEdmTuple(JPQLQuery jpaQuery, Object row) {
+
+		List<Field> projection = jpaQuery.getProjection();
+		Object[] columns = projection.size() == 1 ? new Object[] { row } : (Object[]) row;
+		Map<String, Object> values = new LinkedHashMap<String, Object>();
+
+		PropertyIndex propertyIndex = PropertyIndex.of(jpaQuery.clazz);
+
+		for(int i = 0; i < projection.size(); i++) {
+			PropertyPath property = propertyIndex.get(projection.get(i));
+			values.put(property.getEdmName(), toEdmValue(property, columns[i]));
+		}
+
+		return new EdmTuple(jpaQuery.clazz, values);
+	}
+
+	/**
+	 * Reads the rows of a stream window by window, clearing the persistence context between windows
+	 */
+	private static final class WindowIterator<T> implements Iterator<T> {
+
+		private final EntityManager em;
+		private final JPQLQuery jpaQuery;
+		private final Function<Integer, List<T>> windowReader;
+		private final int fetchSize;
+		private final Set<Object> retained;
+
+		private Iterator<T> window = Collections.emptyIterator();
+		private int offset = 0;
+		private boolean exhausted = false;
+
+		private WindowIterator(EntityManager em, JPQLQuery jpaQuery, Function<Integer, List<T>> windowReader, int fetchSize) {
+			this.em = em;
+			this.jpaQuery = jpaQuery;
+			this.windowReader = windowReader;
+			this.fetchSize = fetchSize;
+			this.retained = getManagedEntities(em);
+		}
+
+		@Override
+		public boolean hasNext() {
+
+			if(window.hasNext()) return true;
+			if(exhausted) return false;
+
+			if(offset > 0) detachWindow();
+
+			List<T> rows = windowReader.apply(offset);
+			if(rows.size() < fetchSize) exhausted = true;
+
+			if(!rows.isEmpty() && jpaQuery.fetchPlan != null && jpaQuery.fetchPlan.hasPhases() && !jpaQuery.isProjection()) {
+				fetchCollections(em, rows, jpaQuery.fetchPlan, jpaQuery.isReadOnly());
+			}
+
+			offset += rows.size();
+			window = rows.iterator();
+
+			return window.hasNext();
+		}
+
+		@Override
+		public T next() {
+			if(!hasNext()) throw new NoSuchElementException();
+			return window.next();
+		}
+
+		/**
+		 * Detaches the entities managed since the stream started; an entity detached by the cascade of another one is skipped
+		 */
+		private void detachWindow() {
+
+			Set<Object> managed = getManagedEntities(em);
+			if(managed == null) return;
+
+			for(Object entity : managed) {
+				if(!retained.contains(entity) && em.contains(entity)) em.detach(entity);
+			}
+		}
+
+		/**
+		 * @return The entities of the persistence context, by identity, or null when the provider is not Hibernate
+		 */
+		private static Set<Object> getManagedEntities(EntityManager em) {
+
+			Session session;
+
+			try {
+				session = em.unwrap(Session.class);
+			} catch (PersistenceException e) {
+				return null;
+			}
+
+			if(!(session instanceof SessionImplementor)) return null;
+
+			Set<Object> entities = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+			for(Map.Entry<Object, EntityEntry> entry : ((SessionImplementor) session).getPersistenceContext().reentrantSafeEntityEntries()) {
+				entities.add(entry.getKey());
+			}
+
+			return entities;
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object toEdmValue(PropertyPath property, Object value) {
+
+		Class<?> type = property.getField().getType();
+
+		if(value == null || type.isInstance(value)) {
+			return value;
+		} else if(type.equals(LocalDateTime.class) && value instanceof Date) {
+			return LocalDateTime.ofInstant(Instant.ofEpochMilli(((Date) value).getTime()), ZoneId.systemDefault());
+		} else if(type.equals(LocalDate.class) && value instanceof Date) {
+			return LocalDateTime.ofInstant(Instant.ofEpochMilli(((Date) value).getTime()), ZoneId.systemDefault()).toLocalDate();
+		} else if(!type.isEnum()) {
+			return value;
+		}
+
+		if(EnumerationTreatedAs.NUMERIC.equals(property.getTreatedAs())) {
+			int ordinal = ((Number) value).intValue();
+			for(Object constant : type.getEnumConstants()) {
+				if(((OdataEnum<?>) constant).getOrdinal() == ordinal) return constant;
+			}
+			return null;
+		}
+
+		return Enum.valueOf((Class<? extends Enum>) type, value.toString());
+	}
 }
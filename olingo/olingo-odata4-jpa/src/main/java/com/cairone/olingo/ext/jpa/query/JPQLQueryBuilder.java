@@ -2,60 +2,164 @@ package com.cairone.olingo.ext.jpa.query;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.stream.Collectors;
 
-import org.apache.olingo.commons.api.edm.EdmNavigationProperty;
-import org.apache.olingo.commons.api.edm.EdmProperty;
 import org.apache.olingo.commons.api.http.HttpStatusCode;
 import org.apache.olingo.server.api.ODataApplicationException;
 import org.apache.olingo.server.api.uri.UriInfoResource;
 import org.apache.olingo.server.api.uri.UriResource;
-import org.apache.olingo.server.api.uri.UriResourceNavigation;
 import org.apache.olingo.server.api.uri.UriResourcePrimitiveProperty;
+import org.apache.olingo.server.api.uri.queryoption.ExpandItem;
 import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
 import org.apache.olingo.server.api.uri.queryoption.FilterOption;
+import org.apache.olingo.server.api.uri.queryoption.OrderByItem;
 import org.apache.olingo.server.api.uri.queryoption.OrderByOption;
+import org.apache.olingo.server.api.uri.queryoption.SelectItem;
+import org.apache.olingo.server.api.uri.queryoption.SelectOption;
 import org.apache.olingo.server.api.uri.queryoption.expression.Expression;
 import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitException;
-import org.apache.olingo.server.api.uri.queryoption.expression.Member;
+import org.apache.olingo.server.api.uri.queryoption.expression.Literal;
 
-import com.cairone.olingo.ext.jpa.annotations.ODataJPAEntity;
-import com.cairone.olingo.ext.jpa.annotations.ODataJPAProperty;
+import com.cairone.olingo.ext.jpa.query.PropertyIndex.PropertyPath;
+import com.cairone.olingo.ext.jpa.visitors.ExpressionNormalizer;
 import com.cairone.olingo.ext.jpa.visitors.FilterExpressionVisitor;
+import com.cairone.olingo.ext.jpa.visitors.FilterExpressionVisitor.ParameterBinder;
+import com.cairone.olingo.ext.jpa.visitors.ShapeExpressionVisitor;
 
 public final class JPQLQueryBuilder {
 
+	static final String SKIPTOKEN_PARAM = "skiptoken";
+
 	private boolean distinct = true;
 	private Class<?> clazz = null;
 	
 	private ExpandOption expandOption;
 	private FilterOption filterOption; 
+	private Expression filterExpression;
 	private OrderByOption orderByOption;
-	
-	private Map<String, Object> queryParams = new HashMap<String, Object>();
+	private SelectOption selectOption;
+	private SkipToken skipToken;
+	private SearchRestriction searchRestriction;
+	private QueryPlanCache queryPlanCache = QueryPlanCache.getDefault();
+	private IndexAdvisor indexAdvisor = IndexAdvisor.getDefault();
+	private boolean readOnly = false;
 	
 	public JPQLQuery build() throws ODataApplicationException {
 		
-		ODataJPAEntity oDataJPAEntity = clazz.getAnnotation(ODataJPAEntity.class);
-//		String entityName = oDataJPAEntity == null || oDataJPAEntity.value().isEmpty() ? clazz.getSimpleName() : oDataJPAEntity.value();
-		String entityName = oDataJPAEntity == null ? clazz.getSimpleName() : oDataJPAEntity.value() == null || oDataJPAEntity.value().trim().isEmpty() ? oDataJPAEntity.entity().getSimpleName() : oDataJPAEntity.value();
+		List<Object> literals = new ArrayList<Object>();
+		String shape = queryPlanCache == null || !isCacheable() ? null : getShape("SELECT", literals);
+		
+		if(shape != null) {
+			QueryPlanCache.Template template = queryPlanCache.get(shape);
+			if(template != null) return template.instantiate(literals, skipToken, searchRestriction, indexAdvisor, readOnly);
+		}
+		
+		String entityName = getEntityName();
 		
 		StringBuilder sb = new StringBuilder();
 		
+		Map<Field, String> projection = getProjection();
+		Map<String, Object> queryParams = new HashMap<String, Object>();
+		
 		sb.append("SELECT ");
+		if(projection.isEmpty()) {
+			if(distinct) sb.append("DISTINCT ");
+			sb.append("e FROM ");
+		} else {
+			sb.append(projection.values().stream().map(jpaPath -> "e." + jpaPath).collect(Collectors.joining(", ")));
+			sb.append(" FROM ");
+		}
+		sb.append(entityName + " e ");
+		
+		FetchPlan fetchPlan = FetchPlan.from(clazz, expandOption);
+		sb.append(fetchPlan.getJoinClause());
+		
+		JoinAliases joinAliases = new JoinAliases(fetchPlan.getAliases());
+		StringBuilder tail = new StringBuilder();
+		
+		List<SortKey> sortKeys = skipToken == null ? Collections.emptyList() : SortKey.from(clazz, orderByOption);
+		List<String> conditions = new ArrayList<String>();
+		Map<String, ParameterBinder> binders = new HashMap<String, ParameterBinder>();
+		int keysetSize = 0;
+		
+		String whereClause = getFilterClause(queryParams, binders, joinAliases);
+		if(whereClause != null) conditions.add(whereClause);
+		if(searchRestriction != null) conditions.add(getSearchClause(queryParams));
+		
+		if(skipToken != null && skipToken.hasValues() && !sortKeys.isEmpty()) {
+			conditions.add(getKeysetClause(queryParams, sortKeys, skipToken.getValues(), joinAliases));
+			keysetSize = sortKeys.size();
+		}
+		
+		appendWhere(tail, conditions);
+		
+		if(sortKeys.isEmpty()) {
+			appendOrderByOption(tail, joinAliases);
+		} else {
+			tail.append("ORDER BY ");
+			tail.append(sortKeys.stream().map(sortKey -> sortKey.getColumn(joinAliases) + (sortKey.isDescending() ? " DESC" : " ASC")).collect(Collectors.joining(", ")));
+		}
+		
+		sb.append(joinAliases.getJoinClause());
+		sb.append(tail);
+		
+		AccessPattern accessPattern = indexAdvisor == null ? null : AccessPattern.of(clazz, getFilterExpression(), orderByOption);
+		JPQLQuery jpaQuery = new JPQLQuery(sb.toString(), queryParams, clazz, new ArrayList<Field>(projection.keySet()), fetchPlan, accessPattern, indexAdvisor, readOnly);
+		
+		if(shape != null) queryPlanCache.put(shape, new QueryPlanCache.Template(jpaQuery, binders, keysetSize));
+		
+		return jpaQuery;
+	}
+	
+	/**
+	 * Builds the companion COUNT query: same WHERE clause and parameters as {@link #build()}, without fetch joins and ORDER BY
+	 * 
+	 * @return A query whose single result is the number of matching rows
+	 * @throws ODataApplicationException
+	 */
+	public JPQLQuery buildCount() throws ODataApplicationException {
+		
+		List<Object> literals = new ArrayList<Object>();
+		String shape = queryPlanCache == null || !isCacheable() ? null : getShape("COUNT", literals);
+		
+		if(shape != null) {
+			QueryPlanCache.Template template = queryPlanCache.get(shape);
+			if(template != null) return template.instantiate(literals, skipToken, searchRestriction, indexAdvisor, false);
+		}
+		
+		String entityName = getEntityName();
+		Map<String, Object> countQueryParams = new HashMap<String, Object>();
+		Map<String, ParameterBinder> binders = new HashMap<String, ParameterBinder>();
+		
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append("SELECT COUNT(");
 		if(distinct) sb.append("DISTINCT ");
-		sb.append("e FROM ");
+		sb.append("e) FROM ");
 		sb.append(entityName + " e ");
 		
-		appendExpandOption(sb);
-		appendFilterOption(sb);
-		appendOrderByOption(sb);
+		JoinAliases joinAliases = new JoinAliases();
+		List<String> conditions = new ArrayList<String>();
+		
+		String whereClause = getFilterClause(countQueryParams, binders, joinAliases);
+		if(whereClause != null) conditions.add(whereClause);
+		if(searchRestriction != null) conditions.add(getSearchClause(countQueryParams));
+		
+		sb.append(joinAliases.getJoinClause());
+		appendWhere(sb, conditions);
+		
+		AccessPattern accessPattern = indexAdvisor == null ? null : AccessPattern.of(clazz, getFilterExpression(), null);
+		JPQLQuery jpaQuery = new JPQLQuery(sb.toString(), countQueryParams, clazz, Collections.emptyList(), null, accessPattern, indexAdvisor);
 		
-		return new JPQLQuery(sb.toString(), queryParams);
+		if(shape != null) queryPlanCache.put(shape, new QueryPlanCache.Template(jpaQuery, binders, 0));
+		
+		return jpaQuery;
 	}
 	
 	public boolean isDistinct() {
@@ -91,9 +195,85 @@ public final class JPQLQueryBuilder {
 
 	public JPQLQueryBuilder setFilterOption(FilterOption filterOption) {
 		this.filterOption = filterOption;
+		this.filterExpression = null;
 		return this;
 	}
 
+	public SelectOption getSelectOption() {
+		return selectOption;
+	}
+
+	/**
+	 * When every selected item is a primitive property mapped to a JPA path and nothing is expanded, {@link #build()} reads only
+	 * those columns and the keys, and the query is executed with {@link JPQLQuery#executeProjection}
+	 */
+	public JPQLQueryBuilder setSelectOption(SelectOption selectOption) {
+		this.selectOption = selectOption;
+		return this;
+	}
+
+	public SkipToken getSkipToken() {
+		return skipToken;
+	}
+
+	/**
+	 * Positions the query after the last row of the previous server-driven page. The entity keys are appended to the ORDER BY as tie-breakers.
+	 */
+	public JPQLQueryBuilder setSkipToken(SkipToken skipToken) {
+		this.skipToken = skipToken;
+		return this;
+	}
+
+	public SearchRestriction getSearchRestriction() {
+		return searchRestriction;
+	}
+
+	/**
+	 * Restricts the query to the entities that match a $search, in addition to the $filter
+	 */
+	public JPQLQueryBuilder setSearchRestriction(SearchRestriction searchRestriction) {
+		this.searchRestriction = searchRestriction;
+		return this;
+	}
+
+	public QueryPlanCache getQueryPlanCache() {
+		return queryPlanCache;
+	}
+
+	/**
+	 * Queries are taken from {@link QueryPlanCache#getDefault()} unless another cache is set; null disables caching
+	 */
+	public JPQLQueryBuilder setQueryPlanCache(QueryPlanCache queryPlanCache) {
+		this.queryPlanCache = queryPlanCache;
+		return this;
+	}
+
+	public IndexAdvisor getIndexAdvisor() {
+		return indexAdvisor;
+	}
+	
+	/**
+	 * Executions are recorded in {@link IndexAdvisor#getDefault()} unless another advisor is set; null disables recording
+	 */
+	public JPQLQueryBuilder setIndexAdvisor(IndexAdvisor indexAdvisor) {
+		this.indexAdvisor = indexAdvisor;
+		return this;
+	}
+	
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+	
+	/**
+	 * Built queries load their entities read-only, as collection reads that are only serialized need: Hibernate keeps no
+	 * snapshot of them to detect changes, and does not flush before executing the query. Changes made to those entities are
+	 * never written to the database. Count queries are not affected.
+	 */
+	public JPQLQueryBuilder setReadOnly(boolean readOnly) {
+		this.readOnly = readOnly;
+		return this;
+	}
+	
 	public OrderByOption getOrderByOption() {
 		return orderByOption;
 	}
@@ -103,127 +283,233 @@ public final class JPQLQueryBuilder {
 		return this;
 	}
 	
-	private String substituteByJpaProperty(final Class<?> clazz, final String propertyName) {
-		for(Field field : clazz.getDeclaredFields()) {
-    		com.cairone.olingo.ext.jpa.annotations.EdmProperty annEdmProperty = field.getAnnotation(com.cairone.olingo.ext.jpa.annotations.EdmProperty.class);
-    		if(annEdmProperty != null && (annEdmProperty.name().equals(propertyName) || field.getName().equals(propertyName))) {
-    			ODataJPAProperty oDataJPAProperty = field.getAnnotation(ODataJPAProperty.class);
-    			if(oDataJPAProperty != null && !oDataJPAProperty.value().isEmpty() && !oDataJPAProperty.ignore()) {
-    				return oDataJPAProperty.value();
-    			} else if(oDataJPAProperty != null && oDataJPAProperty.ignore()) {
-    				return null;
-    			} else {
-    				return field.getName();
-    			}
-    		}
-    		com.cairone.olingo.ext.jpa.annotations.EdmNavigationProperty annEdmNavigationProperty = field.getAnnotation(com.cairone.olingo.ext.jpa.annotations.EdmNavigationProperty.class);
-    		if(annEdmNavigationProperty != null && (annEdmNavigationProperty.name().equals(propertyName) || field.getName().equals(propertyName))) {
-    			ODataJPAProperty oDataJPAProperty = field.getAnnotation(ODataJPAProperty.class);
-    			if(oDataJPAProperty != null && !oDataJPAProperty.value().isEmpty() && !oDataJPAProperty.ignore()) {
-    				return oDataJPAProperty.value();
-    			} else if(oDataJPAProperty != null && oDataJPAProperty.ignore()) {
-    				return null;
-    			} else {
-    				return field.getName();
-    			}
-    		}
-    	}
-		return propertyName;
-	}
-	
-	private void appendExpandOption(StringBuilder sb) {
-
-    	if(expandOption != null && !expandOption.getExpandItems().isEmpty()) {
-    		expandOption.getExpandItems().forEach(expandItem -> {
-    			UriResource uriResource = expandItem.getResourcePath().getUriResourceParts().get(0);
-    			if(uriResource instanceof UriResourceNavigation) {
-    				EdmNavigationProperty edmNavigationProperty = ((UriResourceNavigation) uriResource).getProperty();
-    				String navPropName = edmNavigationProperty.getName();
-    				for(Field field : clazz.getDeclaredFields()) {
-    					com.cairone.olingo.ext.jpa.annotations.EdmNavigationProperty annEdmNavigationProperty = field.getAnnotation(com.cairone.olingo.ext.jpa.annotations.EdmNavigationProperty.class);
-    					if(annEdmNavigationProperty != null && (annEdmNavigationProperty.name().equals(navPropName) || field.getName().equals(navPropName))) {
-    		    			ODataJPAProperty oDataJPAProperty = field.getAnnotation(ODataJPAProperty.class);
-    		    			if(oDataJPAProperty != null && !oDataJPAProperty.value().isEmpty() && !oDataJPAProperty.ignore()) {
-    		    				sb.append("LEFT JOIN FETCH e." + oDataJPAProperty.value() + " ");
-    		    			} else if(oDataJPAProperty == null || !oDataJPAProperty.ignore()) {
-    		    				sb.append("LEFT JOIN FETCH e." + field.getName() + " ");
-    		    			}
-    		    			break;
-    		    		}
-    				}
-    			}
-    		});
-    	}
-		
-	}
-	
-	private void appendFilterOption(StringBuilder sb) throws ODataApplicationException {
-		
-		if(filterOption != null) {
-			
-			Expression filterExpression = filterOption.getExpression();
-			FilterExpressionVisitor filterExpressionVisitor = new FilterExpressionVisitor(clazz, queryParams);
+	private String getEntityName() {
+		return PropertyIndex.of(clazz).getEntityName();
+	}
+	
+	/**
+	 * Resolves the columns of a projection: the selected properties followed by the keys not selected.
+	 * Rows are unique by key and no fetch join is involved, so the projection never needs DISTINCT.
+	 * 
+	 * @return The Edm fields with their JPA paths, or an empty map when the whole entity has to be read
+	 */
+	private Map<Field, String> getProjection() {
+		
+		Map<Field, String> projection = new LinkedHashMap<Field, String>();
+		
+		if(selectOption == null || selectOption.getSelectItems().isEmpty()) return projection;
+		if(expandOption != null && !expandOption.getExpandItems().isEmpty()) return projection;
+		
+		List<String> edmNames = new ArrayList<String>();
+		
+		for(SelectItem selectItem : selectOption.getSelectItems()) {
+			if(selectItem.isStar() || selectItem.isAllOperationsInSchema() || selectItem.getResourcePath() == null) return Collections.emptyMap();
+			
+			List<UriResource> uriResourceParts = selectItem.getResourcePath().getUriResourceParts();
+			if(uriResourceParts.size() != 1 || !(uriResourceParts.get(0) instanceof UriResourcePrimitiveProperty)) return Collections.emptyMap();
+			
+			edmNames.add(((UriResourcePrimitiveProperty) uriResourceParts.get(0)).getProperty().getName());
+		}
+		
+		PropertyIndex propertyIndex = PropertyIndex.of(clazz);
+		edmNames.addAll(propertyIndex.getKeys());
+		
+		for(String edmName : edmNames) {
+			
+			PropertyPath property = propertyIndex.getProperty(edmName);
+			
+			if(property == null || property.isComplex() || property.isIgnored()) return Collections.emptyMap();
+			
+			projection.put(property.getField(), property.getJpaPath());
+		}
+		
+		return projection;
+	}
+	
+	/**
+	 * Renders the cache key of the query: everything {@link #build()} or {@link #buildCount()} depends on, except literal values
+	 * 
+	 * @param literals Receives the literals of the $filter, in the order the parameters are bound
+	 */
+	private String getShape(String kind, List<Object> literals) throws ODataApplicationException {
+		
+		StringBuilder sb = new StringBuilder();
+		sb.append(kind).append(" ").append(clazz.getName()).append(" distinct=").append(distinct);
+		
+		try {
+			Expression filterExpression = getFilterExpression();
+			if(filterExpression != null) {
+				sb.append(" $filter=");
+				if(ExpressionNormalizer.isTrue(filterExpression) || ExpressionNormalizer.isFalse(filterExpression)) {
+					sb.append(((Literal) filterExpression).getText());
+				} else {
+					sb.append(filterExpression.accept(new ShapeExpressionVisitor(literals)));
+				}
+			}
+			
+			if(searchRestriction != null) sb.append(" $search=").append(searchRestriction.getCondition());
+			
+			if(kind.equals("COUNT")) return sb.toString();
+			
+			if(orderByOption != null) {
+				sb.append(" $orderby=");
+				for(OrderByItem orderByItem : orderByOption.getOrders()) {
+					sb.append(orderByItem.getExpression().accept(new ShapeExpressionVisitor())).append(orderByItem.isDescending() ? " desc," : " asc,");
+				}
+			}
+		} catch (ExpressionVisitException e) {
+			throw new ODataApplicationException(e.getMessage(), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
+		}
+		
+		if(expandOption != null) sb.append(" $expand=").append(getExpandShape(expandOption));
+		
+		if(selectOption != null) {
+			sb.append(" $select=");
+			for(SelectItem selectItem : selectOption.getSelectItems()) {
+				if(selectItem.isStar()) {
+					sb.append("*,");
+				} else if(selectItem.isAllOperationsInSchema()) {
+					sb.append(selectItem.getAllOperationsInSchemaNameSpace()).append(".*,");
+				} else if(selectItem.getResourcePath() != null) {
+					sb.append(getPathShape(selectItem.getResourcePath())).append(",");
+				}
+			}
+		}
+		
+		if(skipToken != null) sb.append(skipToken.hasValues() ? " $skiptoken=keyset" : " $skiptoken=first");
+		
+		return sb.toString();
+	}
+	
+	/**
+	 * Only the navigation paths of an $expand change the query
+	 */
+	private String getExpandShape(ExpandOption expandOption) {
+		
+		StringBuilder sb = new StringBuilder();
+		
+		for(ExpandItem expandItem : expandOption.getExpandItems()) {
+			if(expandItem.isStar()) {
+				sb.append("*");
+			} else if(expandItem.getResourcePath() != null) {
+				sb.append(getPathShape(expandItem.getResourcePath()));
+			}
+			if(expandItem.getExpandOption() != null) {
+				sb.append("(").append(getExpandShape(expandItem.getExpandOption())).append(")");
+			}
+			sb.append(",");
+		}
+		
+		return sb.toString();
+	}
+	
+	private String getPathShape(UriInfoResource resourcePath) {
+		return resourcePath.getUriResourceParts().stream().map(UriResource::getSegmentValue).collect(Collectors.joining("/"));
+	}
+	
+	private String getFilterClause(Map<String, Object> queryParams, Map<String, ParameterBinder> binders, JoinAliases joinAliases) throws ODataApplicationException {
+		
+		Expression filterExpression = getFilterExpression();
+		
+		if(filterExpression != null) {
+			
+			if(ExpressionNormalizer.isTrue(filterExpression)) return null;
+			if(ExpressionNormalizer.isFalse(filterExpression)) return "1 = 0";
+			
+			FilterExpressionVisitor filterExpressionVisitor = new FilterExpressionVisitor(clazz, queryParams, joinAliases);
 			
 			try {
 				Object visitorResult = filterExpression.accept(filterExpressionVisitor);
-				if(visitorResult != null && visitorResult instanceof String) {
+				binders.putAll(filterExpressionVisitor.getParameterBinders());
+				if(visitorResult != null) {
 					String whereClause = visitorResult.toString();
-					if(!whereClause.isEmpty()) sb.append("WHERE " + whereClause);
+					if(!whereClause.isEmpty()) return whereClause;
 				}
 			} catch (ExpressionVisitException e) {
 				throw new ODataApplicationException(e.getMessage(), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
 			}
 		}
+		return null;
+	}
+	
+	/**
+	 * @return Whether the query can be taken from the cache: not when the condition of the $search grows with its candidates
+	 */
+	private boolean isCacheable() {
+		return searchRestriction == null || searchRestriction.isCacheable();
+	}
+	
+	/**
+	 * The parameters of the restriction are not bound from literals, so they are put again whenever a cached query is instantiated
+	 */
+	private String getSearchClause(Map<String, Object> queryParams) throws ODataApplicationException {
+		if(!searchRestriction.hasCondition()) {
+			throw new ODataApplicationException("The $search matches too many entities to be applied by the query", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+		}
+		queryParams.putAll(searchRestriction.getParameters());
+		return searchRestriction.getCondition();
+	}
+	
+	/**
+	 * @return The $filter in the canonical form of {@link ExpressionNormalizer}, computed once for the shape and the translation, or null without a $filter
+	 */
+	private Expression getFilterExpression() throws ODataApplicationException {
+		if(filterExpression == null && filterOption != null && filterOption.getExpression() != null) {
+			filterExpression = ExpressionNormalizer.normalize(filterOption.getExpression());
+		}
+		return filterExpression;
+	}
+	
+	/**
+	 * Portable form of <code>(k1, k2) &gt; (:a, :b)</code>: <code>k1 &gt; :a OR (k1 = :a AND k2 &gt; :b)</code>, with &lt; for descending keys
+	 */
+	private String getKeysetClause(Map<String, Object> queryParams, List<SortKey> sortKeys, List<Object> values, JoinAliases joinAliases) {
+		
+		List<String> alternatives = new ArrayList<String>();
+		
+		for(int i = 0; i < sortKeys.size(); i++) {
+			
+			List<String> terms = new ArrayList<String>();
+			
+			for(int j = 0; j < i; j++) {
+				terms.add(String.format("%s = :%s%d", sortKeys.get(j).getColumn(joinAliases), SKIPTOKEN_PARAM, j));
+			}
+			terms.add(String.format("%s %s :%s%d", sortKeys.get(i).getColumn(joinAliases), sortKeys.get(i).isDescending() ? "<" : ">", SKIPTOKEN_PARAM, i));
+			
+			alternatives.add(terms.stream().collect(Collectors.joining(" AND ", "(", ")")));
+			queryParams.put(SKIPTOKEN_PARAM + i, values.get(i));
+		}
+		
+		return alternatives.stream().collect(Collectors.joining(" OR "));
+	}
+	
+	private void appendWhere(StringBuilder sb, List<String> conditions) {
+		
+		if(conditions.size() == 1) {
+			sb.append("WHERE " + conditions.get(0) + " ");
+		} else if(conditions.size() > 1) {
+			sb.append("WHERE " + conditions.stream().collect(Collectors.joining(") AND (", "(", ")")) + " ");
+		}
 	}
 	
-	private void appendOrderByOption(StringBuilder sb) {
+	/**
+	 * Every item is resolved hop by hop from the entity set; items that are not a path to a property are ignored
+	 */
+	private void appendOrderByOption(StringBuilder sb, JoinAliases joinAliases) {
 
 		if(orderByOption != null) {
-			sb.append("ORDER BY ");
-			String orderby = orderByOption.getOrders()
-				.stream()
-				.map(x -> {
-					Expression expression = x.getExpression();
-					if(expression instanceof Member){
-						
-						UriInfoResource resourcePath = ((Member)expression).getResourcePath();
-						List<String> segments = new ArrayList<String>();
-						segments.add("e");
-						
-						UriResource uriResourceLast = resourcePath.getUriResourceParts().get(resourcePath.getUriResourceParts().size() - 1);
-						
-						for(UriResource uriResource : resourcePath.getUriResourceParts()) {
-							if(!uriResource.equals(uriResourceLast)) {
-								if (uriResource instanceof UriResourcePrimitiveProperty) {
-							    	EdmProperty edmProperty = ((UriResourcePrimitiveProperty)uriResource).getProperty();
-							    	String fieldName = substituteByJpaProperty(clazz, edmProperty.getName());
-							    	if(fieldName != null) segments.add(fieldName);
-							    }
-								if (uriResource instanceof UriResourceNavigation) {
-									EdmNavigationProperty edmProperty = ((UriResourceNavigation)uriResource).getProperty();
-									String fieldName = substituteByJpaProperty(clazz, edmProperty.getName());
-									if(fieldName != null) segments.add(fieldName);
-								}
-							}
-						}
-						
-						if (uriResourceLast instanceof UriResourcePrimitiveProperty) {
-					    	EdmProperty edmProperty = ((UriResourcePrimitiveProperty)uriResourceLast).getProperty();
-					    	String fieldName = substituteByJpaProperty(clazz, edmProperty.getName());
-					    	if(fieldName != null) segments.add(String.format("%s %s", fieldName, x.isDescending() ? "DESC" : "ASC"));
-					    }
-						if (uriResourceLast instanceof UriResourceNavigation) {
-							EdmNavigationProperty edmProperty = ((UriResourceNavigation)uriResourceLast).getProperty();
-							String fieldName = substituteByJpaProperty(clazz, edmProperty.getName());
-							if(fieldName != null) segments.add(String.format("%s %s", fieldName, x.isDescending() ? "DESC" : "ASC"));
-						}
-						
-						return segments.stream().collect(Collectors.joining("."));
-					}
-					return null;
-				})
-				.collect(Collectors.joining(", "));
-			sb.append(orderby);
-		}		
+			
+			List<String> orders = new ArrayList<String>();
+			
+			for(OrderByItem orderByItem : orderByOption.getOrders()) {
+				SortKey sortKey = SortKey.of(clazz, orderByItem);
+				if(sortKey != null) orders.add(sortKey.getColumn(joinAliases) + (sortKey.isDescending() ? " DESC" : " ASC"));
+			}
+			
+			if(!orders.isEmpty()) {
+				sb.append("ORDER BY ");
+				sb.append(orders.stream().collect(Collectors.joining(", ")));
+			}
+		}
 	}
 }
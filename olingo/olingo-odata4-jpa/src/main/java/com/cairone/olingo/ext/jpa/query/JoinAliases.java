@@ -0,0 +1,92 @@
+package com.cairone.olingo.ext.jpa.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Explicit joins of the single-valued relationships that $filter, $orderby and the keyset of a skip token navigate, one per
+ * relationship. A path already fetch joined for $expand reuses the alias of the {@link FetchPlan}; any other path is joined
+ * once with <code>LEFT JOIN</code>, hop by hop, and every later use of the same path, or of a longer one, shares its alias.
+ * Unlike an implicit path such as <code>e.a.b.c</code>, which the persistence provider may turn into an inner or cross join
+ * for every occurrence, this keeps rows whose relationship is null and gives the database a single join per relationship.
+ *
+ * @author diego.cairone
+ */
+public final class JoinAliases {
+
+	public static final String ROOT_ALIAS = "e";
+
+	private static final String ALIAS_PREFIX = "j";
+
+	private final Map<String, String> fetched;
+	private final Map<String, String> aliases = new LinkedHashMap<String, String>();
+	private final List<String> joins = new ArrayList<String>();
+
+	/**
+	 * @param fetched The JPA paths fetch joined by the query, each one mapped to its alias, see {@link FetchPlan#getAliases()}
+	 */
+	public JoinAliases(Map<String, String> fetched) {
+		this.fetched = fetched;
+	}
+
+	/**
+	 * For queries without fetch joins
+	 */
+	public JoinAliases() {
+		this(Collections.emptyMap());
+	}
+
+	/**
+	 * @param jpaPath The JPA path of a single-valued relationship from the root entity, using dot notation; empty for the root
+	 * @return The alias that stands for the end of the path
+	 */
+	public String join(String jpaPath) {
+
+		if(jpaPath.isEmpty()) return ROOT_ALIAS;
+
+		String alias = fetched.get(jpaPath);
+		if(alias == null) alias = aliases.get(jpaPath);
+
+		if(alias == null) {
+
+			int lastDot = jpaPath.lastIndexOf('.');
+			String parentAlias = join(lastDot < 0 ? "" : jpaPath.substring(0, lastDot));
+
+			alias = ALIAS_PREFIX + (aliases.size() + 1);
+			aliases.put(jpaPath, alias);
+			joins.add(String.format("LEFT JOIN %s.%s %s", parentAlias, jpaPath.substring(lastDot + 1), alias));
+		}
+
+		return alias;
+	}
+
+	/**
+	 * @param jpaPath A path from the root entity whose leading segments are the relationships in <code>navigations</code>
+	 * @return The path with its relationships replaced by their alias
+	 */
+	public String join(List<String> navigations, String jpaPath) {
+		String alias = join(String.join(".", navigations));
+		return jpaPath == null || jpaPath.isEmpty() ? alias : alias + "." + jpaPath;
+	}
+
+	public boolean isEmpty() {
+		return joins.isEmpty();
+	}
+
+	/**
+	 * @return The joins added so far, each one followed by a space, ready to be appended after the FROM clause and the fetch joins
+	 */
+	public String getJoinClause() {
+		StringBuilder sb = new StringBuilder();
+		joins.forEach(join -> sb.append(join).append(" "));
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return getJoinClause().trim();
+	}
+}
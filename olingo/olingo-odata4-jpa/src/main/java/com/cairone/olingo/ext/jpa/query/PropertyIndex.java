@@ -0,0 +1,308 @@
+package com.cairone.olingo.ext.jpa.query;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+
+import com.cairone.olingo.ext.jpa.annotations.EdmComplex;
+import com.cairone.olingo.ext.jpa.annotations.EdmEntity;
+import com.cairone.olingo.ext.jpa.annotations.EdmEnum;
+import com.cairone.olingo.ext.jpa.annotations.EdmNavigationProperty;
+import com.cairone.olingo.ext.jpa.annotations.EdmProperty;
+import com.cairone.olingo.ext.jpa.annotations.ODataJPAEntity;
+import com.cairone.olingo.ext.jpa.annotations.ODataJPAProperty;
+import com.cairone.olingo.ext.jpa.enums.EnumerationTreatedAs;
+import com.cairone.olingo.ext.jpa.mappers.EdmMapper;
+import com.cairone.olingo.ext.jpa.mappers.MappingPlan;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Primitives;
+
+/**
+ * Immutable index of the properties and navigation properties of an Edm class, read from its annotations once: for every Edm
+ * name, the JPA path it maps to, its Java types, how an enumeration is stored and the class a navigation leads to. Query and
+ * filter translation look names up here instead of scanning the declared fields of the class for every request.
+ * <p>
+ * {@link com.cairone.olingo.ext.jpa.providers.EdmProvider} indexes the entity and complex classes when it is initialized;
+ * any other class is indexed the first time it is used. JPA paths are taken from the filter path table of the generated
+ * {@link EdmMapper} of the class, when there is one.
+ *
+ * @author diego.cairone
+ */
+public final class PropertyIndex {
+
+	private static final Map<Class<?>, PropertyIndex> INDEXES = new ConcurrentHashMap<Class<?>, PropertyIndex>();
+
+	private final Class<?> clazz;
+	private final String entityName;
+	private final List<String> keys;
+	private final Map<String, PropertyPath> properties;
+	private final Map<String, PropertyPath> navigations;
+	private final Map<Field, PropertyPath> byField;
+	private final List<PropertyPath> enumerations;
+
+	private PropertyIndex(Class<?> clazz) {
+
+		this.clazz = clazz;
+
+		ODataJPAEntity oDataJPAEntity = clazz.getAnnotation(ODataJPAEntity.class);
+		this.entityName = oDataJPAEntity == null ? clazz.getSimpleName() : oDataJPAEntity.value() == null || oDataJPAEntity.value().trim().isEmpty() ? oDataJPAEntity.entity().getSimpleName() : oDataJPAEntity.value();
+
+		EdmEntity edmEntity = clazz.getAnnotation(EdmEntity.class);
+		this.keys = edmEntity == null ? Collections.emptyList() : ImmutableList.copyOf(Arrays.asList(edmEntity.key()));
+
+		Map<String, PropertyPath> properties = new LinkedHashMap<String, PropertyPath>();
+		Map<String, PropertyPath> navigations = new LinkedHashMap<String, PropertyPath>();
+		ImmutableMap.Builder<Field, PropertyPath> byField = ImmutableMap.builder();
+		ImmutableList.Builder<PropertyPath> enumerations = ImmutableList.builder();
+
+		EdmMapper<?> mapper = MappingPlan.of(clazz).getMapper();
+		Map<String, String> filterPaths = mapper == null ? Collections.emptyMap() : mapper.getFilterPaths();
+
+		for(Field field : clazz.getDeclaredFields()) {
+
+			EdmProperty edmProperty = field.getAnnotation(EdmProperty.class);
+			EdmNavigationProperty edmNavigationProperty = field.getAnnotation(EdmNavigationProperty.class);
+
+			if(edmProperty != null) {
+				String edmName = edmProperty.name().isEmpty() ? field.getName() : edmProperty.name();
+				boolean nullable = edmProperty.nullable() && !field.getType().isPrimitive() && !keys.contains(edmName);
+				PropertyPath property = new PropertyPath(field, edmName, false, nullable, filterPaths);
+				properties.putIfAbsent(property.edmName, property);
+				properties.putIfAbsent(field.getName(), property);
+				byField.put(field, property);
+				if(property.edmEnumType != null) enumerations.add(property);
+			} else if(edmNavigationProperty != null) {
+				PropertyPath navigation = new PropertyPath(field, edmNavigationProperty.name(), true, edmNavigationProperty.nullable(), filterPaths);
+				navigations.putIfAbsent(navigation.edmName, navigation);
+				navigations.putIfAbsent(field.getName(), navigation);
+				byField.put(field, navigation);
+			}
+		}
+
+		this.properties = ImmutableMap.copyOf(properties);
+		this.navigations = ImmutableMap.copyOf(navigations);
+		this.byField = byField.build();
+		this.enumerations = enumerations.build();
+	}
+
+	/**
+	 * @return The index of an Edm class, built on first use
+	 */
+	public static PropertyIndex of(Class<?> clazz) {
+		return INDEXES.computeIfAbsent(clazz, PropertyIndex::new);
+	}
+
+	public Class<?> getClazz() {
+		return clazz;
+	}
+
+	/**
+	 * @return The name of the JPA entity of {@link ODataJPAEntity}, or the simple name of the class
+	 */
+	public String getEntityName() {
+		return entityName;
+	}
+
+	/**
+	 * @return The Edm names of the keys of {@link EdmEntity}
+	 */
+	public List<String> getKeys() {
+		return keys;
+	}
+
+	/**
+	 * @param name The Edm name or the field name of a property
+	 * @return The property, or null when the class has none with that name
+	 */
+	public PropertyPath getProperty(String name) {
+		return properties.get(name);
+	}
+
+	/**
+	 * @param name The Edm name or the field name of a navigation property
+	 * @return The navigation property, or null when the class has none with that name
+	 */
+	public PropertyPath getNavigation(String name) {
+		return navigations.get(name);
+	}
+
+	/**
+	 * @return The property or, failing that, the navigation property with that name
+	 */
+	public PropertyPath get(String name) {
+		PropertyPath property = properties.get(name);
+		return property == null ? navigations.get(name) : property;
+	}
+
+	/**
+	 * @return The property declared by a field of the class, or null when the field is not annotated
+	 */
+	public PropertyPath get(Field field) {
+		return byField.get(field);
+	}
+
+	/**
+	 * @return The properties of an enumeration type
+	 */
+	public List<PropertyPath> getEnumerations() {
+		return enumerations;
+	}
+
+	@Override
+	public String toString() {
+		return "PropertyIndex [clazz=" + clazz.getName() + ", properties=" + properties.keySet() + ", navigations=" + navigations.keySet() + "]";
+	}
+
+	/**
+	 * A property or navigation property of an Edm class and its mapping to the JPA entity
+	 */
+	public static final class PropertyPath {
+
+		private final Field field;
+		private final String edmName;
+		private final String jpaPath;
+		private final boolean ignored;
+		private final boolean navigation;
+		private final boolean nullable;
+		private final boolean collection;
+		private final boolean complex;
+		private final Class<?> targetClass;
+		private final Class<?> storedType;
+		private final EnumerationTreatedAs treatedAs;
+		private final FullQualifiedName edmEnumType;
+
+		private PropertyPath(Field field, String edmName, boolean navigation, boolean nullable, Map<String, String> filterPaths) {
+
+			ODataJPAProperty oDataJPAProperty = field.getAnnotation(ODataJPAProperty.class);
+			Class<?> type = field.getType();
+
+			field.setAccessible(true);
+
+			this.field = field;
+			this.edmName = edmName.isEmpty() ? field.getName() : edmName;
+			this.jpaPath = filterPaths.containsKey(this.edmName) ? filterPaths.get(this.edmName) : oDataJPAProperty != null && !oDataJPAProperty.value().isEmpty() ? oDataJPAProperty.value() : field.getName();
+			this.ignored = oDataJPAProperty != null && oDataJPAProperty.ignore();
+			this.navigation = navigation;
+			this.nullable = nullable;
+			this.collection = Collection.class.isAssignableFrom(type);
+			this.complex = type.isAnnotationPresent(EdmComplex.class);
+			this.targetClass = collection ? getElementType(field) : type;
+
+			if(type.isEnum()) {
+				EdmEnum edmEnum = type.getAnnotation(EdmEnum.class);
+				this.treatedAs = oDataJPAProperty == null ? EnumerationTreatedAs.ENUMERATION : oDataJPAProperty.treatedAs();
+				this.edmEnumType = edmEnum == null ? null : new FullQualifiedName(edmEnum.namespace(), edmEnum.name().isEmpty() ? type.getSimpleName() : edmEnum.name());
+			} else {
+				this.treatedAs = null;
+				this.edmEnumType = null;
+			}
+
+			if(EnumerationTreatedAs.NUMERIC.equals(treatedAs)) {
+				this.storedType = Integer.class;
+			} else if(EnumerationTreatedAs.NAME.equals(treatedAs)) {
+				this.storedType = String.class;
+			} else {
+				this.storedType = Primitives.wrap(type);
+			}
+		}
+
+		/**
+		 * @return The field of the Edm class, accessible
+		 */
+		public Field getField() {
+			return field;
+		}
+
+		public String getEdmName() {
+			return edmName;
+		}
+
+		/**
+		 * @return The path of the JPA attribute from the JPA entity of the class, using dot notation
+		 */
+		public String getJpaPath() {
+			return jpaPath;
+		}
+
+		/**
+		 * @return Whether {@link ODataJPAProperty#ignore()} excludes the property from JPA queries
+		 */
+		public boolean isIgnored() {
+			return ignored;
+		}
+
+		public boolean isNavigation() {
+			return navigation;
+		}
+
+		/**
+		 * @return Whether the value can be null: false for keys, Java primitives and properties or navigation properties declared not nullable
+		 */
+		public boolean isNullable() {
+			return nullable;
+		}
+
+		public boolean isCollection() {
+			return collection;
+		}
+
+		/**
+		 * @return Whether the type of the property is an Edm complex type
+		 */
+		public boolean isComplex() {
+			return complex;
+		}
+
+		/**
+		 * @return The type of the field or, for collections, the type of their elements; null when it can not be determined
+		 */
+		public Class<?> getTargetClass() {
+			return targetClass;
+		}
+
+		/**
+		 * @return The Java type the JPA attribute holds: the type of the field, boxed, except for enumerations stored by ordinal or by name
+		 */
+		public Class<?> getStoredType() {
+			return storedType;
+		}
+
+		/**
+		 * @return How an enumeration is stored, or null when the property is not an enumeration
+		 */
+		public EnumerationTreatedAs getTreatedAs() {
+			return treatedAs;
+		}
+
+		/**
+		 * @return The name of the Edm enumeration type of the property, or null when it is not an enumeration
+		 */
+		public FullQualifiedName getEdmEnumType() {
+			return edmEnumType;
+		}
+
+		@Override
+		public String toString() {
+			return edmName + " -> " + jpaPath;
+		}
+
+		private static Class<?> getElementType(Field field) {
+			Type type = field.getGenericType();
+			if(type instanceof ParameterizedType) {
+				Type[] typeArguments = ((ParameterizedType) type).getActualTypeArguments();
+				if(typeArguments.length == 1 && typeArguments[0] instanceof Class) return (Class<?>) typeArguments[0];
+			}
+			return null;
+		}
+	}
+}
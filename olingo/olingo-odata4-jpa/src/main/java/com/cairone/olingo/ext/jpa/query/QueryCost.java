@@ -0,0 +1,54 @@
+package com.cairone.olingo.ext.jpa.query;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The cost of a query as scored by a {@link QueryCostModel}: a total and the share of every factor, so the reason of a
+ * rejection can be told to the client.
+ *
+ * @author diego.cairone
+ */
+public final class QueryCost {
+
+	public static final String EXPAND = "expand";
+	public static final String FILTER = "filter";
+	public static final String JOINS = "joins";
+	public static final String SUBQUERIES = "subqueries";
+	public static final String FUNCTIONS = "functions";
+	public static final String ROWS = "rows";
+
+	private final Map<String, Integer> factors = new LinkedHashMap<String, Integer>();
+
+	QueryCost add(String factor, int cost) {
+		if(cost > 0) factors.merge(factor, cost, Integer::sum);
+		return this;
+	}
+
+	public int getTotal() {
+		return factors.values().stream().mapToInt(Integer::intValue).sum();
+	}
+
+	/**
+	 * @return The cost of every factor that adds to the total, in the order they were scored
+	 */
+	public Map<String, Integer> getFactors() {
+		return Collections.unmodifiableMap(factors);
+	}
+
+	/**
+	 * @return The cost of a factor, zero when it does not add to the total
+	 */
+	public int get(String factor) {
+		return factors.getOrDefault(factor, 0);
+	}
+
+	@Override
+	public String toString() {
+		return factors.entrySet().stream()
+			.map(entry -> entry.getKey() + "=" + entry.getValue())
+			.collect(Collectors.joining(", ", getTotal() + " [", "]"));
+	}
+}
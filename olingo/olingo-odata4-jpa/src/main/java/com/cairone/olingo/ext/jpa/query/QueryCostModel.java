@@ -0,0 +1,229 @@
+package com.cairone.olingo.ext.jpa.query;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceNavigation;
+import org.apache.olingo.server.api.uri.queryoption.ExpandItem;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
+import org.apache.olingo.server.api.uri.queryoption.FilterOption;
+import org.apache.olingo.server.api.uri.queryoption.OrderByItem;
+import org.apache.olingo.server.api.uri.queryoption.OrderByOption;
+import org.apache.olingo.server.api.uri.queryoption.expression.Expression;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitException;
+
+import com.cairone.olingo.ext.jpa.query.PropertyIndex.PropertyPath;
+import com.cairone.olingo.ext.jpa.visitors.CostExpressionVisitor;
+
+/**
+ * Scores the query of a request before it reaches the data source, so requests that would hold a connection for too long
+ * can be turned away. The cost adds up:
+ * <ul>
+ * <li>every expanded navigation, weighted by its depth, plus a fan-out charge when it is a collection;</li>
+ * <li>every node of the $filter, including those of the $filter of the expanded navigations;</li>
+ * <li>every navigation path that the $filter or the $orderby joins, and every <code>any</code> or <code>all</code> subquery;</li>
+ * <li>every method call that wraps a property, as the database can not use an index on it;</li>
+ * <li>the rows requested, or a fixed charge when the request sets no limit.</li>
+ * </ul>
+ * Budgets are set per entity set, with a default for the rest; an entity set without a budget is not scored.
+ *
+ * @author diego.cairone
+ */
+public class QueryCostModel {
+
+	private int expandCost = 10;
+	private int fanOutCost = 20;
+	private int filterNodeCost = 1;
+	private int joinCost = 5;
+	private int subqueryCost = 10;
+	private int functionCost = 5;
+	private int rowsPerPoint = 100;
+	private int unboundedRowsCost = 50;
+
+	private Integer defaultBudget = null;
+	private Integer degradedPageSize = null;
+	private final Map<String, Integer> budgets = new HashMap<String, Integer>();
+
+	public QueryCostModel setExpandCost(int expandCost) {
+		this.expandCost = expandCost;
+		return this;
+	}
+
+	/**
+	 * @param fanOutCost Added to the cost of an expanded navigation when it is a collection, as it multiplies the rows read below it
+	 */
+	public QueryCostModel setFanOutCost(int fanOutCost) {
+		this.fanOutCost = fanOutCost;
+		return this;
+	}
+
+	public QueryCostModel setFilterNodeCost(int filterNodeCost) {
+		this.filterNodeCost = filterNodeCost;
+		return this;
+	}
+
+	public QueryCostModel setJoinCost(int joinCost) {
+		this.joinCost = joinCost;
+		return this;
+	}
+
+	public QueryCostModel setSubqueryCost(int subqueryCost) {
+		this.subqueryCost = subqueryCost;
+		return this;
+	}
+
+	public QueryCostModel setFunctionCost(int functionCost) {
+		this.functionCost = functionCost;
+		return this;
+	}
+
+	/**
+	 * @param rowsPerPoint The number of requested rows that cost one point
+	 */
+	public QueryCostModel setRowsPerPoint(int rowsPerPoint) {
+		this.rowsPerPoint = Math.max(1, rowsPerPoint);
+		return this;
+	}
+
+	/**
+	 * @param unboundedRowsCost The cost of a request with neither $top nor a page size
+	 */
+	public QueryCostModel setUnboundedRowsCost(int unboundedRowsCost) {
+		this.unboundedRowsCost = unboundedRowsCost;
+		return this;
+	}
+
+	/**
+	 * @param defaultBudget The budget of the entity sets without one of their own, null to leave them unchecked
+	 */
+	public QueryCostModel setDefaultBudget(Integer defaultBudget) {
+		this.defaultBudget = defaultBudget;
+		return this;
+	}
+
+	public QueryCostModel setBudget(String entitySetName, int budget) {
+		budgets.put(entitySetName, budget);
+		return this;
+	}
+
+	/**
+	 * @param degradedPageSize When set, a request over its budget is served in pages of this size if that brings it within
+	 * the budget and the data source can page, instead of being rejected
+	 */
+	public QueryCostModel setDegradedPageSize(Integer degradedPageSize) {
+		this.degradedPageSize = degradedPageSize;
+		return this;
+	}
+
+	public Integer getDegradedPageSize() {
+		return degradedPageSize;
+	}
+
+	/**
+	 * @return The budget of the entity set, or null when its queries are not checked
+	 */
+	public Integer getBudget(String entitySetName) {
+		return budgets.getOrDefault(entitySetName, defaultBudget);
+	}
+
+	/**
+	 * @param clazz The Edm class of the entity set
+	 * @param rows The number of rows the data source will be asked for, null when there is no limit
+	 */
+	public QueryCost estimate(Class<?> clazz, ExpandOption expandOption, FilterOption filterOption, OrderByOption orderByOption, Integer rows) throws ODataApplicationException {
+
+		QueryCost queryCost = new QueryCost();
+		CostExpressionVisitor visitor = new CostExpressionVisitor();
+
+		expand(queryCost, visitor, clazz, expandOption, 1);
+
+		if(filterOption != null) accept(visitor, filterOption.getExpression());
+
+		if(orderByOption != null) {
+			for(OrderByItem orderByItem : orderByOption.getOrders()) accept(visitor, orderByItem.getExpression());
+		}
+
+		queryCost.add(QueryCost.FILTER, visitor.getNodes() * filterNodeCost);
+		queryCost.add(QueryCost.JOINS, visitor.getJoins().size() * joinCost);
+		queryCost.add(QueryCost.SUBQUERIES, visitor.getSubqueries() * subqueryCost);
+		queryCost.add(QueryCost.FUNCTIONS, visitor.getFunctions() * functionCost);
+		queryCost.add(QueryCost.ROWS, rows == null ? unboundedRowsCost : rows / rowsPerPoint + (rows % rowsPerPoint == 0 ? 0 : 1));
+
+		return queryCost;
+	}
+
+	@Override
+	public String toString() {
+		return "QueryCostModel [defaultBudget=" + defaultBudget + ", budgets=" + budgets + ", degradedPageSize=" + degradedPageSize + "]";
+	}
+
+	/**
+	 * Charges every expanded navigation by its depth, then the $filter and $orderby of the expanded items, which are measured
+	 * by the same visitor as those of the request, and goes on with the nested $expand
+	 */
+	private void expand(QueryCost queryCost, CostExpressionVisitor visitor, Class<?> clazz, ExpandOption expandOption, int depth) throws ODataApplicationException {
+
+		if(expandOption == null || clazz == null) return;
+
+		PropertyIndex propertyIndex = PropertyIndex.of(clazz);
+
+		for(ExpandItem expandItem : expandOption.getExpandItems()) {
+
+			if(expandItem.isStar()) {
+				List<PropertyPath> navigations = Arrays.stream(clazz.getDeclaredFields())
+					.map(propertyIndex::get)
+					.filter(property -> property != null && property.isNavigation() && !property.isIgnored())
+					.collect(Collectors.toList());
+				for(PropertyPath navigation : navigations) charge(queryCost, navigation, depth);
+				continue;
+			}
+
+			if(expandItem.getResourcePath() == null) continue;
+
+			Class<?> cl = clazz;
+			int level = depth;
+
+			for(UriResource uriResource : expandItem.getResourcePath().getUriResourceParts()) {
+				if(!(uriResource instanceof UriResourceNavigation)) continue;
+				PropertyPath navigation = PropertyIndex.of(cl).getNavigation(((UriResourceNavigation) uriResource).getProperty().getName());
+				if(navigation == null || navigation.isIgnored()) {
+					cl = null;
+					break;
+				}
+				charge(queryCost, navigation, level++);
+				cl = navigation.getTargetClass();
+				if(cl == null) break;
+			}
+
+			if(expandItem.getFilterOption() != null) accept(visitor, expandItem.getFilterOption().getExpression());
+
+			if(expandItem.getOrderByOption() != null) {
+				for(OrderByItem orderByItem : expandItem.getOrderByOption().getOrders()) accept(visitor, orderByItem.getExpression());
+			}
+
+			expand(queryCost, visitor, cl, expandItem.getExpandOption(), level);
+		}
+	}
+
+	private void charge(QueryCost queryCost, PropertyPath navigation, int depth) {
+		queryCost.add(QueryCost.EXPAND, expandCost * depth + (navigation.isCollection() ? fanOutCost * depth : 0));
+	}
+
+	private static void accept(CostExpressionVisitor visitor, Expression expression) throws ODataApplicationException {
+
+		if(expression == null) return;
+
+		try {
+			expression.accept(visitor);
+		} catch (ExpressionVisitException e) {
+			throw new ODataApplicationException(e.getMessage(), HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package com.cairone.olingo.ext.jpa.query;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.olingo.server.api.ODataApplicationException;
+
+import com.cairone.olingo.ext.jpa.visitors.FilterExpressionVisitor.ParameterBinder;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Bounded, least recently used cache of the queries built by {@link JPQLQueryBuilder}, keyed on the shape of the request:
+ * the entity, the $filter with its literals replaced by parameter slots, the $orderby, $expand and $select. A request with a
+ * known shape skips the translation of its options and only binds the values of its literals. As the JPQL string of a shape
+ * never changes, the persistence provider also finds its own parsed plan for it.
+ *
+ * @author diego.cairone
+ */
+public final class QueryPlanCache {
+
+	public static final int DEFAULT_MAXIMUM_SIZE = 500;
+
+	private static final QueryPlanCache DEFAULT = new QueryPlanCache(DEFAULT_MAXIMUM_SIZE);
+
+	private final long maximumSize;
+	private final Cache<String, Template> templates;
+
+	public QueryPlanCache(long maximumSize) {
+		this.maximumSize = maximumSize;
+		this.templates = CacheBuilder.newBuilder()
+			.maximumSize(maximumSize)
+			.recordStats()
+			.build();
+	}
+
+	/**
+	 * @return The cache shared by every {@link JPQLQueryBuilder} unless another one is set
+	 */
+	public static QueryPlanCache getDefault() {
+		return DEFAULT;
+	}
+
+	public long getMaximumSize() {
+		return maximumSize;
+	}
+
+	public long size() {
+		return templates.size();
+	}
+
+	/**
+	 * @return Hits, misses and evictions since the cache was created
+	 */
+	public CacheStats getStats() {
+		return templates.stats();
+	}
+
+	public long getHitCount() {
+		return templates.stats().hitCount();
+	}
+
+	public long getMissCount() {
+		return templates.stats().missCount();
+	}
+
+	public double getHitRate() {
+		return templates.stats().hitRate();
+	}
+
+	public void clear() {
+		templates.invalidateAll();
+	}
+
+	@Override
+	public String toString() {
+		return "QueryPlanCache [size=" + size() + ", maximumSize=" + maximumSize + ", " + getStats() + "]";
+	}
+
+	Template get(String shape) {
+		return templates.getIfPresent(shape);
+	}
+
+	void put(String shape, Template template) {
+		templates.put(shape, template);
+	}
+
+	/**
+	 * A query compiled for one shape: the JPQL string and how to compute its parameters from the literals of a request
+	 */
+	static final class Template {
+
+		private final String queryString;
+		private final Class<?> clazz;
+		private final List<Field> projection;
+		private final FetchPlan fetchPlan;
+		private final AccessPattern accessPattern;
+		private final Map<String, ParameterBinder> binders;
+		private final int keysetSize;
+
+		/**
+		 * @param keysetSize The number of skip token parameters, bound from the values of the skip token
+		 */
+		Template(JPQLQuery jpaQuery, Map<String, ParameterBinder> binders, int keysetSize) {
+			this.queryString = jpaQuery.getQueryString();
+			this.clazz = jpaQuery.getClazz();
+			this.projection = Collections.unmodifiableList(jpaQuery.getProjection());
+			this.fetchPlan = jpaQuery.getFetchPlan();
+			this.accessPattern = jpaQuery.getAccessPattern();
+			this.binders = binders;
+			this.keysetSize = keysetSize;
+		}
+
+		/**
+		 * @param indexAdvisor The advisor of the builder that asks for the query, as the cache can be shared by builders with different advisors
+		 * @param readOnly Whether the builder that asks for the query reads entities read-only, which does not change the query string
+		 */
+		JPQLQuery instantiate(List<Object> literals, SkipToken skipToken, SearchRestriction searchRestriction, IndexAdvisor indexAdvisor, boolean readOnly) throws ODataApplicationException {
+
+			Map<String, Object> queryParams = new HashMap<String, Object>();
+
+			for(Map.Entry<String, ParameterBinder> entry : binders.entrySet()) {
+				queryParams.put(entry.getKey(), entry.getValue().bind(literals));
+			}
+
+			for(int i = 0; i < keysetSize; i++) {
+				queryParams.put(JPQLQueryBuilder.SKIPTOKEN_PARAM + i, skipToken.getValues().get(i));
+			}
+
+			if(searchRestriction != null) queryParams.putAll(searchRestriction.getParameters());
+
+			return new JPQLQuery(queryString, queryParams, clazz, projection, fetchPlan, accessPattern, indexAdvisor, readOnly);
+		}
+	}
+}
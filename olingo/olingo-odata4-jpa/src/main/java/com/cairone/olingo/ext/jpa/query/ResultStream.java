@@ -0,0 +1,54 @@
+package com.cairone.olingo.ext.jpa.query;
+
+import java.util.Iterator;
+import java.util.function.Function;
+
+import com.google.common.collect.Iterators;
+
+/**
+ * A lazy, single-use sequence of query results. Rows are read while iterating, so a collection read never holds the whole
+ * result in memory; consumers that stop early should close it to release the underlying cursor.
+ *
+ * @author diego.cairone
+ */
+public final class ResultStream<T> implements Iterable<T>, AutoCloseable {
+
+	private final Iterator<T> iterator;
+	private final AutoCloseable closeable;
+	private boolean consumed = false;
+
+	public ResultStream(Iterator<T> iterator, AutoCloseable closeable) {
+		this.iterator = iterator;
+		this.closeable = closeable;
+	}
+
+	/**
+	 * @throws IllegalStateException When the stream has already been iterated
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		if(consumed) throw new IllegalStateException("A ResultStream can be iterated only once");
+		consumed = true;
+		return iterator;
+	}
+
+	/**
+	 * Lazily converts every row, typically from a JPA entity to its Edm object. The returned stream closes this one.
+	 */
+	public <R> ResultStream<R> map(Function<? super T, ? extends R> function) {
+		if(consumed) throw new IllegalStateException("A ResultStream can be iterated only once");
+		consumed = true;
+		return new ResultStream<R>(Iterators.<T, R>transform(iterator, function::apply), this);
+	}
+
+	@Override
+	public void close() {
+		try {
+			closeable.close();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
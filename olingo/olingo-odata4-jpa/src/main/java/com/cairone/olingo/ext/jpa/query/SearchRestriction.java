@@ -0,0 +1,200 @@
+package com.cairone.olingo.ext.jpa.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+
+import com.cairone.olingo.ext.jpa.mappers.JpaPaths;
+import com.cairone.olingo.ext.jpa.query.PropertyIndex.PropertyPath;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * The rows of an entity set that match a <code>$search</code>, as a {@link com.cairone.olingo.ext.jpa.interfaces.SearchProvider}
+ * resolves it: either the keys of the candidate entities, or a JPQL condition for providers that delegate to the full-text
+ * search of the database. It is added to the WHERE clause of the query by {@link JPQLQueryBuilder#setSearchRestriction(SearchRestriction)},
+ * and a restriction by keys can also be tested on entities already read.
+ *
+ * @author diego.cairone
+ */
+public final class SearchRestriction {
+
+	public static final String SEARCH_PARAM = "search";
+
+	/**
+	 * The most parameters a restriction by keys binds, below the 1000 items of an Oracle IN list and the 2100 parameters of SQL Server.
+	 * Above it the restriction has no condition and is applied in memory.
+	 */
+	public static final int MAX_PARAMETERS = 1000;
+
+	private final Class<?> clazz;
+	private final Set<List<Object>> keys;
+	private final String condition;
+	private final Map<String, Object> parameters;
+	private final boolean cacheable;
+
+	private SearchRestriction(Class<?> clazz, Set<List<Object>> keys, String condition, Map<String, Object> parameters, boolean cacheable) {
+		this.clazz = clazz;
+		this.keys = keys;
+		this.condition = condition;
+		this.parameters = parameters;
+		this.cacheable = cacheable;
+	}
+
+	/**
+	 * @param clazz The Edm class of the entity set
+	 * @param keys The values of the keys of the candidate entities, each one in the order of {@link PropertyIndex#getKeys()}
+	 * @return A restriction to the candidate entities, without a condition when it would bind more than {@link #MAX_PARAMETERS} values
+	 */
+	public static SearchRestriction keys(Class<?> clazz, Collection<List<Object>> keys) {
+
+		Set<List<Object>> candidates = Collections.unmodifiableSet(new LinkedHashSet<List<Object>>(keys));
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		String condition;
+
+		PropertyIndex propertyIndex = PropertyIndex.of(clazz);
+		List<String> columns = propertyIndex.getKeys().stream()
+			.map(propertyIndex::getProperty)
+			.map(property -> JoinAliases.ROOT_ALIAS + "." + property.getJpaPath())
+			.collect(Collectors.toList());
+
+		if(candidates.isEmpty()) {
+			condition = "1 = 0";
+		} else if((long) candidates.size() * columns.size() > MAX_PARAMETERS) {
+			condition = null;
+		} else if(columns.size() == 1) {
+			condition = String.format("%s IN (:%s)", columns.get(0), SEARCH_PARAM);
+			parameters.put(SEARCH_PARAM, candidates.stream().map(key -> key.get(0)).collect(Collectors.toList()));
+		} else {
+			List<String> alternatives = new ArrayList<String>();
+			int i = 0;
+			for(List<Object> key : candidates) {
+				List<String> terms = new ArrayList<String>();
+				for(int j = 0; j < columns.size(); j++) {
+					String name = SEARCH_PARAM + i + "_" + j;
+					terms.add(String.format("%s = :%s", columns.get(j), name));
+					parameters.put(name, key.get(j));
+				}
+				alternatives.add(terms.stream().collect(Collectors.joining(" AND ", "(", ")")));
+				i++;
+			}
+			condition = alternatives.stream().collect(Collectors.joining(" OR "));
+		}
+
+		return new SearchRestriction(clazz, candidates, condition, parameters, condition != null && (candidates.isEmpty() || columns.size() == 1));
+	}
+
+	/**
+	 * For providers backed by the full-text search of the database, usually through <code>FUNCTION(...)</code>
+	 *
+	 * @param condition A JPQL condition on the root entity, aliased {@value JoinAliases#ROOT_ALIAS}
+	 * @param parameters The parameters of the condition; their names must start with {@value #SEARCH_PARAM} so they do not clash with those of the $filter
+	 * @return A restriction that can only be applied by the query
+	 */
+	public static SearchRestriction jpql(String condition, Map<String, Object> parameters) {
+		return new SearchRestriction(null, null, condition, ImmutableMap.copyOf(parameters), true);
+	}
+
+	/**
+	 * @return Whether the restriction is a set of candidate keys, which {@link #test(Object)} can check in memory
+	 */
+	public boolean isByKeys() {
+		return keys != null;
+	}
+
+	/**
+	 * @return Whether the restriction can be added to a query; when it can not, the candidates have to be tested with {@link #test(Object)}
+	 */
+	public boolean hasCondition() {
+		return condition != null;
+	}
+
+	/**
+	 * @return Whether the condition is the same whatever the number of candidates, so a query with it can be cached
+	 */
+	public boolean isCacheable() {
+		return cacheable;
+	}
+
+	/**
+	 * @return Whether no entity can match, so nothing has to be read
+	 */
+	public boolean isEmpty() {
+		return keys != null && keys.isEmpty();
+	}
+
+	/**
+	 * @return The keys of the candidate entities, or null when the restriction is a JPQL condition
+	 */
+	public Set<List<Object>> getKeys() {
+		return keys;
+	}
+
+	/**
+	 * @return The JPQL condition, which depends on the number of candidates only when the entity set has a composite key; null
+	 * when there are too many candidates to bind
+	 */
+	public String getCondition() {
+		return condition;
+	}
+
+	public Map<String, Object> getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * @param object An entity of the Edm class the restriction was built for, or a row of its JPA entity
+	 * @return Whether the entity is one of the candidates
+	 */
+	public boolean test(Object object) throws ODataApplicationException {
+
+		if(keys == null) {
+			throw new ODataApplicationException("A $search resolved by the database can not be applied in memory", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+		}
+
+		return keys.contains(keyOf(clazz, object));
+	}
+
+	/**
+	 * @return The values of the keys of an entity, in the order of {@link PropertyIndex#getKeys()}
+	 */
+	public static List<Object> keyOf(Object object) throws ODataApplicationException {
+		return keyOf(object.getClass(), object);
+	}
+
+	/**
+	 * @param clazz The Edm class of the entity set
+	 * @param object An instance of the Edm class, or a row of its JPA entity, whose keys are read from their JPA paths
+	 * @return The values of the keys, in the order of {@link PropertyIndex#getKeys()}
+	 */
+	public static List<Object> keyOf(Class<?> clazz, Object object) throws ODataApplicationException {
+
+		PropertyIndex propertyIndex = PropertyIndex.of(clazz);
+		List<Object> key = new ArrayList<Object>();
+
+		try {
+			for(String name : propertyIndex.getKeys()) {
+				PropertyPath property = propertyIndex.getProperty(name);
+				key.add(clazz.isInstance(object) ? property.getField().get(object) : JpaPaths.read(object, property.getJpaPath()));
+			}
+		} catch (IllegalAccessException e) {
+			throw new ODataApplicationException(e.getMessage(), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
+		}
+
+		return key;
+	}
+
+	@Override
+	public String toString() {
+		return "SearchRestriction [" + condition + "]";
+	}
+}
@@ -0,0 +1,230 @@
+package com.cairone.olingo.ext.jpa.query;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+
+/**
+ * Stateless position of a server-driven page. It carries the number of rows already skipped, the page size, and the
+ * sort key values of the last row served, so the next page can be read with a keyset predicate on any node.
+ * When a sort key is nullable, as a keyset predicate would skip the rows with nulls, or the last row has a value that can not be
+ * compared (a null or an unsupported type) the token only carries the offset.
+ *
+ * @author diego.cairone
+ */
+public final class SkipToken {
+
+	private static final String SEPARATOR = ".";
+
+	private final int offset;
+	private final int pageSize;
+	private final String signature;
+	private final List<Object> values;
+
+	private SkipToken(int offset, int pageSize, String signature, List<Object> values) {
+		this.offset = offset;
+		this.pageSize = pageSize;
+		this.signature = signature;
+		this.values = values;
+	}
+
+	/**
+	 * @return The number of rows before the page, counting $skip
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * @return The sort key values of the last row served, in the order given by {@link SortKey#from}; empty when positioned by offset
+	 */
+	public List<Object> getValues() {
+		return values;
+	}
+
+	public boolean hasValues() {
+		return !values.isEmpty();
+	}
+
+	/**
+	 * @return The value to pass as first result to the query: null when the keyset predicate positions the page
+	 */
+	public Integer getSkip() {
+		return hasValues() ? null : offset;
+	}
+
+	/**
+	 * Token for the first page of a request
+	 */
+	public static SkipToken first(Integer skip, int pageSize, List<SortKey> sortKeys) {
+		return new SkipToken(skip == null ? 0 : skip, pageSize, SortKey.signature(sortKeys), Collections.emptyList());
+	}
+
+	/**
+	 * Token for the page that follows this one
+	 *
+	 * @param rows The number of rows served in this page
+	 * @param pageSize The page size applied to this page
+	 * @param lastRow The last Edm object served in this page
+	 * @throws IllegalAccessException
+	 */
+	public SkipToken next(int rows, int pageSize, Object lastRow, List<SortKey> sortKeys) throws IllegalAccessException {
+
+		List<Object> lastValues = new ArrayList<Object>();
+
+		if(sortKeys.stream().anyMatch(SortKey::isNullable)) {
+			return new SkipToken(offset + rows, pageSize, signature, lastValues);
+		}
+
+		for(SortKey sortKey : sortKeys) {
+			Object value = sortKey.valueOf(lastRow);
+			if(value == null || encodeValue(value) == null) {
+				lastValues.clear();
+				break;
+			}
+			lastValues.add(value);
+		}
+
+		return new SkipToken(offset + rows, pageSize, signature, lastValues);
+	}
+
+	public String encode() {
+
+		StringBuilder sb = new StringBuilder();
+
+		sb.append(encodePart(String.valueOf(offset)));
+		sb.append(SEPARATOR).append(encodePart(String.valueOf(pageSize)));
+		sb.append(SEPARATOR).append(encodePart(signature));
+
+		for(Object value : values) {
+			sb.append(SEPARATOR).append(encodePart(encodeValue(value)));
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Reads a token issued by {@link #encode()}
+	 *
+	 * @param token The value of $skiptoken
+	 * @param sortKeys The sort keys of the current request; a token issued for another order is rejected
+	 * @throws ODataApplicationException When the token is malformed or does not match the request
+	 */
+	public static SkipToken decode(String token, List<SortKey> sortKeys) throws ODataApplicationException {
+
+		try {
+			String[] parts = token.split("\\" + SEPARATOR);
+
+			int offset = Integer.parseInt(decodePart(parts[0]));
+			int pageSize = Integer.parseInt(decodePart(parts[1]));
+			String signature = decodePart(parts[2]);
+
+			if(!signature.equals(SortKey.signature(sortKeys))) {
+				throw new ODataApplicationException("THE SKIPTOKEN DOES NOT MATCH THE REQUESTED ORDER", HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+			}
+
+			List<Object> values = new ArrayList<Object>();
+			for(int i = 3; i < parts.length && i - 3 < sortKeys.size(); i++) {
+				values.add(decodeValue(decodePart(parts[i]), sortKeys.get(i - 3)));
+			}
+
+			if(offset < 0 || pageSize < 1 || (parts.length > 3 && (parts.length - 3 != sortKeys.size() || sortKeys.stream().anyMatch(SortKey::isNullable)))) {
+				throw new IllegalArgumentException(token);
+			}
+
+			return new SkipToken(offset, pageSize, signature, values);
+
+		} catch (RuntimeException e) {
+			throw new ODataApplicationException("INVALID SKIPTOKEN", HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "SkipToken [offset=" + offset + ", pageSize=" + pageSize + ", values=" + values + "]";
+	}
+
+	private static String encodePart(String part) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(part.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String decodePart(String part) {
+		return new String(Base64.getUrlDecoder().decode(part), StandardCharsets.UTF_8);
+	}
+
+	private static String encodeValue(Object value) {
+
+		if(value instanceof Integer) {
+			return "I" + value;
+		} else if(value instanceof Long) {
+			return "L" + value;
+		} else if(value instanceof Short) {
+			return "H" + value;
+		} else if(value instanceof Double) {
+			return "F" + value;
+		} else if(value instanceof BigDecimal) {
+			return "M" + ((BigDecimal) value).toPlainString();
+		} else if(value instanceof Boolean) {
+			return "Z" + value;
+		} else if(value instanceof String) {
+			return "S" + value;
+		} else if(value instanceof LocalDate) {
+			return "D" + value;
+		} else if(value instanceof LocalDateTime) {
+			return "T" + value;
+		} else if(value instanceof Enum) {
+			return "E" + ((Enum<?>) value).name();
+		}
+
+		return null;
+	}
+
+	/**
+	 * @param sortKey The sort key the value belongs to; an enumeration is resolved against the type of its field, never against the token
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object decodeValue(String text, SortKey sortKey) {
+
+		String value = text.substring(1);
+
+		switch(text.charAt(0)) {
+		case 'I':
+			return Integer.valueOf(value);
+		case 'L':
+			return Long.valueOf(value);
+		case 'H':
+			return Short.valueOf(value);
+		case 'F':
+			return Double.valueOf(value);
+		case 'M':
+			return new BigDecimal(value);
+		case 'Z':
+			return Boolean.valueOf(value);
+		case 'S':
+			return value;
+		case 'D':
+			return LocalDate.parse(value);
+		case 'T':
+			return LocalDateTime.parse(value);
+		case 'E':
+			Class<?> cl = sortKey.getType();
+			if(!cl.isEnum()) throw new IllegalArgumentException(value);
+			return Enum.valueOf((Class<? extends Enum>) cl, value);
+		default:
+			throw new IllegalArgumentException(text);
+		}
+	}
+}
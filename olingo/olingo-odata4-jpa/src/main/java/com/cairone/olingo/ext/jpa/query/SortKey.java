@@ -0,0 +1,223 @@
+package com.cairone.olingo.ext.jpa.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceNavigation;
+import org.apache.olingo.server.api.uri.UriResourceProperty;
+import org.apache.olingo.server.api.uri.queryoption.OrderByItem;
+import org.apache.olingo.server.api.uri.queryoption.OrderByOption;
+import org.apache.olingo.server.api.uri.queryoption.expression.Expression;
+import org.apache.olingo.server.api.uri.queryoption.expression.Member;
+
+import com.cairone.olingo.ext.jpa.enums.EnumerationTreatedAs;
+import com.cairone.olingo.ext.jpa.interfaces.OdataEnum;
+import com.cairone.olingo.ext.jpa.mappers.JpaPaths;
+import com.cairone.olingo.ext.jpa.query.PropertyIndex.PropertyPath;
+
+/**
+ * One column of the total order used by keyset paging: the $orderby items followed by the entity keys as tie-breakers
+ *
+ * @author diego.cairone
+ */
+public final class SortKey {
+
+	private final List<PropertyPath> path;
+	private final String jpaPath;
+	private final boolean descending;
+
+	private SortKey(List<PropertyPath> path, String jpaPath, boolean descending) {
+		this.path = path;
+		this.jpaPath = jpaPath;
+		this.descending = descending;
+	}
+
+	/**
+	 * @return The path of the column in the JPA entity, using dot notation
+	 */
+	public String getJpaPath() {
+		return jpaPath;
+	}
+
+	/**
+	 * @return The column in a query, its relationships replaced by the join aliases of the query
+	 */
+	public String getColumn(JoinAliases joinAliases) {
+
+		List<String> navigations = new ArrayList<String>();
+		List<String> properties = new ArrayList<String>();
+
+		for(PropertyPath property : path) {
+			(property.isNavigation() && properties.isEmpty() ? navigations : properties).add(property.getJpaPath());
+		}
+
+		return joinAliases.join(navigations, String.join(".", properties));
+	}
+
+	public boolean isDescending() {
+		return descending;
+	}
+
+	/**
+	 * @return Whether the column can hold a null, because the property or a navigation property on its path is nullable.
+	 * Keyset predicates do not compare nulls, so a page ordered by such a column is positioned by offset.
+	 */
+	public boolean isNullable() {
+		return path.stream().anyMatch(PropertyPath::isNullable);
+	}
+
+	/**
+	 * @return The type of the Edm field at the end of the path
+	 */
+	Class<?> getType() {
+		return path.get(path.size() - 1).getField().getType();
+	}
+
+	/**
+	 * @return Whether the column belongs to the table of the entity itself, rather than to a related one
+	 */
+	boolean isRootColumn() {
+		return path.stream().noneMatch(PropertyPath::isNavigation);
+	}
+
+	/**
+	 * Reads the value of this column from an Edm object, converted the same way filter literals are bound
+	 *
+	 * @param object An instance of the Edm class the key was resolved against, a row of a projection query, or an instance of
+	 * its JPA entity, whose value is read from the JPA path as it is stored
+	 * @return The value, or null when any step of the path is null or the projection did not read it
+	 * @throws IllegalAccessException
+	 */
+	public Object valueOf(Object object) throws IllegalAccessException {
+
+		Object value = object;
+
+		if(object instanceof EdmTuple) {
+			if(path.size() != 1 || path.get(0).isNavigation()) return null;
+			value = ((EdmTuple) object).get(path.get(0).getEdmName());
+		} else if(object != null && !path.get(0).getField().getDeclaringClass().isInstance(object)) {
+			try {
+				return JpaPaths.read(object, jpaPath);
+			} catch (ODataApplicationException e) {
+				return null;
+			}
+		} else {
+			for(PropertyPath property : path) {
+				if(value == null) return null;
+				value = property.getField().get(value);
+			}
+		}
+
+		if(value != null && value.getClass().isEnum()) {
+			EnumerationTreatedAs treatedAs = path.get(path.size() - 1).getTreatedAs();
+			if(EnumerationTreatedAs.NAME.equals(treatedAs)) {
+				return value.toString();
+			} else if(EnumerationTreatedAs.NUMERIC.equals(treatedAs)) {
+				return Integer.valueOf(((OdataEnum<?>) value).getOrdinal());
+			}
+		}
+
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return jpaPath + (descending ? " DESC" : " ASC");
+	}
+
+	/**
+	 * Resolves the sort keys of a request. An empty list means the order can not be expressed as plain columns and paging must use offsets.
+	 *
+	 * @param clazz The Edm class of the entity set
+	 * @param orderByOption The $orderby of the request, may be null
+	 * @return The sort keys, $orderby items first
+	 */
+	public static List<SortKey> from(Class<?> clazz, OrderByOption orderByOption) {
+
+		List<SortKey> sortKeys = new ArrayList<SortKey>();
+		List<String> edmPaths = new ArrayList<String>();
+
+		if(orderByOption != null) {
+			for(OrderByItem orderByItem : orderByOption.getOrders()) {
+
+				SortKey sortKey = of(clazz, orderByItem);
+				if(sortKey == null) return Collections.emptyList();
+
+				sortKeys.add(sortKey);
+				edmPaths.add(sortKey.path.stream().map(PropertyPath::getEdmName).collect(Collectors.joining("/")));
+			}
+		}
+
+		for(String key : PropertyIndex.of(clazz).getKeys()) {
+			if(!edmPaths.contains(key)) {
+				SortKey sortKey = resolve(clazz, Arrays.asList(key), false);
+				if(sortKey == null) return Collections.emptyList();
+				sortKeys.add(sortKey);
+			}
+		}
+
+		return sortKeys;
+	}
+
+	/**
+	 * Resolves one $orderby item, every hop against the Edm class the previous one leads to
+	 *
+	 * @param clazz The Edm class of the entity set
+	 * @return The sort key, or null when the item is not a path of single-valued navigation properties ending in a property
+	 */
+	public static SortKey of(Class<?> clazz, OrderByItem orderByItem) {
+
+		Expression expression = orderByItem.getExpression();
+		if(!(expression instanceof Member)) return null;
+
+		return of(clazz, (Member) expression, orderByItem.isDescending());
+	}
+
+	/**
+	 * Resolves a member of a $filter or $orderby the same way as an $orderby item
+	 *
+	 * @return The column, or null when the member is not a path of single-valued navigation properties ending in a property
+	 */
+	static SortKey of(Class<?> clazz, Member member, boolean descending) {
+
+		List<String> segments = new ArrayList<String>();
+		for(UriResource uriResource : member.getResourcePath().getUriResourceParts()) {
+			if(!(uriResource instanceof UriResourceProperty) && !(uriResource instanceof UriResourceNavigation)) return null;
+			segments.add(uriResource.getSegmentValue());
+		}
+
+		return resolve(clazz, segments, descending);
+	}
+
+	/**
+	 * @return A short fingerprint of the order, used to reject skip tokens issued for a different $orderby
+	 */
+	public static String signature(List<SortKey> sortKeys) {
+		String order = sortKeys.stream().map(SortKey::toString).collect(Collectors.joining(","));
+		return Integer.toHexString(order.hashCode());
+	}
+
+	private static SortKey resolve(Class<?> clazz, List<String> edmSegments, boolean descending) {
+
+		Class<?> cl = clazz;
+		List<PropertyPath> path = new ArrayList<PropertyPath>();
+		List<String> jpaSegments = new ArrayList<String>();
+
+		for(String edmSegment : edmSegments) {
+
+			PropertyPath property = cl == null ? null : PropertyIndex.of(cl).get(edmSegment);
+			if(property == null || property.isIgnored() || property.isCollection()) return null;
+
+			path.add(property);
+			jpaSegments.add(property.getJpaPath());
+			cl = property.getField().getType();
+		}
+
+		return new SortKey(path, String.join(".", jpaSegments), descending);
+	}
+}
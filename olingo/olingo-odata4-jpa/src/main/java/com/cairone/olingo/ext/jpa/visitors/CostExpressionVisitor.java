@@ -0,0 +1,148 @@
+package com.cairone.olingo.ext.jpa.visitors;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.olingo.commons.api.edm.EdmEnumType;
+import org.apache.olingo.commons.api.edm.EdmType;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceLambdaAll;
+import org.apache.olingo.server.api.uri.UriResourceLambdaAny;
+import org.apache.olingo.server.api.uri.UriResourceNavigation;
+import org.apache.olingo.server.api.uri.queryoption.expression.BinaryOperatorKind;
+import org.apache.olingo.server.api.uri.queryoption.expression.Expression;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitException;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitor;
+import org.apache.olingo.server.api.uri.queryoption.expression.Literal;
+import org.apache.olingo.server.api.uri.queryoption.expression.Member;
+import org.apache.olingo.server.api.uri.queryoption.expression.MethodKind;
+import org.apache.olingo.server.api.uri.queryoption.expression.UnaryOperatorKind;
+
+/**
+ * Measures what a $filter or $orderby expression costs the database: the number of nodes, the navigation paths that become
+ * joins, the lambda expressions that become subqueries and the method calls that wrap a column, which prevent the use of
+ * its indexes. <code>startswith</code> is not counted, as it translates to <code>LIKE 'x%'</code>.
+ * <p>
+ * One visitor can measure several expressions; the counts add up and navigation paths are counted once.
+ *
+ * @author diego.cairone
+ */
+public class CostExpressionVisitor implements ExpressionVisitor<Boolean> {
+
+	private int nodes = 0;
+	private int subqueries = 0;
+	private int functions = 0;
+	private final Set<String> joins = new LinkedHashSet<String>();
+
+	/**
+	 * @return The number of operators, method calls, literals and members
+	 */
+	public int getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return The distinct navigation paths, each one joined once
+	 */
+	public Set<String> getJoins() {
+		return joins;
+	}
+
+	/**
+	 * @return The number of <code>any</code> and <code>all</code> lambda expressions
+	 */
+	public int getSubqueries() {
+		return subqueries;
+	}
+
+	/**
+	 * @return The number of method calls applied to a property
+	 */
+	public int getFunctions() {
+		return functions;
+	}
+
+	/**
+	 * The result of every visit tells whether the expression reads a property
+	 */
+	@Override
+	public Boolean visitBinaryOperator(BinaryOperatorKind operator, Boolean left, Boolean right) throws ExpressionVisitException, ODataApplicationException {
+		nodes++;
+		return left || right;
+	}
+
+	@Override
+	public Boolean visitUnaryOperator(UnaryOperatorKind operator, Boolean operand) throws ExpressionVisitException, ODataApplicationException {
+		nodes++;
+		return operand;
+	}
+
+	@Override
+	public Boolean visitMethodCall(MethodKind methodCall, List<Boolean> parameters) throws ExpressionVisitException, ODataApplicationException {
+		nodes++;
+		boolean member = parameters.stream().anyMatch(Boolean::booleanValue);
+		if(member && methodCall != MethodKind.STARTSWITH) functions++;
+		return member;
+	}
+
+	@Override
+	public Boolean visitLambdaExpression(String lambdaFunction, String lambdaVariable, Expression expression) throws ExpressionVisitException, ODataApplicationException {
+		subqueries++;
+		return expression.accept(this);
+	}
+
+	@Override
+	public Boolean visitLiteral(Literal literal) throws ExpressionVisitException, ODataApplicationException {
+		nodes++;
+		return false;
+	}
+
+	@Override
+	public Boolean visitMember(Member member) throws ExpressionVisitException, ODataApplicationException {
+
+		nodes++;
+		List<String> path = new ArrayList<String>();
+
+		for(UriResource uriResource : member.getResourcePath().getUriResourceParts()) {
+			if(uriResource instanceof UriResourceLambdaAny || uriResource instanceof UriResourceLambdaAll) {
+				Expression expression = uriResource instanceof UriResourceLambdaAny ? ((UriResourceLambdaAny) uriResource).getExpression() : ((UriResourceLambdaAll) uriResource).getExpression();
+				subqueries++;
+				if(expression != null) expression.accept(this);
+				break;
+			}
+			path.add(uriResource.getSegmentValue());
+			if(uriResource instanceof UriResourceNavigation && !((UriResourceNavigation) uriResource).getProperty().isCollection()) {
+				joins.add(String.join("/", path));
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public Boolean visitAlias(String aliasName) throws ExpressionVisitException, ODataApplicationException {
+		nodes++;
+		return false;
+	}
+
+	@Override
+	public Boolean visitTypeLiteral(EdmType type) throws ExpressionVisitException, ODataApplicationException {
+		nodes++;
+		return false;
+	}
+
+	@Override
+	public Boolean visitLambdaReference(String variableName) throws ExpressionVisitException, ODataApplicationException {
+		nodes++;
+		return true;
+	}
+
+	@Override
+	public Boolean visitEnum(EdmEnumType type, List<String> enumValues) throws ExpressionVisitException, ODataApplicationException {
+		nodes++;
+		return false;
+	}
+}
@@ -0,0 +1,370 @@
+package com.cairone.olingo.ext.jpa.visitors;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.edm.EdmType;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.queryoption.expression.Binary;
+import org.apache.olingo.server.api.uri.queryoption.expression.BinaryOperatorKind;
+import org.apache.olingo.server.api.uri.queryoption.expression.Expression;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitException;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitor;
+import org.apache.olingo.server.api.uri.queryoption.expression.Literal;
+import org.apache.olingo.server.api.uri.queryoption.expression.Unary;
+import org.apache.olingo.server.api.uri.queryoption.expression.UnaryOperatorKind;
+
+import com.cairone.olingo.ext.jpa.converters.LiteralParsers;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Rewrites a $filter into a canonical form before it is translated, so equivalent filters share one shape in the
+ * {@link com.cairone.olingo.ext.jpa.query.QueryPlanCache} and the database receives simpler predicates:
+ * <ul>
+ * <li>chains of AND and OR are flattened, their repeated operands removed and the rest ordered by shape;</li>
+ * <li>a comparison with the literal on the left is turned around, and a comparison between two members is ordered by shape;</li>
+ * <li>NOT is removed from a negated NOT or comparison, which only holds under the three-valued logic of SQL;</li>
+ * <li>comparisons and integer arithmetic between literals are folded, and so are boolean constants, so <code>true and x</code> becomes <code>x</code>.</li>
+ * </ul>
+ * Method calls and lambda expressions are kept as they are written.
+ *
+ * @author diego.cairone
+ */
+public final class ExpressionNormalizer {
+
+	private static final OData ODATA = OData.newInstance();
+	private static final EdmType BOOLEAN = ODATA.createPrimitiveTypeInstance(EdmPrimitiveTypeKind.Boolean);
+	private static final EdmType INT32 = ODATA.createPrimitiveTypeInstance(EdmPrimitiveTypeKind.Int32);
+	private static final EdmType INT64 = ODATA.createPrimitiveTypeInstance(EdmPrimitiveTypeKind.Int64);
+
+	private static final Map<BinaryOperatorKind, BinaryOperatorKind> MIRRORED = ImmutableMap.<BinaryOperatorKind, BinaryOperatorKind>builder()
+		.put(BinaryOperatorKind.EQ, BinaryOperatorKind.EQ)
+		.put(BinaryOperatorKind.NE, BinaryOperatorKind.NE)
+		.put(BinaryOperatorKind.LT, BinaryOperatorKind.GT)
+		.put(BinaryOperatorKind.LE, BinaryOperatorKind.GE)
+		.put(BinaryOperatorKind.GT, BinaryOperatorKind.LT)
+		.put(BinaryOperatorKind.GE, BinaryOperatorKind.LE)
+		.build();
+
+	private static final Map<BinaryOperatorKind, BinaryOperatorKind> NEGATED = ImmutableMap.<BinaryOperatorKind, BinaryOperatorKind>builder()
+		.put(BinaryOperatorKind.EQ, BinaryOperatorKind.NE)
+		.put(BinaryOperatorKind.NE, BinaryOperatorKind.EQ)
+		.put(BinaryOperatorKind.LT, BinaryOperatorKind.GE)
+		.put(BinaryOperatorKind.LE, BinaryOperatorKind.GT)
+		.put(BinaryOperatorKind.GT, BinaryOperatorKind.LE)
+		.put(BinaryOperatorKind.GE, BinaryOperatorKind.LT)
+		.build();
+
+	private ExpressionNormalizer() {
+	}
+
+	/**
+	 * @return The canonical form of the expression; a filter that is always true or always false becomes a boolean literal
+	 */
+	public static Expression normalize(Expression expression) throws ODataApplicationException {
+
+		if(expression instanceof Binary) {
+			Binary binary = (Binary) expression;
+			BinaryOperatorKind operator = binary.getOperator();
+
+			if(operator == BinaryOperatorKind.AND || operator == BinaryOperatorKind.OR) return junction(operator, binary);
+
+			Expression left = normalize(binary.getLeftOperand());
+			Expression right = normalize(binary.getRightOperand());
+			return comparison(operator, left, right);
+		}
+
+		if(expression instanceof Unary) {
+			Unary unary = (Unary) expression;
+			Expression operand = normalize(unary.getOperand());
+
+			if(unary.getOperator() == UnaryOperatorKind.NOT) return negation(operand);
+			if(unary.getOperator() == UnaryOperatorKind.MINUS && isIntegral(operand)) {
+				String text = ((Literal) operand).getText();
+				return new FoldedLiteral(text.startsWith("-") ? text.substring(1) : "-" + text, ((Literal) operand).getType());
+			}
+			return operand == unary.getOperand() ? unary : new NormalizedUnary(unary.getOperator(), operand);
+		}
+
+		return expression;
+	}
+
+	/**
+	 * @return Whether the expression is the boolean literal <code>true</code>
+	 */
+	public static boolean isTrue(Expression expression) {
+		return isBoolean(expression) && ((Literal) expression).getText().equals("true");
+	}
+
+	/**
+	 * @return Whether the expression is the boolean literal <code>false</code>
+	 */
+	public static boolean isFalse(Expression expression) {
+		return isBoolean(expression) && ((Literal) expression).getText().equals("false");
+	}
+
+	private static Expression junction(BinaryOperatorKind operator, Binary binary) throws ODataApplicationException {
+
+		List<Expression> operands = new ArrayList<Expression>();
+		flatten(operator, binary, operands);
+
+		List<Expression> normalizedOperands = new ArrayList<Expression>();
+		for(Expression operand : operands) {
+			flatten(operator, normalize(operand), normalizedOperands);
+		}
+
+		Map<String, Expression> distinct = new LinkedHashMap<String, Expression>();
+		Map<Expression, String> shapes = new LinkedHashMap<Expression, String>();
+
+		for(Expression normalized : normalizedOperands) {
+
+			if(operator == BinaryOperatorKind.AND ? isTrue(normalized) : isFalse(normalized)) continue;
+			if(operator == BinaryOperatorKind.AND ? isFalse(normalized) : isTrue(normalized)) return normalized;
+
+			List<Object> literals = new ArrayList<Object>();
+			String shape = shape(normalized, literals);
+			if(distinct.putIfAbsent(shape + literals, normalized) == null) shapes.put(normalized, shape);
+		}
+
+		if(distinct.isEmpty()) return constant(operator == BinaryOperatorKind.AND);
+
+		List<Expression> ordered = new ArrayList<Expression>(distinct.values());
+		ordered.sort(Comparator.comparing(shapes::get));
+
+		Expression result = ordered.get(0);
+		for(int i = 1; i < ordered.size(); i++) {
+			result = new NormalizedBinary(result, operator, ordered.get(i));
+		}
+		return result;
+	}
+
+	private static void flatten(BinaryOperatorKind operator, Expression expression, List<Expression> operands) {
+		if(expression instanceof Binary && ((Binary) expression).getOperator() == operator) {
+			flatten(operator, ((Binary) expression).getLeftOperand(), operands);
+			flatten(operator, ((Binary) expression).getRightOperand(), operands);
+		} else {
+			operands.add(expression);
+		}
+	}
+
+	private static Expression comparison(BinaryOperatorKind operator, Expression left, Expression right) throws ODataApplicationException {
+
+		if(left instanceof Literal && right instanceof Literal) {
+			Expression folded = fold(operator, (Literal) left, (Literal) right);
+			if(folded != null) return folded;
+		}
+
+		BinaryOperatorKind mirrored = MIRRORED.get(operator);
+
+		if(mirrored != null && left instanceof Literal && !(right instanceof Literal)) {
+			return new NormalizedBinary(right, mirrored, left);
+		}
+
+		if(mirrored != null && !(left instanceof Literal) && !(right instanceof Literal) && shape(left, new ArrayList<Object>()).compareTo(shape(right, new ArrayList<Object>())) > 0) {
+			return new NormalizedBinary(right, mirrored, left);
+		}
+
+		return new NormalizedBinary(left, operator, right);
+	}
+
+	private static Expression negation(Expression operand) {
+
+		if(isBoolean(operand)) return constant(isFalse(operand));
+
+		if(operand instanceof Unary && ((Unary) operand).getOperator() == UnaryOperatorKind.NOT) return ((Unary) operand).getOperand();
+
+		if(operand instanceof Binary && NEGATED.containsKey(((Binary) operand).getOperator())) {
+			Binary binary = (Binary) operand;
+			return new NormalizedBinary(binary.getLeftOperand(), NEGATED.get(binary.getOperator()), binary.getRightOperand());
+		}
+
+		return new NormalizedUnary(UnaryOperatorKind.NOT, operand);
+	}
+
+	/**
+	 * Folds comparisons of two literals parsed into the same Java type, and the arithmetic of two integers that does not overflow
+	 *
+	 * @return The folded literal, or null when the operation is left to the database
+	 */
+	private static Expression fold(BinaryOperatorKind operator, Literal left, Literal right) throws ODataApplicationException {
+
+		if(left.getText().equals("null") || right.getText().equals("null")) return null;
+
+		if(isIntegral(left) && isIntegral(right)) {
+			boolean wide = Long.class.equals(LiteralParsers.javaType(left.getType())) || Long.class.equals(LiteralParsers.javaType(right.getType()));
+			return fold(operator, Long.valueOf(left.getText()), Long.valueOf(right.getText()), wide);
+		}
+
+		Class<?> javaType = LiteralParsers.javaType(left.getType());
+		if(javaType == null || !javaType.equals(LiteralParsers.javaType(right.getType())) || !Comparable.class.isAssignableFrom(javaType)) return null;
+
+		Object leftValue = LiteralParsers.forType(javaType).parse(left.getText());
+		Object rightValue = LiteralParsers.forType(javaType).parse(right.getText());
+
+		if(NEGATED.containsKey(operator)) {
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			int comparison = ((Comparable) leftValue).compareTo(rightValue);
+			switch(operator) {
+			case EQ: return constant(comparison == 0);
+			case NE: return constant(comparison != 0);
+			case LT: return constant(comparison < 0);
+			case LE: return constant(comparison <= 0);
+			case GT: return constant(comparison > 0);
+			default: return constant(comparison >= 0);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @param wide Whether one of the operands is an Edm.Int64, otherwise the result has to fit in an Edm.Int32
+	 */
+	private static Expression fold(BinaryOperatorKind operator, long a, long b, boolean wide) {
+
+		if(NEGATED.containsKey(operator)) {
+			int comparison = Long.compare(a, b);
+			switch(operator) {
+			case EQ: return constant(comparison == 0);
+			case NE: return constant(comparison != 0);
+			case LT: return constant(comparison < 0);
+			case LE: return constant(comparison <= 0);
+			case GT: return constant(comparison > 0);
+			default: return constant(comparison >= 0);
+			}
+		}
+
+		Long result;
+
+		try {
+			switch(operator) {
+			case ADD: result = Math.addExact(a, b); break;
+			case SUB: result = Math.subtractExact(a, b); break;
+			case MUL: result = Math.multiplyExact(a, b); break;
+			default: result = null;
+			}
+		} catch (ArithmeticException e) {
+			result = null;
+		}
+
+		if(result == null || (!wide && result.intValue() != result)) return null;
+
+		return new FoldedLiteral(result.toString(), wide ? INT64 : INT32);
+	}
+
+	private static boolean isIntegral(Expression expression) {
+		if(!(expression instanceof Literal) || ((Literal) expression).getText().equals("null")) return false;
+		Class<?> javaType = LiteralParsers.javaType(((Literal) expression).getType());
+		return Integer.class.equals(javaType) || Long.class.equals(javaType);
+	}
+
+	private static boolean isBoolean(Expression expression) {
+		return expression instanceof Literal && ((Literal) expression).getType() != null
+			&& Boolean.class.equals(LiteralParsers.javaType(((Literal) expression).getType()))
+			&& !((Literal) expression).getText().equals("null");
+	}
+
+	private static Literal constant(boolean value) {
+		return new FoldedLiteral(Boolean.toString(value), BOOLEAN);
+	}
+
+	private static String shape(Expression expression, List<Object> literals) throws ODataApplicationException {
+		try {
+			return expression.accept(new ShapeExpressionVisitor(literals));
+		} catch (ExpressionVisitException e) {
+			throw new ODataApplicationException(e.getMessage(), HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
+		}
+	}
+
+	private static final class NormalizedBinary implements Binary {
+
+		private final Expression left;
+		private final BinaryOperatorKind operator;
+		private final Expression right;
+
+		private NormalizedBinary(Expression left, BinaryOperatorKind operator, Expression right) {
+			this.left = left;
+			this.operator = operator;
+			this.right = right;
+		}
+
+		@Override
+		public <T> T accept(ExpressionVisitor<T> visitor) throws ExpressionVisitException, ODataApplicationException {
+			return visitor.visitBinaryOperator(operator, left.accept(visitor), right.accept(visitor));
+		}
+
+		@Override
+		public BinaryOperatorKind getOperator() {
+			return operator;
+		}
+
+		@Override
+		public Expression getLeftOperand() {
+			return left;
+		}
+
+		@Override
+		public Expression getRightOperand() {
+			return right;
+		}
+	}
+
+	private static final class NormalizedUnary implements Unary {
+
+		private final UnaryOperatorKind operator;
+		private final Expression operand;
+
+		private NormalizedUnary(UnaryOperatorKind operator, Expression operand) {
+			this.operator = operator;
+			this.operand = operand;
+		}
+
+		@Override
+		public <T> T accept(ExpressionVisitor<T> visitor) throws ExpressionVisitException, ODataApplicationException {
+			return visitor.visitUnaryOperator(operator, operand.accept(visitor));
+		}
+
+		@Override
+		public Expression getOperand() {
+			return operand;
+		}
+
+		@Override
+		public UnaryOperatorKind getOperator() {
+			return operator;
+		}
+	}
+
+	private static final class FoldedLiteral implements Literal {
+
+		private final String text;
+		private final EdmType type;
+
+		private FoldedLiteral(String text, EdmType type) {
+			this.text = text;
+			this.type = type;
+		}
+
+		@Override
+		public <T> T accept(ExpressionVisitor<T> visitor) throws ExpressionVisitException, ODataApplicationException {
+			return visitor.visitLiteral(this);
+		}
+
+		@Override
+		public String getText() {
+			return text;
+		}
+
+		@Override
+		public EdmType getType() {
+			return type;
+		}
+	}
+}
@@ -1,10 +1,10 @@
 package com.cairone.olingo.ext.jpa.visitors;
 
-import java.lang.reflect.Field;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -14,11 +14,13 @@ import java.util.stream.Collectors;
 import org.apache.olingo.commons.api.edm.EdmEnumType;
 import org.apache.olingo.commons.api.edm.EdmNavigationProperty;
 import org.apache.olingo.commons.api.edm.EdmType;
-import org.apache.olingo.commons.api.edm.FullQualifiedName;
 import org.apache.olingo.commons.api.http.HttpStatusCode;
 import org.apache.olingo.server.api.ODataApplicationException;
 import org.apache.olingo.server.api.uri.UriInfoResource;
 import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceLambdaAll;
+import org.apache.olingo.server.api.uri.UriResourceLambdaAny;
+import org.apache.olingo.server.api.uri.UriResourceLambdaVariable;
 import org.apache.olingo.server.api.uri.UriResourceNavigation;
 import org.apache.olingo.server.api.uri.UriResourcePrimitiveProperty;
 import org.apache.olingo.server.api.uri.queryoption.expression.BinaryOperatorKind;
@@ -30,31 +32,83 @@ import org.apache.olingo.server.api.uri.queryoption.expression.Member;
 import org.apache.olingo.server.api.uri.queryoption.expression.MethodKind;
 import org.apache.olingo.server.api.uri.queryoption.expression.UnaryOperatorKind;
 
-import com.cairone.olingo.ext.jpa.annotations.EdmEnum;
-import com.cairone.olingo.ext.jpa.annotations.EdmProperty;
-import com.cairone.olingo.ext.jpa.annotations.ODataJPAProperty;
 import com.cairone.olingo.ext.jpa.converters.BinaryOperatorConverter;
+import com.cairone.olingo.ext.jpa.converters.LiteralParsers;
+import com.cairone.olingo.ext.jpa.converters.LiteralParsers.LiteralParser;
+import com.cairone.olingo.ext.jpa.converters.MethodKindConverter;
 import com.cairone.olingo.ext.jpa.enums.BinaryOperatorGroup;
 import com.cairone.olingo.ext.jpa.enums.EnumerationTreatedAs;
 import com.cairone.olingo.ext.jpa.interfaces.OdataEnum;
-import com.google.common.base.CharMatcher;
-import com.google.common.primitives.Ints;
-import com.google.common.primitives.Longs;
+import com.cairone.olingo.ext.jpa.query.JoinAliases;
+import com.cairone.olingo.ext.jpa.query.PropertyIndex;
+import com.cairone.olingo.ext.jpa.query.PropertyIndex.PropertyPath;
+import com.google.common.collect.ImmutableMap;
 
 public class FilterExpressionVisitor implements ExpressionVisitor<Object> {
 	
-	private static String DATE_FORMAT = "yyyy-MM-dd";
+	/**
+	 * Hibernate type of the result of <code>cast</code>, by Edm type; the Java type is the one of {@link LiteralParsers#javaType(EdmType)}
+	 */
+	private static final Map<String, String> CAST_TYPES = ImmutableMap.<String, String>builder()
+		.put("Edm.String", "string")
+		.put("Edm.Byte", "integer")
+		.put("Edm.SByte", "integer")
+		.put("Edm.Int16", "integer")
+		.put("Edm.Int32", "integer")
+		.put("Edm.Int64", "long")
+		.put("Edm.Single", "float")
+		.put("Edm.Double", "double")
+		.put("Edm.Decimal", "big_decimal")
+		.put("Edm.Boolean", "boolean")
+		.put("Edm.Date", "date")
+		.put("Edm.TimeOfDay", "time")
+		.put("Edm.DateTimeOffset", "timestamp")
+		.build();
 	
 	private Class<?> clazz;
 	private Map<String, Object> queryParams = null;
-	private Map<String, String> types = new HashMap<String, String>();
+	private JoinAliases joinAliases = null;
+	private Map<String, Class<?>> types = new HashMap<String, Class<?>>();
+	private Map<String, ParameterBinder> binders = new HashMap<String, ParameterBinder>();
+	private Map<String, LambdaScope> lambdaScopes = new HashMap<String, LambdaScope>();
 	
 	private int paramCount = 0;
+	private int literalCount = 0;
+	private int lambdaCount = 0;
 
 	public FilterExpressionVisitor(Class<?> clazz, Map<String, Object> queryParams) {
+		this(clazz, queryParams, null);
+	}
+	
+	/**
+	 * @param joinAliases Receives a join for every relationship crossed from the root entity; when null, members navigate
+	 * relationships through implicit paths
+	 */
+	public FilterExpressionVisitor(Class<?> clazz, Map<String, Object> queryParams, JoinAliases joinAliases) {
 		super();
 		this.clazz = clazz;
 		this.queryParams = queryParams;
+		this.joinAliases = joinAliases;
+	}
+	
+	/**
+	 * Computes a query parameter from the literals of a filter, in visit order
+	 */
+	@FunctionalInterface
+	public interface ParameterBinder {
+		Object bind(List<Object> literals) throws ODataApplicationException;
+	}
+	
+	@FunctionalInterface
+	private interface Conversion {
+		Object convert(Object operand) throws ODataApplicationException;
+	}
+	
+	/**
+	 * @return How every parameter set by the visit is computed again from the literals of another filter with the same shape
+	 */
+	public Map<String, ParameterBinder> getParameterBinders() {
+		return binders;
 	}
 
 	@Override
@@ -62,56 +116,57 @@ public class FilterExpressionVisitor implements ExpressionVisitor<Object> {
 		
 		BinaryOperatorGroup binaryOperatorGroup = BinaryOperatorGroup.from(operator);
 		BinaryOperatorConverter converter = new BinaryOperatorConverter();
+		String jpqlOperator = converter.convertToJpqlOperator(operator);
+		
+		if(jpqlOperator == null) {
+			throw new ODataApplicationException("Binary operator " + operator + " not implemented",
+					HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+		}
 		
 		StringBuilder sb = new StringBuilder();
 		
 		if(binaryOperatorGroup.equals(BinaryOperatorGroup.LOGICAL_OPERATOR)) {
 			
+			if(operator.equals(BinaryOperatorKind.OR) && left instanceof Equality && right instanceof Equality) {
+				Equality equality = ((Equality) left).merge((Equality) right);
+				if(equality != null) return equality;
+			}
+			
 			sb.append(left.toString());
-			sb.append(converter.convertToJpqlOperator(operator));
+			sb.append(jpqlOperator);
 			sb.append(right.toString());
 			
-			return sb.toString();
+			return operator.equals(BinaryOperatorKind.OR) ? "(" + sb.toString() + ")" : sb.toString();
 		}
 		
-		String param = "value" + (paramCount++);
-		
-		sb.append(left.toString());
-		sb.append(converter.convertToJpqlOperator(operator) + ":");
-		sb.append(param);
+		Class<?> leftType = types.get(left.toString());
+		Class<?> rightType = types.get(right.toString());
 		
-		String typeName = types.get(left.toString());
-
-		if(typeName.equals("java.lang.Integer")) {
-			Integer intParam = Ints.tryParse(right.toString());
-			if(intParam != null) {
-				queryParams.put(param, intParam);
-				return sb.toString();
-			}
-		} else if(typeName.equals("java.lang.Long")) {
-			Long longParam = Longs.tryParse(right.toString());
-			if(longParam != null) {
-				queryParams.put(param, longParam);
-				return sb.toString();
-			}
-		} else if(typeName.equals("java.time.LocalDate")) {
-			DateTimeFormatter formatter = DateTimeFormatter.ofPattern(DATE_FORMAT);
-			try
-			{
-				LocalDate date = LocalDate.parse(right.toString(), formatter);
-				
-				queryParams.put(param, date);
-				return sb.toString();
-				
-			} catch(DateTimeParseException e) {
-				throw new ODataApplicationException(e.getMessage(), HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+		if(binaryOperatorGroup.equals(BinaryOperatorGroup.ARITHMETIC_OPERATOR)) {
+			
+			Class<?> typeName = isExpression(left) ? leftType : rightType;
+			String leftOperand = operand(left, rightType);
+			String rightOperand = operand(right, leftType);
+			
+			if(operator.equals(BinaryOperatorKind.MOD)) {
+				return typed(String.format("MOD(%s, %s)", leftOperand, rightOperand), typeName);
 			}
-		} else if(typeName.equals("java.lang.String")) {
-			queryParams.put(param, CharMatcher.is('\'').trimFrom(right.toString()));
-		} else {
-			queryParams.put(param, right);
+			return typed("(" + leftOperand + jpqlOperator + rightOperand + ")", typeName);
+		}
+		
+		if((operator.equals(BinaryOperatorKind.EQ) || operator.equals(BinaryOperatorKind.NE)) && (isNull(left) || isNull(right))) {
+			String expression = operand(isNull(left) ? right : left, null);
+			return expression + (operator.equals(BinaryOperatorKind.EQ) ? " IS NULL" : " IS NOT NULL");
 		}
 		
+		if(operator.equals(BinaryOperatorKind.EQ) && isExpression(left) != isExpression(right)) {
+			return isExpression(left) ? new Equality(left.toString(), right) : new Equality(right.toString(), left);
+		}
+		
+		sb.append(operand(left, rightType));
+		sb.append(jpqlOperator);
+		sb.append(operand(right, leftType));
+		
 		return sb.toString();
 	}
 
@@ -121,53 +176,82 @@ public class FilterExpressionVisitor implements ExpressionVisitor<Object> {
 		if(operator.equals(UnaryOperatorKind.NOT)) {
 			return String.format("NOT (%s)", operand.toString());
 		}
+		if(operator.equals(UnaryOperatorKind.MINUS) && operand != null) {
+			Class<?> type = isExpression(operand) ? types.get(operand) : operand instanceof LiteralValue ? ((LiteralValue) operand).type : null;
+			return typed(String.format("-(%s)", operand(operand, type)), type);
+		}
 		return operand == null ? null : operand.toString();
 	}
 
+	/**
+	 * Translates the canonical functions with a JPQL equivalent; the result is registered with its Java type, so it can be
+	 * compared or passed to another function like a member. Literal arguments are bound as parameters.
+	 * <p>
+	 * <code>date</code>, <code>time</code> and <code>cast</code> use the <code>CAST(x AS type)</code> of Hibernate, and
+	 * <code>round</code>, <code>floor</code> and <code>ceiling</code> the functions registered by its dialects.
+	 */
 	@Override
 	public Object visitMethodCall(MethodKind methodCall, List<Object> parameters) throws ExpressionVisitException, ODataApplicationException {
 		
-		StringBuilder sb = new StringBuilder();
+		MethodKindConverter converter = new MethodKindConverter();
+		String function = converter.convertToJpqlOperator(methodCall);
 		
-		if(methodCall.equals(MethodKind.CONTAINS) || methodCall.equals(MethodKind.STARTSWITH) || methodCall.equals(MethodKind.ENDSWITH)) {
-			if(parameters.get(0) instanceof String && parameters.get(1) instanceof String) {
-				
-				String propertyName = (String) parameters.get(0);
-				if(propertyName.startsWith("e.")) propertyName = propertyName.substring(2, propertyName.length());
-				updatePropertyName(propertyName);
-				
-				String propertyValue = (String) parameters.get(1);
-				String param = "value" + (paramCount++);
-				
-				sb.append("e.").append(propertyName).append(" LIKE :").append(param);
-				
-				if(methodCall.equals(MethodKind.CONTAINS)) queryParams.put(param, CharMatcher.is('\'').replaceFrom(propertyValue, '%'));
-				if(methodCall.equals(MethodKind.STARTSWITH)) queryParams.put(param, CharMatcher.is('\'').trimFrom(propertyValue) + "%");
-				if(methodCall.equals(MethodKind.ENDSWITH)) queryParams.put(param, "%" + CharMatcher.is('\'').trimFrom(propertyValue));
-				
-				return sb.toString();
-			} else {
-				throw new ODataApplicationException("Contains needs two parametes of type Edm.String", HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
-			}
-		} else if(methodCall.equals(MethodKind.DAY) || methodCall.equals(MethodKind.MONTH) || methodCall.equals(MethodKind.YEAR)) {
-			if(parameters.get(0) instanceof String) {
-				
-				String propertyName = (String) parameters.get(0);
-				if(propertyName.startsWith("e.")) propertyName = propertyName.substring(2, propertyName.length());
-				updatePropertyName(propertyName);
-				
-				sb.append(methodCall.toString().toUpperCase()).append("(e.").append(propertyName).append(")");
-
-				return sb.toString();
-			} else {
-				throw new ODataApplicationException("Day needs one parameter of type Edm.String", HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
-			}
-		} else {
+		if(function == null) {
+			throw new ODataApplicationException("Method call " + methodCall + " not implemented",
+					HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+		}
+		
+		switch(methodCall) {
+		case CONTAINS:
+		case STARTSWITH:
+		case ENDSWITH:
+			return visitLike(methodCall, parameters.get(0), parameters.get(1));
+		case TOLOWER:
+		case TOUPPER:
+		case TRIM:
+			return typed(String.format("%s(%s)", function, operand(parameters.get(0), String.class)), String.class);
+		case CONCAT:
+			return typed(String.format("CONCAT(%s, %s)", operand(parameters.get(0), String.class), operand(parameters.get(1), String.class)), String.class);
+		case LENGTH:
+			return typed(String.format("LENGTH(%s)", operand(parameters.get(0), String.class)), Integer.class);
+		case INDEXOF:
+			return typed(String.format("(LOCATE(%s, %s) - 1)", operand(parameters.get(1), String.class), operand(parameters.get(0), String.class)), Integer.class);
+		case SUBSTRING:
+			String start = isExpression(parameters.get(1)) ? String.format("(%s + 1)", parameters.get(1)) : parameter(parameters.get(1), value -> {
+				Integer index = (Integer) conversion(Integer.class).convert(value);
+				return index == null ? null : index + 1;
+			});
+			String length = parameters.size() > 2 ? ", " + operand(parameters.get(2), Integer.class) : "";
+			return typed(String.format("SUBSTRING(%s, %s%s)", operand(parameters.get(0), String.class), start, length), String.class);
+		case YEAR:
+		case MONTH:
+		case DAY:
+		case HOUR:
+		case MINUTE:
+		case SECOND:
+			return typed(String.format("%s(%s)", function, operand(parameters.get(0), null)), Integer.class);
+		case DATE:
+			return typed(String.format("CAST(%s AS date)", operand(parameters.get(0), null)), LocalDate.class);
+		case TIME:
+			return typed(String.format("CAST(%s AS time)", operand(parameters.get(0), null)), LocalTime.class);
+		case NOW:
+			return typed(function, LocalDateTime.class);
+		case ROUND:
+		case FLOOR:
+		case CEILING:
+			String number = operand(parameters.get(0), null);
+			return typed(String.format("%s(%s)", function, number), types.get(number));
+		case CAST:
+			return visitCast(parameters);
+		default:
 			throw new ODataApplicationException("Method call " + methodCall + " not implemented",
 					HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
 		}
 	}
 
+	/**
+	 * Olingo delivers lambda operators as the last segment of a member, see {@link #visitMember(Member)}
+	 */
 	@Override
 	public Object visitLambdaExpression(String lambdaFunction, String lambdaVariable, Expression expression) throws ExpressionVisitException, ODataApplicationException {
 		return null;
@@ -175,7 +259,7 @@ public class FilterExpressionVisitor implements ExpressionVisitor<Object> {
 
 	@Override
 	public Object visitLiteral(Literal literal) throws ExpressionVisitException, ODataApplicationException {
-		return literal.getText();
+		return new LiteralValue(literal.getText(), LiteralParsers.javaType(literal.getType()), literalCount++);
 	}
 	
 	@Override
@@ -185,66 +269,127 @@ public class FilterExpressionVisitor implements ExpressionVisitor<Object> {
 		final List<UriResource> uriResourceParts = uriInfoResource.getUriResourceParts();
 		
 		Class<?> cl = clazz;
+		String alias = JoinAliases.ROOT_ALIAS;
+		List<String> navigations = new ArrayList<String>();
 		List<String> segments = new ArrayList<String>();
-		String canonicalName = null;
+		Class<?> propertyType = null;
 		
 		for(UriResource uriResource : uriResourceParts) {
 			
+			if(uriResource instanceof UriResourceLambdaVariable) {
+				LambdaScope lambdaScope = lambdaScopes.get(((UriResourceLambdaVariable) uriResource).getVariableName());
+				if(lambdaScope == null) {
+					throw new ODataApplicationException("UNKNOWN LAMBDA VARIABLE " + uriResource.getSegmentValue(), HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+				}
+				cl = lambdaScope.clazz;
+				alias = lambdaScope.alias;
+			}
+			
+			if(uriResource instanceof UriResourceLambdaAny) {
+				UriResourceLambdaAny lambdaAny = (UriResourceLambdaAny) uriResource;
+				return visitLambda(false, lambdaAny.getLambdaVariable(), lambdaAny.getExpression(), navigate(alias, navigations), segments, cl);
+			}
+			
+			if(uriResource instanceof UriResourceLambdaAll) {
+				UriResourceLambdaAll lambdaAll = (UriResourceLambdaAll) uriResource;
+				return visitLambda(true, lambdaAll.getLambdaVariable(), lambdaAll.getExpression(), navigate(alias, navigations), segments, cl);
+			}
+			
 			if(uriResource instanceof UriResourceNavigation) {
 				
 				EdmNavigationProperty edmNavigationProperty = ((UriResourceNavigation) uriResource).getProperty();
-				String navPropName = edmNavigationProperty.getName();
-				for(Field field : cl.getDeclaredFields()) {
-					com.cairone.olingo.ext.jpa.annotations.EdmNavigationProperty annEdmNavigationProperty = field.getAnnotation(com.cairone.olingo.ext.jpa.annotations.EdmNavigationProperty.class);
-					if(annEdmNavigationProperty != null && (annEdmNavigationProperty.name().equals(navPropName) || field.getName().equals(navPropName))) {
-						ODataJPAProperty oDataJPAProperty = field.getAnnotation(ODataJPAProperty.class);
-						if(oDataJPAProperty != null && !oDataJPAProperty.value().isEmpty()) {
-							cl = field.getType();
-							segments.add(oDataJPAProperty.value());
-						} else if(oDataJPAProperty == null) {
-							cl = field.getType();
-							segments.add(field.getName());
-						}
-					}
+				PropertyPath navigation = cl == null ? null : PropertyIndex.of(cl).getNavigation(edmNavigationProperty.getName());
+				if(navigation != null && !navigation.isIgnored()) {
+					cl = navigation.getTargetClass();
+					(navigation.isCollection() || !segments.isEmpty() ? segments : navigations).add(navigation.getJpaPath());
 				}
 			}
 			
 			if(uriResource instanceof UriResourcePrimitiveProperty) {
 				UriResourcePrimitiveProperty uriResourceProperty = (UriResourcePrimitiveProperty) uriResource;
-				String propertyName = uriResourceProperty.getProperty().getName();
-				for(Field field : cl.getDeclaredFields()) {
-					EdmProperty annEdmProperty = field.getAnnotation(EdmProperty.class);
-					if(annEdmProperty != null && (annEdmProperty.name().equals(propertyName) || field.getName().equals(propertyName))) {
-						canonicalName = field.getType().getCanonicalName();
-						ODataJPAProperty oDataJPAProperty = field.getAnnotation(ODataJPAProperty.class);
-						if(oDataJPAProperty != null && !oDataJPAProperty.value().isEmpty()) {
-							propertyName = oDataJPAProperty.value();
-							if(field.getType().isEnum() && oDataJPAProperty.treatedAs().equals(EnumerationTreatedAs.NUMERIC)) {
-								canonicalName = "java.lang.Integer";
-							} else if(field.getType().isEnum() && oDataJPAProperty.treatedAs().equals(EnumerationTreatedAs.NAME)) {
-								canonicalName = "java.lang.String";
-							}
-						} else if(oDataJPAProperty == null) {
-							propertyName = field.getName();
-						}
-						segments.add(propertyName);
-					}
+				PropertyPath property = cl == null ? null : PropertyIndex.of(cl).getProperty(uriResourceProperty.getProperty().getName());
+				if(property != null) {
+					propertyType = property.getStoredType();
+					segments.add(property.getJpaPath());
 				}
 			}
 		}
 		
-		String rv = segments.isEmpty() ? null : segments.stream().map(String::toString).collect(Collectors.joining("."));
-		
-		if(rv == null) {
+		if(navigations.isEmpty() && segments.isEmpty()) {
 			throw new ODataApplicationException("NO SEGMENTS IN RESOURCE PATH", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
-		} else {
-			rv = "e." + rv;
-			types.put(rv, canonicalName);
 		}
 		
+		String rv = navigate(alias, navigations);
+		if(!segments.isEmpty()) rv = rv + "." + segments.stream().collect(Collectors.joining("."));
+		types.put(rv, propertyType);
+		
 		return rv;
 	}
 	
+	/**
+	 * @param navigations The JPA paths of the single-valued relationships a member crosses from the alias
+	 * @return What the rest of the path starts from: the join alias of the relationships, when they start at the root entity and
+	 * the query collects its joins, otherwise the implicit path through them
+	 */
+	private String navigate(String alias, List<String> navigations) {
+		
+		if(navigations.isEmpty()) return alias;
+		
+		if(joinAliases != null && alias.equals(JoinAliases.ROOT_ALIAS)) {
+			return joinAliases.join(navigations.stream().collect(Collectors.joining(".")));
+		}
+		return alias + "." + navigations.stream().collect(Collectors.joining("."));
+	}
+	
+	/**
+	 * Translates <code>any</code> into a correlated <code>EXISTS</code> over the collection, and <code>all</code> into a
+	 * <code>NOT EXISTS</code> of an element that does not satisfy the predicate. The predicate of <code>all</code> is wrapped in
+	 * a <code>CASE</code> so an element for which it is unknown, because of a null, counts as not satisfying it, as OData
+	 * evaluates it; <code>NOT (predicate)</code> would be unknown as well and skip the element. Inside the predicate the lambda variable
+	 * stands for a subquery alias; outer variables remain visible, so lambdas can be nested.
+	 * 
+	 * @param alias The alias the collection path starts from: the root entity, a join alias or an outer lambda variable
+	 * @param segments The JPA path of the collection
+	 * @param elementClazz The Edm class of the elements of the collection
+	 */
+	private String visitLambda(boolean all, String lambdaVariable, Expression expression, String alias, List<String> segments, Class<?> elementClazz) throws ExpressionVisitException, ODataApplicationException {
+		
+		if(segments.isEmpty() || elementClazz == null) {
+			throw new ODataApplicationException("LAMBDA OPERATORS NEED A NAVIGATION PATH TO A COLLECTION", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+		}
+		
+		String collectionPath = alias + "." + segments.stream().collect(Collectors.joining("."));
+		String lambdaAlias = "l" + (lambdaCount++);
+		
+		StringBuilder sb = new StringBuilder();
+		sb.append(all ? "NOT EXISTS (" : "EXISTS (");
+		sb.append("SELECT ").append(lambdaAlias).append(" FROM ").append(collectionPath).append(" ").append(lambdaAlias);
+		
+		if(expression != null) {
+			LambdaScope outerScope = lambdaScopes.put(lambdaVariable, new LambdaScope(lambdaAlias, elementClazz));
+			try {
+				Object predicate = expression.accept(this);
+				if(predicate != null) {
+					if(all) {
+						sb.append(" WHERE CASE WHEN (").append(predicate).append(") THEN 1 ELSE 0 END = 0");
+					} else {
+						sb.append(" WHERE (").append(predicate).append(")");
+					}
+				}
+			} finally {
+				if(outerScope == null) {
+					lambdaScopes.remove(lambdaVariable);
+				} else {
+					lambdaScopes.put(lambdaVariable, outerScope);
+				}
+			}
+		} else if(all) {
+			throw new ODataApplicationException("ALL NEEDS A LAMBDA EXPRESSION", HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+		}
+		
+		return sb.append(")").toString();
+	}
+	
 	@Override
 	public Object visitAlias(String aliasName) throws ExpressionVisitException, ODataApplicationException {
 		return null;
@@ -252,43 +397,31 @@ public class FilterExpressionVisitor implements ExpressionVisitor<Object> {
 
 	@Override
 	public Object visitTypeLiteral(EdmType type) throws ExpressionVisitException, ODataApplicationException {
-		return null;
+		return type;
 	}
 
 	@Override
 	public Object visitLambdaReference(String variableName) throws ExpressionVisitException, ODataApplicationException {
-		return null;
+		LambdaScope lambdaScope = lambdaScopes.get(variableName);
+		return lambdaScope == null ? null : lambdaScope.alias;
 	}
 
 	@Override
 	public Object visitEnum(EdmEnumType type, List<String> enumValues) throws ExpressionVisitException, ODataApplicationException {
 		
-		for(Field field : clazz.getDeclaredFields()) {
+		for(PropertyPath property : PropertyIndex.of(clazz).getEnumerations()) {
 			
-			EdmProperty annEdmProperty = field.getAnnotation(EdmProperty.class);
-			Class<?> cl = field.getType();
-			
-			if(cl.isEnum() && annEdmProperty != null) {
-				
-				EdmEnum edmEnum = cl.getAnnotation(EdmEnum.class);
-				
-				FullQualifiedName fqn = new FullQualifiedName(
-						edmEnum.namespace(), 
-						edmEnum.name().isEmpty() ? cl.getSimpleName() : edmEnum.name());
-				
-				if(fqn.equals(type.getFullQualifiedName())) {
-					Object[] constants = cl.getEnumConstants();
-					for(Object object : constants) {
-						if(enumValues.contains(object.toString())) {
-							ODataJPAProperty oDataJPAProperty = field.getAnnotation(ODataJPAProperty.class);
-							if(oDataJPAProperty == null || oDataJPAProperty.treatedAs().equals(EnumerationTreatedAs.ENUMERATION)) {
-								return object;
-							} else if(oDataJPAProperty.treatedAs().equals(EnumerationTreatedAs.NAME)) {
-								return object.toString();
-							} else if(oDataJPAProperty.treatedAs().equals(EnumerationTreatedAs.NUMERIC)) {
-								OdataEnum<?> odataEnum = (OdataEnum<?>) object;
-								return Integer.valueOf(odataEnum.getOrdinal());
-							}
+			if(property.getEdmEnumType().equals(type.getFullQualifiedName())) {
+				Object[] constants = property.getField().getType().getEnumConstants();
+				for(Object object : constants) {
+					if(enumValues.contains(object.toString())) {
+						if(property.getTreatedAs().equals(EnumerationTreatedAs.ENUMERATION)) {
+							return object;
+						} else if(property.getTreatedAs().equals(EnumerationTreatedAs.NAME)) {
+							return object.toString();
+						} else if(property.getTreatedAs().equals(EnumerationTreatedAs.NUMERIC)) {
+							OdataEnum<?> odataEnum = (OdataEnum<?>) object;
+							return Integer.valueOf(odataEnum.getOrdinal());
 						}
 					}
 				}
@@ -298,26 +431,218 @@ public class FilterExpressionVisitor implements ExpressionVisitor<Object> {
 		return null;
 	}
 	
-	private void updatePropertyName(String propertyName) throws ODataApplicationException {
-
-		EdmProperty edmProperty = null;
-		ODataJPAProperty oDataJPAProperty = null;
-		
-		for(Field field : clazz.getDeclaredFields()) {
-			EdmProperty annEdmProperty = field.getAnnotation(EdmProperty.class);
-			if(annEdmProperty != null && (annEdmProperty.name().equals(propertyName) || field.getName().equals(propertyName))) {
-				edmProperty = annEdmProperty;
-				oDataJPAProperty = field.getAnnotation(ODataJPAProperty.class);
-				break;
+	/**
+	 * Sets a parameter from an operand. When the operand is a literal, the parameter is recomputed from the literal at the same
+	 * position of another filter; otherwise, as for enumeration members that are part of the shape, its value is kept.
+	 */
+	private void bind(String param, Object operand, Conversion conversion) throws ODataApplicationException {
+		
+		if(operand instanceof LiteralValue) {
+			LiteralValue literalValue = (LiteralValue) operand;
+			queryParams.put(param, conversion.convert(literalValue.text));
+			binders.put(param, values -> conversion.convert(values.get(literalValue.index)));
+		} else {
+			Object value = conversion.convert(operand);
+			queryParams.put(param, value);
+			binders.put(param, values -> value);
+		}
+	}
+	
+	/**
+	 * @return A named parameter holding the converted operand
+	 */
+	private String parameter(Object operand, Conversion conversion) throws ODataApplicationException {
+		String param = "value" + (paramCount++);
+		bind(param, operand, conversion);
+		return ":" + param;
+	}
+	
+	/**
+	 * Sets a parameter holding a list of operands, for <code>IN (:param)</code>
+	 */
+	private String listParameter(List<Object> operands, Conversion conversion) throws ODataApplicationException {
+		
+		String param = "value" + (paramCount++);
+		List<Object> values = new ArrayList<Object>(operands.size());
+		List<ParameterBinder> elementBinders = new ArrayList<ParameterBinder>(operands.size());
+		
+		for(Object operand : operands) {
+			if(operand instanceof LiteralValue) {
+				LiteralValue literalValue = (LiteralValue) operand;
+				values.add(conversion.convert(literalValue.text));
+				elementBinders.add(literals -> conversion.convert(literals.get(literalValue.index)));
+			} else {
+				Object value = conversion.convert(operand);
+				values.add(value);
+				elementBinders.add(literals -> value);
 			}
 		}
-
-		if(edmProperty == null) {
-			throw new ODataApplicationException("Property not found on entity", HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+		
+		queryParams.put(param, values);
+		binders.put(param, literals -> {
+			List<Object> list = new ArrayList<Object>(elementBinders.size());
+			for(ParameterBinder elementBinder : elementBinders) list.add(elementBinder.bind(literals));
+			return list;
+		});
+		
+		return ":" + param;
+	}
+	
+	/**
+	 * Removes a parameter set by the visit, when the predicate that used it is rewritten
+	 */
+	private void unbind(String param) {
+		queryParams.remove(param.substring(1));
+		binders.remove(param.substring(1));
+	}
+	
+	/**
+	 * @param type The Java type the operand is compared with or passed as; when null, a literal keeps the type of its Edm type
+	 * @return Members and function results as they are, anything else as a parameter of that type
+	 */
+	private String operand(Object operand, Class<?> type) throws ODataApplicationException {
+		
+		if(isExpression(operand)) return operand.toString();
+		
+		if(type == null && operand instanceof LiteralValue) type = ((LiteralValue) operand).type;
+		
+		return parameter(operand, conversion(type));
+	}
+	
+	/**
+	 * @return How the text of a literal becomes a value of a Java type; enumeration members, resolved already, are kept
+	 */
+	private static Conversion conversion(Class<?> type) {
+		LiteralParser parser = LiteralParsers.forType(type);
+		return value -> value instanceof String ? parser.parse((String) value) : value;
+	}
+	
+	/**
+	 * @return Whether the operand is JPQL already: a member or the result of a function
+	 */
+	private boolean isExpression(Object operand) {
+		return operand instanceof String && types.containsKey(operand);
+	}
+	
+	/**
+	 * @return Whether the operand is the literal <code>null</code>
+	 */
+	private static boolean isNull(Object operand) {
+		return operand instanceof LiteralValue && ((LiteralValue) operand).text.equals("null");
+	}
+	
+	private String typed(String expression, Class<?> type) {
+		types.put(expression, type);
+		return expression;
+	}
+	
+	private String visitLike(MethodKind methodCall, Object string, Object pattern) throws ODataApplicationException {
+		
+		String value;
+		
+		if(isExpression(pattern)) {
+			if(methodCall.equals(MethodKind.CONTAINS)) value = String.format("CONCAT('%%', %s, '%%')", pattern);
+			else if(methodCall.equals(MethodKind.STARTSWITH)) value = String.format("CONCAT(%s, '%%')", pattern);
+			else value = String.format("CONCAT('%%', %s)", pattern);
 		} else {
-			if(oDataJPAProperty != null && !oDataJPAProperty.value().isEmpty()) {
-				propertyName = oDataJPAProperty.value();
-			}
+			if(methodCall.equals(MethodKind.CONTAINS)) value = parameter(pattern, x -> "%" + LiteralParsers.unquote(x.toString()) + "%");
+			else if(methodCall.equals(MethodKind.STARTSWITH)) value = parameter(pattern, x -> LiteralParsers.unquote(x.toString()) + "%");
+			else value = parameter(pattern, x -> "%" + LiteralParsers.unquote(x.toString()));
+		}
+		
+		return operand(string, String.class) + " LIKE " + value;
+	}
+	
+	private String visitCast(List<Object> parameters) throws ODataApplicationException {
+		
+		if(parameters.size() != 2 || !(parameters.get(1) instanceof EdmType)) {
+			throw new ODataApplicationException("Method call CAST is implemented for a value and a primitive type only", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+		}
+		
+		EdmType edmType = (EdmType) parameters.get(1);
+		String castType = CAST_TYPES.get(edmType.getFullQualifiedName().getFullQualifiedNameAsString());
+		
+		if(castType == null) {
+			throw new ODataApplicationException("Method call CAST to " + edmType.getFullQualifiedName() + " not implemented", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+		}
+		
+		return typed(String.format("CAST(%s AS %s)", operand(parameters.get(0), null), castType), LiteralParsers.javaType(edmType));
+	}
+	
+	/**
+	 * A literal as visited: its text, the Java type of its Edm type and its position among the literals of the filter
+	 */
+	private static final class LiteralValue {
+		
+		private final String text;
+		private final Class<?> type;
+		private final int index;
+		
+		private LiteralValue(String text, Class<?> type, int index) {
+			this.text = text;
+			this.type = type;
+			this.index = index;
+		}
+		
+		@Override
+		public String toString() {
+			return text;
+		}
+	}
+	
+	/**
+	 * Equality of a member, or a function result, with values that are not expressions: <code>x = :p</code> for one value and
+	 * <code>x IN (:p)</code> once several equalities over the same expression are joined by <code>or</code>. A value list is a
+	 * single predicate with a single list parameter, which the database can answer with one index lookup per value.
+	 */
+	private final class Equality {
+		
+		private final String expression;
+		private final List<Object> operands;
+		private final String param;
+		
+		private Equality(String expression, Object operand) throws ODataApplicationException {
+			this.expression = expression;
+			this.operands = Collections.singletonList(operand);
+			this.param = operand(operand, types.get(expression));
+		}
+		
+		private Equality(String expression, List<Object> operands) throws ODataApplicationException {
+			this.expression = expression;
+			this.operands = operands;
+			this.param = listParameter(operands, conversion(types.get(expression)));
+		}
+		
+		/**
+		 * @return The equality with the values of both, or null when they compare different expressions
+		 */
+		private Equality merge(Equality other) throws ODataApplicationException {
+			
+			if(!expression.equals(other.expression)) return null;
+			
+			unbind(param);
+			unbind(other.param);
+			
+			List<Object> merged = new ArrayList<Object>(operands);
+			merged.addAll(other.operands);
+			
+			return new Equality(expression, merged);
+		}
+		
+		@Override
+		public String toString() {
+			return operands.size() == 1 ? expression + " = " + param : expression + " IN (" + param + ")";
+		}
+	}
+	
+	private static final class LambdaScope {
+		
+		private final String alias;
+		private final Class<?> clazz;
+		
+		private LambdaScope(String alias, Class<?> clazz) {
+			this.alias = alias;
+			this.clazz = clazz;
 		}
 	}
 }
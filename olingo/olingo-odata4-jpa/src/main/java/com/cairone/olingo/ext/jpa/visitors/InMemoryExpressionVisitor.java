@@ -0,0 +1,469 @@
+package com.cairone.olingo.ext.jpa.visitors;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+import org.apache.olingo.commons.api.edm.EdmEnumType;
+import org.apache.olingo.commons.api.edm.EdmType;
+import org.apache.olingo.commons.api.ex.ODataRuntimeException;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceCount;
+import org.apache.olingo.server.api.uri.UriResourceIt;
+import org.apache.olingo.server.api.uri.UriResourceLambdaAll;
+import org.apache.olingo.server.api.uri.UriResourceLambdaAny;
+import org.apache.olingo.server.api.uri.UriResourceLambdaVariable;
+import org.apache.olingo.server.api.uri.UriResourceNavigation;
+import org.apache.olingo.server.api.uri.UriResourceProperty;
+import org.apache.olingo.server.api.uri.queryoption.expression.BinaryOperatorKind;
+import org.apache.olingo.server.api.uri.queryoption.expression.Expression;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitException;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitor;
+import org.apache.olingo.server.api.uri.queryoption.expression.Literal;
+import org.apache.olingo.server.api.uri.queryoption.expression.Member;
+import org.apache.olingo.server.api.uri.queryoption.expression.MethodKind;
+import org.apache.olingo.server.api.uri.queryoption.expression.UnaryOperatorKind;
+
+import com.cairone.olingo.ext.jpa.converters.LiteralParsers;
+import com.cairone.olingo.ext.jpa.query.PropertyIndex;
+import com.cairone.olingo.ext.jpa.query.PropertyIndex.PropertyPath;
+
+/**
+ * Compiles an expression of $filter or $orderby into an {@link Evaluator} over Edm objects. The expression is visited once:
+ * properties are resolved to their fields and literals are parsed while compiling, so evaluating a row only reads fields and
+ * applies the operators.
+ * <p>
+ * Comparisons follow OData: <code>null eq null</code> is true and any other comparison with null is false. Numbers of
+ * different types are compared by value, and <code>java.util.Date</code> is compared as a local date-time of the server.
+ *
+ * @author diego.cairone
+ */
+public class InMemoryExpressionVisitor implements ExpressionVisitor<InMemoryExpressionVisitor.Evaluator> {
+
+	/**
+	 * A compiled expression
+	 */
+	@FunctionalInterface
+	public interface Evaluator {
+
+		/**
+		 * @param row The Edm object the expression is evaluated on
+		 * @param variables The elements bound to the variables of the enclosing lambda expressions
+		 * @return The value of the expression, or null when it is undefined for the row
+		 */
+		Object evaluate(Object row, Map<String, Object> variables);
+
+		default boolean test(Object row) {
+			return Boolean.TRUE.equals(evaluate(row, Collections.emptyMap()));
+		}
+	}
+
+	private final Class<?> clazz;
+	private final Map<String, Class<?>> variableTypes;
+
+	/**
+	 * @param clazz The Edm class of the rows
+	 */
+	public InMemoryExpressionVisitor(Class<?> clazz) {
+		this(clazz, Collections.emptyMap());
+	}
+
+	private InMemoryExpressionVisitor(Class<?> clazz, Map<String, Class<?>> variableTypes) {
+		this.clazz = clazz;
+		this.variableTypes = variableTypes;
+	}
+
+	@Override
+	public Evaluator visitBinaryOperator(BinaryOperatorKind operator, Evaluator left, Evaluator right) throws ExpressionVisitException, ODataApplicationException {
+
+		switch(operator) {
+		case AND:
+			return (row, variables) -> Boolean.TRUE.equals(left.evaluate(row, variables)) && Boolean.TRUE.equals(right.evaluate(row, variables));
+		case OR:
+			return (row, variables) -> Boolean.TRUE.equals(left.evaluate(row, variables)) || Boolean.TRUE.equals(right.evaluate(row, variables));
+		case EQ:
+			return (row, variables) -> equal(left.evaluate(row, variables), right.evaluate(row, variables));
+		case NE:
+			return (row, variables) -> !equal(left.evaluate(row, variables), right.evaluate(row, variables));
+		case LT:
+			return (row, variables) -> test(compare(left.evaluate(row, variables), right.evaluate(row, variables)), c -> c < 0);
+		case LE:
+			return (row, variables) -> test(compare(left.evaluate(row, variables), right.evaluate(row, variables)), c -> c <= 0);
+		case GT:
+			return (row, variables) -> test(compare(left.evaluate(row, variables), right.evaluate(row, variables)), c -> c > 0);
+		case GE:
+			return (row, variables) -> test(compare(left.evaluate(row, variables), right.evaluate(row, variables)), c -> c >= 0);
+		case ADD:
+		case SUB:
+		case MUL:
+		case DIV:
+		case MOD:
+			return (row, variables) -> arithmetic(operator, left.evaluate(row, variables), right.evaluate(row, variables));
+		default:
+			throw new ODataApplicationException(String.format("Operator %s can not be evaluated in memory", operator), HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+		}
+	}
+
+	@Override
+	public Evaluator visitUnaryOperator(UnaryOperatorKind operator, Evaluator operand) throws ExpressionVisitException, ODataApplicationException {
+
+		if(operator == UnaryOperatorKind.NOT) {
+			return (row, variables) -> !Boolean.TRUE.equals(operand.evaluate(row, variables));
+		}
+
+		return (row, variables) -> arithmetic(BinaryOperatorKind.SUB, 0L, operand.evaluate(row, variables));
+	}
+
+	@Override
+	public Evaluator visitMethodCall(MethodKind methodCall, List<Evaluator> parameters) throws ExpressionVisitException, ODataApplicationException {
+
+		Evaluator first = parameters.isEmpty() ? null : parameters.get(0);
+		Evaluator second = parameters.size() < 2 ? null : parameters.get(1);
+
+		switch(methodCall) {
+		case CONTAINS:
+			return strings(first, second, (a, b) -> a.contains(b));
+		case STARTSWITH:
+			return strings(first, second, (a, b) -> a.startsWith(b));
+		case ENDSWITH:
+			return strings(first, second, (a, b) -> a.endsWith(b));
+		case INDEXOF:
+			return strings(first, second, (a, b) -> a.indexOf(b));
+		case CONCAT:
+			return strings(first, second, (a, b) -> a + b);
+		case TOLOWER:
+			return string(first, a -> a.toLowerCase(Locale.ROOT));
+		case TOUPPER:
+			return string(first, a -> a.toUpperCase(Locale.ROOT));
+		case TRIM:
+			return string(first, String::trim);
+		case LENGTH:
+			return string(first, String::length);
+		case SUBSTRING:
+			Evaluator third = parameters.size() < 3 ? null : parameters.get(2);
+			return (row, variables) -> {
+				Object text = first.evaluate(row, variables);
+				Object start = second.evaluate(row, variables);
+				Object length = third == null ? null : third.evaluate(row, variables);
+				if(!(text instanceof String) || !(start instanceof Number) || (third != null && !(length instanceof Number))) return null;
+				String s = (String) text;
+				int from = Math.min(Math.max(((Number) start).intValue(), 0), s.length());
+				int to = third == null ? s.length() : Math.min(from + Math.max(((Number) length).intValue(), 0), s.length());
+				return s.substring(from, to);
+			};
+		case YEAR:
+			return temporal(first, ChronoField.YEAR);
+		case MONTH:
+			return temporal(first, ChronoField.MONTH_OF_YEAR);
+		case DAY:
+			return temporal(first, ChronoField.DAY_OF_MONTH);
+		case HOUR:
+			return temporal(first, ChronoField.HOUR_OF_DAY);
+		case MINUTE:
+			return temporal(first, ChronoField.MINUTE_OF_HOUR);
+		case SECOND:
+			return temporal(first, ChronoField.SECOND_OF_MINUTE);
+		case DATE:
+			return (row, variables) -> {
+				Object value = temporal(first.evaluate(row, variables));
+				return value instanceof LocalDateTime ? ((LocalDateTime) value).toLocalDate() : value instanceof LocalDate ? value : null;
+			};
+		case TIME:
+			return (row, variables) -> {
+				Object value = temporal(first.evaluate(row, variables));
+				return value instanceof LocalDateTime ? ((LocalDateTime) value).toLocalTime() : value instanceof LocalTime ? value : null;
+			};
+		case NOW:
+			return (row, variables) -> LocalDateTime.now();
+		case ROUND:
+			return rounding(first, RoundingMode.HALF_UP);
+		case FLOOR:
+			return rounding(first, RoundingMode.FLOOR);
+		case CEILING:
+			return rounding(first, RoundingMode.CEILING);
+		default:
+			throw new ODataApplicationException(String.format("Method %s can not be evaluated in memory", methodCall), HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+		}
+	}
+
+	@Override
+	public Evaluator visitLambdaExpression(String lambdaFunction, String lambdaVariable, Expression expression) throws ExpressionVisitException, ODataApplicationException {
+		throw new ODataApplicationException("Not implemented", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+	}
+
+	@Override
+	public Evaluator visitLiteral(Literal literal) throws ExpressionVisitException, ODataApplicationException {
+		Object value = literal.getText().equals("null") ? null : LiteralParsers.forType(LiteralParsers.javaType(literal.getType())).parse(literal.getText());
+		return (row, variables) -> value;
+	}
+
+	/**
+	 * Every segment is resolved against the class it is read from; a null along the path makes the whole member null
+	 */
+	@Override
+	public Evaluator visitMember(Member member) throws ExpressionVisitException, ODataApplicationException {
+
+		Evaluator evaluator = (row, variables) -> row;
+		Class<?> current = clazz;
+		boolean collection = false;
+
+		for(UriResource uriResource : member.getResourcePath().getUriResourceParts()) {
+
+			final Evaluator previous = evaluator;
+
+			if(uriResource instanceof UriResourceIt) {
+				continue;
+			} else if(uriResource instanceof UriResourceLambdaVariable) {
+				String name = ((UriResourceLambdaVariable) uriResource).getVariableName();
+				current = variableTypes.get(name);
+				evaluator = (row, variables) -> variables.get(name);
+			} else if(uriResource instanceof UriResourceProperty || uriResource instanceof UriResourceNavigation) {
+				String name = uriResource instanceof UriResourceProperty ? ((UriResourceProperty) uriResource).getProperty().getName() : ((UriResourceNavigation) uriResource).getProperty().getName();
+				PropertyPath property = current == null ? null : PropertyIndex.of(current).get(name);
+				if(property == null) {
+					throw new ODataApplicationException(String.format("Property %s can not be evaluated in memory", name), HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+				}
+				current = property.getTargetClass();
+				collection = property.isCollection();
+				evaluator = (row, variables) -> read(property, previous.evaluate(row, variables));
+			} else if(uriResource instanceof UriResourceLambdaAny || uriResource instanceof UriResourceLambdaAll) {
+				evaluator = lambda(uriResource, current, previous);
+			} else if(uriResource instanceof UriResourceCount && collection) {
+				evaluator = (row, variables) -> {
+					Object value = previous.evaluate(row, variables);
+					return value instanceof Collection ? ((Collection<?>) value).size() : null;
+				};
+			} else {
+				throw new ODataApplicationException(String.format("Segment %s can not be evaluated in memory", uriResource.getSegmentValue()), HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+			}
+		}
+
+		return evaluator;
+	}
+
+	@Override
+	public Evaluator visitAlias(String aliasName) throws ExpressionVisitException, ODataApplicationException {
+		throw new ODataApplicationException("Not implemented", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+	}
+
+	@Override
+	public Evaluator visitTypeLiteral(EdmType type) throws ExpressionVisitException, ODataApplicationException {
+		throw new ODataApplicationException("Not implemented", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+	}
+
+	@Override
+	public Evaluator visitLambdaReference(String variableName) throws ExpressionVisitException, ODataApplicationException {
+		return (row, variables) -> variables.get(variableName);
+	}
+
+	/**
+	 * Enumeration members compare with the constants of the Java enumeration by name
+	 */
+	@Override
+	public Evaluator visitEnum(EdmEnumType type, List<String> enumValues) throws ExpressionVisitException, ODataApplicationException {
+		String name = String.join(",", enumValues);
+		return (row, variables) -> name;
+	}
+
+	private Evaluator lambda(UriResource uriResource, Class<?> elementType, Evaluator collection) throws ExpressionVisitException, ODataApplicationException {
+
+		boolean any = uriResource instanceof UriResourceLambdaAny;
+		String variable = any ? ((UriResourceLambdaAny) uriResource).getLambdaVariable() : ((UriResourceLambdaAll) uriResource).getLambdaVariable();
+		Expression expression = any ? ((UriResourceLambdaAny) uriResource).getExpression() : ((UriResourceLambdaAll) uriResource).getExpression();
+
+		if(expression == null) {
+			return (row, variables) -> {
+				Object value = collection.evaluate(row, variables);
+				return value instanceof Collection && !((Collection<?>) value).isEmpty();
+			};
+		}
+
+		Map<String, Class<?>> types = new HashMap<String, Class<?>>(variableTypes);
+		types.put(variable, elementType);
+		Evaluator condition = expression.accept(new InMemoryExpressionVisitor(clazz, types));
+
+		return (row, variables) -> {
+			Object value = collection.evaluate(row, variables);
+			if(!(value instanceof Collection)) return !any;
+
+			Map<String, Object> scope = new HashMap<String, Object>(variables);
+			for(Object element : (Collection<?>) value) {
+				scope.put(variable, element);
+				if(Boolean.TRUE.equals(condition.evaluate(row, scope)) == any) return any;
+			}
+			return !any;
+		};
+	}
+
+	private static Object read(PropertyPath property, Object object) {
+		if(object == null) return null;
+		try {
+			return property.getField().get(object);
+		} catch (IllegalAccessException e) {
+			throw new ODataRuntimeException(e);
+		}
+	}
+
+	/**
+	 * @return Whether both values are null or compare as equal
+	 */
+	public static boolean equal(Object a, Object b) {
+		if(a == null || b == null) return a == b;
+		Integer comparison = compare(a, b);
+		return comparison == null ? a.equals(b) : comparison == 0;
+	}
+
+	/**
+	 * @return The order of two values, or null when either one is null or they can not be compared
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static Integer compare(Object a, Object b) {
+
+		if(a == null || b == null) return null;
+
+		if(a instanceof Number && b instanceof Number) {
+			if(a.getClass().equals(b.getClass()) && a instanceof Comparable) return ((Comparable) a).compareTo(b);
+			if(isFloating(a) || isFloating(b)) return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+			return decimal((Number) a).compareTo(decimal((Number) b));
+		}
+
+		if(a instanceof Enum || b instanceof Enum) return a.toString().compareTo(b.toString());
+
+		a = temporal(a);
+		b = temporal(b);
+
+		if(a instanceof LocalDate && b instanceof LocalDateTime) a = ((LocalDate) a).atStartOfDay();
+		if(a instanceof LocalDateTime && b instanceof LocalDate) b = ((LocalDate) b).atStartOfDay();
+
+		if(a instanceof Comparable && a.getClass().isInstance(b)) return ((Comparable) a).compareTo(b);
+
+		return null;
+	}
+
+	private static boolean test(Integer comparison, IntPredicate predicate) {
+		return comparison != null && predicate.test(comparison);
+	}
+
+	private static Object arithmetic(BinaryOperatorKind operator, Object a, Object b) {
+
+		if(!(a instanceof Number) || !(b instanceof Number)) return null;
+
+		Number x = (Number) a;
+		Number y = (Number) b;
+
+		if(isFloating(x) || isFloating(y)) {
+			double l = x.doubleValue();
+			double r = y.doubleValue();
+			switch(operator) {
+			case ADD: return l + r;
+			case SUB: return l - r;
+			case MUL: return l * r;
+			case DIV: return l / r;
+			default: return l % r;
+			}
+		}
+
+		if(isIntegral(x) && isIntegral(y)) {
+			long l = x.longValue();
+			long r = y.longValue();
+			try {
+				switch(operator) {
+				case ADD: return Math.addExact(l, r);
+				case SUB: return Math.subtractExact(l, r);
+				case MUL: return Math.multiplyExact(l, r);
+				case DIV: return r == 0 ? null : l / r;
+				default: return r == 0 ? null : l % r;
+				}
+			} catch (ArithmeticException e) {
+				return null;
+			}
+		}
+
+		BigDecimal l = decimal(x);
+		BigDecimal r = decimal(y);
+		switch(operator) {
+		case ADD: return l.add(r);
+		case SUB: return l.subtract(r);
+		case MUL: return l.multiply(r);
+		case DIV: return r.signum() == 0 ? null : l.divide(r, MathContext.DECIMAL128);
+		default: return r.signum() == 0 ? null : l.remainder(r);
+		}
+	}
+
+	private static Evaluator strings(Evaluator first, Evaluator second, BiFunction<String, String, Object> function) {
+		return (row, variables) -> {
+			Object a = first.evaluate(row, variables);
+			Object b = second.evaluate(row, variables);
+			return a instanceof String && b instanceof String ? function.apply((String) a, (String) b) : null;
+		};
+	}
+
+	private static Evaluator string(Evaluator first, Function<String, Object> function) {
+		return (row, variables) -> {
+			Object a = first.evaluate(row, variables);
+			return a instanceof String ? function.apply((String) a) : null;
+		};
+	}
+
+	private static Evaluator temporal(Evaluator first, ChronoField field) {
+		return (row, variables) -> {
+			Object value = temporal(first.evaluate(row, variables));
+			return value instanceof TemporalAccessor && ((TemporalAccessor) value).isSupported(field) ? ((TemporalAccessor) value).get(field) : null;
+		};
+	}
+
+	private static Evaluator rounding(Evaluator first, RoundingMode roundingMode) {
+		return (row, variables) -> {
+			Object value = first.evaluate(row, variables);
+			if(value instanceof BigDecimal) return ((BigDecimal) value).setScale(0, roundingMode);
+			if(isFloating(value)) {
+				double d = ((Number) value).doubleValue();
+				return roundingMode == RoundingMode.FLOOR ? Math.floor(d) : roundingMode == RoundingMode.CEILING ? Math.ceil(d) : (double) Math.round(d);
+			}
+			return value instanceof Number ? value : null;
+		};
+	}
+
+	/**
+	 * <code>java.util.Date</code> and <code>OffsetDateTime</code> are moved to the time zone of the server, as DateTimeOffset literals are
+	 */
+	private static Object temporal(Object value) {
+		if(value instanceof Date) return LocalDateTime.ofInstant(((Date) value).toInstant(), ZoneId.systemDefault());
+		if(value instanceof OffsetDateTime) return ((OffsetDateTime) value).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+		return value;
+	}
+
+	private static boolean isFloating(Object value) {
+		return value instanceof Double || value instanceof Float;
+	}
+
+	private static boolean isIntegral(Number value) {
+		return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+	}
+
+	private static BigDecimal decimal(Number value) {
+		if(value instanceof BigDecimal) return (BigDecimal) value;
+		if(value instanceof BigInteger) return new BigDecimal((BigInteger) value);
+		return BigDecimal.valueOf(value.longValue());
+	}
+}
@@ -0,0 +1,133 @@
+package com.cairone.olingo.ext.jpa.visitors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.olingo.commons.api.edm.EdmEnumType;
+import org.apache.olingo.commons.api.edm.EdmType;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceLambdaAll;
+import org.apache.olingo.server.api.uri.UriResourceLambdaAny;
+import org.apache.olingo.server.api.uri.queryoption.expression.BinaryOperatorKind;
+import org.apache.olingo.server.api.uri.queryoption.expression.Expression;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitException;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitor;
+import org.apache.olingo.server.api.uri.queryoption.expression.Literal;
+import org.apache.olingo.server.api.uri.queryoption.expression.Member;
+import org.apache.olingo.server.api.uri.queryoption.expression.MethodKind;
+import org.apache.olingo.server.api.uri.queryoption.expression.UnaryOperatorKind;
+
+import com.cairone.olingo.ext.jpa.converters.LiteralParsers;
+
+/**
+ * Renders the shape of an expression: its operators, methods and members, with every literal replaced by a slot that keeps
+ * only its type. Two filters with the same shape translate to the same JPQL and differ only in the values of the parameters.
+ * The literals are collected in visit order, the order in which {@link FilterExpressionVisitor} binds them.
+ * No reflection is involved, so rendering a shape is much cheaper than translating the expression.
+ *
+ * @author diego.cairone
+ */
+public class ShapeExpressionVisitor implements ExpressionVisitor<String> {
+
+	private final List<Object> literals;
+
+	/**
+	 * @param literals Receives the text of every literal, in visit order
+	 */
+	public ShapeExpressionVisitor(List<Object> literals) {
+		this.literals = literals;
+	}
+
+	public ShapeExpressionVisitor() {
+		this(new ArrayList<Object>());
+	}
+
+	public List<Object> getLiterals() {
+		return literals;
+	}
+
+	@Override
+	public String visitBinaryOperator(BinaryOperatorKind operator, String left, String right) throws ExpressionVisitException, ODataApplicationException {
+		return "(" + left + " " + operator + " " + right + ")";
+	}
+
+	@Override
+	public String visitUnaryOperator(UnaryOperatorKind operator, String operand) throws ExpressionVisitException, ODataApplicationException {
+		return operator + "(" + operand + ")";
+	}
+
+	@Override
+	public String visitMethodCall(MethodKind methodCall, List<String> parameters) throws ExpressionVisitException, ODataApplicationException {
+		return methodCall + parameters.stream().collect(Collectors.joining(",", "(", ")"));
+	}
+
+	@Override
+	public String visitLambdaExpression(String lambdaFunction, String lambdaVariable, Expression expression) throws ExpressionVisitException, ODataApplicationException {
+		return lambdaFunction + "(" + lambdaVariable + ":" + expression.accept(this) + ")";
+	}
+
+	/**
+	 * The literal <code>null</code> is part of the shape, as comparisons with it translate to <code>IS NULL</code>. Other literals
+	 * are shaped by the Java type they are parsed into, so <code>1</code> and <code>1000</code>, an Edm.SByte and an Edm.Int16, share one shape.
+	 */
+	@Override
+	public String visitLiteral(Literal literal) throws ExpressionVisitException, ODataApplicationException {
+		literals.add(literal.getText());
+		if("null".equals(literal.getText())) return "null";
+		if(literal.getType() == null) return "?";
+		Class<?> javaType = LiteralParsers.javaType(literal.getType());
+		return "?" + (javaType == null ? literal.getType().getFullQualifiedName().getFullQualifiedNameAsString() : javaType.getSimpleName());
+	}
+
+	@Override
+	public String visitMember(Member member) throws ExpressionVisitException, ODataApplicationException {
+
+		List<String> segments = new ArrayList<String>();
+
+		if(member.getStartTypeFilter() != null) {
+			segments.add(member.getStartTypeFilter().getFullQualifiedName().getFullQualifiedNameAsString());
+		}
+
+		for(UriResource uriResource : member.getResourcePath().getUriResourceParts()) {
+			if(uriResource instanceof UriResourceLambdaAny) {
+				UriResourceLambdaAny lambdaAny = (UriResourceLambdaAny) uriResource;
+				segments.add("any(" + (lambdaAny.getExpression() == null ? "" : lambdaAny.getLambdaVariable() + ":" + lambdaAny.getExpression().accept(this)) + ")");
+			} else if(uriResource instanceof UriResourceLambdaAll) {
+				UriResourceLambdaAll lambdaAll = (UriResourceLambdaAll) uriResource;
+				segments.add("all(" + lambdaAll.getLambdaVariable() + ":" + lambdaAll.getExpression().accept(this) + ")");
+			} else {
+				segments.add(uriResource.getSegmentValue());
+			}
+		}
+
+		return segments.stream().collect(Collectors.joining("/"));
+	}
+
+	@Override
+	public String visitAlias(String aliasName) throws ExpressionVisitException, ODataApplicationException {
+		return aliasName;
+	}
+
+	/**
+	 * Type literals are part of the shape, as they change the translation
+	 */
+	@Override
+	public String visitTypeLiteral(EdmType type) throws ExpressionVisitException, ODataApplicationException {
+		return type.getFullQualifiedName().getFullQualifiedNameAsString();
+	}
+
+	@Override
+	public String visitLambdaReference(String variableName) throws ExpressionVisitException, ODataApplicationException {
+		return variableName;
+	}
+
+	/**
+	 * Enumeration members are part of the shape: they are resolved against the Edm classes while translating
+	 */
+	@Override
+	public String visitEnum(EdmEnumType type, List<String> enumValues) throws ExpressionVisitException, ODataApplicationException {
+		return type.getFullQualifiedName().getFullQualifiedNameAsString() + enumValues.stream().collect(Collectors.joining(",", "'", "'"));
+	}
+}
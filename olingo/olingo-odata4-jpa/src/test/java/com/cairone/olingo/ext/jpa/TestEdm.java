@@ -0,0 +1,43 @@
+package com.cairone.olingo.ext.jpa;
+
+import java.util.ArrayList;
+
+import org.apache.olingo.commons.api.edm.Edm;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.apache.olingo.server.core.uri.parser.Parser;
+
+import com.cairone.olingo.ext.jpa.edm.TestConstants;
+import com.cairone.olingo.ext.jpa.providers.EdmProvider;
+
+/**
+ * The service of the Edm classes in <code>com.cairone.olingo.ext.jpa.edm</code>, used to parse request URIs the way the processors receive them
+ */
+public final class TestEdm {
+
+	private static final OData ODATA = OData.newInstance();
+	private static Edm edm;
+
+	private TestEdm() {}
+
+	public static synchronized Edm getEdm() throws Exception {
+		if(edm == null) {
+			EdmProvider edmProvider = new EdmProvider()
+				.setContainerName(TestConstants.CONTAINER_NAME)
+				.setNameSpace(TestConstants.NAME_SPACE)
+				.setDefaultEdmPackage("com.cairone.olingo.ext.jpa.edm")
+				.setServiceRoot("http://localhost/odata/")
+				.initialize();
+			edm = ODATA.createServiceMetadata(edmProvider, new ArrayList<>()).getEdm();
+		}
+		return edm;
+	}
+
+	/**
+	 * @param path The resource path, as <code>People</code>
+	 * @param query The system query options, as <code>$filter=Name eq 'Ana'</code>; may be null
+	 */
+	public static UriInfo parse(String path, String query) throws Exception {
+		return new Parser(getEdm(), ODATA).parseUri(path, query, null);
+	}
+}
@@ -0,0 +1,37 @@
+package com.cairone.olingo.ext.jpa.edm;
+
+import com.cairone.olingo.ext.jpa.annotations.EdmComplex;
+import com.cairone.olingo.ext.jpa.annotations.EdmProperty;
+
+@EdmComplex(name = "Address", namespace = TestConstants.NAME_SPACE)
+public class AddressEdm {
+
+	@EdmProperty(name = "Street")
+	private String street = null;
+
+	@EdmProperty(name = "Number")
+	private String number = null;
+
+	public AddressEdm() {}
+
+	public AddressEdm(String street, String number) {
+		this.street = street;
+		this.number = number;
+	}
+
+	public String getStreet() {
+		return street;
+	}
+
+	public void setStreet(String street) {
+		this.street = street;
+	}
+
+	public String getNumber() {
+		return number;
+	}
+
+	public void setNumber(String number) {
+		this.number = number;
+	}
+}
@@ -0,0 +1,43 @@
+package com.cairone.olingo.ext.jpa.edm;
+
+import com.cairone.olingo.ext.jpa.annotations.EdmEntity;
+import com.cairone.olingo.ext.jpa.annotations.EdmEntitySet;
+import com.cairone.olingo.ext.jpa.annotations.EdmProperty;
+import com.cairone.olingo.ext.jpa.annotations.ODataJPAEntity;
+import com.cairone.olingo.ext.jpa.annotations.ODataJPAProperty;
+
+@EdmEntity(name = "Form", key = "Name", namespace = TestConstants.NAME_SPACE, containerName = TestConstants.CONTAINER_NAME)
+@EdmEntitySet("Forms")
+@ODataJPAEntity("FormEntity")
+public class FormEdm {
+
+	@EdmProperty(name = "Name")
+	@ODataJPAProperty("id")
+	private String name = null;
+
+	@EdmProperty(name = "Description")
+	private String description = null;
+
+	public FormEdm() {}
+
+	public FormEdm(String name, String description) {
+		this.name = name;
+		this.description = description;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public void setDescription(String description) {
+		this.description = description;
+	}
+}
@@ -0,0 +1,30 @@
+package com.cairone.olingo.ext.jpa.edm;
+
+import com.cairone.olingo.ext.jpa.annotations.EdmEnum;
+import com.cairone.olingo.ext.jpa.interfaces.OdataEnum;
+
+@EdmEnum(namespace = TestConstants.NAME_SPACE, name = "Gender")
+public enum GenderEnum implements OdataEnum<GenderEnum> {
+
+	FEMALE(0),
+	MALE(1);
+
+	private final int ordinal;
+
+	private GenderEnum(int ordinal) {
+		this.ordinal = ordinal;
+	}
+
+	@Override
+	public int getOrdinal() {
+		return ordinal;
+	}
+
+	@Override
+	public GenderEnum setOrdinal(int ordinal) {
+		for(GenderEnum gender : values()) {
+			if(gender.ordinal == ordinal) return gender;
+		}
+		return null;
+	}
+}
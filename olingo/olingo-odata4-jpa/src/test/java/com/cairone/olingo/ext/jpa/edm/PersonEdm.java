@@ -0,0 +1,132 @@
+package com.cairone.olingo.ext.jpa.edm;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.cairone.olingo.ext.jpa.annotations.EdmEntity;
+import com.cairone.olingo.ext.jpa.annotations.EdmEntitySet;
+import com.cairone.olingo.ext.jpa.annotations.EdmNavigationProperty;
+import com.cairone.olingo.ext.jpa.annotations.EdmProperty;
+import com.cairone.olingo.ext.jpa.annotations.EdmSearchable;
+import com.cairone.olingo.ext.jpa.annotations.ODataJPAEntity;
+import com.cairone.olingo.ext.jpa.annotations.ODataJPAProperty;
+
+@EdmEntity(name = "Person", key = "Id", namespace = TestConstants.NAME_SPACE, containerName = TestConstants.CONTAINER_NAME)
+@EdmEntitySet("People")
+@EdmSearchable({ "Name", "Surname" })
+@ODataJPAEntity("PersonEntity")
+public class PersonEdm {
+
+	@EdmProperty(name = "Id")
+	private Integer id = null;
+
+	@EdmProperty(name = "Code", nullable = false)
+	private String code = null;
+
+	@EdmProperty(name = "Name")
+	private String name = null;
+
+	@EdmProperty(name = "Surname")
+	@ODataJPAProperty("lastName")
+	private String surname = null;
+
+	@EdmProperty(name = "Gender", nullable = false)
+	private GenderEnum gender = null;
+
+	@EdmProperty(name = "BirthDate")
+	private LocalDate birthDate = null;
+
+	@EdmProperty(name = "Address")
+	@ODataJPAProperty(ignore = true)
+	private AddressEdm address = null;
+
+	@EdmNavigationProperty(name = "Form")
+	private FormEdm form = null;
+
+	@EdmNavigationProperty(name = "Skills")
+	private List<SkillEdm> skills = new ArrayList<SkillEdm>();
+
+	public PersonEdm() {}
+
+	public PersonEdm(Integer id, String name, String surname, GenderEnum gender, FormEdm form) {
+		this.id = id;
+		this.code = "P" + id;
+		this.name = name;
+		this.surname = surname;
+		this.gender = gender;
+		this.form = form;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public void setId(Integer id) {
+		this.id = id;
+	}
+
+	public String getCode() {
+		return code;
+	}
+
+	public void setCode(String code) {
+		this.code = code;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getSurname() {
+		return surname;
+	}
+
+	public void setSurname(String surname) {
+		this.surname = surname;
+	}
+
+	public GenderEnum getGender() {
+		return gender;
+	}
+
+	public void setGender(GenderEnum gender) {
+		this.gender = gender;
+	}
+
+	public LocalDate getBirthDate() {
+		return birthDate;
+	}
+
+	public void setBirthDate(LocalDate birthDate) {
+		this.birthDate = birthDate;
+	}
+
+	public AddressEdm getAddress() {
+		return address;
+	}
+
+	public void setAddress(AddressEdm address) {
+		this.address = address;
+	}
+
+	public FormEdm getForm() {
+		return form;
+	}
+
+	public void setForm(FormEdm form) {
+		this.form = form;
+	}
+
+	public List<SkillEdm> getSkills() {
+		return skills;
+	}
+
+	public void setSkills(List<SkillEdm> skills) {
+		this.skills = skills;
+	}
+}
@@ -0,0 +1,53 @@
+package com.cairone.olingo.ext.jpa.edm;
+
+import com.cairone.olingo.ext.jpa.annotations.EdmEntity;
+import com.cairone.olingo.ext.jpa.annotations.EdmEntitySet;
+import com.cairone.olingo.ext.jpa.annotations.EdmProperty;
+import com.cairone.olingo.ext.jpa.annotations.ODataJPAEntity;
+
+@EdmEntity(name = "Skill", key = "Id", namespace = TestConstants.NAME_SPACE, containerName = TestConstants.CONTAINER_NAME)
+@EdmEntitySet("Skills")
+@ODataJPAEntity("SkillEntity")
+public class SkillEdm {
+
+	@EdmProperty(name = "Id")
+	private Integer id = null;
+
+	@EdmProperty(name = "Name")
+	private String name = null;
+
+	@EdmProperty(name = "Level")
+	private Integer level = null;
+
+	public SkillEdm() {}
+
+	public SkillEdm(Integer id, String name, Integer level) {
+		this.id = id;
+		this.name = name;
+		this.level = level;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public void setId(Integer id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public Integer getLevel() {
+		return level;
+	}
+
+	public void setLevel(Integer level) {
+		this.level = level;
+	}
+}
@@ -0,0 +1,9 @@
+package com.cairone.olingo.ext.jpa.edm;
+
+public final class TestConstants {
+
+	public static final String NAME_SPACE = "com.cairone.olingo.ext.jpa.test";
+	public static final String CONTAINER_NAME = "OlingoExtTest";
+
+	private TestConstants() {}
+}
@@ -0,0 +1,22 @@
+package com.cairone.olingo.ext.jpa.entities;
+
+public class FormEntity {
+
+	private String id;
+	private String description;
+
+	public FormEntity() {}
+
+	public FormEntity(String id, String description) {
+		this.id = id;
+		this.description = description;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+}
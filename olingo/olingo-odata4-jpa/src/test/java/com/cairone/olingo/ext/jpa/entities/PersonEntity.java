@@ -0,0 +1,63 @@
+package com.cairone.olingo.ext.jpa.entities;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.cairone.olingo.ext.jpa.edm.GenderEnum;
+
+public class PersonEntity {
+
+	private Integer id;
+	private String code;
+	private String name;
+	private String lastName;
+	private GenderEnum gender;
+	private LocalDate birthDate;
+	private FormEntity form;
+	private List<SkillEntity> skills = new ArrayList<SkillEntity>();
+
+	public PersonEntity() {}
+
+	public PersonEntity(Integer id, String name, String lastName, GenderEnum gender, LocalDate birthDate, FormEntity form) {
+		this.id = id;
+		this.code = "P" + id;
+		this.name = name;
+		this.lastName = lastName;
+		this.gender = gender;
+		this.birthDate = birthDate;
+		this.form = form;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public String getCode() {
+		return code;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getLastName() {
+		return lastName;
+	}
+
+	public GenderEnum getGender() {
+		return gender;
+	}
+
+	public LocalDate getBirthDate() {
+		return birthDate;
+	}
+
+	public FormEntity getForm() {
+		return form;
+	}
+
+	public List<SkillEntity> getSkills() {
+		return skills;
+	}
+}
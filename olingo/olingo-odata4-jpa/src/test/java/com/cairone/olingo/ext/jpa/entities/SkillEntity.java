@@ -0,0 +1,28 @@
+package com.cairone.olingo.ext.jpa.entities;
+
+public class SkillEntity {
+
+	private Integer id;
+	private String name;
+	private Integer level;
+
+	public SkillEntity() {}
+
+	public SkillEntity(Integer id, String name, Integer level) {
+		this.id = id;
+		this.name = name;
+		this.level = level;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Integer getLevel() {
+		return level;
+	}
+}
@@ -0,0 +1,173 @@
+package com.cairone.olingo.ext.jpa.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.apache.olingo.commons.api.data.ComplexValue;
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.data.Link;
+import org.apache.olingo.commons.api.data.Property;
+import org.apache.olingo.commons.api.data.ValueType;
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.junit.Test;
+
+import com.cairone.olingo.ext.jpa.TestEdm;
+import com.cairone.olingo.ext.jpa.edm.AddressEdm;
+import com.cairone.olingo.ext.jpa.edm.FormEdm;
+import com.cairone.olingo.ext.jpa.edm.GenderEnum;
+import com.cairone.olingo.ext.jpa.edm.PersonEdm;
+import com.cairone.olingo.ext.jpa.edm.SkillEdm;
+import com.cairone.olingo.ext.jpa.entities.FormEntity;
+import com.cairone.olingo.ext.jpa.entities.PersonEntity;
+import com.cairone.olingo.ext.jpa.entities.SkillEntity;
+import com.cairone.olingo.ext.jpa.mappers.JpaPaths;
+
+public class BaseProcessorTest {
+
+	private final BaseProcessor processor = new BaseProcessor().setServiceRoot("http://localhost/odata/");
+
+	private static PersonEdm person() {
+		PersonEdm person = new PersonEdm(1, "Ana", "Diaz", GenderEnum.MALE, new FormEdm("H", "High"));
+		person.setBirthDate(LocalDate.of(1990, 5, 17));
+		person.setAddress(new AddressEdm("Main", "12"));
+		person.getSkills().add(new SkillEdm(1, "Java", 5));
+		return person;
+	}
+
+	@Test
+	public void entityIsWrittenThroughTheMappingPlan() throws Exception {
+
+		Entity entity = processor.writeEntity(person(), TestEdm.parse("People", "$expand=Form,Skills").getExpandOption());
+
+		assertEquals("People(Id=1)", entity.getId().toString());
+		assertEquals(Arrays.asList("Id", "Code", "Name", "Surname", "Gender", "BirthDate", "Address"), entity.getProperties().stream().map(property -> property.getName()).collect(Collectors.toList()));
+		assertEquals(ValueType.ENUM, entity.getProperty("Gender").getValueType());
+		assertEquals(1, entity.getProperty("Gender").getValue());
+		assertEquals(ValueType.COMPLEX, entity.getProperty("Address").getValueType());
+		assertEquals("High", entity.getNavigationLink("Form").getInlineEntity().getProperty("Description").getValue());
+		assertEquals(1, entity.getNavigationLink("Skills").getInlineEntitySet().getEntities().size());
+	}
+
+	@Test
+	public void objectReadBackEqualsTheOneWritten() throws Exception {
+
+		PersonEdm person = person();
+		UriInfo uriInfo = TestEdm.parse("People", "$expand=Form,Skills");
+
+		PersonEdm read = (PersonEdm) processor.writeObject(PersonEdm.class, processor.writeEntity(person, uriInfo.getExpandOption()));
+
+		assertEquals(person.getId(), read.getId());
+		assertEquals(person.getCode(), read.getCode());
+		assertEquals(person.getName(), read.getName());
+		assertEquals(person.getSurname(), read.getSurname());
+		assertEquals(person.getGender(), read.getGender());
+		assertEquals(person.getBirthDate(), read.getBirthDate());
+		assertEquals("Main", read.getAddress().getStreet());
+		assertEquals("12", read.getAddress().getNumber());
+		assertEquals("High", read.getForm().getDescription());
+		assertEquals("Java", read.getSkills().get(0).getName());
+	}
+
+	@Test
+	public void nullValuesAreNotWritten() throws Exception {
+
+		PersonEdm person = new PersonEdm(2, null, null, GenderEnum.FEMALE, null);
+
+		Entity entity = processor.writeEntity(person, null);
+		PersonEdm read = (PersonEdm) processor.writeObject(PersonEdm.class, entity);
+
+		assertNull(entity.getProperty("Name"));
+		assertNull(read.getName());
+		assertNull(read.getAddress());
+		assertEquals(GenderEnum.FEMALE, read.getGender());
+	}
+
+	private static PersonEntity personEntity() {
+		PersonEntity personEntity = new PersonEntity(1, "Ana", "Diaz", GenderEnum.MALE, LocalDate.of(1990, 5, 17), new FormEntity("H", "High"));
+		personEntity.getSkills().add(new SkillEntity(1, "Java", 5));
+		return personEntity;
+	}
+
+	/**
+	 * The copy a data source makes of a JPA entity, before direct writing
+	 */
+	private static PersonEdm copy(PersonEntity personEntity) {
+		FormEntity formEntity = personEntity.getForm();
+		PersonEdm person = new PersonEdm(personEntity.getId(), personEntity.getName(), personEntity.getLastName(), personEntity.getGender(), formEntity == null ? null : new FormEdm(formEntity.getId(), formEntity.getDescription()));
+		person.setCode(personEntity.getCode());
+		person.setBirthDate(personEntity.getBirthDate());
+		personEntity.getSkills().forEach(skillEntity -> person.getSkills().add(new SkillEdm(skillEntity.getId(), skillEntity.getName(), skillEntity.getLevel())));
+		return person;
+	}
+
+	private static Map<String, Object> render(Entity entity) {
+
+		if(entity == null) return null;
+
+		Map<String, Object> values = new TreeMap<String, Object>();
+		values.put("@id", entity.getId());
+
+		for(Property property : entity.getProperties()) {
+			Object value = property.getValue();
+			values.put(property.getName(), value instanceof ComplexValue ? ((ComplexValue) value).getValue().stream().map(item -> item.getName() + "=" + item.getValue()).collect(Collectors.toList()) : value);
+		}
+
+		for(Link link : entity.getNavigationLinks()) {
+			values.put(link.getTitle(), link.getInlineEntitySet() == null ? render(link.getInlineEntity()) : link.getInlineEntitySet().getEntities().stream().map(BaseProcessorTest::render).collect(Collectors.toList()));
+		}
+
+		return values;
+	}
+
+	private void assertSameEntity(String query, PersonEntity personEntity) throws Exception {
+
+		UriInfo uriInfo = TestEdm.parse("People", query);
+
+		Entity copied = processor.writeEntity(copy(personEntity), uriInfo.getExpandOption(), uriInfo.getSelectOption());
+		Entity direct = processor.writeEntity(PersonEdm.class, personEntity, uriInfo.getExpandOption(), uriInfo.getSelectOption());
+
+		assertEquals(render(copied), render(direct));
+	}
+
+	@Test
+	public void jpaEntityIsWrittenAsItsEdmCopy() throws Exception {
+
+		assertSameEntity("$expand=Form,Skills", personEntity());
+		assertSameEntity("$select=Name,Gender&$expand=Form($select=Description)", personEntity());
+		assertSameEntity("", new PersonEntity(2, null, null, GenderEnum.FEMALE, null, null));
+		assertSameEntity("$expand=Form", new PersonEntity(2, null, null, GenderEnum.FEMALE, null, null));
+	}
+
+	@Test
+	public void jpaPathsAreReadThroughTheEntity() throws Exception {
+
+		PersonEntity personEntity = personEntity();
+
+		assertEquals("Diaz", JpaPaths.read(personEntity, "lastName"));
+		assertEquals("High", JpaPaths.read(personEntity, "form.description"));
+		assertNull(JpaPaths.read(new PersonEntity(2, null, null, GenderEnum.FEMALE, null, null), "form.description"));
+	}
+
+	@Test
+	public void operationResultIsFilteredAndOrderedInMemory() throws Exception {
+
+		List<Object> people = Arrays.asList(
+			new PersonEdm(1, "Eva", "Ruiz", GenderEnum.FEMALE, null),
+			new PersonEdm(2, "Ana", "Diaz", GenderEnum.FEMALE, null),
+			new PersonEdm(3, "Ivo", "Sosa", GenderEnum.MALE, null));
+		UriInfo uriInfo = TestEdm.parse("People", "$filter=Gender eq com.cairone.olingo.ext.jpa.test.Gender'FEMALE'&$orderby=Name");
+
+		Collection<Object> result = BaseProcessor.query(people, uriInfo.getFilterOption(), uriInfo.getOrderByOption());
+
+		assertEquals(Arrays.asList(2, 1), result.stream().map(person -> ((PersonEdm) person).getId()).collect(Collectors.toList()));
+		assertEquals(people, BaseProcessor.query(people, null, null));
+	}
+}
@@ -0,0 +1,124 @@
+package com.cairone.olingo.ext.jpa.providers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.apache.olingo.server.api.uri.UriParameter;
+import org.apache.olingo.server.api.uri.UriResourceEntitySet;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cairone.olingo.ext.jpa.TestEdm;
+import com.cairone.olingo.ext.jpa.edm.GenderEnum;
+import com.cairone.olingo.ext.jpa.edm.PersonEdm;
+import com.cairone.olingo.ext.jpa.entities.PersonEntity;
+import com.cairone.olingo.ext.jpa.query.SearchRestriction;
+
+public class InvertedIndexSearchProviderTest {
+
+	private InvertedIndexSearchProvider searchProvider;
+
+	@Before
+	public void load() throws Exception {
+		searchProvider = new InvertedIndexSearchProvider("People", PersonEdm.class);
+		searchProvider.load(Arrays.asList(
+			new PersonEdm(1, "José María", "Pérez", GenderEnum.MALE, null),
+			new PersonEdm(2, "Maria", "Lopez-Diaz", GenderEnum.FEMALE, null),
+			new PersonEdm(3, "Juan", "Maria Perez", GenderEnum.MALE, null),
+			new PersonEdm(4, "Ana", null, GenderEnum.FEMALE, null)));
+	}
+
+	private Set<Integer> search(String search) throws Exception {
+		UriInfo uriInfo = TestEdm.parse("People", "$search=" + search);
+		Set<List<Object>> keys = searchProvider.search(uriInfo.getSearchOption().getSearchExpression()).getKeys();
+		return keys.stream().map(key -> (Integer) key.get(0)).collect(Collectors.toSet());
+	}
+
+	private static Set<Integer> ids(Integer... ids) {
+		return new HashSet<Integer>(Arrays.asList(ids));
+	}
+
+	@Test
+	public void termIsMatchedAsAPrefixIgnoringCaseAndAccents() throws Exception {
+
+		assertTrue(searchProvider.isLoaded());
+		assertEquals(4, searchProvider.size());
+		assertEquals(ids(1, 2, 3), search("MARIA"));
+		assertEquals(ids(1, 3), search("per"));
+		assertEquals(ids(2), search("diaz"));
+		assertEquals(ids(), search("pedro"));
+	}
+
+	@Test
+	public void quotedWordIsMatchedAsAPrefix() throws Exception {
+
+		assertEquals(ids(1, 3), search("\"perez\""));
+		assertEquals(ids(1, 3), search("\"per\""));
+	}
+
+	@Test
+	public void phraseIsMatchedInOrderWithinOneProperty() throws Exception {
+
+		assertEquals(ids(3), search("\"maria perez\""));
+		assertEquals(ids(1), search("\"jose maria\""));
+		assertEquals(ids(), search("\"perez maria\""));
+	}
+
+	@Test
+	public void andOrNot() throws Exception {
+
+		assertEquals(ids(1, 3), search("maria AND perez"));
+		assertEquals(ids(1, 3), search("maria perez"));
+		assertEquals(ids(2, 4), search("ana OR lopez"));
+		assertEquals(ids(2, 4), search("NOT perez"));
+		assertEquals(ids(2), search("maria AND NOT perez"));
+		assertEquals(ids(2, 3), search("(juan OR lopez) AND maria"));
+	}
+
+	@Test
+	public void indexFollowsUpdatesAndDeletions() throws Exception {
+
+		searchProvider.updated(new PersonEdm(4, "Ana", "Pérez", GenderEnum.FEMALE, null));
+		searchProvider.created(new PersonEdm(5, "Pedro", "Gómez", GenderEnum.MALE, null));
+
+		Map<String, UriParameter> keyPredicateMap = new HashMap<String, UriParameter>();
+		UriInfo uriInfo = TestEdm.parse("People(1)", null);
+		for(UriParameter keyPredicate : ((UriResourceEntitySet) uriInfo.getUriResourceParts().get(0)).getKeyPredicates()) {
+			keyPredicateMap.put(keyPredicate.getName(), keyPredicate);
+		}
+		searchProvider.deleted(keyPredicateMap);
+
+		assertEquals(4, searchProvider.size());
+		assertEquals(ids(3, 4), search("perez"));
+		assertEquals(ids(5), search("gomez"));
+		assertFalse(search("jose").contains(1));
+	}
+
+	@Test
+	public void jpaEntitiesAreIndexedThroughTheirJpaPaths() throws Exception {
+
+		searchProvider.load(Arrays.asList(
+			new PersonEntity(1, "José", "Pérez", GenderEnum.MALE, null, null),
+			new PersonEntity(2, "Maria", "Lopez", GenderEnum.FEMALE, null, null)));
+		searchProvider.updated(new PersonEntity(3, "Juan", "Perez", GenderEnum.MALE, null, null));
+
+		assertEquals(3, searchProvider.size());
+		assertEquals(ids(1, 3), search("perez"));
+
+		SearchRestriction searchRestriction = searchProvider.search(TestEdm.parse("People", "$search=lopez").getSearchOption().getSearchExpression());
+
+		assertTrue(searchRestriction.test(new PersonEntity(2, "Maria", "Lopez", GenderEnum.FEMALE, null, null)));
+		assertFalse(searchRestriction.test(new PersonEntity(1, "José", "Pérez", GenderEnum.MALE, null, null)));
+		assertTrue(searchRestriction.test(new PersonEdm(2, "Maria", "Lopez", GenderEnum.FEMALE, null)));
+	}
+}
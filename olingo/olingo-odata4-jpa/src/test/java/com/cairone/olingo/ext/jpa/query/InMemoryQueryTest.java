@@ -0,0 +1,105 @@
+package com.cairone.olingo.ext.jpa.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.junit.Test;
+
+import com.cairone.olingo.ext.jpa.TestEdm;
+import com.cairone.olingo.ext.jpa.edm.FormEdm;
+import com.cairone.olingo.ext.jpa.edm.GenderEnum;
+import com.cairone.olingo.ext.jpa.edm.PersonEdm;
+import com.cairone.olingo.ext.jpa.edm.SkillEdm;
+
+public class InMemoryQueryTest {
+
+	private static final FormEdm HIGH = new FormEdm("H", "High");
+	private static final FormEdm LOW = new FormEdm("L", "Low");
+
+	private static final List<PersonEdm> PEOPLE = Arrays.asList(
+		new PersonEdm(1, "Ana", "Diaz", GenderEnum.FEMALE, HIGH),
+		new PersonEdm(2, null, "Ruiz", GenderEnum.MALE, LOW),
+		new PersonEdm(3, "Ivo", null, GenderEnum.MALE, null),
+		new PersonEdm(4, "Élia", "Diaz", GenderEnum.FEMALE, LOW));
+
+	static {
+		PEOPLE.get(0).getSkills().add(new SkillEdm(1, "Java", 5));
+		PEOPLE.get(1).getSkills().add(new SkillEdm(2, "SQL", 2));
+	}
+
+	private static List<Integer> ids(String query) throws Exception {
+		UriInfo uriInfo = TestEdm.parse("People", query);
+		return InMemoryQuery.compile(PersonEdm.class, uriInfo.getFilterOption(), uriInfo.getOrderByOption()).apply(PEOPLE).stream().map(PersonEdm::getId).collect(Collectors.toList());
+	}
+
+	@Test
+	public void withoutOptionsEveryRowIsKeptInOrder() throws Exception {
+
+		InMemoryQuery<PersonEdm> query = InMemoryQuery.compile(PersonEdm.class, null, null);
+
+		assertNull(query.getPredicate());
+		assertNull(query.getComparator());
+		assertEquals(Arrays.asList(1, 2, 3, 4), ids(""));
+	}
+
+	@Test
+	public void comparisonsWithNull() throws Exception {
+
+		assertEquals(Arrays.asList(2), ids("$filter=Name eq null"));
+		assertEquals(Arrays.asList(1, 3, 4), ids("$filter=Name ne null"));
+		assertEquals(Arrays.asList(2, 3, 4), ids("$filter=Name ne 'Ana'"));
+		assertEquals(Arrays.asList(3, 4), ids("$filter=Name gt 'B'"));
+		assertEquals(Arrays.asList(2, 3, 4), ids("$filter=not (Name eq 'Ana')"));
+		assertEquals(Arrays.asList(2, 3, 4), ids("$filter=not (Name lt 'B')"));
+		assertEquals(Arrays.asList(1, 2), ids("$filter=not (Name ge 'B')"));
+		assertEquals(Arrays.asList(1), ids("$filter=not (not (Name lt 'B'))"));
+	}
+
+	@Test
+	public void predicateFollowsNavigationsAndLambdas() throws Exception {
+
+		assertEquals(Arrays.asList(2, 4), ids("$filter=Form/Description eq 'Low'"));
+		assertEquals(Arrays.asList(3), ids("$filter=Form eq null"));
+		assertEquals(Arrays.asList(1), ids("$filter=Skills/any(s:s/Level gt 3)"));
+		assertEquals(Arrays.asList(3, 4), ids("$filter=Skills/all(s:s/Level gt 3) and Id gt 1"));
+	}
+
+	@Test
+	public void predicateEvaluatesFunctionsArithmeticAndEnumerations() throws Exception {
+
+		assertEquals(Arrays.asList(3), ids("$filter=contains(Name,'v')"));
+		assertEquals(Arrays.asList(1), ids("$filter=tolower(Name) eq 'ana'"));
+		assertEquals(Arrays.asList(2, 4), ids("$filter=Id mod 2 eq 0"));
+		assertEquals(Arrays.asList(3, 4), ids("$filter=Id add 1 gt 3"));
+		assertEquals(Arrays.asList(2, 3), ids("$filter=Gender eq com.cairone.olingo.ext.jpa.test.Gender'MALE'"));
+	}
+
+	@Test
+	public void nullsSortFirstInAscendingOrder() throws Exception {
+
+		assertEquals(Arrays.asList(2, 1, 3, 4), ids("$orderby=Name"));
+		assertEquals(Arrays.asList(4, 3, 1, 2), ids("$orderby=Name desc"));
+		assertEquals(Arrays.asList(2, 4, 1, 3), ids("$orderby=Form/Description desc"));
+	}
+
+	@Test
+	public void comparatorAppliesEveryItem() throws Exception {
+
+		assertEquals(Arrays.asList(3, 4, 1, 2), ids("$orderby=Surname,Id desc"));
+		assertEquals(Arrays.asList(4, 2), ids("$filter=Form/Description eq 'Low'&$orderby=Surname"));
+
+		UriInfo uriInfo = TestEdm.parse("People", "$orderby=Surname,Id desc");
+		Comparator<PersonEdm> comparator = InMemoryQuery.compile(PersonEdm.class, null, uriInfo.getOrderByOption()).getComparator();
+
+		assertTrue(comparator.compare(PEOPLE.get(3), PEOPLE.get(0)) < 0);
+		assertTrue(comparator.compare(PEOPLE.get(2), PEOPLE.get(1)) < 0);
+		assertEquals(0, comparator.compare(PEOPLE.get(1), PEOPLE.get(1)));
+	}
+}
@@ -0,0 +1,87 @@
+package com.cairone.olingo.ext.jpa.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.junit.Test;
+
+import com.cairone.olingo.ext.jpa.TestEdm;
+import com.cairone.olingo.ext.jpa.edm.GenderEnum;
+import com.cairone.olingo.ext.jpa.edm.PersonEdm;
+
+public class JPQLQueryBuilderTest {
+
+	private static JPQLQueryBuilder builder(String query) throws Exception {
+		UriInfo uriInfo = TestEdm.parse("People", query);
+		return new JPQLQueryBuilder()
+			.setClazz(PersonEdm.class)
+			.setFilterOption(uriInfo.getFilterOption())
+			.setOrderByOption(uriInfo.getOrderByOption())
+			.setExpandOption(uriInfo.getExpandOption())
+			.setQueryPlanCache(null)
+			.setIndexAdvisor(null);
+	}
+
+	@Test
+	public void countKeepsTheFilterAndDropsOrderAndFetchJoins() throws Exception {
+
+		JPQLQueryBuilder builder = builder("$filter=Name eq 'Ana'&$orderby=Surname desc&$expand=Form");
+
+		JPQLQuery query = builder.build();
+		JPQLQuery count = builder.buildCount();
+
+		assertTrue(query.getQueryString(), query.getQueryString().contains("ORDER BY e.lastName DESC"));
+		assertEquals("SELECT COUNT(DISTINCT e) FROM PersonEntity e WHERE e.name = :value0 ", count.getQueryString());
+		assertEquals(query.getQueryParams(), count.getQueryParams());
+		assertFalse(count.isProjection());
+	}
+
+	@Test
+	public void countWithoutDistinct() throws Exception {
+
+		JPQLQuery count = builder(null).setDistinct(false).buildCount();
+
+		assertEquals("SELECT COUNT(e) FROM PersonEntity e ", count.getQueryString());
+		assertTrue(count.getQueryParams().isEmpty());
+	}
+
+	@Test
+	public void countJoinsTheNavigationsOfTheFilter() throws Exception {
+
+		JPQLQuery count = builder("$filter=Form/Description eq 'Alta'").buildCount();
+
+		assertEquals("SELECT COUNT(DISTINCT e) FROM PersonEntity e LEFT JOIN e.form j1 WHERE j1.description = :value0 ", count.getQueryString());
+		assertEquals("Alta", count.getQueryParams().get("value0"));
+	}
+
+	@Test
+	public void keysetPredicatePositionsThePage() throws Exception {
+
+		JPQLQueryBuilder builder = builder("$orderby=Code desc");
+		List<SortKey> sortKeys = SortKey.from(PersonEdm.class, TestEdm.parse("People", "$orderby=Code desc").getOrderByOption());
+		SkipToken skipToken = SkipToken.first(0, 10, sortKeys).next(10, 10, new PersonEdm(7, "Ana", "Diaz", GenderEnum.FEMALE, null), sortKeys);
+
+		JPQLQuery query = builder.setSkipToken(skipToken).build();
+
+		assertEquals("SELECT DISTINCT e FROM PersonEntity e WHERE (e.code < :skiptoken0) OR (e.code = :skiptoken0 AND e.id > :skiptoken1) ORDER BY e.code DESC, e.id ASC", query.getQueryString().trim());
+		assertEquals("P7", query.getQueryParams().get("skiptoken0"));
+		assertEquals(7, query.getQueryParams().get("skiptoken1"));
+	}
+
+	@Test
+	public void nullableOrderIsNotPositionedByKeyset() throws Exception {
+
+		List<SortKey> sortKeys = SortKey.from(PersonEdm.class, TestEdm.parse("People", "$orderby=Name").getOrderByOption());
+		SkipToken skipToken = SkipToken.first(0, 10, sortKeys).next(10, 10, new PersonEdm(7, "Ana", "Diaz", GenderEnum.FEMALE, null), sortKeys);
+
+		JPQLQuery query = builder("$orderby=Name").setSkipToken(skipToken).build();
+
+		assertFalse(query.getQueryString(), query.getQueryString().contains("WHERE"));
+		assertTrue(query.getQueryParams().isEmpty());
+		assertEquals(Integer.valueOf(10), skipToken.getSkip());
+	}
+}
@@ -0,0 +1,31 @@
+package com.cairone.olingo.ext.jpa.query;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.cairone.olingo.ext.jpa.edm.PersonEdm;
+
+public class QueryCostModelTest {
+
+	private final QueryCostModel queryCostModel = new QueryCostModel().setRowsPerPoint(100);
+
+	private int rowsCost(Integer rows) throws Exception {
+		return queryCostModel.estimate(PersonEdm.class, null, null, null, rows).get(QueryCost.ROWS);
+	}
+
+	@Test
+	public void rowsAreChargedByStartedHundreds() throws Exception {
+
+		assertEquals(1, rowsCost(1));
+		assertEquals(1, rowsCost(100));
+		assertEquals(2, rowsCost(101));
+	}
+
+	@Test
+	public void largestTopDoesNotOverflow() throws Exception {
+
+		assertEquals(Integer.MAX_VALUE / 100 + 1, rowsCost(Integer.MAX_VALUE));
+		assertEquals(Integer.MAX_VALUE / 100, rowsCost(Integer.MAX_VALUE - 47));
+	}
+}
@@ -0,0 +1,182 @@
+package com.cairone.olingo.ext.jpa.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.junit.Test;
+
+import com.cairone.olingo.ext.jpa.TestEdm;
+import com.cairone.olingo.ext.jpa.annotations.EdmEntity;
+import com.cairone.olingo.ext.jpa.annotations.EdmProperty;
+import com.cairone.olingo.ext.jpa.annotations.ODataJPAEntity;
+import com.cairone.olingo.ext.jpa.edm.GenderEnum;
+import com.cairone.olingo.ext.jpa.edm.PersonEdm;
+import com.cairone.olingo.ext.jpa.edm.TestConstants;
+
+public class QueryPlanCacheTest {
+
+	private final QueryPlanCache queryPlanCache = new QueryPlanCache(10);
+
+	@EdmEntity(name = "Installment", key = { "Loan", "Number" }, namespace = TestConstants.NAME_SPACE, containerName = TestConstants.CONTAINER_NAME)
+	@ODataJPAEntity("InstallmentEntity")
+	public static class InstallmentEdm {
+
+		@EdmProperty(name = "Loan")
+		private Integer loan = null;
+
+		@EdmProperty(name = "Number")
+		private Integer number = null;
+	}
+
+	private static List<List<Object>> ids(int count) {
+		return IntStream.rangeClosed(1, count).mapToObj(id -> Arrays.<Object>asList(id)).collect(Collectors.toList());
+	}
+
+	private JPQLQueryBuilder builder(String query) throws Exception {
+		UriInfo uriInfo = TestEdm.parse("People", query);
+		return new JPQLQueryBuilder()
+			.setClazz(PersonEdm.class)
+			.setFilterOption(uriInfo.getFilterOption())
+			.setOrderByOption(uriInfo.getOrderByOption())
+			.setQueryPlanCache(queryPlanCache)
+			.setIndexAdvisor(null);
+	}
+
+	private static SkipToken skipToken(String orderBy, PersonEdm lastRow) throws Exception {
+		List<SortKey> sortKeys = SortKey.from(PersonEdm.class, TestEdm.parse("People", "$orderby=" + orderBy).getOrderByOption());
+		return SkipToken.first(0, 10, sortKeys).next(10, 10, lastRow, sortKeys);
+	}
+
+	@Test
+	public void sameShapeIsHitAndRebound() throws Exception {
+
+		JPQLQuery ana = builder("$filter=Name eq 'Ana' and Id gt 3").build();
+		JPQLQuery eva = builder("$filter=Name eq 'Eva' and Id gt 9").build();
+
+		assertEquals(1, queryPlanCache.getMissCount());
+		assertEquals(1, queryPlanCache.getHitCount());
+		assertEquals(1, queryPlanCache.size());
+
+		assertEquals(ana.getQueryString(), eva.getQueryString());
+		assertEquals(ana.getQueryParams().keySet(), eva.getQueryParams().keySet());
+		assertTrue(ana.getQueryParams().containsValue("Ana"));
+		assertTrue(ana.getQueryParams().containsValue(3));
+		assertTrue(eva.getQueryParams().containsValue("Eva"));
+		assertTrue(eva.getQueryParams().containsValue(9));
+		assertFalse(eva.getQueryParams().containsValue("Ana"));
+	}
+
+	@Test
+	public void otherShapeIsMissed() throws Exception {
+
+		JPQLQuery eq = builder("$filter=Name eq 'Ana'").build();
+		JPQLQuery ne = builder("$filter=Name ne 'Ana'").build();
+		JPQLQuery ordered = builder("$filter=Name eq 'Ana'&$orderby=Surname").build();
+
+		assertEquals(3, queryPlanCache.getMissCount());
+		assertEquals(0, queryPlanCache.getHitCount());
+		assertNotEquals(eq.getQueryString(), ne.getQueryString());
+		assertNotEquals(eq.getQueryString(), ordered.getQueryString());
+	}
+
+	@Test
+	public void countIsCachedApartFromTheQuery() throws Exception {
+
+		JPQLQuery query = builder("$filter=Name eq 'Ana'").build();
+		JPQLQuery count = builder("$filter=Name eq 'Eva'").buildCount();
+		JPQLQuery again = builder("$filter=Name eq 'Ivo'").buildCount();
+
+		assertEquals(2, queryPlanCache.getMissCount());
+		assertEquals(1, queryPlanCache.getHitCount());
+		assertNotEquals(query.getQueryString(), count.getQueryString());
+		assertEquals(count.getQueryString(), again.getQueryString());
+		assertEquals("Ivo", again.getQueryParams().get("value0"));
+	}
+
+	@Test
+	public void keysetValuesAreRebound() throws Exception {
+
+		JPQLQuery first = builder("$orderby=Code").setSkipToken(skipToken("Code", new PersonEdm(1, "Ana", "Diaz", GenderEnum.FEMALE, null))).build();
+		JPQLQuery second = builder("$orderby=Code").setSkipToken(skipToken("Code", new PersonEdm(2, "Eva", "Ruiz", GenderEnum.FEMALE, null))).build();
+
+		assertEquals(1, queryPlanCache.getHitCount());
+		assertEquals(first.getQueryString(), second.getQueryString());
+		assertEquals("P2", second.getQueryParams().get("skiptoken0"));
+		assertEquals(2, second.getQueryParams().get("skiptoken1"));
+	}
+
+	@Test
+	public void reusedBuilderDoesNotCarryParameters() throws Exception {
+
+		JPQLQueryBuilder builder = builder("$filter=Name eq 'Ana'&$orderby=Code");
+
+		JPQLQuery paged = builder.setSkipToken(skipToken("Code", new PersonEdm(1, "Ana", "Diaz", GenderEnum.FEMALE, null))).build();
+		JPQLQuery unpaged = builder.setSkipToken(null).build();
+		JPQLQuery uncached = builder.setQueryPlanCache(null).build();
+
+		assertTrue(paged.getQueryParams().containsKey("skiptoken0"));
+		assertEquals(1, unpaged.getQueryParams().size());
+		assertEquals(unpaged.getQueryParams(), uncached.getQueryParams());
+		assertEquals(unpaged.getQueryString(), uncached.getQueryString());
+	}
+
+	@Test
+	public void searchByKeysIsCachedWhateverTheNumberOfCandidates() throws Exception {
+
+		JPQLQuery two = builder("$filter=Name eq 'Ana'").setSearchRestriction(SearchRestriction.keys(PersonEdm.class, ids(2))).build();
+		JPQLQuery three = builder("$filter=Name eq 'Eva'").setSearchRestriction(SearchRestriction.keys(PersonEdm.class, ids(3))).build();
+
+		assertEquals(1, queryPlanCache.getHitCount());
+		assertEquals(two.getQueryString(), three.getQueryString());
+		assertEquals(Arrays.asList(1, 2, 3), three.getQueryParams().get(SearchRestriction.SEARCH_PARAM));
+	}
+
+	@Test
+	public void searchByCompositeKeysIsNotCached() throws Exception {
+
+		SearchRestriction two = SearchRestriction.keys(InstallmentEdm.class, Arrays.asList(Arrays.<Object>asList(1, 1), Arrays.<Object>asList(1, 2)));
+		SearchRestriction three = SearchRestriction.keys(InstallmentEdm.class, Arrays.asList(Arrays.<Object>asList(1, 1), Arrays.<Object>asList(1, 2), Arrays.<Object>asList(2, 1)));
+
+		JPQLQuery first = new JPQLQueryBuilder().setClazz(InstallmentEdm.class).setQueryPlanCache(queryPlanCache).setIndexAdvisor(null).setSearchRestriction(two).build();
+		JPQLQuery second = new JPQLQueryBuilder().setClazz(InstallmentEdm.class).setQueryPlanCache(queryPlanCache).setIndexAdvisor(null).setSearchRestriction(three).buildCount();
+
+		assertFalse(two.isCacheable());
+		assertEquals(0, queryPlanCache.size());
+		assertEquals(4, first.getQueryParams().size());
+		assertEquals(6, second.getQueryParams().size());
+		assertTrue(second.getQueryString().contains("(e.loan = :search2_0 AND e.number = :search2_1)"));
+	}
+
+	@Test
+	public void searchOverTheParameterLimitHasNoCondition() throws Exception {
+
+		SearchRestriction limit = SearchRestriction.keys(PersonEdm.class, ids(SearchRestriction.MAX_PARAMETERS));
+		SearchRestriction over = SearchRestriction.keys(PersonEdm.class, ids(SearchRestriction.MAX_PARAMETERS + 1));
+		SearchRestriction compositeOver = SearchRestriction.keys(InstallmentEdm.class, IntStream.rangeClosed(1, SearchRestriction.MAX_PARAMETERS / 2 + 1)
+			.mapToObj(number -> Arrays.<Object>asList(1, number)).collect(Collectors.toList()));
+
+		assertTrue(limit.hasCondition());
+		assertFalse(over.hasCondition());
+		assertFalse(over.isCacheable());
+		assertFalse(compositeOver.hasCondition());
+		assertTrue(over.test(new PersonEdm(SearchRestriction.MAX_PARAMETERS + 1, "Ana", "Diaz", GenderEnum.FEMALE, null)));
+		assertFalse(over.test(new PersonEdm(SearchRestriction.MAX_PARAMETERS + 2, "Ana", "Diaz", GenderEnum.FEMALE, null)));
+
+		try {
+			builder("").setSearchRestriction(over).build();
+			fail("a restriction without a condition can not be added to the query");
+		} catch(ODataApplicationException e) {
+			assertEquals(0, queryPlanCache.size());
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package com.cairone.olingo.ext.jpa.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.junit.Test;
+
+import com.cairone.olingo.ext.jpa.TestEdm;
+import com.cairone.olingo.ext.jpa.edm.GenderEnum;
+import com.cairone.olingo.ext.jpa.edm.PersonEdm;
+
+public class SkipTokenTest {
+
+	private static List<SortKey> sortKeys(String orderBy) throws Exception {
+		return SortKey.from(PersonEdm.class, TestEdm.parse("People", "$orderby=" + orderBy).getOrderByOption());
+	}
+
+	private static String part(String text) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void assertRejected(String token, List<SortKey> sortKeys) {
+		try {
+			SkipToken.decode(token, sortKeys);
+			fail("The token " + token + " was accepted");
+		} catch (ODataApplicationException e) {
+			assertEquals(400, e.getStatusCode());
+		}
+	}
+
+	@Test
+	public void roundTripKeepsOffsetPageSizeAndValues() throws Exception {
+
+		List<SortKey> sortKeys = sortKeys("Code desc");
+		PersonEdm lastRow = new PersonEdm(7, "Ana", "Diaz", GenderEnum.FEMALE, null);
+
+		SkipToken first = SkipToken.first(5, 10, sortKeys);
+		assertEquals(Integer.valueOf(5), first.getSkip());
+
+		SkipToken next = first.next(10, 10, lastRow, sortKeys);
+		SkipToken decoded = SkipToken.decode(next.encode(), sortKeys);
+
+		assertEquals(15, decoded.getOffset());
+		assertEquals(10, decoded.getPageSize());
+		assertEquals(Arrays.asList("P7", 7), decoded.getValues());
+		assertNull(decoded.getSkip());
+	}
+
+	@Test
+	public void enumerationIsResolvedFromTheSortKey() throws Exception {
+
+		List<SortKey> sortKeys = sortKeys("Gender");
+		PersonEdm lastRow = new PersonEdm(3, "Ivo", "Ruiz", GenderEnum.MALE, null);
+
+		SkipToken decoded = SkipToken.decode(SkipToken.first(null, 2, sortKeys).next(2, 2, lastRow, sortKeys).encode(), sortKeys);
+
+		assertEquals(Arrays.asList(GenderEnum.MALE, 3), decoded.getValues());
+	}
+
+	@Test
+	public void tokenOfAnotherOrderIsRejected() throws Exception {
+
+		List<SortKey> sortKeys = sortKeys("Code");
+		String token = SkipToken.first(0, 10, sortKeys).next(10, 10, new PersonEdm(1, "Ana", "Diaz", GenderEnum.FEMALE, null), sortKeys).encode();
+
+		assertRejected(token, sortKeys("Code desc"));
+		assertRejected(token, sortKeys("Gender"));
+	}
+
+	@Test
+	public void malformedTokenIsRejected() throws Exception {
+
+		List<SortKey> sortKeys = sortKeys("Code");
+		String signature = part(SortKey.signature(sortKeys));
+
+		assertRejected("not a token", sortKeys);
+		assertRejected(part("0") + "." + part("10"), sortKeys);
+		assertRejected(part("-1") + "." + part("10") + "." + signature, sortKeys);
+		assertRejected(part("0") + "." + part("10") + "." + signature + "." + part("SP1"), sortKeys);
+		assertRejected(part("0") + "." + part("10") + "." + signature + "." + part("SP1") + "." + part("Xjava.lang.Object"), sortKeys);
+	}
+
+	@Test
+	public void enumerationNameIsNotTakenAsAClass() throws Exception {
+
+		List<SortKey> sortKeys = sortKeys("Gender");
+		String prefix = part("0") + "." + part("10") + "." + part(SortKey.signature(sortKeys)) + ".";
+
+		assertRejected(prefix + part("Ejava.lang.Thread") + "." + part("I1"), sortKeys);
+		assertRejected(prefix + part("EOTHER") + "." + part("I1"), sortKeys);
+		assertRejected(part("0") + "." + part("10") + "." + part(SortKey.signature(sortKeys("Code"))) + "." + part("EMALE") + "." + part("I1"), sortKeys("Code"));
+	}
+
+	@Test
+	public void nullableSortKeyIsPagedByOffset() throws Exception {
+
+		List<SortKey> sortKeys = sortKeys("Name");
+		assertTrue(sortKeys.get(0).isNullable());
+		assertFalse(sortKeys.get(1).isNullable());
+
+		SkipToken next = SkipToken.first(0, 10, sortKeys).next(10, 10, new PersonEdm(1, "Ana", "Diaz", GenderEnum.FEMALE, null), sortKeys);
+		assertFalse(next.hasValues());
+
+		SkipToken decoded = SkipToken.decode(next.encode(), sortKeys);
+		assertEquals(Integer.valueOf(10), decoded.getSkip());
+
+		assertRejected(part("10") + "." + part("10") + "." + part(SortKey.signature(sortKeys)) + "." + part("SAna") + "." + part("I1"), sortKeys);
+	}
+
+	@Test
+	public void nullValueFallsBackToOffset() throws Exception {
+
+		List<SortKey> sortKeys = sortKeys("Code");
+		PersonEdm lastRow = new PersonEdm(1, "Ana", "Diaz", GenderEnum.FEMALE, null);
+		lastRow.setCode(null);
+
+		assertEquals(Integer.valueOf(10), SkipToken.first(0, 10, sortKeys).next(10, 10, lastRow, sortKeys).getSkip());
+	}
+}
@@ -0,0 +1,94 @@
+package com.cairone.olingo.ext.jpa.visitors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.stream.Collectors;
+
+import org.apache.olingo.server.api.uri.queryoption.expression.Binary;
+import org.apache.olingo.server.api.uri.queryoption.expression.Expression;
+import org.apache.olingo.server.api.uri.queryoption.expression.Literal;
+import org.apache.olingo.server.api.uri.queryoption.expression.Member;
+import org.apache.olingo.server.api.uri.queryoption.expression.Unary;
+import org.junit.Test;
+
+import com.cairone.olingo.ext.jpa.TestEdm;
+
+public class ExpressionNormalizerTest {
+
+	private static Expression normalize(String filter) throws Exception {
+		return ExpressionNormalizer.normalize(TestEdm.parse("People", "$filter=" + filter).getFilterOption().getExpression());
+	}
+
+	private static String render(Expression expression) {
+		if(expression instanceof Binary) {
+			Binary binary = (Binary) expression;
+			return "(" + render(binary.getLeftOperand()) + " " + binary.getOperator().name().toLowerCase() + " " + render(binary.getRightOperand()) + ")";
+		} else if(expression instanceof Unary) {
+			Unary unary = (Unary) expression;
+			return unary.getOperator().name().toLowerCase() + " " + render(unary.getOperand());
+		} else if(expression instanceof Literal) {
+			return ((Literal) expression).getText();
+		} else if(expression instanceof Member) {
+			return ((Member) expression).getResourcePath().getUriResourceParts().stream().map(part -> part.getSegmentValue()).collect(Collectors.joining("/"));
+		}
+		return expression.toString();
+	}
+
+	private static String render(String filter) throws Exception {
+		return render(normalize(filter));
+	}
+
+	@Test
+	public void literalsAreFolded() throws Exception {
+
+		assertEquals("(Id gt 3)", render("1 add 2 lt Id"));
+		assertEquals("(Id gt 5)", render("Id gt 2 mul 3 sub 1"));
+		assertTrue(ExpressionNormalizer.isTrue(normalize("'a' eq 'a'")));
+		assertTrue(ExpressionNormalizer.isFalse(normalize("2 le 1")));
+	}
+
+	@Test
+	public void overflowIsLeftToTheDatabase() throws Exception {
+
+		assertEquals("((2147483647 add 1) gt Id)", render("2147483647 add 1 gt Id"));
+		assertEquals("((Id add 2147483647) gt 1)", render("Id add 2147483647 gt 1"));
+	}
+
+	@Test
+	public void booleanConstantsAreFolded() throws Exception {
+
+		assertEquals("(Name eq 'x')", render("true and Name eq 'x'"));
+		assertEquals("(Name eq 'x')", render("false or Name eq 'x'"));
+		assertTrue(ExpressionNormalizer.isFalse(normalize("1 eq 2 and Name eq 'x'")));
+		assertTrue(ExpressionNormalizer.isTrue(normalize("1 lt 2 or Name eq 'x'")));
+		assertFalse(ExpressionNormalizer.isTrue(normalize("Name eq 'x'")));
+	}
+
+	@Test
+	public void comparisonsAreMirrored() throws Exception {
+
+		assertEquals("(Id lt 3)", render("3 gt Id"));
+		assertEquals("(Id ge 3)", render("3 le Id"));
+		assertEquals("(Name eq 'x')", render("'x' eq Name"));
+		assertEquals(render("Name eq Surname"), render("Surname eq Name"));
+	}
+
+	@Test
+	public void notIsRemoved() throws Exception {
+
+		assertEquals("(Id ne 5)", render("not (Id eq 5)"));
+		assertEquals("(Id ge 5)", render("not (Id lt 5)"));
+		assertEquals("(Name eq 'x')", render("not (not (Name eq 'x'))"));
+		assertTrue(normalize("not contains(Name,'x')") instanceof Unary);
+	}
+
+	@Test
+	public void junctionsAreFlattenedAndOrdered() throws Exception {
+
+		assertEquals("((Id gt 1) and (Name eq 'x'))", render("Name eq 'x' and (Id gt 1 and Name eq 'x')"));
+		assertEquals(render("Id gt 1 and Name eq 'x'"), render("Name eq 'x' and 1 lt Id"));
+		assertEquals("(((Id gt 1) or (Name eq 'x')) or (Surname eq 'y'))", render("Surname eq 'y' or (Name eq 'x' or Id gt 1)"));
+	}
+}
@@ -0,0 +1,142 @@
+package com.cairone.olingo.ext.jpa.visitors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.junit.Test;
+
+import com.cairone.olingo.ext.jpa.TestEdm;
+import com.cairone.olingo.ext.jpa.edm.GenderEnum;
+import com.cairone.olingo.ext.jpa.edm.PersonEdm;
+import com.cairone.olingo.ext.jpa.query.JPQLQuery;
+import com.cairone.olingo.ext.jpa.query.JPQLQueryBuilder;
+
+public class FilterExpressionVisitorTest {
+
+	private static JPQLQuery query(String filter) throws Exception {
+		UriInfo uriInfo = TestEdm.parse("People", "$filter=" + filter);
+		return new JPQLQueryBuilder()
+			.setClazz(PersonEdm.class)
+			.setFilterOption(uriInfo.getFilterOption())
+			.setQueryPlanCache(null)
+			.setIndexAdvisor(null)
+			.build();
+	}
+
+	private static String where(JPQLQuery query) {
+		String queryString = query.getQueryString().trim();
+		return queryString.substring(queryString.indexOf(" WHERE ") + 7);
+	}
+
+	@Test
+	public void anyIsTranslatedIntoExists() throws Exception {
+
+		JPQLQuery query = query("Skills/any(s:s/Level gt 3)");
+
+		assertEquals("EXISTS (SELECT l0 FROM e.skills l0 WHERE (l0.level > :value0))", where(query));
+		assertEquals(3, query.getQueryParams().get("value0"));
+	}
+
+	@Test
+	public void allIsTranslatedIntoNotExistsOfAnElementThatFails() throws Exception {
+
+		JPQLQuery query = query("Skills/all(s:s/Name eq 'Java')");
+
+		assertEquals("NOT EXISTS (SELECT l0 FROM e.skills l0 WHERE CASE WHEN (l0.name = :value0) THEN 1 ELSE 0 END = 0)", where(query));
+		assertEquals("Java", query.getQueryParams().get("value0"));
+	}
+
+	@Test
+	public void allDoesNotNegateAPredicateThatCanBeUnknown() throws Exception {
+
+		// with a null Level, NOT (l0.level > 3) is unknown and would skip the skill instead of failing the all
+		String where = where(query("Skills/all(s:s/Level gt 3 or s/Name eq 'Java')"));
+
+		assertEquals("NOT EXISTS (SELECT l0 FROM e.skills l0 WHERE CASE WHEN ((l0.level > :value0 OR l0.name = :value1)) THEN 1 ELSE 0 END = 0)", where);
+		assertFalse(where.contains("NOT ("));
+	}
+
+	@Test
+	public void lambdaIsCombinedWithOtherConditions() throws Exception {
+
+		JPQLQuery query = query("Name eq 'Ana' and Skills/any(s:s/Level gt 3)");
+
+		assertEquals("e.name = :value0 AND EXISTS (SELECT l0 FROM e.skills l0 WHERE (l0.level > :value1))", where(query));
+		assertEquals("Ana", query.getQueryParams().get("value0"));
+		assertEquals(3, query.getQueryParams().get("value1"));
+	}
+
+	@Test
+	public void everyLambdaHasItsOwnAlias() throws Exception {
+
+		JPQLQuery query = query("Skills/any(s:s/Level gt 3) or Skills/any(s:s/Name eq 'Java')");
+
+		assertEquals("(EXISTS (SELECT l0 FROM e.skills l0 WHERE (l0.level > :value0)) OR EXISTS (SELECT l1 FROM e.skills l1 WHERE (l1.name = :value1)))", where(query));
+	}
+
+	@Test
+	public void equalitiesOnOnePropertyAreTranslatedIntoIn() throws Exception {
+
+		JPQLQuery query = query("Name eq 'Ana' or Name eq 'Eva' or Name eq 'Ivo'");
+
+		assertTrue(where(query), where(query).matches("e\\.name IN \\(:value\\d+\\)"));
+		assertEquals(1, query.getQueryParams().size());
+		assertEquals(new HashSet<Object>(Arrays.asList("Ana", "Eva", "Ivo")), new HashSet<Object>((Collection<?>) query.getQueryParams().values().iterator().next()));
+	}
+
+	@Test
+	public void enumerationEqualitiesAreTranslatedIntoIn() throws Exception {
+
+		JPQLQuery query = query("Gender eq com.cairone.olingo.ext.jpa.test.Gender'MALE' or Gender eq com.cairone.olingo.ext.jpa.test.Gender'FEMALE'");
+
+		assertTrue(where(query), where(query).matches("e\\.gender IN \\(:value\\d+\\)"));
+		assertEquals(new HashSet<Object>(Arrays.asList(GenderEnum.MALE, GenderEnum.FEMALE)), new HashSet<Object>((Collection<?>) query.getQueryParams().values().iterator().next()));
+	}
+
+	@Test
+	public void inIsKeptWithinAConjunction() throws Exception {
+
+		JPQLQuery query = query("(Name eq 'Ana' or Name eq 'Eva') and Id gt 1");
+
+		assertTrue(where(query), where(query).matches("e\\.name IN \\(:value\\d+\\) AND e\\.id > :value\\d+"));
+		assertTrue(query.getQueryParams().containsValue(1));
+	}
+
+	@Test
+	public void equalitiesOnDifferentPropertiesAreKept() throws Exception {
+
+		JPQLQuery query = query("Name eq 'Ana' or Surname eq 'Eva'");
+
+		assertEquals("(e.name = :value0 OR e.lastName = :value1)", where(query));
+	}
+
+	@Test
+	public void arithmeticOperatorsArePushedDown() throws Exception {
+
+		JPQLQuery add = query("Id add 1 gt 3");
+		JPQLQuery mod = query("Id mod 2 eq 0");
+
+		assertEquals("(e.id + :value0) > :value1", where(add));
+		assertEquals(1, add.getQueryParams().get("value0"));
+		assertEquals("MOD(e.id, :value0) = :value1", where(mod));
+		assertEquals(2, mod.getQueryParams().get("value0"));
+	}
+
+	@Test
+	public void minusIsPushedDown() throws Exception {
+
+		JPQLQuery negated = query("-Id gt -3");
+		JPQLQuery nested = query("-(Id add 1) lt 0");
+
+		assertEquals("-(e.id) > :value0", where(negated));
+		assertEquals(-3, negated.getQueryParams().get("value0"));
+		assertEquals("-((e.id + :value0)) < :value1", where(nested));
+		assertEquals(1, nested.getQueryParams().get("value0"));
+	}
+}